@@ -40,6 +40,29 @@ CREATE TABLE tracks (
     updated_at TIMESTAMP WITH TIME ZONE DEFAULT CURRENT_TIMESTAMP
 );
 
+-- Track listing is always keyed by project
+CREATE INDEX idx_track_project_id ON tracks(project_id);
+
+-- Track ids come from a sequence Hibernate pre-allocates in blocks of 50, so track inserts can be batched.
+-- The application maps tracks to the table "track"; on startup IdSequenceInitializer moves track_seq past
+-- the ids already in it, as in:
+--   SELECT setval('track_seq', GREATEST((SELECT last_value FROM track_seq), (SELECT COALESCE(MAX(id), 0) FROM track) + 50));
+CREATE SEQUENCE track_seq INCREMENT BY 50;
+
+-- Fixed-size time segments of each track's sequence, rebuilt from tracks.musical_sequence when the track version changes
+CREATE SEQUENCE track_segment_seq INCREMENT BY 50;
+CREATE TABLE track_segment (
+    id BIGINT PRIMARY KEY,
+    track_id BIGINT REFERENCES tracks(id) ON DELETE CASCADE NOT NULL,
+    segment_index INTEGER NOT NULL,
+    start_tick BIGINT NOT NULL,
+    max_end_tick BIGINT NOT NULL, -- furthest tick reached by a note starting in this segment
+    track_version INTEGER,
+    data BYTEA NOT NULL, -- packed note events, or JSON when they cannot be packed
+    CONSTRAINT uk_track_segment_index UNIQUE (track_id, segment_index)
+);
+CREATE INDEX idx_track_segment_window ON track_segment(track_id, start_tick);
+
 -- Create the ProjectVersion table
 CREATE TABLE project_version (
     id SERIAL PRIMARY KEY,
@@ -48,15 +71,39 @@ CREATE TABLE project_version (
     data JSONB -- Store project snapshot as JSON
 );
 
--- Create the TrackChange table
+-- Version history is listed newest first per project and paged by (timestamp, id)
+CREATE INDEX idx_project_version_history ON project_version(project_id, timestamp, id);
+
+-- Versions between keyframes store a delta against base_version_id instead of the whole project
+ALTER TABLE project_version
+    ADD COLUMN kind VARCHAR(16), -- KEYFRAME or DELTA; NULL rows predate deltas and are keyframes
+    ADD COLUMN base_version_id BIGINT,
+    ADD COLUMN keyframe_id BIGINT,
+    ADD COLUMN chain_depth INTEGER;
+
+-- Track sequences referenced from version snapshots, stored once per distinct content
+CREATE TABLE track_blob (
+    hash VARCHAR(64) PRIMARY KEY, -- hex SHA-256 of the sequence text
+    musical_sequence TEXT NOT NULL,
+    created_at TIMESTAMP NOT NULL
+);
+
+-- Create the TrackChange table (append-only; plain ids so the history outlives deleted tracks)
+CREATE SEQUENCE track_change_seq INCREMENT BY 50;
 CREATE TABLE track_change (
-    id SERIAL PRIMARY KEY,
-    track_id INTEGER REFERENCES tracks(id) NOT NULL,
-    user_id INTEGER REFERENCES "users"(id) NOT NULL,
-    timestamp TIMESTAMP WITH TIME ZONE DEFAULT CURRENT_TIMESTAMP,
+    id BIGINT PRIMARY KEY,
+    track_id BIGINT NOT NULL,
+    project_id BIGINT NOT NULL,
+    user_id BIGINT, -- null for changes made without a signed-in user
+    changed_at TIMESTAMP NOT NULL,
     change_type VARCHAR(20) NOT NULL, -- 'ADD', 'DELETE', 'MODIFY'
-    data JSONB -- Store change details as JSON
+    instrument VARCHAR(255), -- the track's state after the change; null for DELETE
+    sequence_hash VARCHAR(64), -- keyframes: the track_blob holding its sequence
+    sequence_operations TEXT, -- between keyframes: the note operations of a patch
+    sequence_delta TEXT -- between keyframes: the notes a full update changed
 );
+CREATE INDEX idx_track_change_replay ON track_change (project_id, changed_at, id);
+CREATE INDEX idx_track_change_sequence_hash ON track_change (sequence_hash); -- blob sweeps look up who still refers to a blob
 
 -- Create the Collaboration table (for many-to-many relationship)
 CREATE TABLE collaboration (
@@ -0,0 +1,46 @@
+package com.kanaetochi.audio_alchemists.config;
+
+import java.util.Map;
+
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Moves id sequences past the ids already in their tables. Tracks (and the change log the old schema script
+ * created) were filled through IDENTITY columns before their ids came from pooled sequences; ddl-auto creates
+ * a missing sequence starting at 1, so on an existing database the first inserts would reuse taken ids. Runs
+ * once every bean is ready, before the web server takes requests, and never moves a sequence backwards.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class IdSequenceInitializer implements SmartInitializingSingleton {
+
+    private static final Map<String, String> SEQUENCES = Map.of(
+            "track_seq", "track",
+            "track_change_seq", "track_change");
+    private static final int ALLOCATION_SIZE = 50; // as in the entities' @SequenceGenerator
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        String database = jdbcTemplate.execute((ConnectionCallback<String>) connection -> connection.getMetaData().getDatabaseProductName());
+        if (!"PostgreSQL".equals(database)) {
+            return; // schemas elsewhere (the test database) are created empty
+        }
+        SEQUENCES.forEach((sequence, table) -> {
+            // The pooled optimizer hands out the block ending at the value nextval returns
+            Long next = jdbcTemplate.queryForObject(
+                    "SELECT setval('" + sequence + "', GREATEST((SELECT last_value FROM " + sequence + "), "
+                            + "(SELECT COALESCE(MAX(id), 0) FROM " + table + ") + " + ALLOCATION_SIZE + "))",
+                    Long.class);
+            log.info("Sequence {} is at {}", sequence, next);
+        });
+    }
+}
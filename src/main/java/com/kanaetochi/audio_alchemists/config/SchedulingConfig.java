@@ -0,0 +1,20 @@
+package com.kanaetochi.audio_alchemists.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+
+    // Own scheduler for background jobs, so database work never delays the broker's heartbeat scheduler
+    @Bean
+    public ThreadPoolTaskScheduler taskScheduler() {
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(4); // the track change broadcast flushes every few ms and should not wait behind the database jobs
+        scheduler.setThreadNamePrefix("scheduled-");
+        return scheduler;
+    }
+}
@@ -1,13 +1,21 @@
 package com.kanaetochi.audio_alchemists.config;
 
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.lang.NonNull;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
 
+import com.kanaetochi.audio_alchemists.security.JwtChannelInterceptor;
+import com.kanaetochi.audio_alchemists.security.ProjectTopicAccessInterceptor;
 import com.kanaetochi.audio_alchemists.security.JwtHandshakeInterceptor;
+import com.kanaetochi.audio_alchemists.websocket.SessionOutboxRegistry;
+import com.kanaetochi.audio_alchemists.websocket.TrackTopicFormats;
 
 import lombok.RequiredArgsConstructor;
 
@@ -17,6 +25,10 @@ import lombok.RequiredArgsConstructor;
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer{
 
     private final JwtHandshakeInterceptor jwtHandshakeInterceptor;
+    private final JwtChannelInterceptor jwtChannelInterceptor;
+    private final ProjectTopicAccessInterceptor projectTopicAccessInterceptor;
+    private final SessionOutboxRegistry sessionOutboxRegistry;
+    private final TrackTopicFormats trackTopicFormats;
 
     @Override
     public void registerStompEndpoints(@NonNull StompEndpointRegistry registry) {
@@ -31,4 +43,39 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer{
         registry.setApplicationDestinationPrefixes("/app"); // prefix for messages going to the application (server)
         registry.enableSimpleBroker("/topic", "/queue"); // prefix for messages going to the client
     }
+    @Override
+    public void configureWebSocketTransport(@NonNull WebSocketTransportRegistration registry) {
+        registry.addDecoratorFactory(sessionOutboxRegistry); // bounded outbound queue per session, so a slow client only delays itself
+    }
+    @Override
+    public void configureClientInboundChannel(@NonNull ChannelRegistration registration) {
+        registration.executor(clientInboundExecutor());
+        registration.interceptors(
+                jwtChannelInterceptor,         // first, so it sets the user on the CONNECT frame the STOMP handler keeps
+                projectTopicAccessInterceptor, // refuses project topic subscriptions the user may not read
+                trackTopicFormats);            // content-type:application/cbor on SUBSCRIBE picks the binary track changes
+    }
+    @Override
+    public void configureClientOutboundChannel(@NonNull ChannelRegistration registration) {
+        registration.executor(clientOutboundExecutor());
+    }
+
+    // Own pools for the STOMP channels: with a single executor bean in the context Spring Boot would run them on the job scheduler
+    @Bean
+    public ThreadPoolTaskExecutor clientInboundExecutor() {
+        return channelExecutor("clientInboundChannel-");
+    }
+
+    @Bean
+    public ThreadPoolTaskExecutor clientOutboundExecutor() {
+        return channelExecutor("clientOutboundChannel-"); // never waits on a client, SessionOutbox queues the frames
+    }
+
+    private static ThreadPoolTaskExecutor channelExecutor(String threadNamePrefix) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(Runtime.getRuntime().availableProcessors() * 2);
+        executor.setAllowCoreThreadTimeOut(true);
+        executor.setThreadNamePrefix(threadNamePrefix);
+        return executor;
+    }
 }
@@ -0,0 +1,49 @@
+package com.kanaetochi.audio_alchemists.controller;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import org.springframework.util.DigestUtils;
+
+import com.kanaetochi.audio_alchemists.dto.TrackSummaryDto;
+
+// Strong ETags built from what already identifies a representation, so they can be checked before any DTO mapping
+final class ETags {
+
+    private ETags() {
+    }
+
+    static String track(Long id, Integer version) {
+        return quote("t" + id + "-v" + version);
+    }
+
+    static String packedTrack(Long id, Integer version) {
+        return quote("t" + id + "-v" + version + "-packed"); // different bytes, different tag
+    }
+
+    static String trackWindow(Long id, Integer version, long fromTick, long toTick) {
+        return quote("t" + id + "-v" + version + "-w" + fromTick + "-" + toTick);
+    }
+
+    static String project(Long id, LocalDateTime updatedAt) {
+        long micros = updatedAt != null ? updatedAt.toEpochSecond(ZoneOffset.UTC) * 1_000_000 + updatedAt.getNano() / 1_000 : 0;
+        return quote("p" + id + "-" + micros);
+    }
+
+    static String versionDiff(Long projectId, Long fromVersionId, Long toVersionId) {
+        return quote("p" + projectId + "-d" + fromVersionId + "-" + toVersionId);
+    }
+
+    // A page of summaries is identified by which tracks it holds and their versions
+    static String trackPage(Long projectId, List<TrackSummaryDto> page) {
+        StringBuilder key = new StringBuilder().append(projectId);
+        page.forEach(summary -> key.append(',').append(summary.getId()).append(':').append(summary.getVersion()));
+        return quote("tp" + projectId + "-" + DigestUtils.md5DigestAsHex(key.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static String quote(String tag) {
+        return "\"" + tag + "\"";
+    }
+}
@@ -0,0 +1,39 @@
+package com.kanaetochi.audio_alchemists.controller;
+
+import java.security.Principal;
+
+import org.springframework.messaging.handler.annotation.DestinationVariable;
+import org.springframework.messaging.handler.annotation.MessageMapping;
+import org.springframework.messaging.handler.annotation.Payload;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Controller;
+
+import com.kanaetochi.audio_alchemists.dto.PresenceMessage;
+import com.kanaetochi.audio_alchemists.model.User;
+import com.kanaetochi.audio_alchemists.websocket.ProjectPresenceRelay;
+
+import lombok.RequiredArgsConstructor;
+
+@Controller
+@RequiredArgsConstructor
+public class PresenceController {
+
+    private final ProjectPresenceRelay projectPresenceRelay;
+
+    // Cursor, playhead, selection and the track being edited; relayed from memory to /topic/project/{id}/presence, never stored
+    // Only reached with access to the project: ProjectTopicAccessInterceptor refuses SENDs to /app/projects/{id}/** otherwise
+    @MessageMapping("/projects/{projectId}/presence")
+    public void updatePresence(@DestinationVariable Long projectId, @Payload PresenceMessage presence, SimpMessageHeaderAccessor headers) {
+        Principal principal = headers.getUser();
+        String sessionId = headers.getSessionId();
+        if (principal == null || sessionId == null) {
+            return; // only signed-in sessions show up
+        }
+        presence.setClientId(sessionId);
+        presence.setUserId(principal instanceof Authentication authentication && authentication.getPrincipal() instanceof User user ? user.getId() : null);
+        presence.setUsername(principal.getName());
+        presence.setLeft(false);
+        projectPresenceRelay.update(projectId, sessionId, presence);
+    }
+}
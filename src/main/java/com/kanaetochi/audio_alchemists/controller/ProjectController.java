@@ -6,8 +6,10 @@ import org.springframework.web.bind.annotation.RestController;
 
 import com.kanaetochi.audio_alchemists.dto.CollaborationMessage;
 import com.kanaetochi.audio_alchemists.dto.ProjectDto;
+import com.kanaetochi.audio_alchemists.dto.ProjectStateDto;
 import com.kanaetochi.audio_alchemists.dto.ProjectVersionDto;
 import com.kanaetochi.audio_alchemists.dto.SaveVersionRequestDto;
+import com.kanaetochi.audio_alchemists.dto.VersionDiffDto;
 import com.kanaetochi.audio_alchemists.model.Project;
 import com.kanaetochi.audio_alchemists.model.ProjectVersion;
 import com.kanaetochi.audio_alchemists.model.User;
@@ -19,10 +21,13 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
 import java.net.URI;
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
 import java.util.stream.Collectors;
 
 import org.modelmapper.ModelMapper;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
@@ -36,6 +41,7 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.context.request.WebRequest;
 
 
 @RestController
@@ -43,6 +49,9 @@ import org.springframework.web.bind.annotation.RequestBody;
 @RequestMapping("/projects")
 @Slf4j
 public class ProjectController {
+    private static final int MAX_VERSIONS_PAGE = 200;
+    private static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
     private final ProjectService projectService;
     private final ProjectVersionService projectVersionService;
     private final ModelMapper modelMapper;
@@ -63,7 +72,12 @@ public class ProjectController {
         return ResponseEntity.ok(projectService.getAllProjects().stream().map(project -> modelMapper.map(project, ProjectDto.class)));
     }
     @GetMapping("/{id}")
-    public ResponseEntity<ProjectDto> getProjectById(@PathVariable Long id) {
+    public ResponseEntity<ProjectDto> getProjectById(@PathVariable Long id, WebRequest webRequest) {
+        // Answer conditional GETs from updatedAt alone, before the project and owner are loaded and mapped
+        Optional<LocalDateTime> updatedAt = projectService.getProjectUpdatedAt(id);
+        if (updatedAt.isPresent() && webRequest.checkNotModified(ETags.project(id, updatedAt.get()))) {
+            return new ResponseEntity<>(HttpStatus.NOT_MODIFIED);
+        }
         return  projectService.getProjectById(id)
                .map(project -> {
                    ProjectDto projectDto = modelMapper.map(project, ProjectDto.class);
@@ -73,13 +87,46 @@ public class ProjectController {
     }
     @GetMapping("/{id}/versions")
     @PreAuthorize("hasAuthority('COMPOSER') or hasAuthority('ADMIN') or @projectAccessChecker.canViewProject(authentication, #id)")
-    public ResponseEntity<?> getProjectVersions(@PathVariable Long id) {
-        List<ProjectVersion> versions = projectVersionService.getVersionsForProject(id);
-        List<ProjectVersionDto> versionDtos = versions.stream()
-                .map(version -> modelMapper.map(version, ProjectVersionDto.class))
-                .toList();
+    public ResponseEntity<?> getProjectVersions(@PathVariable Long id, @RequestParam(required = false) String cursor,
+                                                @RequestParam(defaultValue = "50") int limit) {
+        if (limit < 1 || limit > MAX_VERSIONS_PAGE) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        Optional<VersionCursors.Position> position = Optional.empty();
+        if (cursor != null) {
+            position = VersionCursors.parse(cursor);
+            if (position.isEmpty()) {
+                return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+            }
+        }
+        List<ProjectVersionDto> versionDtos = projectVersionService.getVersionHistory(id,
+                position.map(VersionCursors.Position::timeStamp).orElse(null),
+                position.map(VersionCursors.Position::id).orElse(null), limit);
+        // A full page may have more behind it; the client passes this back as ?cursor= for the next one
+        if (versionDtos.size() == limit) {
+            return ResponseEntity.ok()
+                    .header(NEXT_CURSOR_HEADER, VersionCursors.after(versionDtos.get(versionDtos.size() - 1)))
+                    .body(versionDtos);
+        }
         return ResponseEntity.ok(versionDtos);
     }
+    @GetMapping("/{id}/versions/{fromVersionId}/diff/{toVersionId}")
+    @PreAuthorize("hasAuthority('COMPOSER') or hasAuthority('ADMIN') or @projectAccessChecker.canViewProject(authentication, #id)")
+    public ResponseEntity<VersionDiffDto> diffProjectVersions(@PathVariable Long id, @PathVariable Long fromVersionId,
+                                                              @PathVariable Long toVersionId, WebRequest webRequest) {
+        // Saved versions never change, so a client holding this pair's tag already has the diff
+        if (webRequest.checkNotModified(ETags.versionDiff(id, fromVersionId, toVersionId))) {
+            return new ResponseEntity<>(HttpStatus.NOT_MODIFIED);
+        }
+        return ResponseEntity.ok(projectVersionService.diffVersions(id, fromVersionId, toVersionId));
+    }
+    // The project as it was at ?at= (ISO date-time), rebuilt from the version saved before it and the track changes since
+    @GetMapping("/{id}/at")
+    @PreAuthorize("hasAuthority('COMPOSER') or hasAuthority('ADMIN') or @projectAccessChecker.canViewProject(authentication, #id)")
+    public ResponseEntity<ProjectStateDto> getProjectAt(@PathVariable Long id,
+                                                        @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime at) {
+        return ResponseEntity.ok(projectVersionService.getProjectAt(id, at));
+    }
     @GetMapping("/search")
     @PreAuthorize("isAuthenticated()") // Allow any logged-in user to search
     public ResponseEntity<List<ProjectDto>> searchForProjects(@RequestParam String query) {
@@ -91,10 +138,14 @@ public class ProjectController {
     }
     @PostMapping("/{id}/revert/{versionId}")
     @PreAuthorize("hasAuthority('COMPOSER') or hasAuthority('ADMIN') or @projectAccessChecker.canEditProject(authentication, #id)")
-    public ResponseEntity<ProjectDto> revertProject(@PathVariable Long id, @PathVariable Long versionId, @AuthenticationPrincipal User currUser) {
+    public ResponseEntity<?> revertProject(@PathVariable Long id, @PathVariable Long versionId,
+                                           @RequestParam(defaultValue = "false") boolean dryRun, @AuthenticationPrincipal User currUser) {
         if (currUser == null) { 
             return ResponseEntity.status(401).build();
         }
+        if (dryRun) {
+            return ResponseEntity.ok(projectVersionService.previewRevert(id, versionId));
+        }
 
         Project revertedProject = projectVersionService.revertToVersion(id, versionId, currUser);
         ProjectDto projectDto = modelMapper.map(revertedProject, ProjectDto.class);
@@ -103,7 +154,7 @@ public class ProjectController {
     @PostMapping("/{id}/versions")
     @PreAuthorize("hasAuthority('COMPOSER') or hasAuthority('ADMIN') or @projectAccessChecker.canEditProject(authentication, #id)")
     public ResponseEntity<?> saveProjectVersion(@PathVariable Long id, @RequestBody(required = false) SaveVersionRequestDto requestDto, @AuthenticationPrincipal User currUser) {
-        String description = requestDto != null && requestDto.getDescription() != null ? requestDto.getDescription() : "Manual save";
+        String description = requestDto != null && requestDto.getDescription() != null ? requestDto.getDescription() : ProjectVersion.MANUAL_SAVE_DESCRIPTION;
         if (currUser == null) {
             return ResponseEntity.status(401).build();
         }
@@ -0,0 +1,72 @@
+package com.kanaetochi.audio_alchemists.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kanaetochi.audio_alchemists.dto.TrackBatchDto;
+import com.kanaetochi.audio_alchemists.dto.TrackBatchOperation;
+import com.kanaetochi.audio_alchemists.dto.TrackBatchResultDto;
+import com.kanaetochi.audio_alchemists.dto.TrackChangeMessage;
+import com.kanaetochi.audio_alchemists.model.User;
+import com.kanaetochi.audio_alchemists.service.TrackService;
+import com.kanaetochi.audio_alchemists.websocket.ProjectTopicPublisher;
+
+import lombok.RequiredArgsConstructor;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.bind.annotation.*;
+
+// Lives apart from TrackController because "tracks:batch" is its own path segment, not a child of /tracks
+@RestController
+@RequestMapping("/projects/{projectId}/tracks:batch")
+@RequiredArgsConstructor
+public class TrackBatchController {
+
+    private static final int MAX_OPERATIONS = 500;
+
+    private final TrackService trackService;
+    private final ProjectTopicPublisher projectTopicPublisher;
+    private final ObjectMapper objectMapper;
+
+    // Creates, updates and deletes applied in one transaction, announced with one broadcast
+    @PostMapping
+    @PreAuthorize("hasAuthority('COMPOSER')")
+    public ResponseEntity<TrackBatchResultDto> applyBatch(@PathVariable Long projectId, @RequestBody TrackBatchDto batch){
+        if (!isValid(batch)) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        TrackBatchResultDto result = trackService.applyBatch(projectId, batch.getOperations());
+        sendBatchMessage(projectId, result);
+        return new ResponseEntity<>(result, HttpStatus.OK);
+    }
+
+    private boolean isValid(TrackBatchDto batch) {
+        if (batch == null || batch.getOperations() == null || batch.getOperations().isEmpty() || batch.getOperations().size() > MAX_OPERATIONS) {
+            return false;
+        }
+        return batch.getOperations().stream().allMatch(op -> op != null && op.getType() != null
+                && (op.getType() == TrackBatchOperation.Type.CREATE || op.getId() != null));
+    }
+
+    private void sendBatchMessage(Long projectId, TrackBatchResultDto result) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        Long userId = authentication != null && authentication.getPrincipal() instanceof User user ? user.getId() : null;
+        TrackChangeMessage trackChangeMessage = TrackChangeMessage.builder()
+                .changeType("BATCH")
+                .data(convertObjectToJson(result))
+                .payload(result)
+                .userId(userId)
+                .build();
+        projectTopicPublisher.publishTrackChange(projectId, trackChangeMessage); // in order with the single-track changes around it
+    }
+
+    private String convertObjectToJson(Object data){
+        try {
+            return objectMapper.writeValueAsString(data);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
@@ -1,22 +1,34 @@
 package com.kanaetochi.audio_alchemists.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kanaetochi.audio_alchemists.dto.ProjectStateDto;
+import com.kanaetochi.audio_alchemists.dto.SequencePatchDto;
+import com.kanaetochi.audio_alchemists.dto.SequencePatchResultDto;
+import com.kanaetochi.audio_alchemists.dto.SequenceWindowDto;
 import com.kanaetochi.audio_alchemists.dto.TrackChangeMessage;
 import com.kanaetochi.audio_alchemists.dto.TrackDto;
+import com.kanaetochi.audio_alchemists.dto.TrackSummaryDto;
+import com.kanaetochi.audio_alchemists.exception.ResourceNotFoundException;
 import com.kanaetochi.audio_alchemists.model.Track;
+import com.kanaetochi.audio_alchemists.sequence.SequenceCodec;
+import com.kanaetochi.audio_alchemists.service.ProjectVersionService;
 import com.kanaetochi.audio_alchemists.service.TrackService;
+import com.kanaetochi.audio_alchemists.websocket.ProjectTopicPublisher;
 
 import lombok.RequiredArgsConstructor;
 
 import org.modelmapper.ModelMapper;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -27,8 +39,9 @@ public class TrackController {
 
 
     final private TrackService trackService;
+    private final ProjectVersionService projectVersionService;
     final private ModelMapper modelMapper;
-    private final SimpMessagingTemplate simpMessagingTemplate;
+    private final ProjectTopicPublisher projectTopicPublisher;
     private final ObjectMapper objectMapper;
 
     @PostMapping
@@ -36,48 +49,123 @@ public class TrackController {
     public ResponseEntity<TrackDto> createTrack(@PathVariable Long projectId, @RequestBody Track track){
         Track newTrack = trackService.createTrack(track, projectId);
         TrackDto trackDto = modelMapper.map(newTrack, TrackDto.class);
-        sendTrackChangeMessage(newTrack.getId(), "ADD", trackDto);
+        sendTrackChangeMessage(projectId, newTrack.getId(), "ADD", trackDto);
         return new ResponseEntity<>(trackDto, HttpStatus.CREATED);
     }
 
 
+    // Keyset paged: pass the last id of the previous page as ?after= to get the next one
     @GetMapping
-    public ResponseEntity<List<TrackDto>> getAllTracks(@PathVariable Long projectId){
-        List<Track> tracks =  trackService.getAllTracksByProject(projectId);
-        List<TrackDto> trackDtos = tracks.stream().map(track -> modelMapper.map(track, TrackDto.class)).toList();
-        return new ResponseEntity<>(trackDtos, HttpStatus.OK);
+    public ResponseEntity<List<TrackSummaryDto>> getAllTracks(@PathVariable Long projectId,
+            @RequestParam(required = false) Long after,
+            @RequestParam(defaultValue = "50") int size,
+            WebRequest webRequest){
+        List<TrackSummaryDto> summaries = trackService.getTrackSummariesByProject(projectId, after, Math.max(1, Math.min(size, 200))); // Clamp page size
+        if (webRequest.checkNotModified(ETags.trackPage(projectId, summaries))) {
+            return new ResponseEntity<>(HttpStatus.NOT_MODIFIED);
+        }
+        return new ResponseEntity<>(summaries, HttpStatus.OK);
     }
 
 
+    // Conditional GETs are answered from the track version alone, before the track is loaded or mapped
     @GetMapping("/{id}")
-    public ResponseEntity<TrackDto> getTrackById(@PathVariable Long id){
+    public ResponseEntity<TrackDto> getTrackById(@PathVariable Long id, WebRequest webRequest){
+        Optional<Integer> version = trackService.getTrackVersion(id);
+        if (version.isPresent() && webRequest.checkNotModified(ETags.track(id, version.get()))) {
+            return new ResponseEntity<>(HttpStatus.NOT_MODIFIED);
+        }
         Optional<Track> track = trackService.getTrackById(id);
         return track.map(t -> new ResponseEntity<>(modelMapper.map(t, TrackDto.class), HttpStatus.OK))
             .orElse(new ResponseEntity<>(HttpStatus.NOT_FOUND));
 
     }
 
+    // Same track, but only its sequence in the packed note-event format (Accept: application/x-aa-sequence)
+    @GetMapping(value = "/{id}", produces = SequenceCodec.MEDIA_TYPE)
+    public ResponseEntity<byte[]> getPackedSequence(@PathVariable Long id, WebRequest webRequest){
+        Optional<Integer> version = trackService.getTrackVersion(id);
+        if (version.isPresent() && webRequest.checkNotModified(ETags.packedTrack(id, version.get()))) {
+            return new ResponseEntity<>(HttpStatus.NOT_MODIFIED);
+        }
+        Optional<Track> track = trackService.getTrackById(id);
+        if (track.isEmpty()) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+        return SequenceCodec.encodeJson(track.get().getMusicalSequence())
+            .map(packed -> ResponseEntity.ok().contentType(MediaType.parseMediaType(SequenceCodec.MEDIA_TYPE)).body(packed))
+            .orElse(new ResponseEntity<>(HttpStatus.NOT_ACCEPTABLE)); // free-form sequence that has no packed form
+    }
+
+
+    // Only the notes sounding in [fromTick, toTick), read from the track's time segments
+    @GetMapping("/{id}/sequence")
+    public ResponseEntity<SequenceWindowDto> getSequenceWindow(@PathVariable Long id,
+            @RequestParam(defaultValue = "0") long fromTick,
+            @RequestParam long toTick,
+            WebRequest webRequest){
+        if (toTick <= fromTick) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        Optional<Integer> version = trackService.getTrackVersion(id);
+        if (version.isPresent() && webRequest.checkNotModified(ETags.trackWindow(id, version.get(), fromTick, toTick))) {
+            return new ResponseEntity<>(HttpStatus.NOT_MODIFIED);
+        }
+        return new ResponseEntity<>(trackService.getSequenceWindow(id, fromTick, toTick), HttpStatus.OK);
+    }
+
+
+    // The track as it was at ?at= (ISO date-time), replayed from the project's change log; 404 if it did not exist then
+    @GetMapping("/{id}/at")
+    @PreAuthorize("hasAuthority('COMPOSER') or hasAuthority('ADMIN') or @projectAccessChecker.canViewProject(authentication, #projectId)")
+    public ResponseEntity<ProjectStateDto.TrackState> getTrackAt(@PathVariable Long projectId, @PathVariable Long id,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime at){
+        return projectVersionService.getTrackAt(projectId, id, at)
+            .map(ResponseEntity::ok)
+            .orElse(new ResponseEntity<>(HttpStatus.NOT_FOUND));
+    }
+
 
     @PutMapping("/{id}")
     @PreAuthorize("hasAuthority('COMPOSER')") // Only composers can update their tracks
-    public ResponseEntity<TrackDto> updateTrack(@PathVariable Long id, @RequestBody TrackDto trackDto){
+    public ResponseEntity<TrackDto> updateTrack(@PathVariable Long projectId, @PathVariable Long id, @RequestBody TrackDto trackDto){
+        checkTrackInProject(projectId, id);
         Track trackDetails = modelMapper.map(trackDto, Track.class);
         Track updatedTrack = trackService.updateTrack(id, trackDetails);
         trackDto = modelMapper.map(updatedTrack, TrackDto.class);
-        sendTrackChangeMessage(updatedTrack.getId(), "MODIFY", trackDto);
+        sendTrackChangeMessage(projectId, updatedTrack.getId(), "MODIFY", trackDto);
         return new ResponseEntity<>(trackDto, HttpStatus.OK);
 
     }
 
+    // Note-level edit: only the operations are sent and broadcast, never the whole sequence
+    @PatchMapping("/{id}/sequence")
+    @PreAuthorize("hasAuthority('COMPOSER')")
+    public ResponseEntity<SequencePatchResultDto> patchSequence(@PathVariable Long projectId, @PathVariable Long id, @RequestBody SequencePatchDto patch){
+        checkTrackInProject(projectId, id);
+        SequencePatchResultDto result = trackService.patchSequence(id, patch);
+        sendTrackChangeMessage(projectId, id, "PATCH", result);
+        return new ResponseEntity<>(result, HttpStatus.OK);
+    }
+
     @DeleteMapping("/{id}")
     @PreAuthorize("hasAuthority('COMPOSER')")  // Only composers can delete tracks
-    public ResponseEntity<String> deleteTrack(@PathVariable Long id){
+    public ResponseEntity<String> deleteTrack(@PathVariable Long projectId, @PathVariable Long id){
+        checkTrackInProject(projectId, id);
         trackService.deleteTrack(id);
-        sendTrackChangeMessage(id, "DELETE", id);
+        sendTrackChangeMessage(projectId, id, "DELETE", id);
         return  new ResponseEntity<>("Track deleted successfully", HttpStatus.OK);
     }
 
-    private void sendTrackChangeMessage(Long trackId, String changeType, Object data) {
+    // The change is broadcast to the project in the path, so a track of another project is not found here
+    private void checkTrackInProject(Long projectId, Long id) {
+        if (!trackService.getTrackProjectId(id).map(projectId::equals).orElse(false)) {
+            throw new ResourceNotFoundException("Track", "id", id);
+        }
+    }
+
+    // Coalesced with the project's other track changes and sent on its /topic/project/{id}/tracks
+    private void sendTrackChangeMessage(Long projectId, Long trackId, String changeType, Object data) {
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
         Long userId = null;
         if (authentication != null && authentication.getPrincipal() instanceof org.springframework.security.core.userdetails.User) {
@@ -88,9 +176,10 @@ public class TrackController {
                 .trackId(trackId)
                 .changeType(changeType)
                 .data(convertObjectToJson(data))
+                .payload(data)
                 .userId(userId)
                 .build();
-        simpMessagingTemplate.convertAndSend("/topic/track" + trackId, trackChangeMessage);
+        projectTopicPublisher.publishTrackChange(projectId, trackChangeMessage);
     }
     private String convertObjectToJson(Object data){
         try {
@@ -0,0 +1,166 @@
+package com.kanaetochi.audio_alchemists.controller;
+
+import java.security.Principal;
+import java.util.function.Supplier;
+
+import org.modelmapper.ModelMapper;
+import org.springframework.http.HttpStatus;
+import org.springframework.messaging.handler.annotation.DestinationVariable;
+import org.springframework.messaging.handler.annotation.Header;
+import org.springframework.messaging.handler.annotation.MessageExceptionHandler;
+import org.springframework.messaging.handler.annotation.MessageMapping;
+import org.springframework.messaging.handler.annotation.Payload;
+import org.springframework.messaging.simp.annotation.SendToUser;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.context.SecurityContextImpl;
+import org.springframework.stereotype.Controller;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kanaetochi.audio_alchemists.dto.SequencePatchDto;
+import com.kanaetochi.audio_alchemists.dto.SequencePatchResultDto;
+import com.kanaetochi.audio_alchemists.dto.TrackChangeMessage;
+import com.kanaetochi.audio_alchemists.dto.TrackDto;
+import com.kanaetochi.audio_alchemists.dto.TrackEditAck;
+import com.kanaetochi.audio_alchemists.exception.ConcurrentEditException;
+import com.kanaetochi.audio_alchemists.exception.InvalidSequenceException;
+import com.kanaetochi.audio_alchemists.exception.ResourceNotFoundException;
+import com.kanaetochi.audio_alchemists.model.Track;
+import com.kanaetochi.audio_alchemists.model.User;
+import com.kanaetochi.audio_alchemists.service.TrackService;
+import com.kanaetochi.audio_alchemists.websocket.ProjectTopicPublisher;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+// The TrackController edits over the WebSocket session, under /app: no HTTP or token check per edit, and the ack goes only to the sending session
+@Controller
+@RequiredArgsConstructor
+@Slf4j
+public class TrackEditController {
+
+    private static final String ACKS = "/queue/track-acks";
+    private static final String REQUEST_ID = "request-id";
+
+    private final TrackService trackService;
+    private final ModelMapper modelMapper;
+    private final ProjectTopicPublisher projectTopicPublisher;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+
+    @MessageMapping("/projects/{projectId}/tracks/create")
+    @SendToUser(destinations = ACKS, broadcast = false)
+    public TrackEditAck createTrack(@DestinationVariable Long projectId, @Payload TrackDto trackDto,
+            @Header(name = REQUEST_ID, required = false) String requestId, Principal principal){
+        TrackDto created = asComposer(principal, () -> modelMapper.map(trackService.createTrack(modelMapper.map(trackDto, Track.class), projectId), TrackDto.class));
+        sendTrackChangeMessage(projectId, created.getId(), "ADD", created, principal);
+        return ack(requestId, "ADD", created.getId(), created.getVersion());
+    }
+
+    @MessageMapping("/projects/{projectId}/tracks/{id}/update")
+    @SendToUser(destinations = ACKS, broadcast = false)
+    public TrackEditAck updateTrack(@DestinationVariable Long projectId, @DestinationVariable Long id, @Payload TrackDto trackDto,
+            @Header(name = REQUEST_ID, required = false) String requestId, Principal principal){
+        TrackDto updated = asComposer(principal, () -> {
+            checkTrackInProject(projectId, id);
+            return modelMapper.map(trackService.updateTrack(id, modelMapper.map(trackDto, Track.class)), TrackDto.class);
+        });
+        sendTrackChangeMessage(projectId, updated.getId(), "MODIFY", updated, principal);
+        return ack(requestId, "MODIFY", updated.getId(), updated.getVersion());
+    }
+
+    @MessageMapping("/projects/{projectId}/tracks/{id}/patch")
+    @SendToUser(destinations = ACKS, broadcast = false)
+    public TrackEditAck patchSequence(@DestinationVariable Long projectId, @DestinationVariable Long id, @Payload SequencePatchDto patch,
+            @Header(name = REQUEST_ID, required = false) String requestId, Principal principal){
+        SequencePatchResultDto result = asComposer(principal, () -> {
+            checkTrackInProject(projectId, id);
+            return trackService.patchSequence(id, patch);
+        });
+        sendTrackChangeMessage(projectId, id, "PATCH", result, principal);
+        return ack(requestId, "PATCH", id, result.getVersion());
+    }
+
+    @MessageMapping("/projects/{projectId}/tracks/{id}/delete")
+    @SendToUser(destinations = ACKS, broadcast = false)
+    public TrackEditAck deleteTrack(@DestinationVariable Long projectId, @DestinationVariable Long id,
+            @Header(name = REQUEST_ID, required = false) String requestId, Principal principal){
+        asComposer(principal, () -> {
+            checkTrackInProject(projectId, id);
+            trackService.deleteTrack(id);
+            return null;
+        });
+        sendTrackChangeMessage(projectId, id, "DELETE", id, principal);
+        return ack(requestId, "DELETE", id, null);
+    }
+
+    // Same answers as the REST endpoints give for these, carried in the ack instead of an HTTP status
+    @MessageExceptionHandler
+    @SendToUser(destinations = ACKS, broadcast = false)
+    public TrackEditAck handleException(Exception ex, @Header(name = REQUEST_ID, required = false) String requestId){
+        HttpStatus status;
+        if (ex instanceof AccessDeniedException) {
+            status = HttpStatus.FORBIDDEN;
+        } else if (ex instanceof ResourceNotFoundException) {
+            status = HttpStatus.NOT_FOUND;
+        } else if (ex instanceof ConcurrentEditException) {
+            status = HttpStatus.CONFLICT;
+        } else if (ex instanceof InvalidSequenceException) {
+            status = HttpStatus.UNPROCESSABLE_ENTITY;
+        } else {
+            status = HttpStatus.INTERNAL_SERVER_ERROR;
+            log.error("Error handling track edit {}: {}", requestId, ex.getMessage(), ex);
+        }
+        return TrackEditAck.builder().requestId(requestId).status(status.value()).message(ex.getMessage()).build();
+    }
+
+    // The session's user was authenticated once, at CONNECT; it is put in the security context so the services see who edited.
+    // The edit and its mapping share one transaction, since there is no open session in view here to load the lazy project and owner
+    private <T> T asComposer(Principal principal, Supplier<T> edit) {
+        if (!(principal instanceof Authentication authentication)
+                || authentication.getAuthorities().stream().noneMatch(authority -> "COMPOSER".equals(authority.getAuthority()))) {
+            throw new AccessDeniedException("Only composers can edit tracks"); // as the REST endpoints
+        }
+        SecurityContext previous = SecurityContextHolder.getContext();
+        SecurityContextHolder.setContext(new SecurityContextImpl(authentication));
+        try {
+            return transactionTemplate.execute(status -> edit.get());
+        } finally {
+            SecurityContextHolder.setContext(previous);
+        }
+    }
+
+    // The change is broadcast to the project in the destination, so a track of another project is not found here
+    private void checkTrackInProject(Long projectId, Long id) {
+        if (!trackService.getTrackProjectId(id).map(projectId::equals).orElse(false)) {
+            throw new ResourceNotFoundException("Track", "id", id);
+        }
+    }
+
+    private static TrackEditAck ack(String requestId, String changeType, Long trackId, Integer version) {
+        return TrackEditAck.builder().requestId(requestId).changeType(changeType).status(HttpStatus.OK.value()).trackId(trackId).version(version).build();
+    }
+
+    private void sendTrackChangeMessage(Long projectId, Long trackId, String changeType, Object data, Principal principal) {
+        Long userId = principal instanceof Authentication authentication && authentication.getPrincipal() instanceof User user ? user.getId() : null;
+        TrackChangeMessage trackChangeMessage = TrackChangeMessage.builder()
+                .trackId(trackId)
+                .changeType(changeType)
+                .data(convertObjectToJson(data))
+                .payload(data)
+                .userId(userId)
+                .build();
+        projectTopicPublisher.publishTrackChange(projectId, trackChangeMessage);
+    }
+
+    private String convertObjectToJson(Object data){
+        try {
+            return objectMapper.writeValueAsString(data);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.kanaetochi.audio_alchemists.controller;
+
+import org.springframework.messaging.handler.annotation.DestinationVariable;
+import org.springframework.messaging.handler.annotation.MessageMapping;
+import org.springframework.messaging.handler.annotation.Payload;
+import org.springframework.messaging.simp.annotation.SendToUser;
+import org.springframework.stereotype.Controller;
+
+import com.kanaetochi.audio_alchemists.dto.TrackReplayDto;
+import com.kanaetochi.audio_alchemists.dto.TrackReplayRequest;
+import com.kanaetochi.audio_alchemists.websocket.ProjectTopicHistory;
+
+import lombok.RequiredArgsConstructor;
+
+@Controller
+@RequiredArgsConstructor
+public class TrackReplayController {
+
+    private final ProjectTopicHistory projectTopicHistory;
+
+    // Subscribe to the track topic first, then ask: anything that arrives both ways is recognised by its seq
+    @MessageMapping("/projects/{projectId}/tracks/replay")
+    @SendToUser(destinations = "/queue/track-replay", broadcast = false)
+    public TrackReplayDto replay(@DestinationVariable Long projectId, @Payload TrackReplayRequest request) {
+        return projectTopicHistory.since(projectId, request.getLastSeq());
+    }
+}
@@ -0,0 +1,37 @@
+package com.kanaetochi.audio_alchemists.controller;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.Optional;
+
+import com.kanaetochi.audio_alchemists.dto.ProjectVersionDto;
+
+// Opaque cursors for version history paging: the (timeStamp, id) of the last version on the previous page
+final class VersionCursors {
+
+    record Position(LocalDateTime timeStamp, Long id) {}
+
+    private VersionCursors() {
+    }
+
+    static String after(ProjectVersionDto last) {
+        String position = last.getTimeStamp() + "|" + last.getId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static Optional<Position> parse(String cursor) {
+        try {
+            String position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = position.lastIndexOf('|');
+            if (separator < 0) {
+                return Optional.empty();
+            }
+            return Optional.of(new Position(LocalDateTime.parse(position.substring(0, separator)),
+                    Long.valueOf(position.substring(separator + 1))));
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            return Optional.empty(); // NumberFormatException is an IllegalArgumentException
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.kanaetochi.audio_alchemists.controller;
+
+import java.util.List;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.kanaetochi.audio_alchemists.dto.WebSocketSessionStatsDto;
+import com.kanaetochi.audio_alchemists.websocket.SessionOutboxRegistry;
+
+import lombok.RequiredArgsConstructor;
+
+@RestController
+@RequestMapping("/admin/websocket")
+@RequiredArgsConstructor
+public class WebSocketAdminController {
+
+    private final SessionOutboxRegistry sessionOutboxRegistry;
+
+    // Outbound queue and lag of every connected session, most backed up first
+    @GetMapping("/sessions")
+    @PreAuthorize("hasAuthority('ADMIN')")
+    public ResponseEntity<List<WebSocketSessionStatsDto>> getSessions(){
+        return new ResponseEntity<>(sessionOutboxRegistry.sessionStats(), HttpStatus.OK);
+    }
+}
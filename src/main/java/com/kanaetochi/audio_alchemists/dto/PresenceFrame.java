@@ -0,0 +1,15 @@
+package com.kanaetochi.audio_alchemists.dto;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// The latest presence of every collaborator that changed since the previous frame
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PresenceFrame {
+    private List<PresenceMessage> updates;
+}
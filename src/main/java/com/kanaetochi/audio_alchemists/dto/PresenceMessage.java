@@ -0,0 +1,23 @@
+package com.kanaetochi.audio_alchemists.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Where one collaborator is in a project right now. Sent to /app/projects/{id}/presence, never stored
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class PresenceMessage {
+    private String clientId; // set by the server: one per WebSocket session, so two tabs of one user are told apart
+    private Long userId;     // set by the server
+    private String username; // set by the server
+    private Long playheadTick;
+    private Long cursorTick;
+    private Long selectionStartTick;
+    private Long selectionEndTick;
+    private Long editingTrackId;
+    private boolean left; // set by the server when the session goes away
+}
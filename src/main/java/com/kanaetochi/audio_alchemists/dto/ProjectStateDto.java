@@ -0,0 +1,36 @@
+package com.kanaetochi.audio_alchemists.dto;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// A project as it was at a point in time, rebuilt from the nearest earlier version and the track change log
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProjectStateDto {
+    private Long projectId;
+    private LocalDateTime at;
+    private Long baseVersionId; // the version replayed from; null when the project has none that old
+    private int changesReplayed;
+    private String title; // project fields come from the base version, the change log only covers tracks
+    private String description;
+    private String genre;
+    private Integer tempo;
+    private List<TrackState> tracks;
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class TrackState {
+        private Long id;
+        private String instrument;
+        private String musicalSequence;
+    }
+}
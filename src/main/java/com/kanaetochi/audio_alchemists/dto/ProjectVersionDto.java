@@ -2,9 +2,13 @@ package com.kanaetochi.audio_alchemists.dto;
 
 import java.time.LocalDateTime;
 
+import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.NoArgsConstructor;
 
 @Data
+@NoArgsConstructor
+@AllArgsConstructor // used by the history projection query
 public class ProjectVersionDto {
     private Long id;
     private String description;
@@ -0,0 +1,23 @@
+package com.kanaetochi.audio_alchemists.dto;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// What reverting a project to a version would change; returned by a dry-run revert
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RevertPlanDto {
+    private Long projectId;
+    private Long versionId;
+    private List<String> changedFields; // project fields that differ: title, description, genre, tempo
+    private List<Long> updatedTrackIds;
+    private List<Long> deletedTrackIds;
+    private int addedTracks; // tracks in the version that no longer exist; they come back with new ids
+    private int unchangedTracks;
+}
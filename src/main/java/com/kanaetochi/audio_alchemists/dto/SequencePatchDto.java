@@ -0,0 +1,13 @@
+package com.kanaetochi.audio_alchemists.dto;
+
+import java.util.List;
+
+import com.kanaetochi.audio_alchemists.sequence.NoteOperation;
+
+import lombok.Data;
+
+@Data
+public class SequencePatchDto {
+    private Integer version; // track version the operations were made against
+    private List<NoteOperation> operations;
+}
@@ -0,0 +1,20 @@
+package com.kanaetochi.audio_alchemists.dto;
+
+import java.util.List;
+
+import com.kanaetochi.audio_alchemists.sequence.NoteOperation;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SequencePatchResultDto {
+    private Long trackId;
+    private Integer version; // track version after the patch
+    private List<NoteOperation> operations; // as applied, with ids of inserted notes filled in
+}
@@ -0,0 +1,26 @@
+package com.kanaetochi.audio_alchemists.dto;
+
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.kanaetochi.audio_alchemists.sequence.NoteEvent;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class SequenceWindowDto {
+    private Long trackId;
+    private Integer version; // track version the notes were read from
+    private Long fromTick;
+    private Long toTick; // exclusive
+    private Integer channel;
+    private Integer program;
+    private List<NoteEvent> notes; // every note sounding in the window, including ones that started before it
+}
@@ -0,0 +1,10 @@
+package com.kanaetochi.audio_alchemists.dto;
+
+import java.util.List;
+
+import lombok.Data;
+
+@Data
+public class TrackBatchDto {
+    private List<TrackBatchOperation> operations; // applied in order, all or nothing
+}
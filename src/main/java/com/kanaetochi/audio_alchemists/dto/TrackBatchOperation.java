@@ -0,0 +1,24 @@
+package com.kanaetochi.audio_alchemists.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class TrackBatchOperation {
+
+    public enum Type { CREATE, UPDATE, DELETE }
+
+    private Type type;
+    private Long id; // UPDATE and DELETE
+    private String instrument; // CREATE and UPDATE
+    private String musicalSequence; // CREATE and UPDATE
+    private Integer version; // optional on UPDATE: rejected if the track has moved on
+}
@@ -0,0 +1,19 @@
+package com.kanaetochi.audio_alchemists.dto;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class TrackBatchResultDto {
+    private Long projectId;
+    private List<TrackSummaryDto> created;
+    private List<TrackSummaryDto> updated;
+    private List<Long> deleted;
+}
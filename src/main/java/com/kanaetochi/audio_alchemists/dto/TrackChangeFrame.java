@@ -0,0 +1,15 @@
+package com.kanaetochi.audio_alchemists.dto;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Several track changes of one project sent as one frame, oldest first; a window with a single change sends it unwrapped
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TrackChangeFrame {
+    private List<TrackChangeMessage> changes;
+}
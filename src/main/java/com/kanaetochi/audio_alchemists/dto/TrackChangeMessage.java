@@ -1,13 +1,19 @@
 package com.kanaetochi.audio_alchemists.dto;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 import lombok.Builder;
 import lombok.Data;
 
 @Data
-@Builder
+@Builder(toBuilder = true)
 public class TrackChangeMessage {
     private Long trackId;
-    private String changeType; // "ADD", "DELETE", "MODIFY"
+    private String changeType; // "ADD", "DELETE", "MODIFY", "PATCH", "BATCH" (project-wide, no trackId)
     private String data;
+    @JsonIgnore
+    private Object payload; // what data was written from, sent as is to binary subscribers
     private Long userId;
+    private Long seq; // position on the project's track topic, one higher than the change sent before it; see ProjectTopicHistory.
+                      // A frame a session's outbox kept in place of coalesced ones also carries fromSeq, the first number it covers
 }
@@ -11,4 +11,5 @@ public class TrackDto {
     private String musicalSequence;
     private ProjectDto project;
     private LocalDateTime updatedAt;
+    private Integer version;
 }
\ No newline at end of file
@@ -0,0 +1,16 @@
+package com.kanaetochi.audio_alchemists.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+// The answer to one track edit sent over STOMP, on the sender's /user/queue/track-acks
+@Data
+@Builder
+public class TrackEditAck {
+    private String requestId; // the request-id header of the edit, if it had one
+    private String changeType; // "ADD", "MODIFY", "PATCH" or "DELETE"
+    private int status;        // as the REST endpoint would answer: 200, 403, 404, 409, 422 or 500
+    private Long trackId;
+    private Integer version;   // track version after the edit
+    private String message;    // why it failed
+}
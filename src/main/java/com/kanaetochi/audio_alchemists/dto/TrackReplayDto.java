@@ -0,0 +1,16 @@
+package com.kanaetochi.audio_alchemists.dto;
+
+import java.util.List;
+
+import lombok.Builder;
+import lombok.Data;
+
+// The answer to a TrackReplayRequest, on the sender's /user/queue/track-replay
+@Data
+@Builder
+public class TrackReplayDto {
+    private Long projectId;
+    private boolean resyncRequired;        // the changes after lastSeq are no longer kept: reload the tracks instead
+    private Long latestSeq;                // seq of the last change sent on the topic
+    private List<TrackChangeMessage> changes; // those after lastSeq, oldest first; empty when nothing was missed
+}
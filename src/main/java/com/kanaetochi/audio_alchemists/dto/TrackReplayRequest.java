@@ -0,0 +1,9 @@
+package com.kanaetochi.audio_alchemists.dto;
+
+import lombok.Data;
+
+// Sent to /app/projects/{projectId}/tracks/replay by a client back from a dropped connection
+@Data
+public class TrackReplayRequest {
+    private Long lastSeq; // seq of the last track change it applied
+}
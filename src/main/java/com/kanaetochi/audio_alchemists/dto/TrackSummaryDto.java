@@ -0,0 +1,18 @@
+package com.kanaetochi.audio_alchemists.dto;
+
+import java.time.LocalDateTime;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Lightweight listing row for a track; deliberately leaves out the musical sequence body
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TrackSummaryDto {
+    private Long id;
+    private String instrument;
+    private LocalDateTime updatedAt;
+    private Integer version;
+}
@@ -0,0 +1,51 @@
+package com.kanaetochi.audio_alchemists.dto;
+
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.kanaetochi.audio_alchemists.sequence.NoteEvent;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Structural differences between two saved versions of a project, from fromVersionId to toVersionId
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class VersionDiffDto {
+    private Long projectId;
+    private Long fromVersionId;
+    private Long toVersionId;
+    private List<FieldChange> changedFields;
+    private List<Long> addedTrackIds;
+    private List<Long> removedTrackIds;
+    private List<TrackDiff> changedTracks;
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class FieldChange {
+        private String field;
+        private JsonNode from;
+        private JsonNode to;
+    }
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class TrackDiff {
+        private Long trackId;
+        private List<FieldChange> changedFields; // instrument, channel, program
+        private List<NoteEvent> addedNotes;
+        private List<NoteEvent> removedNotes;
+        private List<NoteEvent> changedNotes; // new state of notes matched by id
+        private Boolean sequenceReplaced; // set when either sequence is not a note sequence, so no note-level diff exists
+    }
+}
@@ -0,0 +1,17 @@
+package com.kanaetochi.audio_alchemists.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class WebSocketSessionStatsDto {
+    private String sessionId;
+    private String user;
+    private int queuedMessages;
+    private long queuedBytes;
+    private long lagMs; // age of the oldest message still waiting to be sent
+    private long sent;
+    private long dropped;
+    private long coalesced;
+}
@@ -0,0 +1,7 @@
+package com.kanaetochi.audio_alchemists.exception;
+
+public class InvalidSequenceException extends RuntimeException {
+    public InvalidSequenceException(String message) {
+        super(message);
+    }
+}
@@ -2,18 +2,24 @@ package com.kanaetochi.audio_alchemists.model;
 
 import jakarta.persistence.*;
 import lombok.*;
+
+import com.kanaetochi.audio_alchemists.model.converter.SnapshotDataConverter;
 import org.hibernate.annotations.JdbcTypeCode;
 import org.hibernate.type.SqlTypes;
 
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "\"project_version\"")
+// History is listed newest first per project, paged by (timeStamp, id)
+@Table(name = "\"project_version\"", indexes = @Index(name = "idx_project_version_history", columnList = "project_id, time_stamp, id"))
 @Data
 @Builder
 @NoArgsConstructor  
 @AllArgsConstructor
 public class ProjectVersion {
+
+    public static final String AUTOSAVE_DESCRIPTION = "Project updated";
+    public static final String MANUAL_SAVE_DESCRIPTION = "Manual save"; // an explicit save without a description
     
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -28,6 +34,7 @@ public class ProjectVersion {
 
     @JdbcTypeCode(SqlTypes.JSON)
     @Column(nullable = false, columnDefinition = "jsonb")
+    @Convert(converter = SnapshotDataConverter.class)
     private String snapshotData;
 
     @ManyToOne(fetch = FetchType.LAZY)
@@ -37,6 +44,16 @@ public class ProjectVersion {
     @Column // Optional User-provided description for the version
     private String description;
 
+    @Enumerated(EnumType.STRING)
+    @Column(length = 16)
+    private VersionKind kind; // null on versions saved before deltas existed; those are keyframes
+
+    private Long baseVersionId; // for a delta: the version it applies to
+
+    private Long keyframeId; // for a delta: the keyframe its chain starts from
+
+    private Integer chainDepth; // deltas between this version and its keyframe
+
     @PrePersist
     protected void onCreate() {
         timeStamp = LocalDateTime.now();
@@ -6,17 +6,21 @@ import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.LastModifiedDate;
 
 import com.fasterxml.jackson.annotation.JsonBackReference;
+import com.kanaetochi.audio_alchemists.model.converter.MusicalSequenceConverter;
 
 import jakarta.persistence.Column;
+import jakarta.persistence.Convert;
 import jakarta.persistence.Entity;
 import jakarta.persistence.FetchType;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
 import jakarta.persistence.PrePersist;
 import jakarta.persistence.PreUpdate;
+import jakarta.persistence.SequenceGenerator;
 import jakarta.persistence.Table;
 import jakarta.persistence.Version;
 import lombok.AllArgsConstructor;
@@ -25,15 +29,17 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 @Entity
-@Table(name = "track")
+@Table(name = "track", indexes = @Index(name = "idx_track_project_id", columnList = "project_id"))
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 @Builder
 public class Track {
     
+    // Sequence ids handed out in blocks of 50 (pooled optimizer); IDENTITY would rule out JDBC insert batching
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "track_seq")
+    @SequenceGenerator(name = "track_seq", sequenceName = "track_seq", allocationSize = 50)
     private Long id;
 
     @ManyToOne(fetch = FetchType.LAZY)
@@ -44,6 +50,7 @@ public class Track {
     private String instrument;
 
     @Column(columnDefinition = "TEXT")
+    @Convert(converter = MusicalSequenceConverter.class)
     private String musicalSequence;
 
     @CreatedDate
@@ -0,0 +1,55 @@
+package com.kanaetochi.audio_alchemists.model;
+
+import java.time.LocalDateTime;
+
+import org.springframework.data.domain.Persistable;
+
+import com.kanaetochi.audio_alchemists.model.converter.MusicalSequenceConverter;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Convert;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.PrePersist;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// A track sequence as referenced from version snapshots, stored once per distinct content
+@Entity
+@Table(name = "track_blob")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class TrackBlob implements Persistable<String> {
+
+    @Id
+    @Column(length = 64)
+    private String hash; // hex SHA-256 of the sequence text
+
+    @Column(columnDefinition = "TEXT", nullable = false, updatable = false)
+    @Convert(converter = MusicalSequenceConverter.class)
+    private String musicalSequence;
+
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    @PrePersist
+    public void prePersist() {
+        this.createdAt = LocalDateTime.now();
+    }
+
+    @Override
+    public String getId() {
+        return hash;
+    }
+
+    // Blobs never change and are only saved once their hash is known to be missing, so save() can insert without a lookup
+    @Override
+    public boolean isNew() {
+        return true;
+    }
+}
@@ -0,0 +1,68 @@
+package com.kanaetochi.audio_alchemists.model;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// One entry of the append-only track history: the state a track was left in by a create or edit, or what changed, or its deletion
+@Entity
+@Table(name = "track_change", indexes = {
+        @Index(name = "idx_track_change_replay", columnList = "project_id, changed_at, id"),
+        @Index(name = "idx_track_change_sequence_hash", columnList = "sequence_hash") // blob sweeps look up who still refers to a blob
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class TrackChange {
+
+    // Sequence ids so a batch of changes goes out as one JDBC batch
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "track_change_seq")
+    @SequenceGenerator(name = "track_change_seq", sequenceName = "track_change_seq", allocationSize = 50)
+    private Long id;
+
+    // Plain ids rather than associations: the history outlives the tracks it describes
+    @Column(name = "track_id", nullable = false, updatable = false)
+    private Long trackId;
+
+    @Column(name = "project_id", nullable = false, updatable = false)
+    private Long projectId;
+
+    @Column(name = "user_id", updatable = false)
+    private Long userId; // null for changes made without a signed-in user
+
+    @Column(name = "changed_at", nullable = false, updatable = false)
+    private LocalDateTime changedAt;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "change_type", length = 20, nullable = false, updatable = false)
+    private TrackChangeType changeType;
+
+    @Column(updatable = false)
+    private String instrument; // null for DELETE
+
+    // Keyframes (an ADD, every app.track-changes.keyframe-interval changes of a track, or when no delta fits) name
+    // their sequence's track_blob; the changes between them hold only what changed since the one before
+    @Column(name = "sequence_hash", length = 64, updatable = false)
+    private String sequenceHash; // null for DELETE, an empty track or a delta
+
+    @Column(name = "sequence_operations", columnDefinition = "TEXT", updatable = false)
+    private String sequenceOperations; // the note operations of a patch, as JSON
+
+    @Column(name = "sequence_delta", columnDefinition = "TEXT", updatable = false)
+    private String sequenceDelta; // the notes a full update changed, as SnapshotDeltas writes them
+}
@@ -0,0 +1,6 @@
+package com.kanaetochi.audio_alchemists.model;
+
+// What a TrackChange did to its track
+public enum TrackChangeType {
+    ADD, MODIFY, DELETE
+}
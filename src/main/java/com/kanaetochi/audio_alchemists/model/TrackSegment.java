@@ -0,0 +1,60 @@
+package com.kanaetochi.audio_alchemists.model;
+
+import org.hibernate.annotations.OnDelete;
+import org.hibernate.annotations.OnDeleteAction;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.FetchType;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.JoinColumn;
+import jakarta.persistence.ManyToOne;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+// One fixed-size time slice of a track's sequence, derived from Track.musicalSequence and kept in step by every write (TrackSegmentWriter)
+@Entity
+@Table(name = "track_segment",
+        uniqueConstraints = @UniqueConstraint(name = "uk_track_segment_index", columnNames = {"track_id", "segment_index"}),
+        indexes = @Index(name = "idx_track_segment_window", columnList = "track_id, start_tick"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class TrackSegment {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "track_segment_seq")
+    @SequenceGenerator(name = "track_segment_seq", sequenceName = "track_segment_seq", allocationSize = 50)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "track_id", nullable = false)
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    @ToString.Exclude
+    private Track track;
+
+    @Column(name = "segment_index", nullable = false)
+    private Integer segmentIndex;
+
+    @Column(name = "start_tick", nullable = false)
+    private Long startTick;
+
+    @Column(name = "max_end_tick", nullable = false)
+    private Long maxEndTick; // furthest tick reached by a note starting in this segment
+
+    @Column(name = "track_version")
+    private Integer trackVersion; // version of the track this segment was cut from
+
+    @Column(name = "data", nullable = false, length = 1048576)
+    private byte[] data; // packed note events (SequenceCodec), or JSON when the notes cannot be packed
+}
@@ -0,0 +1,6 @@
+package com.kanaetochi.audio_alchemists.model;
+
+// How a ProjectVersion stores its snapshot: whole, or as a delta against an earlier version
+public enum VersionKind {
+    KEYFRAME, DELTA
+}
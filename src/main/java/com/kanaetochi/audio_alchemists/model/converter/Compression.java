@@ -0,0 +1,90 @@
+package com.kanaetochi.audio_alchemists.model.converter;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Deflate for large column values, shared by the column converters.
+ *
+ * Converters are created by Hibernate, so metrics go to the global registry Spring Boot binds its own
+ * registry to: aa.compression.time (per column and operation), aa.compression.ratio (stored size over
+ * original size) and aa.compression.bytes (original and stored sizes).
+ */
+final class Compression {
+
+    static final int THRESHOLD_BYTES = 1024; // below this the header and Base64 eat most of the gain
+
+    private Compression() {
+    }
+
+    // Empty when the value is too small or does not shrink
+    static Optional<byte[]> compress(byte[] data, String column) {
+        if (data.length < THRESHOLD_BYTES) {
+            return Optional.empty();
+        }
+        long start = System.nanoTime();
+        Deflater deflater = new Deflater();
+        byte[] compressed;
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 4);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            compressed = out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+        timer(column, "compress").record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        if (compressed.length >= data.length) {
+            return Optional.empty();
+        }
+        DistributionSummary.builder("aa.compression.ratio").tag("column", column)
+                .register(Metrics.globalRegistry).record((double) compressed.length / data.length);
+        bytes(column, "original").record(data.length);
+        bytes(column, "stored").record(compressed.length);
+        return Optional.of(compressed);
+    }
+
+    static byte[] decompress(byte[] data, String column) {
+        long start = System.nanoTime();
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 4);
+            byte[] buffer = new byte[8192];
+            while (!inflater.finished()) {
+                int inflated = inflater.inflate(buffer);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalArgumentException("Truncated compressed value in column " + column);
+                }
+                out.write(buffer, 0, inflated);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Corrupt compressed value in column " + column, e);
+        } finally {
+            inflater.end();
+            timer(column, "decompress").record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private static Timer timer(String column, String operation) {
+        return Timer.builder("aa.compression.time").tag("column", column).tag("operation", operation).register(Metrics.globalRegistry);
+    }
+
+    private static DistributionSummary bytes(String column, String state) {
+        return DistributionSummary.builder("aa.compression.bytes").baseUnit("bytes").tag("column", column).tag("state", state)
+                .register(Metrics.globalRegistry);
+    }
+}
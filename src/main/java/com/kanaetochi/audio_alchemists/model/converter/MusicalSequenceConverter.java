@@ -0,0 +1,55 @@
+package com.kanaetochi.audio_alchemists.model.converter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Optional;
+
+import com.kanaetochi.audio_alchemists.sequence.SequenceCodec;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+/**
+ * Stores Track.musicalSequence in the packed note-event format when it can be reproduced exactly,
+ * otherwise keeps the JSON text as-is. Large values are additionally deflated. Packed and compressed
+ * values are tagged with a prefix so rows written before this converter existed (plain JSON) keep
+ * reading unchanged. The column stays TEXT, so the bytes are Base64 encoded.
+ */
+@Converter
+public class MusicalSequenceConverter implements AttributeConverter<String, String> {
+
+    static final String PACKED_PREFIX = "aa:s1:";
+    static final String COMPRESSED_PREFIX = "aa:z1:"; // deflated packed bytes, or deflated UTF-8 JSON
+
+    private static final String COLUMN = "musical_sequence";
+
+    @Override
+    public String convertToDatabaseColumn(String attribute) {
+        if (attribute == null) {
+            return null;
+        }
+        Optional<byte[]> packed = SequenceCodec.encodeJson(attribute);
+        byte[] bytes = packed.orElseGet(() -> attribute.getBytes(StandardCharsets.UTF_8));
+        Optional<byte[]> compressed = Compression.compress(bytes, COLUMN);
+        if (compressed.isPresent()) {
+            return COMPRESSED_PREFIX + Base64.getEncoder().encodeToString(compressed.get());
+        }
+        return packed.map(b -> PACKED_PREFIX + Base64.getEncoder().encodeToString(b)).orElse(attribute);
+    }
+
+    @Override
+    public String convertToEntityAttribute(String dbData) {
+        if (dbData == null) {
+            return null;
+        }
+        if (dbData.startsWith(COMPRESSED_PREFIX)) {
+            byte[] bytes = Compression.decompress(Base64.getDecoder().decode(dbData.substring(COMPRESSED_PREFIX.length())), COLUMN);
+            return SequenceCodec.isPacked(bytes) ? SequenceCodec.decodeToJson(bytes) : new String(bytes, StandardCharsets.UTF_8);
+        }
+        if (dbData.startsWith(PACKED_PREFIX)) {
+            byte[] packed = Base64.getDecoder().decode(dbData.substring(PACKED_PREFIX.length()));
+            return SequenceCodec.decodeToJson(packed);
+        }
+        return dbData;
+    }
+}
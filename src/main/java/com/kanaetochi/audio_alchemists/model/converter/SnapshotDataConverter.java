@@ -0,0 +1,54 @@
+package com.kanaetochi.audio_alchemists.model.converter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Optional;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+/**
+ * Deflates large ProjectVersion.snapshotData values. The column is jsonb, so a compressed snapshot is
+ * stored as a one-field JSON document {"aa:z1": "<Base64>"}; anything else is a plain snapshot,
+ * including every row written before this converter existed.
+ */
+@Converter
+public class SnapshotDataConverter implements AttributeConverter<String, String> {
+
+    static final String COMPRESSED_FIELD = "aa:z1";
+
+    private static final String COLUMN = "snapshot_data";
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Override
+    public String convertToDatabaseColumn(String attribute) {
+        if (attribute == null) {
+            return null;
+        }
+        Optional<byte[]> compressed = Compression.compress(attribute.getBytes(StandardCharsets.UTF_8), COLUMN);
+        return compressed
+                .map(bytes -> MAPPER.createObjectNode().put(COMPRESSED_FIELD, Base64.getEncoder().encodeToString(bytes)).toString())
+                .orElse(attribute);
+    }
+
+    @Override
+    public String convertToEntityAttribute(String dbData) {
+        if (dbData == null || !dbData.startsWith("{\"" + COMPRESSED_FIELD + "\"")) {
+            return dbData; // cheap check first: snapshots never start with this field
+        }
+        try {
+            JsonNode node = MAPPER.readTree(dbData);
+            if (node.size() != 1 || !node.path(COMPRESSED_FIELD).isTextual()) {
+                return dbData;
+            }
+            byte[] bytes = Compression.decompress(Base64.getDecoder().decode(node.get(COMPRESSED_FIELD).asText()), COLUMN);
+            return new String(bytes, StandardCharsets.UTF_8);
+        } catch (JsonProcessingException e) {
+            return dbData;
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package com.kanaetochi.audio_alchemists.repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
 
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
@@ -34,6 +36,14 @@ public interface ProjectRepository extends JpaRepository<Project, Long> {
         Pageable pageable
     );
 
+    // Enough to answer a conditional GET without loading the project and its owner
+    @Query("SELECT p.updatedAt FROM Project p WHERE p.id = :id")
+    Optional<LocalDateTime> findUpdatedAtById(@Param("id") Long id);
+
+    // The project with its tracks in one query, for snapshots
+    @Query("SELECT p FROM Project p LEFT JOIN FETCH p.tracks t WHERE p.id = :id ORDER BY t.id")
+    Optional<Project> findWithTracksById(@Param("id") Long id);
+
     @Query("SELECT p.id FROM Project p WHERE p.owner.id = :ownerId")
     List<Long> findIdsByOwnerId(Long ownerId); 
 }
@@ -1,13 +1,66 @@
 package com.kanaetochi.audio_alchemists.repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
 
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import com.kanaetochi.audio_alchemists.dto.ProjectVersionDto;
 import com.kanaetochi.audio_alchemists.model.ProjectVersion;
 
 @Repository
 public interface ProjectVersionRepository extends JpaRepository<ProjectVersion, Long> {
-    List<ProjectVersion> findByProjectIdOrderByTimeStampDesc(Long projectId); // Fetch versions in descending order of timestamp
+
+    // What retention decides on, without the snapshot body
+    interface VersionStamp {
+        Long getId();
+        LocalDateTime getTimeStamp();
+        String getDescription();
+    }
+
+    // A stored snapshot body, keyframe or delta, for finding the blobs it refers to
+    interface StoredSnapshot {
+        Long getId();
+        String getSnapshotData();
+    }
+
+    Optional<ProjectVersion> findFirstByProjectIdOrderByIdDesc(Long projectId); // latest saved, the base for the next delta
+
+    Optional<ProjectVersion> findFirstByProjectIdAndTimeStampLessThanEqualOrderByTimeStampDescIdDesc(Long projectId, LocalDateTime timeStamp); // the snapshot a replay starts from
+
+    List<ProjectVersion> findByProjectIdAndIdBetweenOrderByIdAsc(Long projectId, Long fromId, Long toId); // a keyframe and the versions after it
+
+    List<ProjectVersion> findByProjectIdAndIdGreaterThanEqualOrderByIdAsc(Long projectId, Long fromId, Limit limit); // one page of a compaction walk
+
+    @Query("SELECT v.id AS id, v.timeStamp AS timeStamp, v.description AS description FROM ProjectVersion v " +
+           "WHERE v.project.id = :projectId ORDER BY v.id")
+    List<VersionStamp> findStampsByProjectId(@Param("projectId") Long projectId);
+
+    // Every project's versions in id order, a page at a time, for a blob sweep
+    @Query("SELECT v.id AS id, v.snapshotData AS snapshotData FROM ProjectVersion v WHERE v.id > :afterId ORDER BY v.id")
+    List<StoredSnapshot> findSnapshotsAfter(@Param("afterId") Long afterId, Limit limit);
+
+    // Projects with versions older than the cutoff, walked in id order a batch at a time
+    @Query("SELECT DISTINCT v.project.id FROM ProjectVersion v WHERE v.timeStamp < :cutoff AND v.project.id > :afterProjectId " +
+           "ORDER BY v.project.id")
+    List<Long> findProjectIdsWithVersionsBefore(@Param("cutoff") LocalDateTime cutoff, @Param("afterProjectId") Long afterProjectId, Limit limit);
+
+    // History listing: only the columns the list shows, never the snapshot body
+    @Query("SELECT new com.kanaetochi.audio_alchemists.dto.ProjectVersionDto(v.id, v.description, v.timeStamp, u.username) " +
+           "FROM ProjectVersion v JOIN v.savedBy u WHERE v.project.id = :projectId " +
+           "ORDER BY v.timeStamp DESC, v.id DESC")
+    List<ProjectVersionDto> findHistory(@Param("projectId") Long projectId, Limit limit);
+
+    // Next page after the (timeStamp, id) of the last version already seen
+    @Query("SELECT new com.kanaetochi.audio_alchemists.dto.ProjectVersionDto(v.id, v.description, v.timeStamp, u.username) " +
+           "FROM ProjectVersion v JOIN v.savedBy u WHERE v.project.id = :projectId " +
+           "AND (v.timeStamp < :timeStamp OR (v.timeStamp = :timeStamp AND v.id < :id)) " +
+           "ORDER BY v.timeStamp DESC, v.id DESC")
+    List<ProjectVersionDto> findHistoryBefore(@Param("projectId") Long projectId, @Param("timeStamp") LocalDateTime timeStamp,
+                                              @Param("id") Long id, Limit limit);
 }
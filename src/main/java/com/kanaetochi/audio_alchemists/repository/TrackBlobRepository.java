@@ -0,0 +1,28 @@
+package com.kanaetochi.audio_alchemists.repository;
+
+import java.util.Collection;
+import java.util.Set;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.kanaetochi.audio_alchemists.model.TrackBlob;
+
+import jakarta.persistence.LockModeType;
+
+@Repository
+public interface TrackBlobRepository extends JpaRepository<TrackBlob, String> {
+
+    // Which of these hashes are already stored, without reading the sequences. Share-locked until the writer commits,
+    // so a sweep cannot delete a blob that is being referenced again; one being deleted is waited for, then stored anew
+    @Lock(LockModeType.PESSIMISTIC_READ)
+    @Query("SELECT b.hash FROM TrackBlob b WHERE b.hash IN :hashes")
+    Set<String> findExistingHashes(@Param("hashes") Collection<String> hashes);
+
+    // The blobs a sweep may delete, locked until it commits; ones a writer holds right now are skipped rather than waited for
+    @Query(value = "SELECT hash FROM track_blob WHERE hash IN (:hashes) FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    Set<String> lockForSweep(@Param("hashes") Collection<String> hashes);
+}
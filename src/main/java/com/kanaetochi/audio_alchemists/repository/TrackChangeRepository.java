@@ -0,0 +1,30 @@
+package com.kanaetochi.audio_alchemists.repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.kanaetochi.audio_alchemists.model.TrackChange;
+
+@Repository
+public interface TrackChangeRepository extends JpaRepository<TrackChange, Long> {
+
+    // Changes to replay onto a snapshot taken at 'after', in the order they were made
+    @Query("SELECT c FROM TrackChange c WHERE c.projectId = :projectId AND c.changedAt > :after AND c.changedAt <= :upTo " +
+           "ORDER BY c.changedAt ASC, c.id ASC")
+    List<TrackChange> findForReplay(@Param("projectId") Long projectId, @Param("after") LocalDateTime after, @Param("upTo") LocalDateTime upTo);
+
+    // Every change up to a point, for a project with no snapshot that old
+    @Query("SELECT c FROM TrackChange c WHERE c.projectId = :projectId AND c.changedAt <= :upTo ORDER BY c.changedAt ASC, c.id ASC")
+    List<TrackChange> findForReplayFromStart(@Param("projectId") Long projectId, @Param("upTo") LocalDateTime upTo);
+
+    // Which of these blobs the change log still refers to
+    @Query("SELECT DISTINCT c.sequenceHash FROM TrackChange c WHERE c.sequenceHash IN :hashes")
+    Set<String> findReferencedHashes(@Param("hashes") Collection<String> hashes);
+}
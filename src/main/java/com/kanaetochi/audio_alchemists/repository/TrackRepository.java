@@ -1,11 +1,48 @@
 package com.kanaetochi.audio_alchemists.repository;
 
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import com.kanaetochi.audio_alchemists.dto.TrackSummaryDto;
 import com.kanaetochi.audio_alchemists.model.Track;
 
 @Repository
 public interface TrackRepository extends JpaRepository<Track, Long> {
-    
+    List<Track> findByProjectIdOrderByIdAsc(Long projectId);
+
+    // Enough to answer a conditional GET without loading the sequence
+    @Query("SELECT t.version FROM Track t WHERE t.id = :id")
+    Optional<Integer> findVersionById(@Param("id") Long id);
+
+    // A track never moves between projects, so this holds for live tracks too
+    @Query("SELECT t.project.id FROM Track t WHERE t.id = :id")
+    Optional<Long> findProjectIdById(@Param("id") Long id);
+
+    // Keyset page of track summaries for a project (uses idx_track_project_id, never reads musicalSequence)
+    @Query("SELECT new com.kanaetochi.audio_alchemists.dto.TrackSummaryDto(t.id, t.instrument, t.updatedAt, t.version) " +
+           "FROM Track t WHERE t.project.id = :projectId AND t.id > :afterId ORDER BY t.id ASC")
+    List<TrackSummaryDto> findSummariesByProjectIdAfter(
+            @Param("projectId") Long projectId,
+            @Param("afterId") Long afterId,
+            Pageable pageable);
+
+    // Write-behind for live projects: one statement per track, guarded by the version the database is known to hold
+    @Modifying
+    @Query("UPDATE Track t SET t.instrument = :instrument, t.musicalSequence = :musicalSequence, " +
+           "t.updatedAt = :updatedAt, t.version = :version WHERE t.id = :id AND t.version = :expectedVersion")
+    int writeBehind(
+            @Param("id") Long id,
+            @Param("instrument") String instrument,
+            @Param("musicalSequence") String musicalSequence,
+            @Param("updatedAt") LocalDateTime updatedAt,
+            @Param("version") Integer version,
+            @Param("expectedVersion") Integer expectedVersion);
 }
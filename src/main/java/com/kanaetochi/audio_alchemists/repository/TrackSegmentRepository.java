@@ -0,0 +1,39 @@
+package com.kanaetochi.audio_alchemists.repository;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.kanaetochi.audio_alchemists.model.TrackSegment;
+
+@Repository
+public interface TrackSegmentRepository extends JpaRepository<TrackSegment, Long> {
+
+    // Segments holding notes that sound in [fromTick, toTick), plus segment 0 for the header and the version they were cut from
+    @Query("SELECT s FROM TrackSegment s WHERE s.track.id = :trackId " +
+           "AND ((s.startTick < :toTick AND s.maxEndTick > :fromTick) OR s.segmentIndex = 0) ORDER BY s.segmentIndex ASC")
+    List<TrackSegment> findWindow(
+            @Param("trackId") Long trackId,
+            @Param("fromTick") Long fromTick,
+            @Param("toTick") Long toTick);
+
+    long countByTrackIdAndTrackVersion(Long trackId, Integer trackVersion);
+
+    @Modifying
+    @Query("DELETE FROM TrackSegment s WHERE s.track.id = :trackId")
+    void deleteByTrackId(@Param("trackId") Long trackId);
+
+    @Modifying
+    @Query("DELETE FROM TrackSegment s WHERE s.track.id = :trackId AND s.segmentIndex IN :indexes")
+    void deleteSegments(@Param("trackId") Long trackId, @Param("indexes") Collection<Integer> indexes);
+
+    // Segments a write left as they were now belong to its version
+    @Modifying
+    @Query("UPDATE TrackSegment s SET s.trackVersion = :version WHERE s.track.id = :trackId")
+    int moveToVersion(@Param("trackId") Long trackId, @Param("version") Integer version);
+}
@@ -0,0 +1,53 @@
+package com.kanaetochi.audio_alchemists.security;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.springframework.lang.NonNull;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageDeliveryException;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Component;
+
+import lombok.RequiredArgsConstructor;
+
+// Subscribing to a project's topics, or sending to its /app destinations (replay, presence, edits), takes the same access as reading
+// the project over REST: composers and admins, or its owner and collaborators
+@Component
+@RequiredArgsConstructor
+public class ProjectTopicAccessInterceptor implements ChannelInterceptor {
+
+    private static final Pattern PROJECT_TOPIC = Pattern.compile("^/topic/project/(\\d+)(/.*)?$");
+    private static final Pattern PROJECT_APP_DESTINATION = Pattern.compile("^/app/projects/(\\d+)(/.*)?$");
+
+    private final ProjectAccessChecker projectAccessChecker;
+
+    @Override
+    public Message<?> preSend(@NonNull Message<?> message, @NonNull MessageChannel channel) {
+        StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+        if (accessor == null || accessor.getDestination() == null) {
+            return message;
+        }
+        Pattern guarded = accessor.getCommand() == StompCommand.SUBSCRIBE ? PROJECT_TOPIC
+                : accessor.getCommand() == StompCommand.SEND ? PROJECT_APP_DESTINATION
+                : null;
+        Matcher matcher = guarded != null ? guarded.matcher(accessor.getDestination()) : null;
+        if (matcher == null || !matcher.matches()) {
+            return message;
+        }
+        Authentication authentication = accessor.getUser() instanceof Authentication user ? user : null;
+        boolean allowed = authentication != null && (authentication.getAuthorities().stream()
+                .anyMatch(authority -> "COMPOSER".equals(authority.getAuthority()) || "ADMIN".equals(authority.getAuthority()))
+                || projectAccessChecker.canViewProject(authentication, Long.parseLong(matcher.group(1))));
+        if (!allowed) {
+            throw new MessageDeliveryException("Not allowed to " + (accessor.getCommand() == StompCommand.SEND ? "send to " : "subscribe to ")
+                    + accessor.getDestination()); // answered with an ERROR frame
+        }
+        return message;
+    }
+}
@@ -66,13 +66,17 @@ public class SecurityConfig {
                         // Track related endpoints:
                         .requestMatchers(HttpMethod.GET,"/projects/{projectId}/tracks").authenticated() // Any authenticated user can get tracks for a project.
                         .requestMatchers(HttpMethod.GET, "/projects/{projectId}/tracks/{id}").authenticated()// Any authenticated user can get a track.
+                        .requestMatchers(HttpMethod.GET, "/projects/{projectId}/tracks/{id}/sequence").authenticated() // and read a time window of it.
                         .requestMatchers(HttpMethod.POST, "/projects/{projectId}/tracks").hasAnyAuthority("COMPOSER", "ADMIN") // only composers can add tracks
+                        .requestMatchers(HttpMethod.POST, "/projects/{projectId}/tracks:batch").hasAnyAuthority("COMPOSER", "ADMIN") // only composers can import or edit tracks in bulk
                         .requestMatchers(HttpMethod.PUT, "/projects/{projectId}/tracks/{id}").hasAnyAuthority("COMPOSER", "ADMIN") // Only composers can update their tracks.
+                        .requestMatchers(HttpMethod.PATCH, "/projects/{projectId}/tracks/{id}/sequence").hasAnyAuthority("COMPOSER", "ADMIN") // Only composers can edit notes.
                         .requestMatchers(HttpMethod.DELETE,"/projects/{projectId}/tracks/{id}").hasAnyAuthority("COMPOSER", "ADMIN")// only composers can delete their tracks.
                         // Admin related endpoints:
                         .requestMatchers(HttpMethod.GET,"/users").hasAnyAuthority("ADMIN")// only admins can get all users.
                         .requestMatchers(HttpMethod.PUT,"/users/{id}").hasAnyAuthority("ADMIN") // only admins can update users.
                         .requestMatchers(HttpMethod.DELETE,"/users/{id}").hasAnyAuthority("ADMIN")
+                        .requestMatchers("/admin/**").hasAnyAuthority("ADMIN") // only admins can inspect the server.
                         .anyRequest().authenticated() // any authenticated user can access any other endpoint.
                 )
             .sessionManagement(session ->  session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
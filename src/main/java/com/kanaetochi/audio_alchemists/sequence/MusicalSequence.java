@@ -0,0 +1,26 @@
+package com.kanaetochi.audio_alchemists.sequence;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Structured view of Track.musicalSequence: {"channel":0,"program":0,"notes":[...]}
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@JsonPropertyOrder({"channel", "program", "notes"})
+public class MusicalSequence {
+    private Integer channel;
+    private Integer program; // instrument (MIDI program) number
+    @Builder.Default
+    private List<NoteEvent> notes = new ArrayList<>();
+}
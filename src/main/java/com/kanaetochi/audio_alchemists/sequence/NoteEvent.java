@@ -0,0 +1,24 @@
+package com.kanaetochi.audio_alchemists.sequence;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// One note of a track's musical sequence. Every field is optional so free-form sequences still map.
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@JsonPropertyOrder({"id", "tick", "pitch", "velocity", "duration"})
+public class NoteEvent {
+    private Long id;
+    private Long tick; // start position in ticks
+    private Integer pitch;
+    private Integer velocity;
+    private Long duration; // length in ticks
+}
@@ -0,0 +1,31 @@
+package com.kanaetochi.audio_alchemists.sequence;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// A single note edit inside a sequence PATCH. Notes are addressed by their id.
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class NoteOperation {
+
+    public enum Type {
+        INSERT,   // adds "note"; the server assigns an id when none is given
+        DELETE,   // removes note "noteId"
+        MOVE,     // sets "tick" and/or "pitch" of note "noteId"
+        VELOCITY  // sets "velocity" of note "noteId"
+    }
+
+    private Type type;
+    private Long noteId;
+    private NoteEvent note;
+    private Long tick;
+    private Integer pitch;
+    private Integer velocity;
+}
@@ -0,0 +1,279 @@
+package com.kanaetochi.audio_alchemists.sequence;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Packed binary encoding of a {@link MusicalSequence}.
+ *
+ * Layout: magic "AS", format version, header flags, [channel], [program], then when notes are present
+ * a field mask, the note count and one record per note. Ticks and ids are zigzag varints delta-encoded
+ * against the previous note; pitch, velocity and duration are plain varints. Every note must carry the
+ * same set of fields, which keeps the per-note records free of presence bits.
+ *
+ * Only sequences that can be reproduced exactly are encoded; {@link #parse(String)} returns empty for
+ * anything else so callers can fall back to the original JSON text.
+ */
+public final class SequenceCodec {
+
+    public static final String MEDIA_TYPE = "application/x-aa-sequence";
+
+    private static final byte MAGIC_0 = 'A';
+    private static final byte MAGIC_1 = 'S';
+    private static final byte FORMAT_VERSION = 1;
+
+    private static final int HAS_CHANNEL = 1;
+    private static final int HAS_PROGRAM = 1 << 1;
+    private static final int HAS_NOTES = 1 << 2;
+
+    private static final int FIELD_ID = 1;
+    private static final int FIELD_TICK = 1 << 1;
+    private static final int FIELD_PITCH = 1 << 2;
+    private static final int FIELD_VELOCITY = 1 << 3;
+    private static final int FIELD_DURATION = 1 << 4;
+
+    private static final Set<String> ROOT_FIELDS = Set.of("channel", "program", "notes");
+    private static final Set<String> NOTE_FIELDS = Set.of("id", "tick", "pitch", "velocity", "duration");
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private SequenceCodec() {
+    }
+
+    /**
+     * Strictly parses a musicalSequence JSON document. Returns empty when the document has fields,
+     * value types or shapes the structured model cannot reproduce exactly.
+     */
+    public static Optional<MusicalSequence> parse(String json) {
+        if (json == null || json.isBlank()) {
+            return Optional.empty();
+        }
+        JsonNode root;
+        try {
+            root = MAPPER.readTree(json);
+        } catch (JsonProcessingException e) {
+            return Optional.empty();
+        }
+        if (root == null || !root.isObject() || !hasOnlyFields(root, ROOT_FIELDS)) {
+            return Optional.empty();
+        }
+        MusicalSequence sequence = new MusicalSequence();
+        sequence.setNotes(null);
+        if (root.has("channel")) {
+            if (!isInt(root.get("channel"))) return Optional.empty();
+            sequence.setChannel(root.get("channel").intValue());
+        }
+        if (root.has("program")) {
+            if (!isInt(root.get("program"))) return Optional.empty();
+            sequence.setProgram(root.get("program").intValue());
+        }
+        if (root.has("notes")) {
+            JsonNode notesNode = root.get("notes");
+            if (!notesNode.isArray()) return Optional.empty();
+            List<NoteEvent> notes = new ArrayList<>(notesNode.size());
+            for (JsonNode noteNode : notesNode) {
+                Optional<NoteEvent> note = parseNote(noteNode);
+                if (note.isEmpty()) return Optional.empty();
+                notes.add(note.get());
+            }
+            sequence.setNotes(notes);
+        }
+        return Optional.of(sequence);
+    }
+
+    public static String toJson(MusicalSequence sequence) {
+        try {
+            return MAPPER.writeValueAsString(sequence);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialize musical sequence", e);
+        }
+    }
+
+    // A sequence is encodable when every note carries the same fields and no unsigned field is negative
+    public static boolean canEncode(MusicalSequence sequence) {
+        if (sequence.getNotes() == null || sequence.getNotes().isEmpty()) {
+            return true;
+        }
+        int mask = fieldMask(sequence.getNotes().get(0));
+        for (NoteEvent note : sequence.getNotes()) {
+            if (fieldMask(note) != mask) return false;
+            if (note.getPitch() != null && note.getPitch() < 0) return false;
+            if (note.getVelocity() != null && note.getVelocity() < 0) return false;
+            if (note.getDuration() != null && note.getDuration() < 0) return false;
+        }
+        return true;
+    }
+
+    public static byte[] encode(MusicalSequence sequence) {
+        if (!canEncode(sequence)) {
+            throw new IllegalArgumentException("Sequence notes do not share a uniform field layout");
+        }
+        List<NoteEvent> notes = sequence.getNotes();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(16 + (notes != null ? notes.size() * 6 : 0));
+        out.write(MAGIC_0);
+        out.write(MAGIC_1);
+        out.write(FORMAT_VERSION);
+        int flags = (sequence.getChannel() != null ? HAS_CHANNEL : 0)
+                | (sequence.getProgram() != null ? HAS_PROGRAM : 0)
+                | (notes != null ? HAS_NOTES : 0);
+        out.write(flags);
+        if (sequence.getChannel() != null) writeSigned(out, sequence.getChannel());
+        if (sequence.getProgram() != null) writeSigned(out, sequence.getProgram());
+        if (notes != null) {
+            int mask = notes.isEmpty() ? 0 : fieldMask(notes.get(0));
+            out.write(mask);
+            writeUnsigned(out, notes.size());
+            long previousId = 0;
+            long previousTick = 0;
+            for (NoteEvent note : notes) {
+                if ((mask & FIELD_ID) != 0) {
+                    writeSigned(out, note.getId() - previousId);
+                    previousId = note.getId();
+                }
+                if ((mask & FIELD_TICK) != 0) {
+                    writeSigned(out, note.getTick() - previousTick);
+                    previousTick = note.getTick();
+                }
+                if ((mask & FIELD_PITCH) != 0) writeUnsigned(out, note.getPitch());
+                if ((mask & FIELD_VELOCITY) != 0) writeUnsigned(out, note.getVelocity());
+                if ((mask & FIELD_DURATION) != 0) writeUnsigned(out, note.getDuration());
+            }
+        }
+        return out.toByteArray();
+    }
+
+    public static MusicalSequence decode(byte[] data) {
+        ByteBuffer in = ByteBuffer.wrap(data);
+        if (data.length < 4 || in.get() != MAGIC_0 || in.get() != MAGIC_1) {
+            throw new IllegalArgumentException("Not a packed musical sequence");
+        }
+        byte version = in.get();
+        if (version != FORMAT_VERSION) {
+            throw new IllegalArgumentException("Unsupported packed sequence version " + version);
+        }
+        int flags = in.get();
+        MusicalSequence sequence = new MusicalSequence();
+        sequence.setNotes(null);
+        if ((flags & HAS_CHANNEL) != 0) sequence.setChannel((int) readSigned(in));
+        if ((flags & HAS_PROGRAM) != 0) sequence.setProgram((int) readSigned(in));
+        if ((flags & HAS_NOTES) != 0) {
+            int mask = in.get();
+            int count = (int) readUnsigned(in);
+            List<NoteEvent> notes = new ArrayList<>(count);
+            long id = 0;
+            long tick = 0;
+            for (int i = 0; i < count; i++) {
+                NoteEvent note = new NoteEvent();
+                if ((mask & FIELD_ID) != 0) {
+                    id += readSigned(in);
+                    note.setId(id);
+                }
+                if ((mask & FIELD_TICK) != 0) {
+                    tick += readSigned(in);
+                    note.setTick(tick);
+                }
+                if ((mask & FIELD_PITCH) != 0) note.setPitch((int) readUnsigned(in));
+                if ((mask & FIELD_VELOCITY) != 0) note.setVelocity((int) readUnsigned(in));
+                if ((mask & FIELD_DURATION) != 0) note.setDuration(readUnsigned(in));
+                notes.add(note);
+            }
+            sequence.setNotes(notes);
+        }
+        return sequence;
+    }
+
+    public static boolean isPacked(byte[] data) {
+        return data != null && data.length >= 4 && data[0] == MAGIC_0 && data[1] == MAGIC_1;
+    }
+
+    // Packs a JSON sequence when that can be done losslessly
+    public static Optional<byte[]> encodeJson(String json) {
+        return parse(json).filter(SequenceCodec::canEncode).map(SequenceCodec::encode);
+    }
+
+    public static String decodeToJson(byte[] data) {
+        return toJson(decode(data));
+    }
+
+    private static Optional<NoteEvent> parseNote(JsonNode node) {
+        if (!node.isObject() || !hasOnlyFields(node, NOTE_FIELDS)) {
+            return Optional.empty();
+        }
+        NoteEvent note = new NoteEvent();
+        for (Iterator<Map.Entry<String, JsonNode>> it = node.fields(); it.hasNext();) {
+            Map.Entry<String, JsonNode> field = it.next();
+            JsonNode value = field.getValue();
+            switch (field.getKey()) {
+                case "id" -> { if (!isLong(value)) return Optional.empty(); note.setId(value.longValue()); }
+                case "tick" -> { if (!isLong(value)) return Optional.empty(); note.setTick(value.longValue()); }
+                case "pitch" -> { if (!isInt(value)) return Optional.empty(); note.setPitch(value.intValue()); }
+                case "velocity" -> { if (!isInt(value)) return Optional.empty(); note.setVelocity(value.intValue()); }
+                case "duration" -> { if (!isLong(value)) return Optional.empty(); note.setDuration(value.longValue()); }
+                default -> { return Optional.empty(); }
+            }
+        }
+        return Optional.of(note);
+    }
+
+    private static boolean hasOnlyFields(JsonNode node, Set<String> allowed) {
+        for (Iterator<String> names = node.fieldNames(); names.hasNext();) {
+            if (!allowed.contains(names.next())) return false;
+        }
+        return true;
+    }
+
+    private static boolean isInt(JsonNode node) {
+        return node.isIntegralNumber() && node.canConvertToInt();
+    }
+
+    private static boolean isLong(JsonNode node) {
+        return node.isIntegralNumber() && node.canConvertToLong();
+    }
+
+    private static int fieldMask(NoteEvent note) {
+        return (note.getId() != null ? FIELD_ID : 0)
+                | (note.getTick() != null ? FIELD_TICK : 0)
+                | (note.getPitch() != null ? FIELD_PITCH : 0)
+                | (note.getVelocity() != null ? FIELD_VELOCITY : 0)
+                | (note.getDuration() != null ? FIELD_DURATION : 0);
+    }
+
+    private static void writeSigned(ByteArrayOutputStream out, long value) {
+        writeUnsigned(out, (value << 1) ^ (value >> 63)); // zigzag
+    }
+
+    private static void writeUnsigned(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readSigned(ByteBuffer in) {
+        long raw = readUnsigned(in);
+        return (raw >>> 1) ^ -(raw & 1);
+    }
+
+    private static long readUnsigned(ByteBuffer in) {
+        long result = 0;
+        int shift = 0;
+        while (true) {
+            byte b = in.get();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return result;
+            shift += 7;
+            if (shift > 63) throw new IllegalArgumentException("Malformed varint in packed sequence");
+        }
+    }
+}
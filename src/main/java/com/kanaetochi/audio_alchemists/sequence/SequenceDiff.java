@@ -0,0 +1,84 @@
+package com.kanaetochi.audio_alchemists.sequence;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Note-level differences between two sequences, in time linear in the number of notes.
+ *
+ * When every note on both sides carries a unique id, notes are matched by id and a note whose fields
+ * differ is reported as changed. Otherwise whole notes are compared as a multiset: a note that moved
+ * or changed shows up as one removal and one addition.
+ */
+public final class SequenceDiff {
+
+    public record NoteChanges(List<NoteEvent> added, List<NoteEvent> removed, List<NoteEvent> changed) {}
+
+    private SequenceDiff() {
+    }
+
+    public static NoteChanges diff(MusicalSequence from, MusicalSequence to) {
+        List<NoteEvent> fromNotes = from.getNotes() != null ? from.getNotes() : List.of();
+        List<NoteEvent> toNotes = to.getNotes() != null ? to.getNotes() : List.of();
+        Map<Long, NoteEvent> fromById = byId(fromNotes);
+        Map<Long, NoteEvent> toById = byId(toNotes);
+        if (fromById != null && toById != null) {
+            return diffById(fromById, toById);
+        }
+        return diffAsMultiset(fromNotes, toNotes);
+    }
+
+    private static NoteChanges diffById(Map<Long, NoteEvent> from, Map<Long, NoteEvent> to) {
+        List<NoteEvent> added = new ArrayList<>();
+        List<NoteEvent> changed = new ArrayList<>();
+        List<NoteEvent> removed = new ArrayList<>();
+        to.forEach((id, note) -> {
+            NoteEvent before = from.get(id);
+            if (before == null) {
+                added.add(note);
+            } else if (!before.equals(note)) {
+                changed.add(note);
+            }
+        });
+        from.forEach((id, note) -> {
+            if (!to.containsKey(id)) {
+                removed.add(note);
+            }
+        });
+        return new NoteChanges(added, removed, changed);
+    }
+
+    private static NoteChanges diffAsMultiset(List<NoteEvent> from, List<NoteEvent> to) {
+        Map<NoteEvent, Integer> unmatched = new HashMap<>();
+        from.forEach(note -> unmatched.merge(note, 1, Integer::sum));
+        List<NoteEvent> added = new ArrayList<>();
+        for (NoteEvent note : to) {
+            if (unmatched.getOrDefault(note, 0) > 0) {
+                unmatched.merge(note, -1, Integer::sum);
+            } else {
+                added.add(note);
+            }
+        }
+        List<NoteEvent> removed = new ArrayList<>();
+        for (NoteEvent note : from) {
+            if (unmatched.getOrDefault(note, 0) > 0) {
+                unmatched.merge(note, -1, Integer::sum);
+                removed.add(note);
+            }
+        }
+        return new NoteChanges(added, removed, List.of());
+    }
+
+    private static Map<Long, NoteEvent> byId(List<NoteEvent> notes) {
+        Map<Long, NoteEvent> byId = new LinkedHashMap<>();
+        for (NoteEvent note : notes) {
+            if (note.getId() == null || byId.put(note.getId(), note) != null) {
+                return null;
+            }
+        }
+        return byId;
+    }
+}
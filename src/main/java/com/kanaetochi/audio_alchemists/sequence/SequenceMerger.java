@@ -0,0 +1,128 @@
+package com.kanaetochi.audio_alchemists.sequence;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Three-way merge of note sequences keyed by note id.
+ *
+ * For every note id (and for channel and program) the merge keeps whichever side changed it relative
+ * to the common base. When both sides changed the same note differently the merge fails, except for
+ * two different notes inserted under the same fresh id: the incoming one is given the next free id.
+ * Sequences with notes that carry no id cannot be merged.
+ */
+public final class SequenceMerger {
+
+    private SequenceMerger() {
+    }
+
+    public static Optional<MusicalSequence> merge(MusicalSequence base, MusicalSequence current, MusicalSequence incoming) {
+        Map<Long, NoteEvent> baseNotes = byId(base);
+        Map<Long, NoteEvent> currentNotes = byId(current);
+        Map<Long, NoteEvent> incomingNotes = byId(incoming);
+        if (baseNotes == null || currentNotes == null || incomingNotes == null) {
+            return Optional.empty();
+        }
+        Optional<Integer> channel = pick(base.getChannel(), current.getChannel(), incoming.getChannel());
+        Optional<Integer> program = pick(base.getProgram(), current.getProgram(), incoming.getProgram());
+        if (channel == null || program == null) {
+            return Optional.empty();
+        }
+
+        long nextId = 1;
+        for (Map<Long, NoteEvent> notes : List.of(baseNotes, currentNotes, incomingNotes)) {
+            for (Long id : notes.keySet()) {
+                nextId = Math.max(nextId, id + 1);
+            }
+        }
+
+        // Current order first, then whatever only the incoming side has, in its order.
+        // Notes only in base were deleted on both sides and stay deleted.
+        Map<Long, NoteEvent> merged = new LinkedHashMap<>();
+        List<NoteEvent> renumbered = new ArrayList<>();
+        List<Long> order = new ArrayList<>(currentNotes.keySet());
+        incomingNotes.keySet().stream().filter(id -> !currentNotes.containsKey(id)).forEach(order::add);
+        for (Long id : order) {
+            NoteEvent b = baseNotes.get(id);
+            NoteEvent c = currentNotes.get(id);
+            NoteEvent i = incomingNotes.get(id);
+            if (b == null && c != null && i != null && !c.equals(i)) {
+                merged.put(id, c); // both inserted a note under the same fresh id: keep both
+                renumbered.add(i);
+                continue;
+            }
+            Optional<NoteEvent> note = pick(b, c, i);
+            if (note == null) {
+                return Optional.empty();
+            }
+            note.ifPresent(n -> merged.put(id, n));
+        }
+        for (NoteEvent note : renumbered) {
+            merged.put(nextId, copyWithId(note, nextId));
+            nextId++;
+        }
+
+        return Optional.of(MusicalSequence.builder()
+                .channel(channel.orElse(null))
+                .program(program.orElse(null))
+                .notes(new ArrayList<>(merged.values()))
+                .build());
+    }
+
+    // Ids of notes added, removed or changed between the two sequences; null when a note has no id
+    public static Set<Long> changedNoteIds(MusicalSequence from, MusicalSequence to) {
+        Map<Long, NoteEvent> fromNotes = byId(from);
+        Map<Long, NoteEvent> toNotes = byId(to);
+        if (fromNotes == null || toNotes == null) {
+            return null;
+        }
+        Set<Long> changed = new HashSet<>();
+        fromNotes.forEach((id, note) -> {
+            if (!note.equals(toNotes.get(id))) {
+                changed.add(id);
+            }
+        });
+        toNotes.keySet().stream().filter(id -> !fromNotes.containsKey(id)).forEach(changed::add);
+        return changed;
+    }
+
+    // The side that changed relative to base wins; null when both changed it differently. Empty means absent.
+    private static <T> Optional<T> pick(T base, T current, T incoming) {
+        if (Objects.equals(current, incoming) || Objects.equals(current, base)) {
+            return Optional.ofNullable(incoming);
+        }
+        if (Objects.equals(incoming, base)) {
+            return Optional.ofNullable(current);
+        }
+        return null;
+    }
+
+    private static Map<Long, NoteEvent> byId(MusicalSequence sequence) {
+        Map<Long, NoteEvent> notes = new LinkedHashMap<>();
+        if (sequence.getNotes() == null) {
+            return notes;
+        }
+        for (NoteEvent note : sequence.getNotes()) {
+            if (note.getId() == null || notes.put(note.getId(), note) != null) {
+                return null; // missing or duplicate ids leave nothing to key on
+            }
+        }
+        return notes;
+    }
+
+    private static NoteEvent copyWithId(NoteEvent note, long id) {
+        return NoteEvent.builder()
+                .id(id)
+                .tick(note.getTick())
+                .pitch(note.getPitch())
+                .velocity(note.getVelocity())
+                .duration(note.getDuration())
+                .build();
+    }
+}
@@ -0,0 +1,152 @@
+package com.kanaetochi.audio_alchemists.sequence;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.kanaetochi.audio_alchemists.exception.InvalidSequenceException;
+
+// Applies note-level operations to a sequence in one pass, indexing notes by id instead of rescanning per op.
+// Notes are kept in tick order: sequence windows (SequenceSegments) hand them out in list order, and packed tick deltas stay small
+public final class SequencePatcher {
+
+    private static final Comparator<NoteEvent> BY_TICK = Comparator.comparingLong(note -> note.getTick() != null ? note.getTick() : 0);
+
+    private SequencePatcher() {
+    }
+
+    // Parses a stored sequence for editing; an empty track starts as an empty note list
+    public static MusicalSequence parseForEdit(String json) {
+        if (json == null || json.isBlank()) {
+            return MusicalSequence.builder().notes(new ArrayList<>()).build();
+        }
+        MusicalSequence sequence = SequenceCodec.parse(json)
+                .orElseThrow(() -> new InvalidSequenceException("Track sequence is not a note sequence and cannot be patched"));
+        sequence.setNotes(sequence.getNotes() != null ? new ArrayList<>(sequence.getNotes()) : new ArrayList<>());
+        return sequence;
+    }
+
+    /**
+     * Applies the operations in order. Either all of them apply or an {@link InvalidSequenceException}
+     * is thrown and the caller discards the sequence. Returns the operations as applied, with the ids
+     * assigned to inserted notes filled in, so they can be broadcast as the delta. Inserted and moved
+     * notes end up in tick order; notes on the same tick keep their order, an inserted one after the rest.
+     */
+    public static List<NoteOperation> apply(MusicalSequence sequence, List<NoteOperation> operations) {
+        if (operations == null || operations.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<NoteEvent> notes = sequence.getNotes();
+        Map<Long, NoteEvent> byId = new HashMap<>();
+        long maxId = 0;
+        for (NoteEvent note : notes) {
+            if (note.getId() != null) {
+                byId.put(note.getId(), note);
+                maxId = Math.max(maxId, note.getId());
+            }
+        }
+        Set<NoteEvent> removed = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<NoteOperation> applied = new ArrayList<>(operations.size());
+        boolean reorder = false;
+
+        for (NoteOperation operation : operations) {
+            if (operation.getType() == null) {
+                throw new InvalidSequenceException("Note operation is missing its type");
+            }
+            switch (operation.getType()) {
+                case INSERT -> {
+                    NoteEvent source = operation.getNote();
+                    if (source == null) {
+                        throw new InvalidSequenceException("INSERT requires a note");
+                    }
+                    if (!isMidiValue(source.getPitch())) {
+                        throw new InvalidSequenceException("INSERT requires a pitch between 0 and 127");
+                    }
+                    if (source.getVelocity() != null && !isMidiValue(source.getVelocity())) {
+                        throw new InvalidSequenceException("INSERT velocity must be between 0 and 127");
+                    }
+                    NoteEvent note = NoteEvent.builder()
+                            .id(source.getId() != null ? source.getId() : maxId + 1)
+                            .tick(source.getTick())
+                            .pitch(source.getPitch())
+                            .velocity(source.getVelocity())
+                            .duration(source.getDuration())
+                            .build();
+                    if (byId.containsKey(note.getId())) {
+                        throw new InvalidSequenceException("Note id " + note.getId() + " already exists");
+                    }
+                    maxId = Math.max(maxId, note.getId());
+                    byId.put(note.getId(), note);
+                    notes.add(note);
+                    reorder = true;
+                    applied.add(NoteOperation.builder().type(NoteOperation.Type.INSERT).noteId(note.getId()).note(note).build());
+                }
+                case DELETE -> {
+                    NoteEvent note = byId.remove(requireNoteId(operation));
+                    if (note == null) {
+                        throw noteNotFound(operation.getNoteId());
+                    }
+                    removed.add(note);
+                    applied.add(operation);
+                }
+                case MOVE -> {
+                    if (operation.getTick() == null && operation.getPitch() == null) {
+                        throw new InvalidSequenceException("MOVE requires a tick or a pitch");
+                    }
+                    if (operation.getPitch() != null && !isMidiValue(operation.getPitch())) {
+                        throw new InvalidSequenceException("MOVE pitch must be between 0 and 127");
+                    }
+                    NoteEvent note = findNote(byId, operation);
+                    if (operation.getTick() != null) {
+                        note.setTick(operation.getTick());
+                        reorder = true;
+                    }
+                    if (operation.getPitch() != null) note.setPitch(operation.getPitch());
+                    applied.add(operation);
+                }
+                case VELOCITY -> {
+                    if (!isMidiValue(operation.getVelocity())) {
+                        throw new InvalidSequenceException("VELOCITY requires a velocity between 0 and 127");
+                    }
+                    findNote(byId, operation).setVelocity(operation.getVelocity());
+                    applied.add(operation);
+                }
+            }
+        }
+        if (!removed.isEmpty()) {
+            notes.removeIf(removed::contains);
+        }
+        if (reorder) {
+            notes.sort(BY_TICK); // stable, and nearly sorted already, so close to one pass
+        }
+        return applied;
+    }
+
+    private static boolean isMidiValue(Integer value) {
+        return value != null && value >= 0 && value <= 127;
+    }
+
+    private static Long requireNoteId(NoteOperation operation) {
+        if (operation.getNoteId() == null) {
+            throw new InvalidSequenceException(operation.getType() + " requires a noteId");
+        }
+        return operation.getNoteId();
+    }
+
+    private static NoteEvent findNote(Map<Long, NoteEvent> byId, NoteOperation operation) {
+        NoteEvent note = byId.get(requireNoteId(operation));
+        if (note == null) {
+            throw noteNotFound(operation.getNoteId());
+        }
+        return note;
+    }
+
+    private static InvalidSequenceException noteNotFound(Long noteId) {
+        return new InvalidSequenceException("Note with id " + noteId + " does not exist in this sequence");
+    }
+}
@@ -0,0 +1,90 @@
+package com.kanaetochi.audio_alchemists.sequence;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.kanaetochi.audio_alchemists.exception.InvalidSequenceException;
+
+/**
+ * Splits a sequence into fixed-size time segments so a window of it can be read without the rest.
+ *
+ * A note belongs to the segment its start tick falls in. Each segment records the furthest tick any of
+ * its notes reaches, so a window also finds notes that start earlier and are still sounding. Segment 0
+ * always exists and carries the channel and program, even when it holds no notes.
+ */
+public final class SequenceSegments {
+
+    public static final long TICKS_PER_SEGMENT = 7680; // four bars of 4/4 at 480 ticks per quarter note
+
+    public record Segment(int index, long startTick, long maxEndTick, MusicalSequence sequence) {}
+
+    private SequenceSegments() {
+    }
+
+    // Parses a stored sequence for window reads; an empty track has no notes
+    public static MusicalSequence parse(String json) {
+        if (json == null || json.isBlank()) {
+            return MusicalSequence.builder().notes(new ArrayList<>()).build();
+        }
+        return SequenceCodec.parse(json)
+                .orElseThrow(() -> new InvalidSequenceException("Track sequence is not a note sequence and cannot be read by time window"));
+    }
+
+    public static List<Segment> split(MusicalSequence sequence) {
+        Map<Integer, List<NoteEvent>> notesBySegment = new TreeMap<>();
+        notesBySegment.put(0, new ArrayList<>());
+        if (sequence.getNotes() != null) {
+            for (NoteEvent note : sequence.getNotes()) {
+                int index = (int) Math.floorDiv(startOf(note), TICKS_PER_SEGMENT);
+                notesBySegment.computeIfAbsent(index, i -> new ArrayList<>()).add(note);
+            }
+        }
+        List<Segment> segments = new ArrayList<>(notesBySegment.size());
+        notesBySegment.forEach((index, notes) -> {
+            long maxEndTick = notes.stream().mapToLong(SequenceSegments::endOf).max().orElse(0);
+            MusicalSequence segmentSequence = MusicalSequence.builder()
+                    .channel(index == 0 ? sequence.getChannel() : null)
+                    .program(index == 0 ? sequence.getProgram() : null)
+                    .notes(notes)
+                    .build();
+            segments.add(new Segment(index, index * TICKS_PER_SEGMENT, maxEndTick, segmentSequence));
+        });
+        return segments;
+    }
+
+    // Notes sounding anywhere in [fromTick, toTick); a note without duration counts as one tick long
+    public static List<NoteEvent> window(List<NoteEvent> notes, long fromTick, long toTick) {
+        List<NoteEvent> result = new ArrayList<>();
+        if (notes != null) {
+            for (NoteEvent note : notes) {
+                if (startOf(note) < toTick && endOf(note) > fromTick) {
+                    result.add(note);
+                }
+            }
+        }
+        return result;
+    }
+
+    // Packed when the codec can reproduce the segment exactly, JSON otherwise
+    public static byte[] encode(MusicalSequence segment) {
+        return SequenceCodec.canEncode(segment)
+                ? SequenceCodec.encode(segment)
+                : SequenceCodec.toJson(segment).getBytes(StandardCharsets.UTF_8);
+    }
+
+    public static MusicalSequence decode(byte[] data) {
+        return SequenceCodec.isPacked(data) ? SequenceCodec.decode(data) : parse(new String(data, StandardCharsets.UTF_8));
+    }
+
+    private static long startOf(NoteEvent note) {
+        return note.getTick() != null ? note.getTick() : 0;
+    }
+
+    private static long endOf(NoteEvent note) {
+        long duration = note.getDuration() != null ? note.getDuration() : 0;
+        return startOf(note) + Math.max(duration, 1);
+    }
+}
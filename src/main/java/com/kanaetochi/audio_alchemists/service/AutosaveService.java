@@ -0,0 +1,9 @@
+package com.kanaetochi.audio_alchemists.service;
+
+// Takes project snapshots off the request thread; repeated requests for a project within the debounce window become one version
+public interface AutosaveService {
+    void requestSnapshot(Long projectId, Long savedByUserId, String description); // queued once the current transaction commits
+    void discard(Long projectId); // an explicit save or a delete makes the pending autosave pointless
+    void writeDue();
+    void writeAll();
+}
@@ -0,0 +1,23 @@
+package com.kanaetochi.audio_alchemists.service;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+import com.kanaetochi.audio_alchemists.model.Track;
+
+// Holds the tracks of projects with WebSocket subscribers in memory and writes them back to the database in batches
+public interface LiveProjectService {
+    void subscriberJoined(Long projectId, String sessionId, String subscriptionId);
+    void subscriberLeft(String sessionId, String subscriptionId);
+    void sessionDisconnected(String sessionId);
+    boolean isLive(Long projectId);
+    Optional<List<Track>> getTracks(Long projectId); // empty when the project is not live
+    Optional<Track> getTrack(Long trackId);
+    Optional<Track> editTrack(Long trackId, Consumer<Track> edit); // empty when the track is not live, edit it in the database instead
+    void trackCreated(Track track);
+    void trackDeleted(Long trackId);
+    void flush(Long projectId); // in a transaction of its own, committed even when the caller's rolls back
+    void flushAll();
+    void refresh(Long projectId); // reload from the database (after the current transaction commits), merging edits not written yet
+}
@@ -1,5 +1,6 @@
 package com.kanaetochi.audio_alchemists.service;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -11,6 +12,7 @@ public interface ProjectService {
     Project createProject(Project project, Long userId);
     List<Project> getAllProjects();
     Optional<Project> getProjectById(Long id);
+    Optional<LocalDateTime> getProjectUpdatedAt(Long id);
     Project updateProject(Long id, Project projectDetails);
     void deleteProject(Long id);
     ProjectVersionDto saveNewVersion(Long projectId, String description, User savedBy);
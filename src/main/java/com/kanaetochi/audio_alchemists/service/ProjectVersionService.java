@@ -1,6 +1,13 @@
 package com.kanaetochi.audio_alchemists.service;
 
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
+
+import com.kanaetochi.audio_alchemists.dto.ProjectStateDto;
+import com.kanaetochi.audio_alchemists.dto.ProjectVersionDto;
+import com.kanaetochi.audio_alchemists.dto.RevertPlanDto;
+import com.kanaetochi.audio_alchemists.dto.VersionDiffDto;
 
 import com.kanaetochi.audio_alchemists.model.Project;
 import com.kanaetochi.audio_alchemists.model.ProjectVersion;
@@ -8,6 +15,10 @@ import com.kanaetochi.audio_alchemists.model.User;
 
 public interface ProjectVersionService {
     ProjectVersion createSnapShot(Project project, User savedBy, String description);
-    List<ProjectVersion> getVersionsForProject(Long projectId);
+    List<ProjectVersionDto> getVersionHistory(Long projectId, LocalDateTime beforeTimeStamp, Long beforeId, int limit); // newest first, without snapshot bodies
     Project revertToVersion(Long projectId, Long versionId, User requestedBy); // pass user for audit
+    RevertPlanDto previewRevert(Long projectId, Long versionId); // what revertToVersion would change, without changing it
+    VersionDiffDto diffVersions(Long projectId, Long fromVersionId, Long toVersionId);
+    ProjectStateDto getProjectAt(Long projectId, LocalDateTime at); // the latest snapshot up to 'at' with the track changes after it replayed
+    Optional<ProjectStateDto.TrackState> getTrackAt(Long projectId, Long trackId, LocalDateTime at);
 }
@@ -0,0 +1,15 @@
+package com.kanaetochi.audio_alchemists.service;
+
+import java.util.List;
+
+import com.kanaetochi.audio_alchemists.model.Track;
+import com.kanaetochi.audio_alchemists.model.TrackChangeType;
+import com.kanaetochi.audio_alchemists.sequence.NoteOperation;
+
+// Append-only log of track creates, edits and deletes; entries are queued and inserted in batches off the request thread
+public interface TrackChangeService {
+    void record(TrackChangeType type, Track track); // the track's state now, queued once the current transaction commits
+    void recordUpdate(Track track, String previousSequence); // a MODIFY stored as the notes changed since previousSequence
+    void recordPatch(Track track, List<NoteOperation> operations); // a MODIFY stored as the note operations applied
+    void writePending(); // inserts everything queued so far in its own transaction
+}
@@ -3,12 +3,24 @@ package com.kanaetochi.audio_alchemists.service;
 import java.util.List;
 import java.util.Optional;
 
+import com.kanaetochi.audio_alchemists.dto.SequencePatchDto;
+import com.kanaetochi.audio_alchemists.dto.SequencePatchResultDto;
+import com.kanaetochi.audio_alchemists.dto.SequenceWindowDto;
+import com.kanaetochi.audio_alchemists.dto.TrackBatchOperation;
+import com.kanaetochi.audio_alchemists.dto.TrackBatchResultDto;
+import com.kanaetochi.audio_alchemists.dto.TrackSummaryDto;
 import com.kanaetochi.audio_alchemists.model.Track;
 
 public interface TrackService {
     Track createTrack(Track track, Long projectId);
     List<Track> getAllTracksByProject(Long projectId);
+    List<TrackSummaryDto> getTrackSummariesByProject(Long projectId, Long afterId, int size);
     Optional<Track> getTrackById(Long id);
+    Optional<Integer> getTrackVersion(Long id);
+    Optional<Long> getTrackProjectId(Long id);
+    SequenceWindowDto getSequenceWindow(Long id, long fromTick, long toTick);
     Track updateTrack(Long id, Track trackDetails);
+    SequencePatchResultDto patchSequence(Long id, SequencePatchDto patch);
     void deleteTrack(Long id);
+    TrackBatchResultDto applyBatch(Long projectId, List<TrackBatchOperation> operations);
 }
@@ -0,0 +1,8 @@
+package com.kanaetochi.audio_alchemists.service;
+
+// Thins old project versions by the retention policy, keeping the delta chains of the versions that remain replayable,
+// and deletes the track blobs only the thinned versions referred to
+public interface VersionCompactionService {
+    void compactNextProjects(); // one bounded pass over the next batch of projects with old versions
+    int compactProject(Long projectId); // returns how many versions were deleted
+}
@@ -0,0 +1,144 @@
+package com.kanaetochi.audio_alchemists.service.impl;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.kanaetochi.audio_alchemists.model.Project;
+import com.kanaetochi.audio_alchemists.model.User;
+import com.kanaetochi.audio_alchemists.repository.ProjectRepository;
+import com.kanaetochi.audio_alchemists.repository.UserRepository;
+import com.kanaetochi.audio_alchemists.service.AutosaveService;
+import com.kanaetochi.audio_alchemists.service.ProjectVersionService;
+
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class AutosaveServiceImpl implements AutosaveService {
+
+    private final ProjectRepository projectRepository;
+    private final UserRepository userRepository;
+    private final ProjectVersionService projectVersionService;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${app.versions.autosave-debounce-ms:5000}")
+    private long debounceMs; // quiet time after the last request before the snapshot is taken
+
+    @Value("${app.versions.autosave-max-delay-ms:60000}")
+    private long maxDelayMs; // a project edited without pause is still saved this often
+
+    @Value("${app.versions.autosave-batch-size:20}")
+    private int batchSize;
+
+    private record PendingSnapshot(Long savedByUserId, String description, long firstRequestedAt, long dueAt) {}
+
+    private final Map<Long, PendingSnapshot> pending = new ConcurrentHashMap<>(); // by project id
+
+    @Override
+    public void requestSnapshot(Long projectId, Long savedByUserId, String description) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    enqueue(projectId, savedByUserId, description);
+                }
+            });
+        } else {
+            enqueue(projectId, savedByUserId, description);
+        }
+    }
+
+    @Override
+    public void discard(Long projectId) {
+        pending.remove(projectId);
+    }
+
+    @Override
+    @Scheduled(fixedDelayString = "${app.versions.autosave-poll-ms:1000}")
+    public void writeDue() {
+        write(false);
+    }
+
+    @Override
+    @PreDestroy
+    public void writeAll() {
+        write(true);
+    }
+
+    // The latest request names the version; the due time moves with each request but never past the first one plus maxDelayMs
+    private void enqueue(Long projectId, Long savedByUserId, String description) {
+        long now = System.currentTimeMillis();
+        pending.merge(projectId, new PendingSnapshot(savedByUserId, description, now, now + debounceMs),
+                (earlier, latest) -> new PendingSnapshot(savedByUserId, description, earlier.firstRequestedAt(),
+                        Math.min(latest.dueAt(), earlier.firstRequestedAt() + maxDelayMs)));
+    }
+
+    private void write(boolean all) {
+        while (true) {
+            long now = System.currentTimeMillis();
+            List<Map.Entry<Long, PendingSnapshot>> batch = pending.entrySet().stream()
+                    .filter(entry -> all || entry.getValue().dueAt() <= now)
+                    .sorted(Comparator.comparingLong(entry -> entry.getValue().dueAt()))
+                    .limit(batchSize)
+                    .map(entry -> Map.entry(entry.getKey(), entry.getValue()))
+                    .toList();
+            // A request that arrived meanwhile pushed its due time back, so it stays queued
+            List<Map.Entry<Long, PendingSnapshot>> taken = batch.stream()
+                    .filter(entry -> pending.remove(entry.getKey(), entry.getValue()))
+                    .toList();
+            if (taken.isEmpty()) {
+                return;
+            }
+            writeBatch(taken);
+            if (batch.size() < batchSize) {
+                return;
+            }
+        }
+    }
+
+    // One transaction per batch; if it fails, each snapshot is retried alone so one bad project does not cost the others
+    private void writeBatch(List<Map.Entry<Long, PendingSnapshot>> batch) {
+        try {
+            transactionTemplate.execute(status -> {
+                batch.forEach(entry -> snapshot(entry.getKey(), entry.getValue()));
+                return null;
+            });
+            log.debug("Autosaved {} projects", batch.size());
+        } catch (RuntimeException e) {
+            log.warn("Autosave batch of {} projects failed, writing them one by one: {}", batch.size(), e.getMessage());
+            for (Map.Entry<Long, PendingSnapshot> entry : batch) {
+                try {
+                    transactionTemplate.execute(status -> {
+                        snapshot(entry.getKey(), entry.getValue());
+                        return null;
+                    });
+                } catch (RuntimeException single) {
+                    log.error("Error autosaving project ID {}: {}", entry.getKey(), single.getMessage(), single);
+                }
+            }
+        }
+    }
+
+    private void snapshot(Long projectId, PendingSnapshot request) {
+        Project project = projectRepository.findById(projectId).orElse(null);
+        if (project == null) {
+            return; // deleted while the request was waiting
+        }
+        User savedBy = request.savedByUserId() != null
+                ? userRepository.findById(request.savedByUserId()).orElse(project.getOwner())
+                : project.getOwner();
+        projectVersionService.createSnapShot(project, savedBy, request.description());
+    }
+}
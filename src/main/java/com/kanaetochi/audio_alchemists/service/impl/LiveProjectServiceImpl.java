@@ -0,0 +1,360 @@
+package com.kanaetochi.audio_alchemists.service.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import org.hibernate.Hibernate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kanaetochi.audio_alchemists.dto.TrackChangeMessage;
+import com.kanaetochi.audio_alchemists.dto.TrackDto;
+import com.kanaetochi.audio_alchemists.model.Project;
+import com.kanaetochi.audio_alchemists.model.Track;
+import com.kanaetochi.audio_alchemists.model.TrackChangeType;
+import com.kanaetochi.audio_alchemists.repository.ProjectRepository;
+import com.kanaetochi.audio_alchemists.repository.TrackRepository;
+import com.kanaetochi.audio_alchemists.service.LiveProjectService;
+import com.kanaetochi.audio_alchemists.service.TrackChangeService;
+import com.kanaetochi.audio_alchemists.service.impl.LiveProjectSession.PendingWrite;
+import com.kanaetochi.audio_alchemists.websocket.ProjectTopicPublisher;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class LiveProjectServiceImpl implements LiveProjectService {
+
+    private static final int CLOSE_FLUSH_ATTEMPTS = 3; // a conflict resolved on the last flush needs one more
+    private static final long CLOSE_WAIT_MS = 5000;
+
+    private final TrackRepository trackRepository;
+    private final ProjectRepository projectRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final TrackRevisionStore trackRevisionStore;
+    private final TrackSegmentWriter trackSegmentWriter;
+    private final TrackChangeService trackChangeService;
+    private final ProjectTopicPublisher projectTopicPublisher;
+    private final ObjectMapper objectMapper;
+
+    private final Map<Long, LiveProjectSession> sessions = new ConcurrentHashMap<>(); // by project id
+    private final Map<Long, LiveProjectSession> sessionsByTrack = new ConcurrentHashMap<>();
+    private final Map<String, Long> subscriptions = new ConcurrentHashMap<>(); // "sessionId/subscriptionId" -> project id
+    private final Map<Long, CompletableFuture<LiveProjectSession>> opening = new ConcurrentHashMap<>(); // by project id, while its tracks load
+    private final Object lifecycleLock = new Object(); // only guards the subscription bookkeeping; loading and flushing happen outside it
+
+    @Override
+    public void subscriberJoined(Long projectId, String sessionId, String subscriptionId) {
+        String key = subscriptionKey(sessionId, subscriptionId);
+        while (true) {
+            LiveProjectSession session = sessions.get(projectId);
+            if (session == null) {
+                session = open(projectId);
+                if (session == null) {
+                    return; // unknown project, nothing to hold
+                }
+            }
+            synchronized (lifecycleLock) {
+                if (session.addSubscription(key)) {
+                    subscriptions.put(key, projectId);
+                    return;
+                }
+            }
+            session.awaitRelease(CLOSE_WAIT_MS); // the last subscriber just left: open the project again once it is written back
+        }
+    }
+
+    @Override
+    public void subscriberLeft(String sessionId, String subscriptionId) {
+        String key = subscriptionKey(sessionId, subscriptionId);
+        LiveProjectSession closing = null;
+        synchronized (lifecycleLock) {
+            Long projectId = subscriptions.remove(key);
+            LiveProjectSession session = projectId != null ? sessions.get(projectId) : null;
+            if (session != null && session.removeSubscription(key)) {
+                closing = session;
+            }
+        }
+        if (closing != null) {
+            close(closing);
+        }
+    }
+
+    @Override
+    public void sessionDisconnected(String sessionId) {
+        String prefix = sessionId + "/";
+        List<String> keys = subscriptions.keySet().stream().filter(key -> key.startsWith(prefix)).toList();
+        keys.forEach(key -> subscriberLeft(sessionId, key.substring(prefix.length())));
+    }
+
+    @Override
+    public boolean isLive(Long projectId) {
+        return sessions.containsKey(projectId);
+    }
+
+    @Override
+    public Optional<List<Track>> getTracks(Long projectId) {
+        LiveProjectSession session = sessions.get(projectId);
+        return session != null && !session.isClosed() ? Optional.of(session.getTracks()) : Optional.empty();
+    }
+
+    @Override
+    public Optional<Track> getTrack(Long trackId) {
+        LiveProjectSession session = sessionsByTrack.get(trackId);
+        return session != null && !session.isClosed() ? session.getTrack(trackId) : Optional.empty();
+    }
+
+    @Override
+    public Optional<Track> editTrack(Long trackId, Consumer<Track> edit) {
+        LiveProjectSession session = sessionsByTrack.get(trackId);
+        if (session == null) {
+            return Optional.empty();
+        }
+        Optional<Track> edited = session.edit(trackId, edit);
+        if (edited.isEmpty()) {
+            session.awaitRelease(CLOSE_WAIT_MS); // closing: the caller edits the database once the last flush is in
+        }
+        return edited;
+    }
+
+    @Override
+    public void trackCreated(Track track) {
+        LiveProjectSession session = sessions.get(track.getProject().getId());
+        if (session != null && !session.isClosed()) {
+            session.replace(track);
+            sessionsByTrack.put(track.getId(), session);
+        }
+    }
+
+    @Override
+    public void trackDeleted(Long trackId) {
+        LiveProjectSession session = sessionsByTrack.remove(trackId);
+        if (session != null) {
+            session.remove(trackId);
+        }
+    }
+
+    @Override
+    public void flush(Long projectId) {
+        LiveProjectSession session = sessions.get(projectId);
+        if (session != null) {
+            flush(session);
+        }
+    }
+
+    @Override
+    @Scheduled(fixedDelayString = "${app.live-session.flush-interval-ms:500}")
+    public void flushAll() {
+        sessions.values().forEach(this::flush);
+    }
+
+    @Override
+    public void refresh(Long projectId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    // In a transaction of its own: the committed one takes no more synchronizations, and merged edits are logged on commit
+                    ownTransaction().executeWithoutResult(status -> reload(projectId));
+                }
+            });
+        } else {
+            reload(projectId);
+        }
+    }
+
+    // Subscribers arriving together wait on one load of the project instead of each reading its tracks
+    private LiveProjectSession open(Long projectId) {
+        CompletableFuture<LiveProjectSession> created = new CompletableFuture<>();
+        CompletableFuture<LiveProjectSession> pending = opening.putIfAbsent(projectId, created);
+        if (pending != null) {
+            return pending.join();
+        }
+        try {
+            LiveProjectSession session = sessions.get(projectId); // opened by the load that just finished
+            created.complete(session != null ? session : load(projectId));
+        } catch (RuntimeException e) {
+            created.completeExceptionally(e);
+            throw e;
+        } finally {
+            opening.remove(projectId, created);
+        }
+        return created.join();
+    }
+
+    private LiveProjectSession load(Long projectId) {
+        LiveProjectSession session = transactionTemplate.execute(status -> {
+            Optional<Project> project = projectRepository.findById(projectId);
+            if (project.isEmpty()) {
+                return null;
+            }
+            Hibernate.initialize(project.get().getOwner()); // tracks are mapped to DTOs outside any transaction
+            return new LiveProjectSession(project.get(), trackRepository.findByProjectIdOrderByIdAsc(projectId));
+        });
+        if (session != null) {
+            session.trackIds().forEach(trackId -> sessionsByTrack.put(trackId, session));
+            sessions.put(projectId, session);
+            log.info("Project ID: {} is live, holding {} tracks in memory", projectId, session.trackIds().size());
+        }
+        return session;
+    }
+
+    // The last subscriber left: write back whatever is pending and let go of the tracks
+    private void close(LiveProjectSession session) {
+        try {
+            for (int attempt = 0; attempt < CLOSE_FLUSH_ATTEMPTS && session.hasPendingWrites(); attempt++) {
+                flush(session);
+            }
+            if (session.hasPendingWrites()) {
+                log.error("Live project ID: {} closed with edits that could not be written", session.getProjectId());
+            }
+        } finally {
+            sessions.remove(session.getProjectId(), session);
+            session.trackIds().forEach(trackId -> sessionsByTrack.remove(trackId, session));
+            session.release();
+        }
+        log.info("Project ID: {} is no longer live", session.getProjectId());
+    }
+
+    private void reload(Long projectId) {
+        LiveProjectSession session = sessions.get(projectId);
+        if (session == null) {
+            return;
+        }
+        synchronized (session.getFlushLock()) { // a flush in progress has its writes in or out before the tracks are compared
+            List<Track> tracks = transactionTemplate.execute(status -> trackRepository.findByProjectIdOrderByIdAsc(projectId));
+            Set<Long> stale = session.trackIds();
+            for (Track track : tracks) {
+                rebase(session, track);
+                sessionsByTrack.put(track.getId(), session);
+                stale.remove(track.getId());
+            }
+            stale.forEach(this::trackDeleted);
+        }
+    }
+
+    private void flush(LiveProjectSession session) {
+        synchronized (session.getFlushLock()) {
+            List<PendingWrite> writes = session.drainPendingWrites();
+            if (writes.isEmpty()) {
+                return;
+            }
+            List<Long> conflicts = new ArrayList<>();
+            try {
+                // Never joins the caller's transaction: its rollback would undo writes the session already counts as done
+                ownTransaction().execute(status -> {
+                    for (PendingWrite write : writes) {
+                        Track track = write.track();
+                        int updated = trackRepository.writeBehind(track.getId(), track.getInstrument(), track.getMusicalSequence(),
+                                track.getUpdatedAt(), track.getVersion(), write.expectedVersion());
+                        if (updated == 0) {
+                            conflicts.add(track.getId());
+                        } else {
+                            // The revision store still has what the database held, unless it was pushed out: then every segment is cut
+                            String previous = trackRevisionStore.find(track.getId(), write.expectedVersion())
+                                    .map(TrackRevisionStore.Revision::musicalSequence)
+                                    .orElse(null);
+                            trackSegmentWriter.written(track, previous, previous != null ? write.expectedVersion() : null);
+                        }
+                    }
+                    return null;
+                });
+            } catch (RuntimeException e) {
+                log.error("Error flushing live project ID {}: {}", session.getProjectId(), e.getMessage(), e);
+                session.retry(writes);
+                return;
+            }
+            writes.stream()
+                    .filter(write -> !conflicts.contains(write.track().getId()))
+                    .forEach(write -> session.written(write.track().getId(), write.track().getVersion()));
+            log.debug("Flushed {} tracks of live project ID: {}", writes.size() - conflicts.size(), session.getProjectId());
+
+            // Someone changed the row behind the session's back: the edits are merged onto it and written next flush
+            for (Long trackId : conflicts) {
+                Optional<Track> stored = trackRepository.findById(trackId);
+                if (stored.isPresent()) {
+                    log.warn("Track ID: {} changed outside live project ID: {}, merging", trackId, session.getProjectId());
+                    rebase(session, stored.get());
+                } else {
+                    log.warn("Track ID: {} was deleted outside live project ID: {}, dropping its edits", trackId, session.getProjectId());
+                    trackDeleted(trackId);
+                    publish(session.getProjectId(), trackId, "DELETE", trackId);
+                }
+            }
+        }
+    }
+
+    private TransactionTemplate ownTransaction() {
+        TransactionTemplate transaction = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        transaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        return transaction;
+    }
+
+    private void rebase(LiveProjectSession session, Track stored) {
+        session.rebase(stored, (pending, database, baseVersion) -> resolve(session.getProjectId(), pending, database, baseVersion))
+                .ifPresent(resolved -> {
+                    trackChangeService.record(TrackChangeType.MODIFY, resolved);
+                    publish(session.getProjectId(), resolved.getId(), "MODIFY", toDto(resolved));
+                });
+    }
+
+    // Unwritten edits meet a database change made since the version both started from. Merged when they touched different
+    // things; otherwise the committed change (a revert, a batch) wins, and subscribers are sent it in place of their edits
+    private Track resolve(Long projectId, Track pending, Track stored, Integer baseVersion) {
+        Optional<TrackMerges.Merged> merged = trackRevisionStore.find(pending.getId(), baseVersion)
+                .flatMap(base -> TrackMerges.merge(base, stored, pending));
+        if (merged.isEmpty()) {
+            log.warn("Track ID: {} of live project ID: {} was changed in the database at version {} in a way that cannot be merged, dropping the live edits",
+                    pending.getId(), projectId, stored.getVersion());
+            pending.setInstrument(stored.getInstrument());
+            pending.setMusicalSequence(stored.getMusicalSequence());
+            return pending;
+        }
+        pending.setInstrument(merged.get().instrument());
+        pending.setMusicalSequence(merged.get().musicalSequence());
+        return pending;
+    }
+
+    // Subscribers hold the session's state; a resolved conflict is sent to them like any other change
+    private void publish(Long projectId, Long trackId, String changeType, Object data) {
+        String json;
+        try {
+            json = objectMapper.writeValueAsString(data);
+        } catch (Exception e) {
+            json = null;
+        }
+        projectTopicPublisher.publishTrackChange(projectId, TrackChangeMessage.builder()
+                .trackId(trackId)
+                .changeType(changeType)
+                .data(json)
+                .payload(data)
+                .build());
+    }
+
+    private static TrackDto toDto(Track track) {
+        TrackDto dto = new TrackDto();
+        dto.setId(track.getId());
+        dto.setInstrument(track.getInstrument());
+        dto.setMusicalSequence(track.getMusicalSequence());
+        dto.setUpdatedAt(track.getUpdatedAt());
+        dto.setVersion(track.getVersion());
+        return dto;
+    }
+
+    private static String subscriptionKey(String sessionId, String subscriptionId) {
+        return sessionId + "/" + subscriptionId;
+    }
+}
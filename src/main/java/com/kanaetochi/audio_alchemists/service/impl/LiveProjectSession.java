@@ -0,0 +1,205 @@
+package com.kanaetochi.audio_alchemists.service.impl;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+import com.kanaetochi.audio_alchemists.exception.ResourceNotFoundException;
+import com.kanaetochi.audio_alchemists.model.Project;
+import com.kanaetochi.audio_alchemists.model.Track;
+
+// In-memory state of one live project. Every method locks the session; tracks handed out are copies.
+final class LiveProjectSession {
+
+    // A coalesced write: the latest in-memory state of a track and the version the database still holds
+    record PendingWrite(Track track, Integer expectedVersion) {}
+
+    // Decides what the session holds when the database took a version it did not write while it had unwritten edits
+    interface Resolver {
+        Track resolve(Track pending, Track stored, Integer baseVersion);
+    }
+
+    private final Long projectId;
+    private final Project project; // detached, owner initialized
+    private final Map<Long, Track> tracks = new TreeMap<>(); // ordered by id, like the database reads
+    private final Map<Long, Integer> persistedVersions = new HashMap<>();
+    private final Set<Long> dirty = new LinkedHashSet<>();
+    private final Set<String> subscriptions = new HashSet<>();
+    private boolean closed;
+    private boolean released; // the closing flush is done, the database holds everything the session took
+    private final Object flushLock = new Object(); // one flush at a time, so expected versions stay in order
+
+    LiveProjectSession(Project project, Collection<Track> loadedTracks) {
+        this.projectId = project.getId();
+        this.project = project;
+        loadedTracks.forEach(this::replace);
+    }
+
+    Long getProjectId() {
+        return projectId;
+    }
+
+    Object getFlushLock() {
+        return flushLock;
+    }
+
+    synchronized boolean isClosed() {
+        return closed;
+    }
+
+    // Edits a closing session refused wait for its last flush, so they never read the database before it
+    synchronized void awaitRelease(long timeoutMs) {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        long remaining = timeoutMs;
+        while (closed && !released && remaining > 0) {
+            try {
+                wait(remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            remaining = deadline - System.currentTimeMillis();
+        }
+    }
+
+    synchronized void release() {
+        released = true;
+        notifyAll();
+    }
+
+    synchronized boolean addSubscription(String key) {
+        if (closed) {
+            return false;
+        }
+        subscriptions.add(key);
+        return true;
+    }
+
+    // Returns true when the last subscriber left; the session is then closed to further edits
+    synchronized boolean removeSubscription(String key) {
+        subscriptions.remove(key);
+        if (subscriptions.isEmpty()) {
+            closed = true;
+        }
+        return closed;
+    }
+
+    synchronized Set<Long> trackIds() {
+        return new HashSet<>(tracks.keySet());
+    }
+
+    synchronized List<Track> getTracks() {
+        List<Track> result = new ArrayList<>(tracks.size());
+        tracks.values().forEach(track -> result.add(copy(track)));
+        return result;
+    }
+
+    synchronized Optional<Track> getTrack(Long trackId) {
+        return Optional.ofNullable(tracks.get(trackId)).map(this::copy);
+    }
+
+    // Applies the edit to a working copy so a failing edit leaves the session untouched
+    synchronized Optional<Track> edit(Long trackId, Consumer<Track> edit) {
+        if (closed) {
+            return Optional.empty();
+        }
+        Track current = tracks.get(trackId);
+        if (current == null) {
+            throw new ResourceNotFoundException("Track", "id", trackId);
+        }
+        Track working = copy(current);
+        edit.accept(working);
+        working.setVersion(current.getVersion() != null ? current.getVersion() + 1 : 1);
+        working.setUpdatedAt(LocalDateTime.now());
+        tracks.put(trackId, working);
+        dirty.add(trackId);
+        return Optional.of(copy(working));
+    }
+
+    // Puts a database copy of the track into the session, discarding any pending edit
+    synchronized void replace(Track track) {
+        tracks.put(track.getId(), copy(track));
+        persistedVersions.put(track.getId(), track.getVersion());
+        dirty.remove(track.getId());
+    }
+
+    // The database holds a version of the track the session did not write. Without unwritten edits the session takes it;
+    // with some, it holds what the resolver makes of both, written over the database's version by the next flush.
+    // Returns the resolved track, which subscribers have not seen yet
+    synchronized Optional<Track> rebase(Track stored, Resolver resolver) {
+        Long trackId = stored.getId();
+        Track current = tracks.get(trackId);
+        Integer persisted = persistedVersions.get(trackId);
+        if (current == null || Objects.equals(current.getVersion(), persisted)) {
+            replace(stored);
+            return Optional.empty();
+        }
+        if (Objects.equals(stored.getVersion(), persisted)) {
+            return Optional.empty(); // the database has not moved, the edits are still to be written
+        }
+        Track resolved = copy(resolver.resolve(copy(current), copy(stored), persisted));
+        resolved.setVersion(Math.max(current.getVersion(), stored.getVersion()) + 1); // newer than anything either side handed out
+        resolved.setUpdatedAt(LocalDateTime.now());
+        tracks.put(trackId, resolved);
+        persistedVersions.put(trackId, stored.getVersion());
+        dirty.add(trackId);
+        return Optional.of(copy(resolved));
+    }
+
+    synchronized void remove(Long trackId) {
+        tracks.remove(trackId);
+        persistedVersions.remove(trackId);
+        dirty.remove(trackId);
+    }
+
+    synchronized boolean hasPendingWrites() {
+        return !dirty.isEmpty();
+    }
+
+    // Hands out one write per dirty track, however many edits it received since the last flush
+    synchronized List<PendingWrite> drainPendingWrites() {
+        List<PendingWrite> writes = new ArrayList<>(dirty.size());
+        for (Long trackId : dirty) {
+            writes.add(new PendingWrite(copy(tracks.get(trackId)), persistedVersions.get(trackId)));
+        }
+        dirty.clear();
+        return writes;
+    }
+
+    synchronized void written(Long trackId, Integer version) {
+        if (tracks.containsKey(trackId)) {
+            persistedVersions.put(trackId, version);
+        }
+    }
+
+    // The write failed: mark the tracks dirty again so the next flush retries them
+    synchronized void retry(List<PendingWrite> writes) {
+        writes.forEach(write -> {
+            if (tracks.containsKey(write.track().getId())) {
+                dirty.add(write.track().getId());
+            }
+        });
+    }
+
+    private Track copy(Track track) {
+        return Track.builder()
+                .id(track.getId())
+                .project(project)
+                .instrument(track.getInstrument())
+                .musicalSequence(track.getMusicalSequence())
+                .createdAt(track.getCreatedAt())
+                .updatedAt(track.getUpdatedAt())
+                .version(track.getVersion())
+                .build();
+    }
+}
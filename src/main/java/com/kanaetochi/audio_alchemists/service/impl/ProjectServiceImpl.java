@@ -1,11 +1,12 @@
 package com.kanaetochi.audio_alchemists.service.impl;
 
 import org.modelmapper.ModelMapper;
-// import org.springframework.security.core.Authentication;
-// import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import com.kanaetochi.audio_alchemists.service.AutosaveService;
 import com.kanaetochi.audio_alchemists.service.ProjectService;
 import com.kanaetochi.audio_alchemists.service.ProjectVersionService;
 
@@ -13,6 +14,7 @@ import com.kanaetochi.audio_alchemists.service.ProjectVersionService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
+import java.time.LocalDateTime;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
@@ -24,7 +26,6 @@ import com.kanaetochi.audio_alchemists.model.ProjectVersion;
 import com.kanaetochi.audio_alchemists.model.User;
 import com.kanaetochi.audio_alchemists.repository.ProjectRepository;
 import com.kanaetochi.audio_alchemists.repository.UserRepository;
-// import com.kanaetochi.audio_alchemists.security.UserDetailsImpl;
 
 @Service
 @RequiredArgsConstructor
@@ -35,6 +36,7 @@ public class ProjectServiceImpl implements ProjectService {
     private final UserRepository userRepository;
 	private final ProjectVersionService projectVersionService;
 	private final ModelMapper modelMapper;
+	private final AutosaveService autosaveService;
 
 	private static final ThreadLocal<Boolean> isReverting = ThreadLocal.withInitial(() -> false);
 	@Override
@@ -58,10 +60,10 @@ public class ProjectServiceImpl implements ProjectService {
         project2.setGenre(project.getGenre());
         project2.setTempo(project.getTempo());
         Project updatedProject = projectRepository.save(project2);
-		// if(!isReverting.get()) {
-		// 	User currentUser = getCurrentUser();
-		// 	projectVersionService.createSnapShot(updatedProject, currentUser, "Project updated");
-		// }
+		// Snapshotted in the background once this commits; a burst of updates becomes one version
+		if(!isReverting.get()) {
+			autosaveService.requestSnapshot(id, getCurrentUserId(), ProjectVersion.AUTOSAVE_DESCRIPTION);
+		}
 		return updatedProject;
 	}
 
@@ -69,25 +71,28 @@ public class ProjectServiceImpl implements ProjectService {
 		isReverting.set(reverting);
 	}
 
-	// private User getCurrentUser() {
-	// 	Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-	// 	if(authentication != null && (authentication.getPrincipal() instanceof UserDetailsImpl)) {
-	// 		UserDetailsImpl userDetails = (UserDetailsImpl) authentication.getPrincipal();
-	// 		return userRepository.findById(userDetails.getId()).orElseThrow(()-> new ResourceNotFoundException("User", "id",userDetails.getId()));
-	// 	}
-	// 	throw new RuntimeException("No authenticated user found");
-	// }
+	// Null when no user is authenticated; the autosave is then attributed to the project owner
+	private Long getCurrentUserId() {
+		Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+		return authentication != null && authentication.getPrincipal() instanceof User user ? user.getId() : null;
+	}
 
 	@Override
 	public Optional<Project> getProjectById(Long id) {
 		return projectRepository.findById(id);
 	}
 
+	@Override
+	public Optional<LocalDateTime> getProjectUpdatedAt(Long id) {
+		return projectRepository.findUpdatedAtById(id);
+	}
+
 	@Override
 	@Transactional
 	public void deleteProject(Long id) {
 		projectRepository.findById(id).orElseThrow(()-> new ResourceNotFoundException("Project not found with id: " + id));
         projectRepository.deleteById(id);
+		autosaveService.discard(id);
 	}
 
 	public static void executeAndRevert(Runnable action) {
@@ -104,6 +109,7 @@ public class ProjectServiceImpl implements ProjectService {
 	public ProjectVersionDto saveNewVersion(Long projectId, String description, User savedBy) {
 		Project project = projectRepository.findById(projectId).orElseThrow(()-> new ResourceNotFoundException("Project", "id", projectId));
 
+		autosaveService.discard(projectId); // this version already covers the pending autosave
 		ProjectVersion version = projectVersionService.createSnapShot(project, savedBy, description);
 		log.info("Explicitly saved new version for project ID: {} by user: {}", projectId, savedBy != null ? savedBy.getUsername() : "system");
 
@@ -0,0 +1,80 @@
+package com.kanaetochi.audio_alchemists.service.impl;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kanaetochi.audio_alchemists.model.Project;
+import com.kanaetochi.audio_alchemists.model.Track;
+
+/**
+ * What a project version stores: the project's own fields and, per track, its id, instrument and sequence.
+ *
+ * Snapshots are written field by field with a streaming generator, straight from the loaded entities, so
+ * nothing lazy is touched and each sequence is swapped for its track_blob hash on the way out. Reading
+ * ignores anything else, so snapshots written from the whole entity graph before this schema still load.
+ */
+record ProjectSnapshot(Long id, String title, String description, String genre, Integer tempo, List<TrackSnapshot> tracks) {
+
+    // sequenceHash is only set on a snapshot read before SnapshotBlobs.internalize put the sequences back
+    record TrackSnapshot(Long id, String instrument, String musicalSequence, String sequenceHash) {}
+
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    // The stored form of the project with these tracks, and the sequences it refers to by hash
+    static SnapshotBlobs.Externalized write(Project project, List<Track> tracks) {
+        StringWriter json = new StringWriter();
+        Map<String, String> blobs = new LinkedHashMap<>();
+        try (JsonGenerator generator = MAPPER.getFactory().createGenerator(json)) {
+            generator.writeStartObject();
+            writeNumber(generator, "id", project.getId());
+            generator.writeStringField("title", project.getTitle());
+            generator.writeStringField("description", project.getDescription());
+            generator.writeStringField("genre", project.getGenre());
+            writeNumber(generator, "tempo", project.getTempo());
+            generator.writeArrayFieldStart("tracks");
+            for (Track track : tracks) {
+                generator.writeStartObject();
+                writeNumber(generator, "id", track.getId());
+                generator.writeStringField("instrument", track.getInstrument());
+                if (track.getMusicalSequence() != null) {
+                    String hash = SnapshotBlobs.hash(track.getMusicalSequence());
+                    blobs.put(hash, track.getMusicalSequence());
+                    generator.writeStringField("sequenceHash", hash);
+                } else {
+                    generator.writeNullField("musicalSequence");
+                }
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to serialize project for snapshot", e); // a StringWriter does not fail
+        }
+        return new SnapshotBlobs.Externalized(json.toString(), blobs);
+    }
+
+    // A snapshot with its sequences in place, as SnapshotBlobs.internalize returns it
+    static ProjectSnapshot read(String json) throws JsonProcessingException {
+        ProjectSnapshot snapshot = MAPPER.readValue(json, ProjectSnapshot.class);
+        // Unmodifiable, since a decoded snapshot may be shared through VersionSnapshotCache
+        return new ProjectSnapshot(snapshot.id(), snapshot.title(), snapshot.description(), snapshot.genre(), snapshot.tempo(),
+                snapshot.tracks() != null ? List.copyOf(snapshot.tracks()) : List.of());
+    }
+
+    private static void writeNumber(JsonGenerator generator, String field, Number value) throws IOException {
+        if (value == null) {
+            generator.writeNullField(field);
+        } else {
+            generator.writeNumberField(field, value.longValue());
+        }
+    }
+}
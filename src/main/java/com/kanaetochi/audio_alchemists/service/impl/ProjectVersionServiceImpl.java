@@ -1,23 +1,46 @@
 package com.kanaetochi.audio_alchemists.service.impl;
 
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kanaetochi.audio_alchemists.dto.ProjectStateDto;
+import com.kanaetochi.audio_alchemists.dto.ProjectVersionDto;
+import com.kanaetochi.audio_alchemists.dto.RevertPlanDto;
+import com.kanaetochi.audio_alchemists.dto.VersionDiffDto;
 import com.kanaetochi.audio_alchemists.exception.ResourceNotFoundException;
 import com.kanaetochi.audio_alchemists.model.Project;
 import com.kanaetochi.audio_alchemists.model.ProjectVersion;
 import com.kanaetochi.audio_alchemists.model.Track;
+import com.kanaetochi.audio_alchemists.model.TrackChange;
+import com.kanaetochi.audio_alchemists.model.TrackChangeType;
 import com.kanaetochi.audio_alchemists.model.User;
+import com.kanaetochi.audio_alchemists.model.VersionKind;
 import com.kanaetochi.audio_alchemists.repository.ProjectRepository;
 import com.kanaetochi.audio_alchemists.repository.ProjectVersionRepository;
+import com.kanaetochi.audio_alchemists.repository.TrackBlobRepository;
+import com.kanaetochi.audio_alchemists.repository.TrackChangeRepository;
 import com.kanaetochi.audio_alchemists.repository.TrackRepository;
+import com.kanaetochi.audio_alchemists.service.LiveProjectService;
 import com.kanaetochi.audio_alchemists.service.ProjectVersionService;
+import com.kanaetochi.audio_alchemists.service.TrackChangeService;
+import com.kanaetochi.audio_alchemists.service.impl.ProjectSnapshot.TrackSnapshot;
 import org.springframework.transaction.annotation.Transactional;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -29,36 +52,47 @@ public class ProjectVersionServiceImpl implements ProjectVersionService {
 
     private final ProjectVersionRepository projectVersionRepository;
     private final TrackRepository trackRepository;
+    private final TrackBlobRepository trackBlobRepository;
+    private final TrackBlobWriter trackBlobWriter;
     private final ProjectRepository projectRepository;
+    private final LiveProjectService liveProjectService;
+    private final VersionDiffCache versionDiffCache;
+    private final VersionSnapshotCache versionSnapshotCache;
+    private final TrackChangeRepository trackChangeRepository;
+    private final TrackChangeService trackChangeService;
+    private final TrackSegmentWriter trackSegmentWriter;
 
-    private final ObjectMapper objectMapper;
+    @Value("${app.versions.keyframe-interval:20}")
+    private int keyframeInterval; // every Nth version is stored whole, the ones between as deltas
 
     @Override
     @Transactional
     public ProjectVersion createSnapShot(Project project, User savedBy, String description) {
-        try 
-        {
-            // Create a new ProjectVersion instance
-            String snapshotJson = objectMapper.writeValueAsString(project);
-            ProjectVersion version = ProjectVersion.builder()
-                .savedBy(savedBy)
-                .project(project)
-                .description(description)
-                .snapshotData(snapshotJson)
-                .build();
-            log.info("Creating snapshot for project ID: {}", project.getId());
-            return projectVersionRepository.save(version);
-        } catch (JsonProcessingException e) {
-            log.error("Error creating snapshot for project ID {}: {}", project.getId(), e.getMessage(), e);
-            throw new RuntimeException("Failed to serialize project for snapshot", e);
-        }
+        liveProjectService.flush(project.getId()); // the snapshot must include edits still held in memory
+        // The project and its tracks in one query, then streamed field by field; sequences go to the blob table once per distinct content
+        Project source = projectRepository.findWithTracksById(project.getId()).orElse(project);
+        SnapshotBlobs.Externalized snapshot = ProjectSnapshot.write(source, source.getTracks() != null ? source.getTracks() : List.of());
+        trackBlobWriter.storeMissing(snapshot.blobs());
+        ProjectVersion version = ProjectVersion.builder()
+            .savedBy(savedBy)
+            .project(project)
+            .description(description)
+            .snapshotData(snapshot.json())
+            .kind(VersionKind.KEYFRAME)
+            .chainDepth(0)
+            .build();
+        storeAsDelta(project.getId(), snapshot.json(), version);
+        log.info("Creating snapshot for project ID: {}", project.getId());
+        return projectVersionRepository.save(version);
     }
 
     @Override
     @Transactional(readOnly = true)
-    public List<ProjectVersion> getVersionsForProject(Long projectId) {
-        log.info("Fetching versions for project ID: {}", projectId);
-        return projectVersionRepository.findByProjectIdOrderByTimeStampDesc(projectId);
+    public List<ProjectVersionDto> getVersionHistory(Long projectId, LocalDateTime beforeTimeStamp, Long beforeId, int limit) {
+        if (beforeTimeStamp == null || beforeId == null) {
+            return projectVersionRepository.findHistory(projectId, Limit.of(limit));
+        }
+        return projectVersionRepository.findHistoryBefore(projectId, beforeTimeStamp, beforeId, Limit.of(limit));
     }
 
     @Override
@@ -66,61 +100,334 @@ public class ProjectVersionServiceImpl implements ProjectVersionService {
     public Project revertToVersion(Long projectId, Long versionId, User requestedBy) {
         log.info("Reverting project ID: {} to version ID: {} by user: {}", projectId, versionId, requestedBy != null ? requestedBy.getUsername() : "system");
         
-        // Fetch the project to revert
-        Project currentProject = projectRepository.findById(projectId)
-                .orElseThrow(() -> new ResourceNotFoundException("Project", "id", projectId));
-        
-        // Fetch the version to revert to
-        ProjectVersion version = projectVersionRepository.findById(versionId)
+        liveProjectService.flush(projectId);
+        Project currentProject = findProject(projectId);
+        RevertPlan plan = planRevert(currentProject, currentProject.getTracks(), versionId);
+        ProjectSnapshot snapshot = plan.snapshot();
+
+        // Update the current project with the snapshot data; unchanged values leave the row clean
+        currentProject.setTitle(snapshot.title());
+        currentProject.setDescription(snapshot.description());
+        currentProject.setGenre(snapshot.genre());
+        currentProject.setTempo(snapshot.tempo());
+
+        // Only tracks whose content differs are written, so unchanged tracks keep their version
+        log.debug("Deleting tracks: {}", plan.toDelete().stream().map(Track::getId).collect(Collectors.toList()));
+        if (!plan.toDelete().isEmpty()) {
+            currentProject.getTracks().removeAll(plan.toDelete());
+            trackRepository.deleteAll(plan.toDelete());
+        }
+        Map<Long, String> previousSequences = new HashMap<>();
+        Map<Long, Integer> previousVersions = new HashMap<>();
+        for (TrackUpdate update : plan.toUpdate()) {
+            log.debug("Updating existing track ID: {}", update.current().getId());
+            previousSequences.put(update.current().getId(), update.current().getMusicalSequence());
+            previousVersions.put(update.current().getId(), update.current().getVersion());
+            update.current().setInstrument(update.target().instrument());
+            update.current().setMusicalSequence(update.target().musicalSequence());
+        }
+        List<Track> added = new ArrayList<>();
+        for (TrackSnapshot newTrack : plan.toCreate()) {
+            log.debug("Adding new track based on snapshot data (original ID if any: {})", newTrack.id());
+            Track trackToAdd = new Track();
+            trackToAdd.setProject(currentProject);
+            trackToAdd.setInstrument(newTrack.instrument());
+            trackToAdd.setMusicalSequence(newTrack.musicalSequence());
+            added.add(trackToAdd);
+        }
+        // Persisted on their own first, so the ADDs below are recorded with ids; merging them in with the project would leave these copies transient
+        added = trackRepository.saveAll(added);
+        currentProject.getTracks().addAll(added);
+        Project revertedProject = projectRepository.save(currentProject);
+        trackRepository.flush(); // the segments are cut at the versions the tracks get
+        plan.toUpdate().forEach(update -> trackSegmentWriter.written(update.current(),
+                previousSequences.get(update.current().getId()), previousVersions.get(update.current().getId())));
+        added.forEach(track -> trackSegmentWriter.written(track, null, null));
+        // A revert is track changes like any other, so replays after it see the reverted tracks
+        plan.toDelete().forEach(track -> trackChangeService.record(TrackChangeType.DELETE, track));
+        plan.toUpdate().forEach(update -> trackChangeService.recordUpdate(update.current(), previousSequences.get(update.current().getId())));
+        added.forEach(track -> trackChangeService.record(TrackChangeType.ADD, track));
+        liveProjectService.refresh(projectId); // live subscribers see the reverted tracks once this commits
+        log.info("Reverted project ID: {} to version ID: {} ({} tracks updated, {} added, {} deleted, {} unchanged)", projectId, versionId,
+                plan.toUpdate().size(), plan.toCreate().size(), plan.toDelete().size(), plan.unchanged());
+        return revertedProject;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public RevertPlanDto previewRevert(Long projectId, Long versionId) {
+        // A dry run writes nothing: edits still held in memory are planned against as they are, not flushed first
+        Project current = findProject(projectId);
+        RevertPlan plan = planRevert(current, liveProjectService.getTracks(projectId).orElse(current.getTracks()), versionId);
+        ProjectSnapshot snapshot = plan.snapshot();
+        List<String> changedFields = new ArrayList<>();
+        if (!Objects.equals(current.getTitle(), snapshot.title())) changedFields.add("title");
+        if (!Objects.equals(current.getDescription(), snapshot.description())) changedFields.add("description");
+        if (!Objects.equals(current.getGenre(), snapshot.genre())) changedFields.add("genre");
+        if (!Objects.equals(current.getTempo(), snapshot.tempo())) changedFields.add("tempo");
+        return RevertPlanDto.builder()
+                .projectId(projectId)
+                .versionId(versionId)
+                .changedFields(changedFields)
+                .updatedTrackIds(plan.toUpdate().stream().map(update -> update.current().getId()).toList())
+                .deletedTrackIds(plan.toDelete().stream().map(Track::getId).toList())
+                .addedTracks(plan.toCreate().size())
+                .unchangedTracks(plan.unchanged())
+                .build();
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public VersionDiffDto diffVersions(Long projectId, Long fromVersionId, Long toVersionId) {
+        Optional<VersionDiffDto> cached = versionDiffCache.find(projectId, fromVersionId, toVersionId);
+        if (cached.isPresent()) {
+            return cached.get();
+        }
+        ProjectVersion from = findVersion(projectId, fromVersionId);
+        ProjectVersion to = findVersion(projectId, toVersionId);
+        VersionDiffDto diff = VersionDiffs.diff(snapshotDataOf(from), snapshotDataOf(to), hashes -> {
+            Map<String, String> sequences = new HashMap<>();
+            trackBlobRepository.findAllById(hashes).forEach(blob -> sequences.put(blob.getHash(), blob.getMusicalSequence()));
+            return sequences;
+        });
+        diff.setProjectId(projectId);
+        diff.setFromVersionId(fromVersionId);
+        diff.setToVersionId(toVersionId);
+        versionDiffCache.put(projectId, fromVersionId, toVersionId, diff);
+        log.debug("Diffed versions {} and {} of project ID: {}", fromVersionId, toVersionId, projectId);
+        return diff;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public ProjectStateDto getProjectAt(Long projectId, LocalDateTime at) {
+        return replay(projectId, at, null);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Optional<ProjectStateDto.TrackState> getTrackAt(Long projectId, Long trackId, LocalDateTime at) {
+        return replay(projectId, at, trackId).getTracks().stream().findFirst();
+    }
+
+    // Replaying keeps the last whole state per track (snapshot or keyframe change) and applies the deltas after it; sequences are read once at the end
+    private ProjectStateDto replay(Long projectId, LocalDateTime at, Long onlyTrackId) {
+        if (!projectRepository.existsById(projectId)) {
+            throw new ResourceNotFoundException("Project", "id", projectId);
+        }
+        trackChangeService.writePending(); // changes still queued belong in the replay
+        Optional<ProjectVersion> base = projectVersionRepository.findFirstByProjectIdAndTimeStampLessThanEqualOrderByTimeStampDescIdDesc(projectId, at);
+        ProjectSnapshot snapshot = null;
+        Map<Long, TrackSnapshot> tracks = new HashMap<>();
+        if (base.isPresent()) {
+            try {
+                snapshot = ProjectSnapshot.read(snapshotDataOf(base.get()));
+            } catch (JsonProcessingException e) {
+                throw new RuntimeException("Failed to deserialize snapshot for replay", e);
+            }
+            snapshot.tracks().stream()
+                    .filter(track -> track.id() != null)
+                    .forEach(track -> tracks.put(track.id(), track));
+        }
+        List<TrackChange> changes = base.isPresent()
+                ? trackChangeRepository.findForReplay(projectId, base.get().getTimeStamp(), at)
+                : trackChangeRepository.findForReplayFromStart(projectId, at);
+        Map<Long, List<TrackChange>> deltas = new HashMap<>(); // by track id, the changes after its last whole state
+        for (TrackChange change : changes) {
+            Long trackId = change.getTrackId();
+            if (change.getChangeType() == TrackChangeType.DELETE) {
+                tracks.remove(trackId);
+                deltas.remove(trackId);
+            } else if (TrackChangeDeltas.isDelta(change)) {
+                TrackSnapshot track = tracks.get(trackId);
+                if (track == null) {
+                    log.warn("Track change {} of track ID {} has no earlier state to apply to", change.getId(), trackId);
+                    continue;
+                }
+                tracks.put(trackId, new TrackSnapshot(trackId, change.getInstrument(), track.musicalSequence(), track.sequenceHash()));
+                deltas.computeIfAbsent(trackId, id -> new ArrayList<>()).add(change);
+            } else {
+                tracks.put(trackId, new TrackSnapshot(trackId, change.getInstrument(), null, change.getSequenceHash()));
+                deltas.remove(trackId);
+            }
+        }
+        if (onlyTrackId != null) {
+            tracks.keySet().retainAll(Set.of(onlyTrackId));
+        }
+
+        Set<String> hashes = tracks.values().stream()
+                .filter(track -> track.musicalSequence() == null && track.sequenceHash() != null)
+                .map(TrackSnapshot::sequenceHash)
+                .collect(Collectors.toSet());
+        Map<String, String> sequences = new HashMap<>();
+        if (!hashes.isEmpty()) {
+            trackBlobRepository.findAllById(hashes).forEach(blob -> sequences.put(blob.getHash(), blob.getMusicalSequence()));
+        }
+        log.debug("Replayed {} track changes onto version {} of project ID: {}", changes.size(), base.map(ProjectVersion::getId).orElse(null), projectId);
+        return ProjectStateDto.builder()
+                .projectId(projectId)
+                .at(at)
+                .baseVersionId(base.map(ProjectVersion::getId).orElse(null))
+                .changesReplayed(changes.size())
+                .title(snapshot != null ? snapshot.title() : null)
+                .description(snapshot != null ? snapshot.description() : null)
+                .genre(snapshot != null ? snapshot.genre() : null)
+                .tempo(snapshot != null ? snapshot.tempo() : null)
+                .tracks(tracks.values().stream()
+                        .sorted(Comparator.comparing(TrackSnapshot::id))
+                        .map(track -> ProjectStateDto.TrackState.builder()
+                                .id(track.id())
+                                .instrument(track.instrument())
+                                .musicalSequence(replaySequence(track, sequences, deltas.getOrDefault(track.id(), List.of())))
+                                .build())
+                        .toList())
+                .build();
+    }
+
+    private String replaySequence(TrackSnapshot track, Map<String, String> sequences, List<TrackChange> deltas) {
+        String sequence = track.musicalSequence() != null ? track.musicalSequence() : sequences.get(track.sequenceHash());
+        for (TrackChange change : deltas) {
+            try {
+                sequence = TrackChangeDeltas.apply(sequence, change);
+            } catch (RuntimeException e) {
+                // A change missing from the log broke the chain: what replayed so far is the closest state there is
+                log.warn("Track change {} of track ID {} does not apply: {}", change.getId(), track.id(), e.getMessage());
+                break;
+            }
+        }
+        return sequence;
+    }
+
+    private ProjectVersion findVersion(Long projectId, Long versionId) {
+        return projectVersionRepository.findById(versionId)
                 .filter(pv -> pv.getProject().getId().equals(projectId))
                 .orElseThrow(() -> new ResourceNotFoundException("Project Version", "id", versionId));
-        
-        // Revert the project to this version's snapshot data
-        try {
-            Project snapshotProject = objectMapper.readValue(version.getSnapshotData(), Project.class);
-
-            // Update the current project with the snapshot data
-            currentProject.setTitle(snapshotProject.getTitle());
-            currentProject.setDescription(snapshotProject.getDescription());
-            currentProject.setGenre(snapshotProject.getGenre());
-            currentProject.setTempo(snapshotProject.getTempo());
-
-            // Reconcile tracks
-            Map<Long, Track> existingTracks = currentProject.getTracks().stream()
-                    .collect(Collectors.toMap(Track::getId, Function.identity()));
-            List<Track> newTracks = snapshotProject.getTracks() != null ? snapshotProject.getTracks() : List.of();
-            
-            // 1. Delete tracks present in current but not in snapshot
-            List<Track> tracksToDelete = currentProject.getTracks().stream()
-                    .filter(track -> newTracks.stream().noneMatch(newTrack -> newTrack.getId()!= null && newTrack.getId().equals(track.getId())))
-                    .collect(Collectors.toList());
-            log.debug("Deleting tracks: {}", tracksToDelete.stream().map(Track::getId).collect(Collectors.toList()));
-            currentProject.getTracks().removeAll(tracksToDelete);
-            trackRepository.deleteAll(tracksToDelete);
-
-            // 2. Update existing tracks and add new tracks
-            for (Track newTrack : newTracks) {
-                Track trackToUpdate;
-                if (newTrack.getId() != null && existingTracks.containsKey(newTrack.getId())) {
-                    // Update existing track
-                    trackToUpdate = existingTracks.get(newTrack.getId());
-                    log.debug("Updating existing track ID: {}", trackToUpdate.getId());
+    }
+
+    // What a revert would do: current tracks missing from the snapshot, tracks whose content differs, and tracks to add back
+    private record RevertPlan(ProjectSnapshot snapshot, List<Track> toDelete, List<TrackUpdate> toUpdate, List<TrackSnapshot> toCreate, int unchanged) {}
+
+    private record TrackUpdate(Track current, TrackSnapshot target) {}
+
+    private Project findProject(Long projectId) {
+        return projectRepository.findById(projectId)
+                .orElseThrow(() -> new ResourceNotFoundException("Project", "id", projectId));
+    }
+
+    // currentTracks are the project's tracks as the plan should see them: the stored ones, or the live ones for a preview
+    private RevertPlan planRevert(Project currentProject, List<Track> currentTracks, Long versionId) {
+        Long projectId = currentProject.getId();
+        // Fetch the version to revert to; a preview or revert of the same version again is answered from memory
+        ProjectSnapshot snapshot = versionSnapshotCache.find(projectId, versionId).orElse(null);
+        if (snapshot == null) {
+            ProjectVersion version = findVersion(projectId, versionId);
+            try {
+                snapshot = ProjectSnapshot.read(projectJsonOf(version, currentTracks));
+            } catch (JsonProcessingException e) {
+                log.error("Error reverting project ID {} to version ID {}: {}", projectId, versionId, e.getMessage());
+                throw new RuntimeException("Failed to deserialize snapshot for reverting", e);
+            }
+            versionSnapshotCache.put(projectId, versionId, snapshot);
+        }
+
+        // One pass over each side, keyed by track id
+        Map<Long, TrackSnapshot> snapshotTracks = new HashMap<>();
+        List<TrackSnapshot> toCreate = new ArrayList<>();
+        for (TrackSnapshot newTrack : snapshot.tracks()) {
+            if (newTrack.id() == null || snapshotTracks.putIfAbsent(newTrack.id(), newTrack) != null) {
+                toCreate.add(newTrack);
+            }
+        }
+        List<Track> toDelete = new ArrayList<>();
+        List<TrackUpdate> toUpdate = new ArrayList<>();
+        Set<Long> kept = new HashSet<>();
+        int unchanged = 0;
+        for (Track track : currentTracks) {
+            TrackSnapshot newTrack = snapshotTracks.get(track.getId());
+            if (newTrack == null) {
+                toDelete.add(track);
+            } else {
+                kept.add(track.getId());
+                if (Objects.equals(track.getInstrument(), newTrack.instrument()) && Objects.equals(track.getMusicalSequence(), newTrack.musicalSequence())) {
+                    unchanged++;
                 } else {
-                    // Add new track
-                    trackToUpdate = new Track();
-                    trackToUpdate.setProject(currentProject);
-                    currentProject.getTracks().add(trackToUpdate);
-                    log.debug("Adding new track based on snapshot data (original ID if any: {})", newTrack.getId());
+                    toUpdate.add(new TrackUpdate(track, newTrack));
+                }
+            }
+        }
+        snapshotTracks.forEach((id, newTrack) -> {
+            if (!kept.contains(id)) {
+                toCreate.add(newTrack);
+            }
+        });
+        return new RevertPlan(snapshot, toDelete, toUpdate, toCreate, unchanged);
+    }
+
+    // The project as it was saved in this version, sequences included. Blobs matching a current track's content are not read.
+    private String projectJsonOf(ProjectVersion version, List<Track> currentTracks) {
+        return SnapshotBlobs.internalize(snapshotDataOf(version), hashes -> {
+            Map<String, String> sequences = new HashMap<>();
+            for (Track track : currentTracks) {
+                if (track.getMusicalSequence() != null) {
+                    sequences.putIfAbsent(SnapshotBlobs.hash(track.getMusicalSequence()), track.getMusicalSequence());
                 }
-                trackToUpdate.setInstrument(newTrack.getInstrument());
-                trackToUpdate.setMusicalSequence(newTrack.getMusicalSequence());
             }
-            Project revertedProject = projectRepository.save(currentProject);
-            log.info("Successfully reverted project ID: {} to version ID: {}", projectId, versionId);
-            return revertedProject;
-        } catch (JsonProcessingException e) {
-            log.error("Error reverting project ID {} to version ID {}: {}", projectId, versionId, e.getMessage());
-            throw new RuntimeException("Failed to deserialize snapshot for reverting", e);
+            sequences.keySet().retainAll(hashes);
+            List<String> missing = hashes.stream().filter(hash -> !sequences.containsKey(hash)).toList();
+            if (!missing.isEmpty()) {
+                trackBlobRepository.findAllById(missing).forEach(blob -> sequences.put(blob.getHash(), blob.getMusicalSequence()));
+            }
+            return sequences;
+        });
+    }
+
+    // Stores the snapshot as a delta against the project's latest version, unless a keyframe is due or a delta would not be smaller
+    private void storeAsDelta(Long projectId, String snapshotJson, ProjectVersion version) {
+        if (keyframeInterval <= 1) {
+            return;
+        }
+        Optional<ProjectVersion> latest = projectVersionRepository.findFirstByProjectIdOrderByIdDesc(projectId);
+        if (latest.isEmpty()) {
+            return;
+        }
+        ProjectVersion base = latest.get();
+        int depth = (base.getChainDepth() != null ? base.getChainDepth() : 0) + 1;
+        if (depth >= keyframeInterval) {
+            return;
+        }
+        SnapshotDeltas.diff(snapshotDataOf(base), snapshotJson).ifPresent(delta -> {
+            version.setKind(VersionKind.DELTA);
+            version.setSnapshotData(delta);
+            version.setBaseVersionId(base.getId());
+            version.setKeyframeId(base.getKind() == VersionKind.DELTA ? base.getKeyframeId() : base.getId());
+            version.setChainDepth(depth);
+        });
+    }
+
+    // Full snapshot of a version: keyframes hold it, deltas are replayed onto their keyframe in chain order
+    private String snapshotDataOf(ProjectVersion version) {
+        if (version.getKind() != VersionKind.DELTA) {
+            return version.getSnapshotData();
+        }
+        Map<Long, ProjectVersion> candidates = projectVersionRepository
+                .findByProjectIdAndIdBetweenOrderByIdAsc(version.getProject().getId(), version.getKeyframeId(), version.getId())
+                .stream()
+                .collect(Collectors.toMap(ProjectVersion::getId, Function.identity()));
+        Deque<ProjectVersion> deltas = new ArrayDeque<>();
+        ProjectVersion current = version;
+        while (current.getKind() == VersionKind.DELTA) {
+            deltas.push(current);
+            Long baseId = current.getBaseVersionId();
+            // Compaction may rebase a chain onto an older keyframe while this version is being written
+            current = candidates.containsKey(baseId) ? candidates.get(baseId) : projectVersionRepository.findById(baseId).orElse(null);
+            if (current == null) {
+                throw new IllegalStateException("Version " + version.getId() + " cannot be rebuilt: its chain is missing version " + deltas.peek().getBaseVersionId());
+            }
+        }
+        String snapshot = current.getSnapshotData();
+        for (ProjectVersion delta : deltas) {
+            snapshot = SnapshotDeltas.apply(snapshot, delta.getSnapshotData());
         }
+        return snapshot;
     }    
 }
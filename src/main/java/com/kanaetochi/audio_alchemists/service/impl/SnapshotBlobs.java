@@ -0,0 +1,89 @@
+package com.kanaetochi.audio_alchemists.service.impl;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Puts track sequences back into stored project snapshots. A stored snapshot carries each track's
+ * "sequenceHash" in place of its "musicalSequence" (ProjectSnapshot.write swaps them); the sequence itself
+ * lives once in track_blob under that hash. Snapshots saved before blobs existed embed their sequences and
+ * are read as they are.
+ */
+final class SnapshotBlobs {
+
+    record Externalized(String json, Map<String, String> blobs) {} // blobs maps each hash in json to the sequence it stands for
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final String SEQUENCE = "musicalSequence";
+    private static final String SEQUENCE_HASH = "sequenceHash";
+
+    private SnapshotBlobs() {
+    }
+
+    // Puts the sequences back; loader returns the stored sequence for each hash it finds
+    static String internalize(String storedJson, Function<Set<String>, Map<String, String>> loader) {
+        JsonNode snapshot = read(storedJson);
+        Set<String> hashes = new LinkedHashSet<>();
+        snapshot.path("tracks").forEach(track -> {
+            if (track.path(SEQUENCE_HASH).isTextual()) {
+                hashes.add(track.get(SEQUENCE_HASH).asText());
+            }
+        });
+        if (hashes.isEmpty()) {
+            return storedJson;
+        }
+        Map<String, String> sequences = loader.apply(hashes);
+        for (JsonNode track : snapshot.path("tracks")) {
+            if (track.path(SEQUENCE_HASH).isTextual()) {
+                String hash = track.get(SEQUENCE_HASH).asText();
+                String sequence = sequences.get(hash);
+                if (sequence == null) {
+                    throw new IllegalStateException("Snapshot refers to track blob " + hash + " which is not stored");
+                }
+                ((ObjectNode) track).remove(SEQUENCE_HASH);
+                ((ObjectNode) track).put(SEQUENCE, sequence);
+            }
+        }
+        return snapshot.toString();
+    }
+
+    // Every blob a stored snapshot refers to, a keyframe's tracks or a delta's track changes alike
+    static Set<String> hashesIn(String storedJson) {
+        Set<String> hashes = new LinkedHashSet<>();
+        read(storedJson).findValues(SEQUENCE_HASH).forEach(hash -> {
+            if (hash.isTextual()) {
+                hashes.add(hash.asText());
+            }
+        });
+        return hashes;
+    }
+
+    static String hash(String sequence) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(sequence.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e); // every JRE ships it
+        }
+    }
+
+    private static JsonNode read(String json) {
+        try {
+            return MAPPER.readTree(json);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Project snapshot is not valid JSON", e);
+        }
+    }
+}
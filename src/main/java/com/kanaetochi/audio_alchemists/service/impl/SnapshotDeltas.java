@@ -0,0 +1,241 @@
+package com.kanaetochi.audio_alchemists.service.impl;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.kanaetochi.audio_alchemists.sequence.MusicalSequence;
+import com.kanaetochi.audio_alchemists.sequence.NoteEvent;
+import com.kanaetochi.audio_alchemists.sequence.SequenceCodec;
+import com.kanaetochi.audio_alchemists.sequence.SequenceMerger;
+
+/**
+ * Structural deltas between two project snapshots, as written by createSnapShot.
+ *
+ * A delta holds the top-level fields that changed, the track ids in their new order when that changed,
+ * and for each added or changed track only the fields that differ. A changed musical sequence is stored
+ * as the notes added, changed or removed when replaying them reproduces the exact text, otherwise whole.
+ * A delta is only produced when replaying it onto the base gives back the target snapshot.
+ */
+final class SnapshotDeltas {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final String TRACKS = "tracks";
+    private static final String SEQUENCE = "musicalSequence";
+
+    private SnapshotDeltas() {
+    }
+
+    static Optional<String> diff(String baseJson, String targetJson) {
+        ObjectNode base = readObject(baseJson);
+        ObjectNode target = readObject(targetJson);
+        if (base == null || target == null) {
+            return Optional.empty();
+        }
+        ObjectNode delta = MAPPER.createObjectNode();
+        boolean trackLevel = base.path(TRACKS).isArray() && target.path(TRACKS).isArray();
+        diffFields(base, target, trackLevel ? Set.of(TRACKS) : Set.of(), delta);
+
+        if (trackLevel) {
+            Map<Long, ObjectNode> baseTracks = tracksById(base);
+            Map<Long, ObjectNode> targetTracks = tracksById(target);
+            if (baseTracks == null || targetTracks == null) {
+                return Optional.empty();
+            }
+            if (!new ArrayList<>(baseTracks.keySet()).equals(new ArrayList<>(targetTracks.keySet()))) {
+                ArrayNode order = delta.putArray("trackOrder");
+                targetTracks.keySet().forEach(order::add);
+            }
+            ObjectNode trackChanges = MAPPER.createObjectNode();
+            targetTracks.forEach((id, track) -> {
+                ObjectNode change = diffTrack(baseTracks.getOrDefault(id, MAPPER.createObjectNode()), track);
+                if (!change.isEmpty()) {
+                    trackChanges.set(id.toString(), change);
+                }
+            });
+            if (!trackChanges.isEmpty()) {
+                delta.set("trackChanges", trackChanges);
+            }
+        }
+
+        String deltaJson = delta.toString();
+        if (deltaJson.length() >= targetJson.length() || !target.equals(readObject(apply(baseJson, deltaJson)))) {
+            return Optional.empty(); // not worth it, or not exact
+        }
+        return Optional.of(deltaJson);
+    }
+
+    static String apply(String baseJson, String deltaJson) {
+        ObjectNode snapshot = readObject(baseJson);
+        ObjectNode delta = readObject(deltaJson);
+        if (snapshot == null || delta == null) {
+            throw new IllegalStateException("Snapshot delta cannot be applied to a snapshot that is not a JSON object");
+        }
+        applyFields(snapshot, delta);
+        if (delta.has("trackOrder") || delta.has("trackChanges")) {
+            Map<Long, ObjectNode> tracks = tracksById(snapshot);
+            if (tracks == null) {
+                throw new IllegalStateException("Snapshot delta cannot be applied: base tracks carry no ids");
+            }
+            List<Long> order = new ArrayList<>(tracks.keySet());
+            if (delta.has("trackOrder")) {
+                order.clear();
+                delta.get("trackOrder").forEach(id -> order.add(id.asLong()));
+            }
+            ArrayNode rebuilt = MAPPER.createArrayNode();
+            JsonNode trackChanges = delta.path("trackChanges");
+            for (Long id : order) {
+                ObjectNode track = tracks.getOrDefault(id, MAPPER.createObjectNode());
+                JsonNode change = trackChanges.get(id.toString());
+                if (change != null) {
+                    applyFields(track, change);
+                    if (change.has("notes")) {
+                        track.put(SEQUENCE, applyNotes(track.path(SEQUENCE).asText(null), change.get("notes")));
+                    }
+                }
+                rebuilt.add(track);
+            }
+            snapshot.set(TRACKS, rebuilt);
+        }
+        return snapshot.toString();
+    }
+
+    // The note-level delta of one sequence on its own, as the track change log stores an edit between keyframes
+    static Optional<String> diffSequence(String from, String to) {
+        if (from == null || to == null || from.equals(to)) {
+            return Optional.empty();
+        }
+        return diffNotes(from, to).map(JsonNode::toString).filter(delta -> delta.length() < to.length());
+    }
+
+    static String applySequence(String from, String delta) {
+        try {
+            return applyNotes(from, MAPPER.readTree(delta));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Sequence delta cannot be read", e);
+        }
+    }
+
+    private static ObjectNode diffTrack(ObjectNode base, ObjectNode target) {
+        ObjectNode change = MAPPER.createObjectNode();
+        JsonNode baseSequence = base.get(SEQUENCE);
+        JsonNode targetSequence = target.get(SEQUENCE);
+        boolean bothText = baseSequence != null && baseSequence.isTextual() && targetSequence != null && targetSequence.isTextual();
+        Optional<ObjectNode> notes = bothText && !baseSequence.equals(targetSequence)
+                ? diffNotes(baseSequence.asText(), targetSequence.asText())
+                : Optional.empty();
+        diffFields(base, target, notes.isPresent() ? Set.of(SEQUENCE) : Set.of(), change);
+        notes.ifPresent(patch -> change.set("notes", patch));
+        return change;
+    }
+
+    // Notes put (in target order) and removed by id; empty when ids are missing or replay would not match exactly
+    private static Optional<ObjectNode> diffNotes(String from, String to) {
+        Optional<MusicalSequence> fromSequence = SequenceCodec.parse(from);
+        Optional<MusicalSequence> toSequence = SequenceCodec.parse(to);
+        if (fromSequence.isEmpty() || toSequence.isEmpty()) {
+            return Optional.empty();
+        }
+        Set<Long> changed = SequenceMerger.changedNoteIds(fromSequence.get(), toSequence.get());
+        if (changed == null) {
+            return Optional.empty();
+        }
+        ObjectNode patch = MAPPER.createObjectNode();
+        patch.set("channel", MAPPER.valueToTree(toSequence.get().getChannel()));
+        patch.set("program", MAPPER.valueToTree(toSequence.get().getProgram()));
+        patch.put("hasNotes", toSequence.get().getNotes() != null);
+        ArrayNode put = patch.putArray("put");
+        ArrayNode remove = patch.putArray("remove");
+        Set<Long> kept = new HashSet<>();
+        for (NoteEvent note : notesOf(toSequence.get())) {
+            kept.add(note.getId());
+            if (changed.contains(note.getId())) {
+                put.add(MAPPER.valueToTree(note));
+            }
+        }
+        changed.stream().filter(id -> !kept.contains(id)).sorted().forEach(remove::add);
+        return Objects.equals(applyNotes(from, patch), to) ? Optional.of(patch) : Optional.empty();
+    }
+
+    // Changed notes keep their place, new ones are appended
+    private static String applyNotes(String from, JsonNode patch) {
+        MusicalSequence sequence = SequenceCodec.parse(from)
+                .orElseThrow(() -> new IllegalStateException("Snapshot delta refers to a sequence that cannot be parsed"));
+        Map<Long, NoteEvent> notes = new LinkedHashMap<>();
+        notesOf(sequence).forEach(note -> notes.put(note.getId(), note));
+        patch.path("remove").forEach(id -> notes.remove(id.asLong()));
+        try {
+            for (JsonNode node : patch.path("put")) {
+                NoteEvent note = MAPPER.treeToValue(node, NoteEvent.class);
+                notes.put(note.getId(), note);
+            }
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Snapshot delta holds a note that cannot be read", e);
+        }
+        sequence.setChannel(patch.path("channel").isNull() ? null : patch.path("channel").asInt());
+        sequence.setProgram(patch.path("program").isNull() ? null : patch.path("program").asInt());
+        sequence.setNotes(patch.path("hasNotes").asBoolean() ? new ArrayList<>(notes.values()) : null);
+        return SequenceCodec.toJson(sequence);
+    }
+
+    private static List<NoteEvent> notesOf(MusicalSequence sequence) {
+        return sequence.getNotes() != null ? sequence.getNotes() : List.of();
+    }
+
+    private static void diffFields(ObjectNode base, ObjectNode target, Set<String> skip, ObjectNode into) {
+        ObjectNode set = MAPPER.createObjectNode();
+        ArrayNode unset = MAPPER.createArrayNode();
+        target.fields().forEachRemaining(field -> {
+            if (!skip.contains(field.getKey()) && !field.getValue().equals(base.get(field.getKey()))) {
+                set.set(field.getKey(), field.getValue());
+            }
+        });
+        base.fieldNames().forEachRemaining(name -> {
+            if (!skip.contains(name) && !target.has(name)) {
+                unset.add(name);
+            }
+        });
+        if (!set.isEmpty()) {
+            into.set("set", set);
+        }
+        if (!unset.isEmpty()) {
+            into.set("unset", unset);
+        }
+    }
+
+    private static void applyFields(ObjectNode node, JsonNode change) {
+        change.path("unset").forEach(name -> node.remove(name.asText()));
+        change.path("set").fields().forEachRemaining(field -> node.set(field.getKey(), field.getValue()));
+    }
+
+    // Tracks keyed by id in snapshot order; null when a track has no id or ids repeat
+    private static Map<Long, ObjectNode> tracksById(ObjectNode snapshot) {
+        Map<Long, ObjectNode> tracks = new LinkedHashMap<>();
+        for (JsonNode track : snapshot.path(TRACKS)) {
+            if (!track.isObject() || !track.path("id").canConvertToLong() || tracks.put(track.get("id").asLong(), (ObjectNode) track) != null) {
+                return null;
+            }
+        }
+        return tracks;
+    }
+
+    private static ObjectNode readObject(String json) {
+        try {
+            JsonNode node = json != null ? MAPPER.readTree(json) : null;
+            return node != null && node.isObject() ? (ObjectNode) node : null;
+        } catch (JsonProcessingException e) {
+            return null;
+        }
+    }
+}
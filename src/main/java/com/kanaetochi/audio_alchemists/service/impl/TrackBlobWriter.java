@@ -0,0 +1,47 @@
+package com.kanaetochi.audio_alchemists.service.impl;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import com.kanaetochi.audio_alchemists.model.converter.MusicalSequenceConverter;
+import com.kanaetochi.audio_alchemists.repository.TrackBlobRepository;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Stores the track blobs a snapshot or the track change log refers to, by hash (see SnapshotBlobs). Both write
+ * concurrently, so a blob another transaction stored in the meantime is skipped rather than failing this one.
+ * Called inside the writer's transaction; the blobs it finds already stored stay share-locked until that commits.
+ */
+@Component
+@RequiredArgsConstructor
+public class TrackBlobWriter {
+
+    // Native, for ON CONFLICT; the sequences go in as the entity's converter would write them
+    private static final String INSERT_IF_ABSENT = "INSERT INTO track_blob (hash, musical_sequence, created_at) "
+            + "VALUES (?, ?, CURRENT_TIMESTAMP) ON CONFLICT DO NOTHING";
+
+    private final MusicalSequenceConverter sequenceConverter = new MusicalSequenceConverter();
+
+    private final TrackBlobRepository trackBlobRepository;
+    private final JdbcTemplate jdbcTemplate;
+
+    // blobs maps each hash to the sequence it stands for; the ones not stored yet go in one JDBC batch
+    public void storeMissing(Map<String, String> blobs) {
+        if (blobs.isEmpty()) {
+            return;
+        }
+        Set<String> existing = trackBlobRepository.findExistingHashes(blobs.keySet());
+        List<Object[]> rows = blobs.entrySet().stream()
+                .filter(blob -> !existing.contains(blob.getKey()))
+                .map(blob -> new Object[] { blob.getKey(), sequenceConverter.convertToDatabaseColumn(blob.getValue()) })
+                .toList();
+        if (!rows.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_IF_ABSENT, rows);
+        }
+    }
+}
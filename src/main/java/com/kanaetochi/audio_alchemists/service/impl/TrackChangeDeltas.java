@@ -0,0 +1,52 @@
+package com.kanaetochi.audio_alchemists.service.impl;
+
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kanaetochi.audio_alchemists.model.TrackChange;
+import com.kanaetochi.audio_alchemists.sequence.MusicalSequence;
+import com.kanaetochi.audio_alchemists.sequence.NoteOperation;
+import com.kanaetochi.audio_alchemists.sequence.SequenceCodec;
+import com.kanaetochi.audio_alchemists.sequence.SequencePatcher;
+
+/**
+ * The sequence of a track change between keyframes: the note operations a patch applied, or the notes a
+ * full update changed (see SnapshotDeltas.diffSequence). Either one is replayed onto the sequence the
+ * change before it left.
+ */
+final class TrackChangeDeltas {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final TypeReference<List<NoteOperation>> OPERATIONS = new TypeReference<>() {};
+
+    private TrackChangeDeltas() {
+    }
+
+    static boolean isDelta(TrackChange change) {
+        return change.getSequenceOperations() != null || change.getSequenceDelta() != null;
+    }
+
+    static String writeOperations(List<NoteOperation> operations) {
+        try {
+            return MAPPER.writeValueAsString(operations);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialize note operations", e); // plain beans, does not happen
+        }
+    }
+
+    // The sequence after the change, given the one before it
+    static String apply(String sequence, TrackChange change) {
+        if (change.getSequenceDelta() != null) {
+            return SnapshotDeltas.applySequence(sequence, change.getSequenceDelta());
+        }
+        try {
+            MusicalSequence edited = SequencePatcher.parseForEdit(sequence);
+            SequencePatcher.apply(edited, MAPPER.readValue(change.getSequenceOperations(), OPERATIONS));
+            return SequenceCodec.toJson(edited);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Note operations of track change " + change.getId() + " cannot be read", e);
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.kanaetochi.audio_alchemists.service.impl;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.kanaetochi.audio_alchemists.model.Track;
+import com.kanaetochi.audio_alchemists.model.TrackChange;
+import com.kanaetochi.audio_alchemists.model.TrackChangeType;
+import com.kanaetochi.audio_alchemists.model.User;
+import com.kanaetochi.audio_alchemists.repository.TrackChangeRepository;
+import com.kanaetochi.audio_alchemists.sequence.NoteOperation;
+import com.kanaetochi.audio_alchemists.sequence.SequenceCodec;
+import com.kanaetochi.audio_alchemists.service.TrackChangeService;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+@Service
+@Slf4j
+public class TrackChangeServiceImpl implements TrackChangeService {
+
+    private final TrackChangeRepository trackChangeRepository;
+    private final TrackBlobWriter trackBlobWriter;
+    private final TransactionTemplate transactionTemplate;
+
+    private static final int TRACKED_TRACKS = 10_000; // tracks whose distance to their last keyframe is remembered
+
+    @Value("${app.track-changes.batch-size:200}")
+    private int batchSize;
+
+    @Value("${app.track-changes.keyframe-interval:20}")
+    private int keyframeInterval; // every Nth change of a track stores its whole sequence, the ones between only what changed
+
+    // A change and what its sequence is made from; encoded once, off the request thread, when it is written
+    private static final class PendingChange {
+        private final TrackChange change;
+        private final String musicalSequence;
+        private final String previousSequence;       // set for a full update
+        private final List<NoteOperation> operations; // set for a patch
+        private String blob;                          // the sequence as stored in track_blob, for a keyframe
+
+        PendingChange(TrackChange change, String musicalSequence, String previousSequence, List<NoteOperation> operations) {
+            this.change = change;
+            this.musicalSequence = musicalSequence;
+            this.previousSequence = previousSequence;
+            this.operations = operations;
+        }
+    }
+
+    private final Queue<PendingChange> pending = new ConcurrentLinkedQueue<>();
+    private final Object writeLock = new Object(); // the scheduler and a replay may both write; changes stay in order
+
+    // Track id -> changes written since its last keyframe; a track not in here gets a keyframe next. Only touched under writeLock
+    private final Map<Long, Integer> sinceKeyframe = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Integer> eldest) {
+            return size() > TRACKED_TRACKS;
+        }
+    };
+
+    public TrackChangeServiceImpl(TrackChangeRepository trackChangeRepository, TrackBlobWriter trackBlobWriter,
+                                  PlatformTransactionManager transactionManager) {
+        this.trackChangeRepository = trackChangeRepository;
+        this.trackBlobWriter = trackBlobWriter;
+        // Its own transaction, so a replay running in a read-only one can write what is queued first
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    @Override
+    public void record(TrackChangeType type, Track track) {
+        boolean deleted = type == TrackChangeType.DELETE;
+        queue(change(type, track, deleted), deleted ? null : track.getMusicalSequence(), null, null);
+    }
+
+    @Override
+    public void recordUpdate(Track track, String previousSequence) {
+        queue(change(TrackChangeType.MODIFY, track, false), track.getMusicalSequence(), previousSequence, null);
+    }
+
+    @Override
+    public void recordPatch(Track track, List<NoteOperation> operations) {
+        queue(change(TrackChangeType.MODIFY, track, false), track.getMusicalSequence(), null, List.copyOf(operations));
+    }
+
+    private TrackChange change(TrackChangeType type, Track track, boolean deleted) {
+        return TrackChange.builder()
+                .trackId(track.getId())
+                .projectId(track.getProject().getId())
+                .userId(getCurrentUserId())
+                .changedAt(LocalDateTime.now())
+                .changeType(type)
+                .instrument(deleted ? null : track.getInstrument())
+                .build();
+    }
+
+    private void queue(TrackChange change, String musicalSequence, String previousSequence, List<NoteOperation> operations) {
+        PendingChange entry = new PendingChange(change, musicalSequence, previousSequence, operations);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    pending.add(entry);
+                }
+            });
+        } else {
+            pending.add(entry);
+        }
+    }
+
+    @Override
+    @Scheduled(fixedDelayString = "${app.track-changes.flush-interval-ms:250}")
+    public void writePending() {
+        synchronized (writeLock) {
+            List<PendingChange> batch = drain();
+            while (!batch.isEmpty()) {
+                batch.forEach(this::encode);
+                writeBatch(batch);
+                batch = drain();
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        writePending();
+    }
+
+    private List<PendingChange> drain() {
+        List<PendingChange> batch = new ArrayList<>();
+        PendingChange entry;
+        while (batch.size() < batchSize && (entry = pending.poll()) != null) {
+            batch.add(entry);
+        }
+        return batch;
+    }
+
+    // One transaction per batch; if it fails, each change is retried alone so one bad entry does not cost the others
+    private void writeBatch(List<PendingChange> batch) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> insert(batch));
+            log.debug("Wrote {} track changes", batch.size());
+        } catch (RuntimeException e) {
+            log.warn("Track change batch of {} failed, writing them one by one: {}", batch.size(), e.getMessage());
+            batch.forEach(entry -> entry.change.setId(null)); // ids handed out by the rolled back transaction
+            for (PendingChange entry : batch) {
+                try {
+                    transactionTemplate.executeWithoutResult(status -> insert(List.of(entry)));
+                } catch (RuntimeException single) {
+                    sinceKeyframe.remove(entry.change.getTrackId()); // the chain is broken: the track's next change is a keyframe
+                    log.error("Error writing {} change of track ID {}: {}", entry.change.getChangeType(), entry.change.getTrackId(), single.getMessage(), single);
+                }
+            }
+        }
+    }
+
+    // Between keyframes a change keeps only its operations or changed notes; a keyframe hashes and stores the whole sequence
+    private void encode(PendingChange entry) {
+        TrackChange change = entry.change;
+        if (change.getChangeType() == TrackChangeType.DELETE) {
+            sinceKeyframe.remove(change.getTrackId());
+            return;
+        }
+        Integer since = sinceKeyframe.get(change.getTrackId());
+        if (change.getChangeType() == TrackChangeType.MODIFY && since != null && since + 1 < keyframeInterval) {
+            if (entry.operations != null) {
+                change.setSequenceOperations(TrackChangeDeltas.writeOperations(entry.operations));
+            } else if (entry.previousSequence != null) {
+                SnapshotDeltas.diffSequence(entry.previousSequence, entry.musicalSequence).ifPresent(change::setSequenceDelta);
+            }
+            if (TrackChangeDeltas.isDelta(change)) {
+                sinceKeyframe.put(change.getTrackId(), since + 1);
+                return;
+            }
+        }
+        if (entry.musicalSequence != null) {
+            // As the track reads back from the database, so the change shares its blob with the version snapshots
+            entry.blob = SequenceCodec.encodeJson(entry.musicalSequence).map(SequenceCodec::decodeToJson).orElse(entry.musicalSequence);
+            change.setSequenceHash(SnapshotBlobs.hash(entry.blob));
+        }
+        sinceKeyframe.put(change.getTrackId(), 0);
+    }
+
+    // Sequences are stored once per distinct content, as for version snapshots
+    private void insert(List<PendingChange> batch) {
+        Map<String, String> blobs = new LinkedHashMap<>();
+        for (PendingChange entry : batch) {
+            if (entry.blob != null) {
+                blobs.put(entry.change.getSequenceHash(), entry.blob);
+            }
+        }
+        trackBlobWriter.storeMissing(blobs);
+        trackChangeRepository.saveAll(batch.stream().map(entry -> entry.change).toList());
+    }
+
+    private Long getCurrentUserId() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return authentication != null && authentication.getPrincipal() instanceof User user ? user.getId() : null;
+    }
+}
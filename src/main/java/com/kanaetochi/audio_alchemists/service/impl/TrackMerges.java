@@ -0,0 +1,58 @@
+package com.kanaetochi.audio_alchemists.service.impl;
+
+import java.util.ArrayList;
+import java.util.Objects;
+import java.util.Optional;
+
+import com.kanaetochi.audio_alchemists.model.Track;
+import com.kanaetochi.audio_alchemists.sequence.MusicalSequence;
+import com.kanaetochi.audio_alchemists.sequence.SequenceCodec;
+import com.kanaetochi.audio_alchemists.sequence.SequenceMerger;
+
+/**
+ * Three-way merge of a track's instrument and sequence against the revision both sides started from.
+ * Whichever side changed a value keeps it; when both changed the sequence it is merged note by note.
+ */
+final class TrackMerges {
+
+    record Merged(String instrument, String musicalSequence) {}
+
+    private TrackMerges() {
+    }
+
+    // Empty when both sides changed the same thing, or a sequence both changed cannot be merged
+    static Optional<Merged> merge(TrackRevisionStore.Revision base, Track current, Track incoming) {
+        if (changedOnBothSides(base.instrument(), current.getInstrument(), incoming.getInstrument())) {
+            return Optional.empty();
+        }
+        String instrument = pickChanged(base.instrument(), current.getInstrument(), incoming.getInstrument());
+        if (!changedOnBothSides(base.musicalSequence(), current.getMusicalSequence(), incoming.getMusicalSequence())) {
+            return Optional.of(new Merged(instrument, pickChanged(base.musicalSequence(), current.getMusicalSequence(), incoming.getMusicalSequence())));
+        }
+        Optional<MusicalSequence> baseSequence = parse(base.musicalSequence());
+        Optional<MusicalSequence> currentSequence = parse(current.getMusicalSequence());
+        Optional<MusicalSequence> incomingSequence = parse(incoming.getMusicalSequence());
+        if (baseSequence.isEmpty() || currentSequence.isEmpty() || incomingSequence.isEmpty()) {
+            return Optional.empty();
+        }
+        return SequenceMerger.merge(baseSequence.get(), currentSequence.get(), incomingSequence.get())
+                .map(merged -> new Merged(instrument, SequenceCodec.toJson(merged)));
+    }
+
+    // Empty for free-form sequences, which cannot be merged
+    static Optional<MusicalSequence> parse(String json) {
+        if (json == null || json.isBlank()) {
+            return Optional.of(MusicalSequence.builder().notes(new ArrayList<>()).build());
+        }
+        return SequenceCodec.parse(json);
+    }
+
+    private static boolean changedOnBothSides(String base, String current, String incoming) {
+        return !Objects.equals(current, incoming) && !Objects.equals(current, base) && !Objects.equals(incoming, base);
+    }
+
+    // Whichever side changed the value since base, when only one did
+    private static String pickChanged(String base, String current, String incoming) {
+        return Objects.equals(current, base) ? incoming : current;
+    }
+}
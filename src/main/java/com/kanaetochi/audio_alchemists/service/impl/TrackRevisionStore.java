@@ -0,0 +1,103 @@
+package com.kanaetochi.audio_alchemists.service.impl;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.kanaetochi.audio_alchemists.model.Track;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Recent versions of each track's content, kept so an edit made against an older version can be merged instead
+ * of rejected. Versions are recorded as they are written; once the estimated size passes the limit the oldest
+ * versions of the least recently written tracks go first.
+ *
+ * Metrics: aa.track.revisions.evictions, and aa.track.revisions.bytes for the current size.
+ */
+@Component
+public class TrackRevisionStore {
+
+    private static final int REVISIONS_PER_TRACK = 32;
+    private static final long REVISION_OVERHEAD = 96; // map entries, key and record
+
+    public record Revision(Integer version, String instrument, String musicalSequence) {}
+
+    private final Map<Long, LinkedHashMap<Integer, Revision>> revisions = new LinkedHashMap<>(16, 0.75f, true); // by track id, in access order
+    private final long maxBytes;
+    private long bytes;
+
+    private final Counter evictions;
+
+    public TrackRevisionStore(MeterRegistry meterRegistry, @Value("${app.tracks.revision-store-bytes:67108864}") long maxBytes) {
+        this.maxBytes = maxBytes;
+        this.evictions = Counter.builder("aa.track.revisions.evictions").register(meterRegistry);
+        Gauge.builder("aa.track.revisions.bytes", this, TrackRevisionStore::currentBytes).baseUnit("bytes").register(meterRegistry);
+    }
+
+    public synchronized void record(Track track) {
+        if (track == null || track.getId() == null || track.getVersion() == null) {
+            return;
+        }
+        Revision revision = new Revision(track.getVersion(), track.getInstrument(), track.getMusicalSequence());
+        long size = sizeOf(revision);
+        if (size > maxBytes) {
+            return; // would push out everything else
+        }
+        LinkedHashMap<Integer, Revision> trackRevisions = revisions.computeIfAbsent(track.getId(), id -> new LinkedHashMap<>());
+        Revision previous = trackRevisions.put(revision.version(), revision);
+        bytes += size - (previous != null ? sizeOf(previous) : 0);
+        if (trackRevisions.size() > REVISIONS_PER_TRACK) {
+            bytes -= removeOldest(trackRevisions);
+        }
+        Iterator<LinkedHashMap<Integer, Revision>> eldest = revisions.values().iterator();
+        while (bytes > maxBytes && eldest.hasNext()) {
+            LinkedHashMap<Integer, Revision> oldestTrack = eldest.next();
+            while (bytes > maxBytes && !oldestTrack.isEmpty()) {
+                bytes -= removeOldest(oldestTrack);
+                evictions.increment();
+            }
+            if (oldestTrack.isEmpty()) {
+                eldest.remove();
+            }
+        }
+    }
+
+    public synchronized Optional<Revision> find(Long trackId, Integer version) {
+        LinkedHashMap<Integer, Revision> trackRevisions = revisions.get(trackId);
+        return trackRevisions != null ? Optional.ofNullable(trackRevisions.get(version)) : Optional.empty();
+    }
+
+    public synchronized void forget(Long trackId) {
+        LinkedHashMap<Integer, Revision> trackRevisions = revisions.remove(trackId);
+        if (trackRevisions != null) {
+            trackRevisions.values().forEach(revision -> bytes -= sizeOf(revision));
+        }
+    }
+
+    synchronized long currentBytes() {
+        return bytes;
+    }
+
+    private static long removeOldest(LinkedHashMap<Integer, Revision> trackRevisions) {
+        Iterator<Revision> oldest = trackRevisions.values().iterator();
+        long size = sizeOf(oldest.next());
+        oldest.remove();
+        return size;
+    }
+
+    // Two bytes a character, as an upper bound
+    static long sizeOf(Revision revision) {
+        return REVISION_OVERHEAD + chars(revision.instrument()) + chars(revision.musicalSequence());
+    }
+
+    private static long chars(String value) {
+        return value != null ? 2L * value.length() : 0;
+    }
+}
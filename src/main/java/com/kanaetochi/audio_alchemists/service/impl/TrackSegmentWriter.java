@@ -0,0 +1,93 @@
+package com.kanaetochi.audio_alchemists.service.impl;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.stereotype.Component;
+
+import com.kanaetochi.audio_alchemists.model.Track;
+import com.kanaetochi.audio_alchemists.model.TrackSegment;
+import com.kanaetochi.audio_alchemists.repository.TrackRepository;
+import com.kanaetochi.audio_alchemists.repository.TrackSegmentRepository;
+import com.kanaetochi.audio_alchemists.sequence.MusicalSequence;
+import com.kanaetochi.audio_alchemists.sequence.SequenceCodec;
+import com.kanaetochi.audio_alchemists.sequence.SequenceSegments;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Keeps a track's time segments in step with its sequence. Called inside the transaction that writes the track,
+ * once its new version is known: segments whose notes did not change only have their version moved on, the others
+ * are cut again. Window reads never write, so a track no write has reached since segments came in is read whole.
+ */
+@Component
+@RequiredArgsConstructor
+public class TrackSegmentWriter {
+
+    private record Cut(SequenceSegments.Segment segment, byte[] data) {}
+
+    private final TrackSegmentRepository trackSegmentRepository;
+    private final TrackRepository trackRepository;
+
+    // previousSequence and previousVersion are what the database held before this write, both null for a new track
+    public void written(Track track, String previousSequence, Integer previousVersion) {
+        Map<Integer, Cut> next = cut(track.getMusicalSequence());
+        if (next == null) {
+            trackSegmentRepository.deleteByTrackId(track.getId()); // free-form sequences cannot be read by window
+            return;
+        }
+        Map<Integer, Cut> previous = previousVersion != null ? cut(previousSequence) : null;
+        Collection<Cut> changed;
+        if (previous != null && trackSegmentRepository.countByTrackIdAndTrackVersion(track.getId(), previousVersion) == previous.size()) {
+            Set<Integer> stale = new HashSet<>(previous.keySet()); // segments emptied or changed by this write
+            stale.removeIf(index -> next.containsKey(index) && Arrays.equals(next.get(index).data(), previous.get(index).data()));
+            changed = next.values().stream()
+                    .filter(cut -> !previous.containsKey(cut.segment().index()) || stale.contains(cut.segment().index()))
+                    .toList();
+            if (!stale.isEmpty()) {
+                trackSegmentRepository.deleteSegments(track.getId(), stale);
+            }
+            trackSegmentRepository.moveToVersion(track.getId(), track.getVersion());
+        } else {
+            // No segments yet, or not the ones the previous sequence was cut into
+            trackSegmentRepository.deleteByTrackId(track.getId());
+            changed = next.values();
+        }
+        if (changed.isEmpty()) {
+            return;
+        }
+        Track reference = trackRepository.getReferenceById(track.getId());
+        trackSegmentRepository.saveAll(changed.stream()
+                .map(cut -> TrackSegment.builder()
+                        .track(reference)
+                        .segmentIndex(cut.segment().index())
+                        .startTick(cut.segment().startTick())
+                        .maxEndTick(cut.segment().maxEndTick())
+                        .trackVersion(track.getVersion())
+                        .data(cut.data())
+                        .build())
+                .toList());
+    }
+
+    // By segment index; null for a free-form sequence
+    private static Map<Integer, Cut> cut(String json) {
+        MusicalSequence sequence;
+        if (json == null || json.isBlank()) {
+            sequence = SequenceSegments.parse(json);
+        } else {
+            sequence = SequenceCodec.parse(json).orElse(null);
+            if (sequence == null) {
+                return null;
+            }
+        }
+        Map<Integer, Cut> cuts = new LinkedHashMap<>();
+        for (SequenceSegments.Segment segment : SequenceSegments.split(sequence)) {
+            cuts.put(segment.index(), new Cut(segment, SequenceSegments.encode(segment.sequence())));
+        }
+        return cuts;
+    }
+}
@@ -1,17 +1,47 @@
 package com.kanaetochi.audio_alchemists.service.impl;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
+import org.springframework.data.domain.PageRequest;
 import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import com.kanaetochi.audio_alchemists.dto.SequencePatchDto;
+import com.kanaetochi.audio_alchemists.dto.SequencePatchResultDto;
+import com.kanaetochi.audio_alchemists.dto.SequenceWindowDto;
+import com.kanaetochi.audio_alchemists.dto.TrackBatchOperation;
+import com.kanaetochi.audio_alchemists.dto.TrackBatchResultDto;
+import com.kanaetochi.audio_alchemists.dto.TrackSummaryDto;
 import com.kanaetochi.audio_alchemists.exception.ConcurrentEditException;
 import com.kanaetochi.audio_alchemists.exception.ResourceNotFoundException;
 import com.kanaetochi.audio_alchemists.model.Project;
 import com.kanaetochi.audio_alchemists.model.Track;
+import com.kanaetochi.audio_alchemists.model.TrackChangeType;
+import com.kanaetochi.audio_alchemists.model.TrackSegment;
 import com.kanaetochi.audio_alchemists.repository.ProjectRepository;
 import com.kanaetochi.audio_alchemists.repository.TrackRepository;
+import com.kanaetochi.audio_alchemists.repository.TrackSegmentRepository;
+import com.kanaetochi.audio_alchemists.sequence.MusicalSequence;
+import com.kanaetochi.audio_alchemists.sequence.NoteEvent;
+import com.kanaetochi.audio_alchemists.sequence.NoteOperation;
+import com.kanaetochi.audio_alchemists.sequence.SequenceCodec;
+import com.kanaetochi.audio_alchemists.sequence.SequenceMerger;
+import com.kanaetochi.audio_alchemists.sequence.SequencePatcher;
+import com.kanaetochi.audio_alchemists.sequence.SequenceSegments;
+import com.kanaetochi.audio_alchemists.service.LiveProjectService;
+import com.kanaetochi.audio_alchemists.service.TrackChangeService;
 import com.kanaetochi.audio_alchemists.service.TrackService;
 
 import lombok.RequiredArgsConstructor;
@@ -20,43 +50,339 @@ import lombok.RequiredArgsConstructor;
 @RequiredArgsConstructor
 public class TrackServiceImpl implements TrackService {
 
+    private static final int WRITE_ATTEMPTS = 3;
+
     private final TrackRepository trackRepository;
     private final ProjectRepository projectRepository;
+    private final LiveProjectService liveProjectService;
+    private final TrackSegmentRepository trackSegmentRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final TrackRevisionStore trackRevisionStore;
+    private final TrackChangeService trackChangeService;
+    private final TrackSegmentWriter trackSegmentWriter;
 
     @Override
     public Track createTrack(Track track, Long projectId) {
         Project project = projectRepository.findById(projectId).orElseThrow(() -> new ResourceNotFoundException("Project not found"));
         track.setProject(project);
-        return trackRepository.save(track);
+        Track savedTrack = transactionTemplate.execute(status -> {
+            Track saved = trackRepository.save(track);
+            trackSegmentWriter.written(saved, null, null);
+            return saved;
+        });
+        liveProjectService.trackCreated(savedTrack);
+        trackRevisionStore.record(savedTrack);
+        trackChangeService.record(TrackChangeType.ADD, savedTrack);
+        return savedTrack;
     }
 
     @Override
     public List<Track> getAllTracksByProject(Long projectId) {
-        return trackRepository.findAll().stream().filter(track -> track.getProject().getId().equals(projectId)).toList();
+        return liveProjectService.getTracks(projectId)
+                .orElseGet(() -> trackRepository.findByProjectIdOrderByIdAsc(projectId));
+    }
+
+    @Override
+    public List<TrackSummaryDto> getTrackSummariesByProject(Long projectId, Long afterId, int size) {
+        long after = afterId != null ? afterId : 0L;
+        Optional<List<Track>> liveTracks = liveProjectService.getTracks(projectId);
+        if (liveTracks.isPresent()) {
+            return liveTracks.get().stream()
+                    .filter(track -> track.getId() > after)
+                    .limit(size)
+                    .map(this::toSummary)
+                    .toList();
+        }
+        return trackRepository.findSummariesByProjectIdAfter(projectId, after, PageRequest.of(0, size));
     }
 
     @Override
     public Optional<Track> getTrackById(Long id) {
-        return trackRepository.findById(id);
+        Optional<Track> liveTrack = liveProjectService.getTrack(id);
+        return liveTrack.isPresent() ? liveTrack : trackRepository.findById(id);
+    }
+
+    @Override
+    public Optional<Integer> getTrackVersion(Long id) {
+        Optional<Track> liveTrack = liveProjectService.getTrack(id);
+        return liveTrack.isPresent() ? liveTrack.map(Track::getVersion) : trackRepository.findVersionById(id);
+    }
+
+    @Override
+    public Optional<Long> getTrackProjectId(Long id) {
+        return trackRepository.findProjectIdById(id);
+    }
+
+    @Override
+    public SequenceWindowDto getSequenceWindow(Long id, long fromTick, long toTick) {
+        Optional<Track> liveTrack = liveProjectService.getTrack(id);
+        if (liveTrack.isPresent()) {
+            return toWindow(liveTrack.get(), SequenceSegments.parse(liveTrack.get().getMusicalSequence()), fromTick, toTick);
+        }
+
+        // Only the segments overlapping the window are read, as long as they were cut from the current version
+        Optional<Integer> version = trackRepository.findVersionById(id);
+        if (version.isPresent()) {
+            List<TrackSegment> segments = trackSegmentRepository.findWindow(id, fromTick, toTick);
+            if (!segments.isEmpty() && segments.stream().allMatch(segment -> version.get().equals(segment.getTrackVersion()))) {
+                MusicalSequence header = null;
+                List<NoteEvent> notes = new ArrayList<>();
+                for (TrackSegment segment : segments) {
+                    MusicalSequence part = SequenceSegments.decode(segment.getData());
+                    if (segment.getSegmentIndex() == 0) {
+                        header = part;
+                    }
+                    notes.addAll(SequenceSegments.window(part.getNotes(), fromTick, toTick));
+                }
+                return SequenceWindowDto.builder()
+                        .trackId(id)
+                        .version(version.get())
+                        .fromTick(fromTick)
+                        .toTick(toTick)
+                        .channel(header != null ? header.getChannel() : null)
+                        .program(header != null ? header.getProgram() : null)
+                        .notes(notes)
+                        .build();
+            }
+        }
+
+        // No segments yet, or cut from another version: the whole sequence is read instead; writes keep segments, reads never do
+        Track track = trackRepository.findById(id).orElseThrow(() -> new ResourceNotFoundException("Track", "id", id));
+        return toWindow(track, SequenceSegments.parse(track.getMusicalSequence()), fromTick, toTick);
     }
 
     @Override
     public Track updateTrack(Long id, Track trackDetails) {
-        try {
+        // Live projects take the edit in memory; it reaches the database with the next flush
+        AtomicReference<String> livePrevious = new AtomicReference<>();
+        Optional<Track> liveTrack = liveProjectService.editTrack(id, track -> {
+            livePrevious.set(track.getMusicalSequence());
+            trackRevisionStore.record(track); // the version being replaced, which clients may still be editing against
+            applyUpdate(track, trackDetails, trackDetails.getVersion());
+        });
+        if (liveTrack.isPresent()) {
+            trackRevisionStore.record(liveTrack.get());
+            trackChangeService.recordUpdate(liveTrack.get(), livePrevious.get());
+            return liveTrack.get();
+        }
+        AtomicReference<Integer> baseVersion = new AtomicReference<>(trackDetails.getVersion()); // without one, the version first read
+        return writeMerging(() -> {
             Track track = trackRepository.findById(id).orElseThrow(() -> new ResourceNotFoundException("Track", "id", id));
-            track.setInstrument(trackDetails.getInstrument());
-            track.setMusicalSequence(trackDetails.getMusicalSequence());
-            return trackRepository.save(track);
-        } catch (ObjectOptimisticLockingFailureException e) {
-            throw new ConcurrentEditException("The track has been modified by another user. Please refresh your changes.");
+            String previous = track.getMusicalSequence();
+            Integer previousVersion = track.getVersion();
+            baseVersion.compareAndSet(null, previousVersion);
+            trackRevisionStore.record(track);
+            applyUpdate(track, trackDetails, baseVersion.get());
+            Track savedTrack = trackRepository.save(track);
+            trackRepository.flush(); // the segments are cut at the version this write gets
+            trackSegmentWriter.written(savedTrack, previous, previousVersion);
+            trackRevisionStore.record(savedTrack);
+            trackChangeService.recordUpdate(savedTrack, previous);
+            return savedTrack;
+        });
+    }
+
+    @Override
+    public SequencePatchResultDto patchSequence(Long id, SequencePatchDto patch) {
+        List<NoteOperation> liveApplied = new ArrayList<>();
+        Optional<Track> liveTrack = liveProjectService.editTrack(id, track -> {
+            trackRevisionStore.record(track);
+            checkPatchBase(track, patch, patch.getVersion());
+            MusicalSequence sequence = SequencePatcher.parseForEdit(track.getMusicalSequence());
+            liveApplied.addAll(SequencePatcher.apply(sequence, patch.getOperations()));
+            track.setMusicalSequence(SequenceCodec.toJson(sequence));
+        });
+        if (liveTrack.isPresent()) {
+            trackRevisionStore.record(liveTrack.get());
+            trackChangeService.recordPatch(liveTrack.get(), liveApplied);
+            return SequencePatchResultDto.builder()
+                    .trackId(id)
+                    .version(liveTrack.get().getVersion())
+                    .operations(liveApplied)
+                    .build();
         }
+        AtomicReference<Integer> baseVersion = new AtomicReference<>(patch.getVersion());
+        return writeMerging(() -> {
+            Track track = trackRepository.findById(id).orElseThrow(() -> new ResourceNotFoundException("Track", "id", id));
+            String previous = track.getMusicalSequence();
+            Integer previousVersion = track.getVersion();
+            baseVersion.compareAndSet(null, previousVersion);
+            trackRevisionStore.record(track);
+            checkPatchBase(track, patch, baseVersion.get());
+            MusicalSequence sequence = SequencePatcher.parseForEdit(track.getMusicalSequence());
+            List<NoteOperation> applied = SequencePatcher.apply(sequence, patch.getOperations());
+            track.setMusicalSequence(SequenceCodec.toJson(sequence));
+            Track savedTrack = trackRepository.save(track);
+            trackRepository.flush();
+            trackSegmentWriter.written(savedTrack, previous, previousVersion);
+            trackRevisionStore.record(savedTrack);
+            trackChangeService.recordPatch(savedTrack, applied);
+            return SequencePatchResultDto.builder()
+                    .trackId(savedTrack.getId())
+                    .version(savedTrack.getVersion())
+                    .operations(applied)
+                    .build();
+        });
     }
 
     @Override
     public void deleteTrack(Long id) {
-        trackRepository.findById(id)
+        Track track = trackRepository.findById(id)
                 .orElseThrow(() -> new ResourceNotFoundException("Track", "id", id));
+        liveProjectService.trackDeleted(id); // drop pending edits first so no flush races the delete
         trackRepository.deleteById(id);
+        trackRevisionStore.forget(id);
+        trackChangeService.record(TrackChangeType.DELETE, track);
+    }
+
+    @Override
+    @Transactional
+    public TrackBatchResultDto applyBatch(Long projectId, List<TrackBatchOperation> operations) {
+        Project project = projectRepository.findById(projectId).orElseThrow(() -> new ResourceNotFoundException("Project", "id", projectId));
+        liveProjectService.flush(projectId); // the batch works against the database, so pending live edits go first
+
+        // One query for every track the batch touches
+        Set<Long> ids = operations.stream()
+                .filter(op -> op.getType() != TrackBatchOperation.Type.CREATE)
+                .map(TrackBatchOperation::getId)
+                .collect(Collectors.toSet());
+        Map<Long, Track> existing = trackRepository.findAllById(ids).stream()
+                .filter(track -> track.getProject().getId().equals(projectId))
+                .collect(Collectors.toMap(Track::getId, Function.identity()));
+
+        List<Track> created = new ArrayList<>();
+        Map<Long, Track> updated = new LinkedHashMap<>(); // by id, a track updated twice is reported once
+        Map<Long, String> previousSequences = new HashMap<>(); // what the change log diffs each updated track against
+        Map<Long, Integer> previousVersions = new HashMap<>(); // and the version its segments were cut at
+        List<Track> deleted = new ArrayList<>();
+        for (TrackBatchOperation op : operations) {
+            switch (op.getType()) {
+                case CREATE -> created.add(Track.builder()
+                        .project(project)
+                        .instrument(op.getInstrument())
+                        .musicalSequence(op.getMusicalSequence())
+                        .build());
+                case UPDATE -> {
+                    Track track = existing.get(op.getId());
+                    if (track == null) {
+                        throw new ResourceNotFoundException("Track", "id", op.getId());
+                    }
+                    checkVersion(track, op.getVersion());
+                    previousSequences.putIfAbsent(track.getId(), track.getMusicalSequence());
+                    previousVersions.putIfAbsent(track.getId(), track.getVersion());
+                    trackRevisionStore.record(track);
+                    track.setInstrument(op.getInstrument());
+                    track.setMusicalSequence(op.getMusicalSequence());
+                    updated.put(track.getId(), track);
+                }
+                case DELETE -> {
+                    Track track = existing.remove(op.getId());
+                    if (track == null) {
+                        throw new ResourceNotFoundException("Track", "id", op.getId());
+                    }
+                    updated.remove(track.getId());
+                    deleted.add(track);
+                }
+            }
+        }
+
+        try {
+            // Sequence ids are pre-allocated, so inserts, updates and deletes all go out as JDBC batches on this flush
+            trackRepository.saveAll(created);
+            trackRepository.deleteAll(deleted);
+            trackRepository.flush();
+        } catch (ObjectOptimisticLockingFailureException e) {
+            throw concurrentEdit();
+        }
+        created.forEach(track -> trackSegmentWriter.written(track, null, null));
+        updated.values().forEach(track -> trackSegmentWriter.written(track, previousSequences.get(track.getId()), previousVersions.get(track.getId())));
+        created.forEach(trackRevisionStore::record);
+        updated.values().forEach(trackRevisionStore::record);
+        created.forEach(track -> trackChangeService.record(TrackChangeType.ADD, track));
+        updated.values().forEach(track -> trackChangeService.recordUpdate(track, previousSequences.get(track.getId())));
+        deleted.forEach(track -> trackChangeService.record(TrackChangeType.DELETE, track));
+        liveProjectService.refresh(projectId);
+
+        return TrackBatchResultDto.builder()
+                .projectId(projectId)
+                .created(created.stream().map(this::toSummary).toList())
+                .updated(updated.values().stream().map(this::toSummary).toList())
+                .deleted(deleted.stream().map(Track::getId).toList())
+                .build();
+    }
+
+    private SequenceWindowDto toWindow(Track track, MusicalSequence sequence, long fromTick, long toTick) {
+        return SequenceWindowDto.builder()
+                .trackId(track.getId())
+                .version(track.getVersion())
+                .fromTick(fromTick)
+                .toTick(toTick)
+                .channel(sequence.getChannel())
+                .program(sequence.getProgram())
+                .notes(SequenceSegments.window(sequence.getNotes(), fromTick, toTick))
+                .build();
+    }
+
+    private TrackSummaryDto toSummary(Track track) {
+        return new TrackSummaryDto(track.getId(), track.getInstrument(), track.getUpdatedAt(), track.getVersion());
+    }
+
+    private void checkVersion(Track track, Integer expectedVersion) {
+        if (expectedVersion != null && !expectedVersion.equals(track.getVersion())) {
+            throw concurrentEdit();
+        }
+    }
+
+    // A full update made against an older version is merged with whatever changed since; 409 only when both changed the same thing
+    private void applyUpdate(Track current, Track details, Integer baseVersion) {
+        if (baseVersion == null || baseVersion.equals(current.getVersion())) {
+            current.setInstrument(details.getInstrument());
+            current.setMusicalSequence(details.getMusicalSequence());
+            return;
+        }
+        TrackRevisionStore.Revision base = trackRevisionStore.find(current.getId(), baseVersion).orElseThrow(this::concurrentEdit);
+        TrackMerges.Merged merged = TrackMerges.merge(base, current, details).orElseThrow(this::concurrentEdit);
+        current.setInstrument(merged.instrument());
+        current.setMusicalSequence(merged.musicalSequence());
+    }
+
+    // A patch made against an older version still applies if none of its notes changed since
+    private void checkPatchBase(Track current, SequencePatchDto patch, Integer baseVersion) {
+        if (baseVersion == null || baseVersion.equals(current.getVersion())) {
+            return;
+        }
+        TrackRevisionStore.Revision base = trackRevisionStore.find(current.getId(), baseVersion).orElseThrow(this::concurrentEdit);
+        Set<Long> changed = SequenceMerger.changedNoteIds(parseForMerge(base.musicalSequence()), parseForMerge(current.getMusicalSequence()));
+        if (changed == null || patch.getOperations() == null) {
+            throw concurrentEdit();
+        }
+        for (NoteOperation op : patch.getOperations()) {
+            Long noteId = op.getNoteId() != null ? op.getNoteId() : op.getNote() != null ? op.getNote().getId() : null;
+            if (noteId != null && changed.contains(noteId)) {
+                throw concurrentEdit();
+            }
+        }
+    }
+
+    // A write that lost the race to another one is read again and merged onto it against the same base; 409 only for a real conflict
+    private <T> T writeMerging(Supplier<T> write) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return transactionTemplate.execute(status -> write.get());
+            } catch (ObjectOptimisticLockingFailureException e) {
+                if (attempt >= WRITE_ATTEMPTS) {
+                    throw concurrentEdit();
+                }
+            }
+        }
+    }
+
+    private MusicalSequence parseForMerge(String json) {
+        return TrackMerges.parse(json).orElseThrow(this::concurrentEdit); // free-form sequences cannot be merged
+    }
+
+    private ConcurrentEditException concurrentEdit() {
+        return new ConcurrentEditException("The track has been modified by another user. Please refresh your changes.");
     }
 
 }
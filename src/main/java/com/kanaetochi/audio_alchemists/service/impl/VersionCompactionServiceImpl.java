@@ -0,0 +1,258 @@
+package com.kanaetochi.audio_alchemists.service.impl;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.kanaetochi.audio_alchemists.exception.ResourceNotFoundException;
+import com.kanaetochi.audio_alchemists.model.ProjectVersion;
+import com.kanaetochi.audio_alchemists.model.VersionKind;
+import com.kanaetochi.audio_alchemists.repository.ProjectVersionRepository;
+import com.kanaetochi.audio_alchemists.repository.ProjectVersionRepository.StoredSnapshot;
+import com.kanaetochi.audio_alchemists.repository.TrackBlobRepository;
+import com.kanaetochi.audio_alchemists.repository.TrackChangeRepository;
+import com.kanaetochi.audio_alchemists.service.VersionCompactionService;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class VersionCompactionServiceImpl implements VersionCompactionService {
+
+    private static final int PAGE_SIZE = 100;
+    private static final int RECENT_SNAPSHOTS = 8; // full snapshots kept while walking, for deltas whose base is not their predecessor
+
+    private final ProjectVersionRepository projectVersionRepository;
+    private final TrackBlobRepository trackBlobRepository;
+    private final TrackChangeRepository trackChangeRepository;
+    private final VersionDiffCache versionDiffCache;
+    private final VersionSnapshotCache versionSnapshotCache;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${app.versions.keyframe-interval:20}")
+    private int keyframeInterval;
+
+    @Value("${app.versions.retention.keep-all-hours:24}")
+    private long keepAllHours;
+
+    @Value("${app.versions.retention.hourly-days:7}")
+    private long hourlyDays; // age up to which one version per hour is kept; older ones keep one per day
+
+    @Value("${app.versions.compaction.batch-size:200}")
+    private int batchSize; // versions deleted per project and transaction
+
+    @Value("${app.versions.compaction.projects-per-run:20}")
+    private int projectsPerRun;
+
+    private volatile long lastProjectId = 0; // where the previous run stopped, so every project gets its turn
+
+    @Override
+    @Scheduled(fixedDelayString = "${app.versions.compaction.interval-ms:3600000}", initialDelayString = "${app.versions.compaction.interval-ms:3600000}")
+    public void compactNextProjects() {
+        LocalDateTime cutoff = LocalDateTime.now().minusHours(keepAllHours);
+        List<Long> projectIds = transactionTemplate.execute(status ->
+                projectVersionRepository.findProjectIdsWithVersionsBefore(cutoff, lastProjectId, Limit.of(projectsPerRun)));
+        lastProjectId = projectIds.size() < projectsPerRun ? 0 : projectIds.get(projectIds.size() - 1);
+        int deleted = 0;
+        for (Long projectId : projectIds) {
+            try {
+                deleted += compactProject(projectId);
+            } catch (RuntimeException e) {
+                log.error("Error compacting versions of project ID {}: {}", projectId, e.getMessage(), e);
+            }
+        }
+        if (deleted > 0) {
+            log.info("Compaction deleted {} versions across {} projects", deleted, projectIds.size());
+        }
+    }
+
+    private record Compacted(int deleted, Set<String> releasedHashes) {} // the blobs the deleted versions referred to
+
+    // One short transaction per project and batch; what is left over is picked up by the next run
+    @Override
+    public int compactProject(Long projectId) {
+        LocalDateTime now = LocalDateTime.now();
+        Compacted compacted = transactionTemplate.execute(status -> compact(projectId, now));
+        if (compacted == null || compacted.deleted() == 0) {
+            return 0;
+        }
+        versionDiffCache.forgetProject(projectId);
+        versionSnapshotCache.forgetProject(projectId);
+        Integer swept = transactionTemplate.execute(status -> sweepBlobs(compacted.releasedHashes()));
+        log.info("Compacted project ID: {}, deleted {} versions and {} track blobs", projectId, compacted.deleted(), swept);
+        return compacted.deleted();
+    }
+
+    private Compacted compact(Long projectId, LocalDateTime now) {
+        TreeSet<Long> expired = VersionRetention.expired(projectVersionRepository.findStampsByProjectId(projectId), now,
+                Duration.ofHours(keepAllHours), Duration.ofDays(hourlyDays));
+        if (expired.isEmpty()) {
+            return new Compacted(0, Set.of());
+        }
+        TreeSet<Long> toDelete = expired.stream().limit(batchSize).collect(Collectors.toCollection(TreeSet::new));
+        ProjectVersion first = projectVersionRepository.findById(toDelete.first())
+                .orElseThrow(() -> new ResourceNotFoundException("Project Version", "id", toDelete.first()));
+
+        // Replay from the keyframe of the first version to go, rewriting kept versions until the chain is untouched again
+        ChainWalk walk = new ChainWalk(toDelete);
+        Long fromId = first.getKind() == VersionKind.DELTA ? first.getKeyframeId() : first.getId();
+        boolean walking = true;
+        while (walking) {
+            List<ProjectVersion> page = projectVersionRepository.findByProjectIdAndIdGreaterThanEqualOrderByIdAsc(projectId, fromId, Limit.of(PAGE_SIZE));
+            for (ProjectVersion version : page) {
+                if (!walk.step(version)) {
+                    walking = false;
+                    break;
+                }
+            }
+            if (page.size() < PAGE_SIZE) {
+                walking = false;
+            } else {
+                fromId = page.get(page.size() - 1).getId() + 1;
+            }
+        }
+        projectVersionRepository.deleteAll(walk.removed);
+        return new Compacted(walk.removed.size(), walk.releasedHashes);
+    }
+
+    // Deletes the released blobs nothing refers to any more. Blobs are shared by content across projects, so every version is
+    // read, a page at a time, until each candidate has turned up or none are left; only the one compacted batch is swept
+    private int sweepBlobs(Set<String> released) {
+        if (released.isEmpty()) {
+            return 0;
+        }
+        Set<String> unreferenced = new HashSet<>(trackBlobRepository.lockForSweep(released));
+        if (!unreferenced.isEmpty()) {
+            unreferenced.removeAll(trackChangeRepository.findReferencedHashes(unreferenced));
+        }
+        Long afterId = 0L;
+        while (!unreferenced.isEmpty()) {
+            List<StoredSnapshot> page = projectVersionRepository.findSnapshotsAfter(afterId, Limit.of(PAGE_SIZE));
+            page.forEach(version -> unreferenced.removeAll(SnapshotBlobs.hashesIn(version.getSnapshotData())));
+            if (page.size() < PAGE_SIZE) {
+                break;
+            }
+            afterId = page.get(page.size() - 1).getId();
+        }
+        if (!unreferenced.isEmpty()) {
+            trackBlobRepository.deleteAllByIdInBatch(unreferenced);
+        }
+        return unreferenced.size();
+    }
+
+    private class ChainWalk {
+
+        private final TreeSet<Long> toDelete;
+        private final List<ProjectVersion> removed = new ArrayList<>();
+        private final Set<String> releasedHashes = new HashSet<>();
+        private final Map<Long, String> recentSnapshots = new LinkedHashMap<>(16, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, String> eldest) {
+                return size() > RECENT_SNAPSHOTS;
+            }
+        };
+        private ProjectVersion lastKept;
+        private String lastKeptSnapshot;
+        private boolean previousDeleted;
+
+        ChainWalk(TreeSet<Long> toDelete) {
+            this.toDelete = toDelete;
+        }
+
+        // False once past the deleted versions and this one needed no change: everything after it is untouched
+        boolean step(ProjectVersion version) {
+            String snapshot = fullSnapshotOf(version);
+            recentSnapshots.put(version.getId(), snapshot);
+            boolean predecessorDeleted = previousDeleted;
+            previousDeleted = toDelete.contains(version.getId());
+            if (previousDeleted) {
+                removed.add(version);
+                releasedHashes.addAll(SnapshotBlobs.hashesIn(snapshot));
+                return true;
+            }
+            boolean changed = rebase(version, snapshot, predecessorDeleted);
+            lastKept = version;
+            lastKeptSnapshot = snapshot;
+            return changed || version.getId() < toDelete.last();
+        }
+
+        private String fullSnapshotOf(ProjectVersion version) {
+            if (version.getKind() != VersionKind.DELTA) {
+                return version.getSnapshotData();
+            }
+            String base = recentSnapshots.get(version.getBaseVersionId());
+            if (base == null) {
+                throw new IllegalStateException("Version " + version.getId() + " cannot be compacted: its base " + version.getBaseVersionId() + " was not replayed");
+            }
+            return SnapshotDeltas.apply(base, version.getSnapshotData());
+        }
+
+        // Points a kept version at the last kept one; the content it stands for never changes
+        private boolean rebase(ProjectVersion version, String snapshot, boolean predecessorDeleted) {
+            boolean isDelta = version.getKind() == VersionKind.DELTA;
+            if (lastKept == null) {
+                if (isDelta) {
+                    storeAsKeyframe(version, snapshot); // nothing before it in this walk survives
+                }
+                return isDelta;
+            }
+            int depth = depthOf(lastKept) + 1;
+            Long keyframeId = lastKept.getKind() == VersionKind.DELTA ? lastKept.getKeyframeId() : lastKept.getId();
+            if (isDelta && lastKept.getId().equals(version.getBaseVersionId())) {
+                if (depth >= keyframeInterval) {
+                    storeAsKeyframe(version, snapshot);
+                    return true;
+                }
+                boolean changed = !keyframeId.equals(version.getKeyframeId()) || depth != depthOf(version);
+                version.setKeyframeId(keyframeId);
+                version.setChainDepth(depth);
+                return changed;
+            }
+            if (!isDelta && !predecessorDeleted) {
+                return false;
+            }
+            // Its base is gone, or it is a keyframe after a gap: a delta against the last kept version when that is smaller
+            Optional<String> delta = depth < keyframeInterval ? SnapshotDeltas.diff(lastKeptSnapshot, snapshot) : Optional.empty();
+            if (delta.isPresent()) {
+                version.setKind(VersionKind.DELTA);
+                version.setSnapshotData(delta.get());
+                version.setBaseVersionId(lastKept.getId());
+                version.setKeyframeId(keyframeId);
+                version.setChainDepth(depth);
+                return true;
+            }
+            if (isDelta) {
+                storeAsKeyframe(version, snapshot);
+            }
+            return isDelta;
+        }
+
+        private void storeAsKeyframe(ProjectVersion version, String snapshot) {
+            version.setKind(VersionKind.KEYFRAME);
+            version.setSnapshotData(snapshot);
+            version.setBaseVersionId(null);
+            version.setKeyframeId(null);
+            version.setChainDepth(0);
+        }
+
+        private int depthOf(ProjectVersion version) {
+            return version.getKind() == VersionKind.DELTA && version.getChainDepth() != null ? version.getChainDepth() : 0;
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.kanaetochi.audio_alchemists.service.impl;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.kanaetochi.audio_alchemists.dto.VersionDiffDto;
+import com.kanaetochi.audio_alchemists.dto.VersionDiffDto.FieldChange;
+import com.kanaetochi.audio_alchemists.dto.VersionDiffDto.TrackDiff;
+import com.kanaetochi.audio_alchemists.sequence.NoteEvent;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Diffs between saved versions; both sides are immutable, so an entry stays valid until a version is deleted
+ * or the cache needs the room. The least recently read pairs go first once the estimated size passes the limit.
+ * The DTOs are mutable, so the cache keeps its own copy and hands out a fresh one on every hit.
+ *
+ * Metrics: aa.diff.cache.requests (tagged result=hit or miss), aa.diff.cache.evictions, and
+ * aa.diff.cache.bytes and aa.diff.cache.entries for the current size.
+ */
+@Component
+public class VersionDiffCache {
+
+    private static final long ENTRY_OVERHEAD = 128; // map entry, key, record and lists
+    private static final long ITEM_OVERHEAD = 64; // a field change, track diff or note
+
+    private record Key(Long projectId, Long fromVersionId, Long toVersionId) {}
+
+    private record Entry(VersionDiffDto diff, long bytes) {}
+
+    private final Map<Key, Entry> diffs = new LinkedHashMap<>(16, 0.75f, true); // in access order
+    private final long maxBytes;
+    private long bytes;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+
+    public VersionDiffCache(MeterRegistry meterRegistry, @Value("${app.versions.diff-cache-bytes:16777216}") long maxBytes) {
+        this.maxBytes = maxBytes;
+        this.hits = Counter.builder("aa.diff.cache.requests").tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder("aa.diff.cache.requests").tag("result", "miss").register(meterRegistry);
+        this.evictions = Counter.builder("aa.diff.cache.evictions").register(meterRegistry);
+        Gauge.builder("aa.diff.cache.bytes", this, VersionDiffCache::currentBytes).baseUnit("bytes").register(meterRegistry);
+        Gauge.builder("aa.diff.cache.entries", this, VersionDiffCache::currentEntries).register(meterRegistry);
+    }
+
+    public synchronized Optional<VersionDiffDto> find(Long projectId, Long fromVersionId, Long toVersionId) {
+        Entry entry = diffs.get(new Key(projectId, fromVersionId, toVersionId));
+        if (entry == null) {
+            misses.increment();
+            return Optional.empty();
+        }
+        hits.increment();
+        return Optional.of(copy(entry.diff()));
+    }
+
+    public synchronized void put(Long projectId, Long fromVersionId, Long toVersionId, VersionDiffDto diff) {
+        long size = sizeOf(diff);
+        if (size > maxBytes) {
+            return; // would push out everything else
+        }
+        Entry previous = diffs.put(new Key(projectId, fromVersionId, toVersionId), new Entry(copy(diff), size));
+        bytes += size - (previous != null ? previous.bytes() : 0);
+        Iterator<Entry> eldest = diffs.values().iterator();
+        while (bytes > maxBytes && eldest.hasNext()) {
+            bytes -= eldest.next().bytes();
+            eldest.remove();
+            evictions.increment();
+        }
+    }
+
+    public synchronized void forgetProject(Long projectId) {
+        Iterator<Map.Entry<Key, Entry>> entries = diffs.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<Key, Entry> entry = entries.next();
+            if (entry.getKey().projectId().equals(projectId)) {
+                bytes -= entry.getValue().bytes();
+                entries.remove();
+            }
+        }
+    }
+
+    synchronized long currentBytes() {
+        return bytes;
+    }
+
+    synchronized int currentEntries() {
+        return diffs.size();
+    }
+
+    // Two bytes a character, as an upper bound; changed notes are most of it
+    static long sizeOf(VersionDiffDto diff) {
+        long size = ENTRY_OVERHEAD + 8L * (count(diff.getAddedTrackIds()) + count(diff.getRemovedTrackIds())) + fieldsSize(diff.getChangedFields());
+        if (diff.getChangedTracks() != null) {
+            for (TrackDiff track : diff.getChangedTracks()) {
+                size += ITEM_OVERHEAD + fieldsSize(track.getChangedFields())
+                        + ITEM_OVERHEAD * (count(track.getAddedNotes()) + count(track.getRemovedNotes()) + count(track.getChangedNotes()));
+            }
+        }
+        return size;
+    }
+
+    private static long fieldsSize(List<FieldChange> fields) {
+        long size = 0;
+        if (fields != null) {
+            for (FieldChange field : fields) {
+                size += ITEM_OVERHEAD + chars(field.getField()) + chars(field.getFrom()) + chars(field.getTo());
+            }
+        }
+        return size;
+    }
+
+    private static long count(List<?> values) {
+        return values != null ? values.size() : 0;
+    }
+
+    private static long chars(String value) {
+        return value != null ? 2L * value.length() : 0;
+    }
+
+    private static long chars(JsonNode value) {
+        return value != null ? 2L * value.toString().length() : 0;
+    }
+
+    private static VersionDiffDto copy(VersionDiffDto diff) {
+        return VersionDiffDto.builder()
+                .projectId(diff.getProjectId())
+                .fromVersionId(diff.getFromVersionId())
+                .toVersionId(diff.getToVersionId())
+                .changedFields(copyFields(diff.getChangedFields()))
+                .addedTrackIds(copyList(diff.getAddedTrackIds()))
+                .removedTrackIds(copyList(diff.getRemovedTrackIds()))
+                .changedTracks(diff.getChangedTracks() != null ? diff.getChangedTracks().stream().map(VersionDiffCache::copy).toList() : null)
+                .build();
+    }
+
+    private static TrackDiff copy(TrackDiff track) {
+        return TrackDiff.builder()
+                .trackId(track.getTrackId())
+                .changedFields(copyFields(track.getChangedFields()))
+                .addedNotes(copyNotes(track.getAddedNotes()))
+                .removedNotes(copyNotes(track.getRemovedNotes()))
+                .changedNotes(copyNotes(track.getChangedNotes()))
+                .sequenceReplaced(track.getSequenceReplaced())
+                .build();
+    }
+
+    private static List<FieldChange> copyFields(List<FieldChange> fields) {
+        return fields != null ? fields.stream().map(field -> new FieldChange(field.getField(), deepCopy(field.getFrom()), deepCopy(field.getTo()))).toList() : null;
+    }
+
+    private static List<NoteEvent> copyNotes(List<NoteEvent> notes) {
+        return notes != null
+                ? notes.stream().map(note -> new NoteEvent(note.getId(), note.getTick(), note.getPitch(), note.getVelocity(), note.getDuration())).toList()
+                : null;
+    }
+
+    private static <T> List<T> copyList(List<T> values) {
+        return values != null ? values.stream().toList() : null;
+    }
+
+    private static JsonNode deepCopy(JsonNode value) {
+        return value != null ? value.deepCopy() : null;
+    }
+}
@@ -0,0 +1,168 @@
+package com.kanaetochi.audio_alchemists.service.impl;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.NullNode;
+import com.kanaetochi.audio_alchemists.dto.VersionDiffDto;
+import com.kanaetochi.audio_alchemists.dto.VersionDiffDto.FieldChange;
+import com.kanaetochi.audio_alchemists.dto.VersionDiffDto.TrackDiff;
+import com.kanaetochi.audio_alchemists.sequence.MusicalSequence;
+import com.kanaetochi.audio_alchemists.sequence.SequenceCodec;
+import com.kanaetochi.audio_alchemists.sequence.SequenceDiff;
+
+/**
+ * Structural diff of two stored project snapshots.
+ *
+ * Tracks are matched by id. Their sequences are compared by content hash first, so only the sequences
+ * of tracks that actually changed are loaded and diffed note by note. Ids and timestamps are left out:
+ * they change on every save and say nothing about the music.
+ */
+final class VersionDiffs {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final Set<String> IGNORED_FIELDS = Set.of("id", "createdAt", "updatedAt", "version", "tracks", "musicalSequence", "sequenceHash");
+
+    private VersionDiffs() {
+    }
+
+    // blobLoader returns the stored sequence for each hash it is given
+    static VersionDiffDto diff(String fromSnapshot, String toSnapshot, Function<Set<String>, Map<String, String>> blobLoader) {
+        JsonNode from = read(fromSnapshot);
+        JsonNode to = read(toSnapshot);
+        Map<Long, JsonNode> fromTracks = tracksById(from);
+        Map<Long, JsonNode> toTracks = tracksById(to);
+
+        List<Long> added = toTracks.keySet().stream().filter(id -> !fromTracks.containsKey(id)).toList();
+        List<Long> removed = fromTracks.keySet().stream().filter(id -> !toTracks.containsKey(id)).toList();
+
+        // Sequences whose hashes differ are the only ones worth loading
+        Set<Long> sequenceChanged = new HashSet<>();
+        Set<String> hashesToLoad = new LinkedHashSet<>();
+        toTracks.forEach((id, toTrack) -> {
+            JsonNode fromTrack = fromTracks.get(id);
+            if (fromTrack != null && !Objects.equals(sequenceKey(fromTrack), sequenceKey(toTrack))) {
+                sequenceChanged.add(id);
+                addBlobHash(fromTrack, hashesToLoad);
+                addBlobHash(toTrack, hashesToLoad);
+            }
+        });
+        Map<String, String> blobs = hashesToLoad.isEmpty() ? Map.of() : blobLoader.apply(hashesToLoad);
+
+        List<TrackDiff> changedTracks = new ArrayList<>();
+        toTracks.forEach((id, toTrack) -> {
+            JsonNode fromTrack = fromTracks.get(id);
+            if (fromTrack == null) {
+                return;
+            }
+            TrackDiff trackDiff = TrackDiff.builder().trackId(id).build();
+            List<FieldChange> fields = diffFields(fromTrack, toTrack);
+            if (sequenceChanged.contains(id)) {
+                diffSequences(sequenceOf(fromTrack, blobs), sequenceOf(toTrack, blobs), fields, trackDiff);
+            }
+            trackDiff.setChangedFields(fields.isEmpty() ? null : fields);
+            if (!fields.isEmpty() || sequenceChanged.contains(id)) {
+                changedTracks.add(trackDiff);
+            }
+        });
+
+        return VersionDiffDto.builder()
+                .changedFields(diffFields(from, to))
+                .addedTrackIds(added)
+                .removedTrackIds(removed)
+                .changedTracks(changedTracks)
+                .build();
+    }
+
+    private static void diffSequences(String fromText, String toText, List<FieldChange> fields, TrackDiff trackDiff) {
+        Optional<MusicalSequence> from = SequenceCodec.parse(fromText);
+        Optional<MusicalSequence> to = SequenceCodec.parse(toText);
+        if (from.isEmpty() || to.isEmpty()) {
+            trackDiff.setSequenceReplaced(true);
+            return;
+        }
+        addChange(fields, "channel", from.get().getChannel(), to.get().getChannel());
+        addChange(fields, "program", from.get().getProgram(), to.get().getProgram());
+        SequenceDiff.NoteChanges notes = SequenceDiff.diff(from.get(), to.get());
+        trackDiff.setAddedNotes(notes.added().isEmpty() ? null : notes.added());
+        trackDiff.setRemovedNotes(notes.removed().isEmpty() ? null : notes.removed());
+        trackDiff.setChangedNotes(notes.changed().isEmpty() ? null : notes.changed());
+    }
+
+    private static List<FieldChange> diffFields(JsonNode from, JsonNode to) {
+        Set<String> names = new LinkedHashSet<>();
+        to.fieldNames().forEachRemaining(names::add);
+        from.fieldNames().forEachRemaining(names::add);
+        List<FieldChange> changes = new ArrayList<>();
+        for (String name : names) {
+            JsonNode before = from.path(name).isMissingNode() ? NullNode.getInstance() : from.get(name);
+            JsonNode after = to.path(name).isMissingNode() ? NullNode.getInstance() : to.get(name);
+            if (!IGNORED_FIELDS.contains(name) && !before.equals(after)) {
+                changes.add(FieldChange.builder().field(name).from(before).to(after).build());
+            }
+        }
+        return changes;
+    }
+
+    private static void addChange(List<FieldChange> changes, String field, Integer before, Integer after) {
+        if (!Objects.equals(before, after)) {
+            changes.add(FieldChange.builder().field(field).from(MAPPER.valueToTree(before)).to(MAPPER.valueToTree(after)).build());
+        }
+    }
+
+    // The blob hash of a track's sequence, whether the snapshot stores the hash or embeds the text
+    private static String sequenceKey(JsonNode track) {
+        if (track.path("sequenceHash").isTextual()) {
+            return track.get("sequenceHash").asText();
+        }
+        return track.path("musicalSequence").isTextual() ? SnapshotBlobs.hash(track.get("musicalSequence").asText()) : null;
+    }
+
+    private static void addBlobHash(JsonNode track, Set<String> hashes) {
+        if (track.path("sequenceHash").isTextual()) {
+            hashes.add(track.get("sequenceHash").asText());
+        }
+    }
+
+    private static String sequenceOf(JsonNode track, Map<String, String> blobs) {
+        if (track.path("sequenceHash").isTextual()) {
+            String hash = track.get("sequenceHash").asText();
+            String sequence = blobs.get(hash);
+            if (sequence == null) {
+                throw new IllegalStateException("Snapshot refers to track blob " + hash + " which is not stored");
+            }
+            return sequence;
+        }
+        return track.path("musicalSequence").isTextual() ? track.get("musicalSequence").asText() : null;
+    }
+
+    private static Map<Long, JsonNode> tracksById(JsonNode snapshot) {
+        Map<Long, JsonNode> tracks = new LinkedHashMap<>();
+        for (JsonNode track : snapshot.path("tracks")) {
+            if (track.path("id").canConvertToLong()) {
+                tracks.put(track.get("id").asLong(), track);
+            }
+        }
+        return tracks;
+    }
+
+    private static JsonNode read(String json) {
+        try {
+            return MAPPER.readTree(json);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Project snapshot is not valid JSON", e);
+        }
+    }
+}
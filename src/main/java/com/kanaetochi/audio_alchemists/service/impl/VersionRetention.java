@@ -0,0 +1,55 @@
+package com.kanaetochi.audio_alchemists.service.impl;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import com.kanaetochi.audio_alchemists.model.ProjectVersion;
+import com.kanaetochi.audio_alchemists.repository.ProjectVersionRepository.VersionStamp;
+
+/**
+ * Tiered retention for a project's versions.
+ *
+ * Everything younger than keepAll is kept. Older versions keep the newest of each hour until they are
+ * hourlyUntil old, and the newest of each day after that. A version the user described is kept forever,
+ * as is the project's latest version, since the next delta is written against it.
+ */
+final class VersionRetention {
+
+    private VersionRetention() {
+    }
+
+    // Ids the policy lets go, in id order; stamps must be in id order
+    static TreeSet<Long> expired(List<VersionStamp> stamps, LocalDateTime now, Duration keepAll, Duration hourlyUntil) {
+        TreeSet<Long> expired = new TreeSet<>();
+        Set<LocalDateTime> hoursKept = new HashSet<>();
+        Set<LocalDateTime> daysKept = new HashSet<>();
+        LocalDateTime keepAllAfter = now.minus(keepAll);
+        LocalDateTime hourlyAfter = now.minus(hourlyUntil);
+        for (int i = stamps.size() - 2; i >= 0; i--) { // newest first, the latest is always kept
+            VersionStamp stamp = stamps.get(i);
+            LocalDateTime timeStamp = stamp.getTimeStamp();
+            if (timeStamp == null || timeStamp.isAfter(keepAllAfter) || isDescribed(stamp.getDescription())) {
+                continue;
+            }
+            boolean kept = timeStamp.isAfter(hourlyAfter)
+                    ? hoursKept.add(timeStamp.truncatedTo(ChronoUnit.HOURS))
+                    : daysKept.add(timeStamp.truncatedTo(ChronoUnit.DAYS));
+            if (!kept) {
+                expired.add(stamp.getId());
+            }
+        }
+        return expired;
+    }
+
+    // Written by the user rather than by autosave or a save without a description
+    static boolean isDescribed(String description) {
+        return description != null && !description.isBlank()
+                && !description.equals(ProjectVersion.AUTOSAVE_DESCRIPTION)
+                && !description.equals(ProjectVersion.MANUAL_SAVE_DESCRIPTION);
+    }
+}
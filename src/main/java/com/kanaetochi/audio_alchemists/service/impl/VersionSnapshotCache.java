@@ -0,0 +1,107 @@
+package com.kanaetochi.audio_alchemists.service.impl;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.kanaetochi.audio_alchemists.service.impl.ProjectSnapshot.TrackSnapshot;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Decoded snapshots of saved versions, sequences included, for previews and reverts that come back to the
+ * same few versions. A version's content never changes, so entries only go when their version is deleted
+ * or the cache needs the room; the least recently read go first once the estimated size passes the limit.
+ *
+ * Metrics: aa.snapshot.cache.requests (tagged result=hit or miss), aa.snapshot.cache.evictions, and
+ * aa.snapshot.cache.bytes and aa.snapshot.cache.entries for the current size.
+ */
+@Component
+class VersionSnapshotCache {
+
+    private static final long ENTRY_OVERHEAD = 128; // map entry, key, record and list
+    private static final long TRACK_OVERHEAD = 64;
+
+    private record Entry(Long projectId, ProjectSnapshot snapshot, long bytes) {}
+
+    private final Map<Long, Entry> snapshots = new LinkedHashMap<>(16, 0.75f, true); // by version id, in access order
+    private final long maxBytes;
+    private long bytes;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+
+    VersionSnapshotCache(MeterRegistry meterRegistry, @Value("${app.versions.snapshot-cache-bytes:67108864}") long maxBytes) {
+        this.maxBytes = maxBytes;
+        this.hits = Counter.builder("aa.snapshot.cache.requests").tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder("aa.snapshot.cache.requests").tag("result", "miss").register(meterRegistry);
+        this.evictions = Counter.builder("aa.snapshot.cache.evictions").register(meterRegistry);
+        Gauge.builder("aa.snapshot.cache.bytes", this, VersionSnapshotCache::currentBytes).baseUnit("bytes").register(meterRegistry);
+        Gauge.builder("aa.snapshot.cache.entries", this, VersionSnapshotCache::currentEntries).register(meterRegistry);
+    }
+
+    // Empty as well when the version belongs to another project, so the caller's lookup answers 404 as before
+    synchronized Optional<ProjectSnapshot> find(Long projectId, Long versionId) {
+        Entry entry = snapshots.get(versionId);
+        if (entry == null || !entry.projectId().equals(projectId)) {
+            misses.increment();
+            return Optional.empty();
+        }
+        hits.increment();
+        return Optional.of(entry.snapshot());
+    }
+
+    synchronized void put(Long projectId, Long versionId, ProjectSnapshot snapshot) {
+        long size = sizeOf(snapshot);
+        if (size > maxBytes) {
+            return; // would push out everything else
+        }
+        Entry previous = snapshots.put(versionId, new Entry(projectId, snapshot, size));
+        bytes += size - (previous != null ? previous.bytes() : 0);
+        Iterator<Entry> eldest = snapshots.values().iterator();
+        while (bytes > maxBytes && eldest.hasNext()) {
+            bytes -= eldest.next().bytes();
+            eldest.remove();
+            evictions.increment();
+        }
+    }
+
+    synchronized void forgetProject(Long projectId) {
+        Iterator<Entry> entries = snapshots.values().iterator();
+        while (entries.hasNext()) {
+            Entry entry = entries.next();
+            if (entry.projectId().equals(projectId)) {
+                bytes -= entry.bytes();
+                entries.remove();
+            }
+        }
+    }
+
+    synchronized long currentBytes() {
+        return bytes;
+    }
+
+    synchronized int currentEntries() {
+        return snapshots.size();
+    }
+
+    // Two bytes a character, as an upper bound; sequences are most of it
+    static long sizeOf(ProjectSnapshot snapshot) {
+        long size = ENTRY_OVERHEAD + chars(snapshot.title()) + chars(snapshot.description()) + chars(snapshot.genre());
+        for (TrackSnapshot track : snapshot.tracks()) {
+            size += TRACK_OVERHEAD + chars(track.instrument()) + chars(track.musicalSequence()) + chars(track.sequenceHash());
+        }
+        return size;
+    }
+
+    private static long chars(String value) {
+        return value != null ? 2L * value.length() : 0;
+    }
+}
@@ -0,0 +1,9 @@
+package com.kanaetochi.audio_alchemists.websocket;
+
+// What a session's outbox does once a slow client lets it grow past its limit
+public enum OutboundOverflowPolicy {
+    DROP_OLDEST, // drop the oldest queued track MODIFYs; the client sees a hole in the seq numbers and replays them
+    COALESCE,    // drop queued track MODIFYs that a later queued MODIFY of the same track replaces; nothing is lost,
+                 // the next frame on the topic carries fromSeq for the numbers it covers
+    DISCONNECT   // close the session; the client reconnects and reloads
+}
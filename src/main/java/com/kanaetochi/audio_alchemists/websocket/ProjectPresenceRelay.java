@@ -0,0 +1,165 @@
+package com.kanaetochi.audio_alchemists.websocket;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+
+import com.kanaetochi.audio_alchemists.dto.PresenceFrame;
+import com.kanaetochi.audio_alchemists.dto.PresenceMessage;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Fans presence (cursor, playhead, selection, track being edited) out to /topic/project/{id}/presence.
+ * Everything is in memory and lossy: a session's newer update replaces its unsent one, so each session
+ * reaches the audience at most once per app.websocket.presence.interval-ms however often it sends. Projects
+ * with a larger audience are sent to less often, one more interval per app.websocket.presence.audience-step
+ * subscribers.
+ *
+ * Metrics: aa.ws.presence.updates (tagged result=received or sent).
+ */
+@Component
+@Slf4j
+public class ProjectPresenceRelay {
+
+    private static final Pattern PRESENCE_DESTINATION = Pattern.compile("^/topic/project/(\\d+)/presence$");
+
+    private static final class ProjectPresence {
+        private final Map<String, PresenceMessage> unsent = new LinkedHashMap<>(); // by session id, latest wins
+        private long lastSentAt;
+    }
+
+    private final SimpMessagingTemplate simpMessagingTemplate;
+    private final Map<Long, ProjectPresence> projects = new ConcurrentHashMap<>(); // by project id
+    private final Map<String, Set<Long>> sessionProjects = new ConcurrentHashMap<>(); // projects each session has sent presence to
+    private final Map<String, Long> audience = new ConcurrentHashMap<>(); // "sessionId subscriptionId" -> project id
+    private final Map<Long, Integer> audienceSizes = new ConcurrentHashMap<>(); // by project id
+
+    private final Counter received;
+    private final Counter sent;
+
+    @Value("${app.websocket.presence.interval-ms:50}")
+    private long intervalMs;
+
+    @Value("${app.websocket.presence.audience-step:50}")
+    private int audienceStep;
+
+    public ProjectPresenceRelay(SimpMessagingTemplate simpMessagingTemplate, MeterRegistry meterRegistry) {
+        this.simpMessagingTemplate = simpMessagingTemplate;
+        this.received = Counter.builder("aa.ws.presence.updates").tag("result", "received").register(meterRegistry);
+        this.sent = Counter.builder("aa.ws.presence.updates").tag("result", "sent").register(meterRegistry);
+    }
+
+    public static String presenceDestination(Long projectId) {
+        return "/topic/project/" + projectId + "/presence";
+    }
+
+    public void update(Long projectId, String sessionId, PresenceMessage presence) {
+        received.increment();
+        sessionProjects.computeIfAbsent(sessionId, id -> ConcurrentHashMap.newKeySet()).add(projectId);
+        queue(projectId, sessionId, presence);
+    }
+
+    @Scheduled(fixedDelayString = "${app.websocket.presence.interval-ms:50}")
+    public void flush() {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<Long, ProjectPresence> entry : projects.entrySet()) {
+            Long projectId = entry.getKey();
+            long interval = intervalMs * (1 + audienceSizes.getOrDefault(projectId, 0) / Math.max(1, audienceStep));
+            List<PresenceMessage> updates;
+            ProjectPresence presence = entry.getValue();
+            synchronized (presence) {
+                if (presence.unsent.isEmpty() || now - presence.lastSentAt < interval) {
+                    continue;
+                }
+                updates = new ArrayList<>(presence.unsent.values());
+                presence.unsent.clear();
+                presence.lastSentAt = now;
+            }
+            try {
+                simpMessagingTemplate.convertAndSend(presenceDestination(projectId), new PresenceFrame(updates));
+                sent.increment(updates.size());
+            } catch (RuntimeException e) {
+                log.error("Error sending presence of project ID {}: {}", projectId, e.getMessage(), e);
+            }
+        }
+        // Projects nobody is in any more; compute keeps this atomic with queue adding to them
+        for (Long projectId : projects.keySet()) {
+            projects.computeIfPresent(projectId, (id, presence) -> !audienceSizes.containsKey(id) && isIdle(presence, now) ? null : presence);
+        }
+    }
+
+    @EventListener
+    public void onSubscribe(SessionSubscribeEvent event) {
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.wrap(event.getMessage());
+        String destination = headers.getDestination();
+        if (destination == null || headers.getSessionId() == null || headers.getSubscriptionId() == null) {
+            return;
+        }
+        Matcher matcher = PRESENCE_DESTINATION.matcher(destination);
+        if (matcher.matches()) {
+            Long projectId = Long.parseLong(matcher.group(1));
+            if (audience.putIfAbsent(headers.getSessionId() + " " + headers.getSubscriptionId(), projectId) == null) {
+                audienceSizes.merge(projectId, 1, Integer::sum);
+            }
+        }
+    }
+
+    @EventListener
+    public void onUnsubscribe(SessionUnsubscribeEvent event) {
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.wrap(event.getMessage());
+        left(headers.getSessionId() + " " + headers.getSubscriptionId());
+    }
+
+    // The session's cursors disappear for everyone else
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        String sessionId = event.getSessionId();
+        String prefix = sessionId + " ";
+        audience.keySet().stream().filter(key -> key.startsWith(prefix)).toList().forEach(this::left);
+        Set<Long> projectIds = sessionProjects.remove(sessionId);
+        if (projectIds != null) {
+            projectIds.forEach(projectId -> queue(projectId, sessionId, PresenceMessage.builder().clientId(sessionId).left(true).build()));
+        }
+    }
+
+    private void queue(Long projectId, String sessionId, PresenceMessage presence) {
+        projects.compute(projectId, (id, project) -> {
+            ProjectPresence target = project != null ? project : new ProjectPresence();
+            synchronized (target) {
+                target.unsent.put(sessionId, presence);
+            }
+            return target;
+        });
+    }
+
+    private void left(String subscription) {
+        Long projectId = audience.remove(subscription);
+        if (projectId != null) {
+            audienceSizes.computeIfPresent(projectId, (id, count) -> count > 1 ? count - 1 : null);
+        }
+    }
+
+    private boolean isIdle(ProjectPresence presence, long now) {
+        synchronized (presence) {
+            return presence.unsent.isEmpty() && now - presence.lastSentAt > intervalMs;
+        }
+    }
+}
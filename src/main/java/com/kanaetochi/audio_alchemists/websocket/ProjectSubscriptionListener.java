@@ -0,0 +1,52 @@
+package com.kanaetochi.audio_alchemists.websocket;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+
+import com.kanaetochi.audio_alchemists.service.LiveProjectService;
+
+import lombok.RequiredArgsConstructor;
+
+// Keeps a project live for as long as someone is subscribed to its track changes, /topic/project/{id}/tracks (or the .cbor twin).
+// Other project topics never need the tracks in memory. ProjectTopicAccessInterceptor has refused subscribers without access by now
+@Component
+@RequiredArgsConstructor
+public class ProjectSubscriptionListener {
+
+    private static final Pattern TRACKS_DESTINATION = Pattern.compile("^/topic/project/(\\d+)/tracks(\\.cbor)?$");
+
+    private final LiveProjectService liveProjectService;
+
+    @EventListener
+    public void onSubscribe(SessionSubscribeEvent event) {
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.wrap(event.getMessage());
+        String destination = headers.getDestination();
+        if (destination == null || headers.getSessionId() == null || headers.getSubscriptionId() == null) {
+            return;
+        }
+        Matcher matcher = TRACKS_DESTINATION.matcher(destination);
+        if (matcher.matches()) {
+            liveProjectService.subscriberJoined(Long.parseLong(matcher.group(1)), headers.getSessionId(), headers.getSubscriptionId());
+        }
+    }
+
+    @EventListener
+    public void onUnsubscribe(SessionUnsubscribeEvent event) {
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.wrap(event.getMessage());
+        if (headers.getSessionId() != null && headers.getSubscriptionId() != null) {
+            liveProjectService.subscriberLeft(headers.getSessionId(), headers.getSubscriptionId());
+        }
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        liveProjectService.sessionDisconnected(event.getSessionId());
+    }
+}
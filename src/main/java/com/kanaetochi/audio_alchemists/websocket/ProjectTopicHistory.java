@@ -0,0 +1,117 @@
+package com.kanaetochi.audio_alchemists.websocket;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.kanaetochi.audio_alchemists.dto.TrackChangeMessage;
+import com.kanaetochi.audio_alchemists.dto.TrackReplayDto;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Numbers the track changes ProjectTopicPublisher sends on a project's topic and keeps the latest
+ * app.websocket.replay.buffer-size of them in memory, so a client back from a dropped connection asks
+ * for what it missed instead of reloading every track. Changes are numbered once coalesced, so the numbers
+ * on the topic have no holes. A session's outbox may still drop frames for a slow client: the frame it keeps
+ * in place of coalesced ones carries fromSeq, the first number it covers, and frames DROP_OLDEST drops leave
+ * a hole the client replays (see SessionOutbox).
+ *
+ * Numbers start at the time this server started, in milliseconds, so one handed out before a restart never
+ * looks like part of this run: such a client is told to resync. Projects that sent nothing for
+ * app.websocket.replay.idle-ms drop their kept changes but not their count.
+ *
+ * Metrics: aa.ws.replay (tagged result=replayed or resync).
+ */
+@Component
+public class ProjectTopicHistory {
+
+    private static final class History {
+        private long nextSeq;
+        private final Deque<TrackChangeMessage> recent = new ArrayDeque<>();
+        private long lastRecordedAt;
+
+        History(long firstSeq) {
+            this.nextSeq = firstSeq;
+        }
+    }
+
+    private final long firstSeq = System.currentTimeMillis();
+    private final Map<Long, History> projects = new ConcurrentHashMap<>(); // by project id
+
+    private final Counter replayed;
+    private final Counter resyncs;
+
+    @Value("${app.websocket.replay.buffer-size:500}")
+    private int bufferSize; // changes kept per project
+
+    @Value("${app.websocket.replay.idle-ms:600000}")
+    private long idleMs;
+
+    public ProjectTopicHistory(MeterRegistry meterRegistry) {
+        this.replayed = Counter.builder("aa.ws.replay").tag("result", "replayed").register(meterRegistry);
+        this.resyncs = Counter.builder("aa.ws.replay").tag("result", "resync").register(meterRegistry);
+    }
+
+    // Sets each message's seq, in order, and keeps a copy without the payload the binary frame was written from
+    public void record(Long projectId, List<TrackChangeMessage> messages) {
+        History history = projects.computeIfAbsent(projectId, id -> new History(firstSeq));
+        synchronized (history) {
+            for (TrackChangeMessage message : messages) {
+                message.setSeq(history.nextSeq++);
+                history.recent.addLast(message.toBuilder().payload(null).build());
+                if (history.recent.size() > bufferSize) {
+                    history.recent.removeFirst();
+                }
+            }
+            history.lastRecordedAt = System.currentTimeMillis();
+        }
+    }
+
+    // The changes after lastSeq, or resyncRequired when some of them are no longer kept or lastSeq is not one of this run
+    public TrackReplayDto since(Long projectId, Long lastSeq) {
+        History history = projects.get(projectId);
+        long latestSeq;
+        List<TrackChangeMessage> changes = null;
+        if (history == null) {
+            latestSeq = firstSeq - 1; // nothing sent for the project since the server started
+            if (lastSeq != null && lastSeq == latestSeq) {
+                changes = List.of();
+            }
+        } else {
+            synchronized (history) {
+                latestSeq = history.nextSeq - 1;
+                long oldestKept = history.recent.isEmpty() ? history.nextSeq : history.recent.peekFirst().getSeq();
+                if (lastSeq != null && lastSeq <= latestSeq && lastSeq >= oldestKept - 1) {
+                    changes = history.recent.stream().filter(message -> message.getSeq() > lastSeq).toList();
+                }
+            }
+        }
+        (changes != null ? replayed : resyncs).increment();
+        return TrackReplayDto.builder()
+                .projectId(projectId)
+                .resyncRequired(changes == null)
+                .latestSeq(latestSeq)
+                .changes(changes != null ? changes : List.of())
+                .build();
+    }
+
+    @Scheduled(fixedDelayString = "${app.websocket.replay.idle-ms:600000}")
+    public void forgetIdle() {
+        long now = System.currentTimeMillis();
+        for (History history : projects.values()) {
+            synchronized (history) {
+                if (now - history.lastRecordedAt > idleMs) {
+                    history.recent.clear(); // the count stays, so a client that saw the last change still needs nothing
+                }
+            }
+        }
+    }
+}
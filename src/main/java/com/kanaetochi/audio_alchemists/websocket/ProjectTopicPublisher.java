@@ -0,0 +1,154 @@
+package com.kanaetochi.audio_alchemists.websocket;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.kanaetochi.audio_alchemists.dto.TrackChangeFrame;
+import com.kanaetochi.audio_alchemists.dto.TrackChangeMessage;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Sends track changes to /topic/project/{id}/tracks a window at a time instead of one frame per edit.
+ * Changes are buffered per project and flushed every app.websocket.track-changes.window-ms; a MODIFY
+ * replaces the previous MODIFY of the same track still waiting, since it carries the whole track. Anything
+ * else about that track, or a project-wide change, in between keeps both. Order within a project is kept.
+ *
+ * Projects with CBOR subscribers (see TrackTopicFormats) also get each frame on the topic's .cbor twin,
+ * encoded once per window with every change's data as an object rather than a JSON string. It goes out as
+ * application/octet-stream, which is what makes the STOMP handler use a binary WebSocket frame.
+ *
+ * Every change sent is numbered and kept for replay by ProjectTopicHistory.
+ *
+ * Metrics: aa.ws.track-changes (tagged result=sent or coalesced) and aa.ws.track-changes.frames.
+ */
+@Component
+@Slf4j
+public class ProjectTopicPublisher {
+
+    private static final ObjectMapper CBOR_MAPPER = CBORMapper.builder()
+            .findAndAddModules()
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS) // as in the JSON messages
+            .build();
+
+    // The binary form of a change, and of several
+    record BinaryTrackChange(Long trackId, String changeType, Object data, Long userId, Long seq) {
+        static BinaryTrackChange of(TrackChangeMessage message) {
+            return new BinaryTrackChange(message.getTrackId(), message.getChangeType(),
+                    message.getPayload() != null ? message.getPayload() : message.getData(), message.getUserId(), message.getSeq());
+        }
+    }
+
+    record BinaryTrackChangeFrame(List<BinaryTrackChange> changes) {}
+
+    private final SimpMessagingTemplate simpMessagingTemplate;
+    private final TrackTopicFormats trackTopicFormats;
+    private final ProjectTopicHistory projectTopicHistory;
+    private final Map<Long, PendingFrame> pending = new ConcurrentHashMap<>(); // by project id
+
+    private final Counter sent;
+    private final Counter coalesced;
+    private final Counter frames;
+
+    public ProjectTopicPublisher(SimpMessagingTemplate simpMessagingTemplate, TrackTopicFormats trackTopicFormats,
+                                 ProjectTopicHistory projectTopicHistory, MeterRegistry meterRegistry) {
+        this.simpMessagingTemplate = simpMessagingTemplate;
+        this.trackTopicFormats = trackTopicFormats;
+        this.projectTopicHistory = projectTopicHistory;
+        this.sent = Counter.builder("aa.ws.track-changes").tag("result", "sent").register(meterRegistry);
+        this.coalesced = Counter.builder("aa.ws.track-changes").tag("result", "coalesced").register(meterRegistry);
+        this.frames = Counter.builder("aa.ws.track-changes.frames").register(meterRegistry);
+    }
+
+    public static String tracksDestination(Long projectId) {
+        return "/topic/project/" + projectId + "/tracks";
+    }
+
+    public void publishTrackChange(Long projectId, TrackChangeMessage message) {
+        // compute keeps the add atomic with flush taking the frame away, so nothing lands in a frame already sent
+        pending.compute(projectId, (id, frame) -> {
+            PendingFrame target = frame != null ? frame : new PendingFrame();
+            if (target.add(message)) {
+                coalesced.increment();
+            }
+            return target;
+        });
+    }
+
+    @Scheduled(fixedDelayString = "${app.websocket.track-changes.window-ms:20}")
+    public void flush() {
+        for (Long projectId : pending.keySet()) {
+            PendingFrame frame = pending.remove(projectId);
+            if (frame != null) {
+                send(projectId, frame.messages());
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    private void send(Long projectId, List<TrackChangeMessage> messages) {
+        try {
+            projectTopicHistory.record(projectId, messages);
+            Object payload = messages.size() == 1 ? messages.get(0) : new TrackChangeFrame(messages);
+            simpMessagingTemplate.convertAndSend(tracksDestination(projectId), payload);
+            if (trackTopicFormats.hasCborSubscribers(projectId)) {
+                Object binary = messages.size() == 1 ? BinaryTrackChange.of(messages.get(0))
+                        : new BinaryTrackChangeFrame(messages.stream().map(BinaryTrackChange::of).toList());
+                simpMessagingTemplate.convertAndSend(tracksDestination(projectId) + TrackTopicFormats.CBOR_SUFFIX, CBOR_MAPPER.writeValueAsBytes(binary));
+            }
+            sent.increment(messages.size());
+            frames.increment();
+        } catch (JsonProcessingException | RuntimeException e) {
+            log.error("Error sending {} track changes of project ID {}: {}", messages.size(), projectId, e.getMessage(), e);
+        }
+    }
+
+    // Only touched inside pending.compute, or after flush removed it
+    private static final class PendingFrame {
+
+        private final List<TrackChangeMessage> messages = new ArrayList<>();
+        private final Map<Long, Integer> lastModify = new HashMap<>(); // track id -> position of its MODIFY, while nothing else about the track followed
+
+        // True when the message replaced an earlier MODIFY of the same track
+        boolean add(TrackChangeMessage message) {
+            Long trackId = message.getTrackId();
+            boolean replaced = false;
+            if (trackId == null) {
+                lastModify.clear(); // project-wide, may touch any track
+            } else if ("MODIFY".equals(message.getChangeType())) {
+                Integer previous = lastModify.put(trackId, messages.size());
+                if (previous != null) {
+                    messages.set(previous, null); // sent at the latest one's place, after whatever came in between
+                    replaced = true;
+                }
+            } else {
+                lastModify.remove(trackId);
+            }
+            messages.add(message);
+            return replaced;
+        }
+
+        List<TrackChangeMessage> messages() {
+            return messages.stream().filter(Objects::nonNull).toList();
+        }
+    }
+}
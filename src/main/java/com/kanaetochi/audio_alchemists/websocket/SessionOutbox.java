@@ -0,0 +1,402 @@
+package com.kanaetochi.audio_alchemists.websocket;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompDecoder;
+import org.springframework.messaging.simp.stomp.StompEncoder;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.adapter.NativeWebSocketSession;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.kanaetochi.audio_alchemists.dto.WebSocketSessionStatsDto;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.websocket.Session;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * The frames still to be written to one client. Sending only queues the frame and returns, so the broker's
+ * outbound threads never wait on a slow client; one task on the send executor writes the queue out in order.
+ * Each write is time-limited: the container gives up on a client that stops reading after the send time
+ * limit, and the registry's sweep closes a session whose write has been stuck longer than that. When the
+ * queue passes its byte limit the overflow policy decides what goes. Only whole-track MODIFY frames are
+ * ever dropped, anything else left over closes the session.
+ *
+ * Track changes are numbered before they reach the outbox (see ProjectTopicHistory). A frame kept in place
+ * of coalesced ones gets a fromSeq field, on the frame or on its first change, naming the first number it
+ * covers, so the client does not take the coalesced changes for a gap. Frames DROP_OLDEST drops leave one,
+ * which is how the client learns to ask for them again.
+ */
+@Slf4j
+class SessionOutbox extends WebSocketSessionDecorator {
+
+    private static final Pattern TRACKS_DESTINATION = Pattern.compile("^/topic/project/\\d+/tracks(\\.cbor)?$");
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final ObjectMapper CBOR_MAPPER = new CBORMapper();
+    private static final Set<String> NOT_DROPPABLE = Set.of();
+    private static final String BLOCKING_SEND_TIMEOUT = "org.apache.tomcat.websocket.BLOCKING_SEND_TIMEOUT"; // ms, per session
+
+    // What the overflow policies need to know about a frame: only track topic frames have a destination here
+    record TrackFrame(String destination, Set<String> modifiedTracks, Long firstSeq) {}
+
+    private static final TrackFrame OTHER_FRAME = new TrackFrame(null, NOT_DROPPABLE, null);
+
+    private static final class Queued {
+        private WebSocketMessage<?> message;
+        private int bytes;
+        private final long queuedAt;
+        private TrackFrame frame; // read on overflow only
+        private Long coversFrom; // the first number of a coalesced frame this one replaces
+
+        Queued(WebSocketMessage<?> message, long queuedAt) {
+            this.message = message;
+            this.bytes = message.getPayloadLength();
+            this.queuedAt = queuedAt;
+        }
+    }
+
+    private final OutboundOverflowPolicy policy;
+    private final long bufferSizeLimit;
+    private final long sendTimeLimitMs;
+    private final Executor sendExecutor;
+
+    private final Deque<Queued> queue = new ArrayDeque<>(); // guarded by this
+    private long queuedBytes;
+    private boolean draining;
+    private boolean closed;
+    private long sendStartedAt; // 0 while nothing is being written
+    private long sent;
+    private long dropped;
+    private long coalesced;
+
+    private final Counter droppedCounter;
+    private final Counter coalescedCounter;
+    private final Counter disconnectedCounter;
+    private final Timer lag;
+
+    SessionOutbox(WebSocketSession delegate, OutboundOverflowPolicy policy, long bufferSizeLimit, long sendTimeLimitMs,
+                  Executor sendExecutor, MeterRegistry meterRegistry) {
+        super(delegate);
+        this.policy = policy;
+        this.bufferSizeLimit = bufferSizeLimit;
+        this.sendTimeLimitMs = sendTimeLimitMs;
+        this.sendExecutor = sendExecutor;
+        this.droppedCounter = Counter.builder("aa.ws.outbound.overflow").tag("action", "dropped").register(meterRegistry);
+        this.coalescedCounter = Counter.builder("aa.ws.outbound.overflow").tag("action", "coalesced").register(meterRegistry);
+        this.disconnectedCounter = Counter.builder("aa.ws.outbound.overflow").tag("action", "disconnected").register(meterRegistry);
+        this.lag = Timer.builder("aa.ws.outbound.lag").register(meterRegistry);
+        // Blocking writes to the client fail after the limit instead of holding a send thread for as long as the client stalls
+        if (WebSocketSessionDecorator.unwrap(delegate) instanceof NativeWebSocketSession nativeSession && nativeSession.getNativeSession() instanceof Session container) {
+            container.getUserProperties().put(BLOCKING_SEND_TIMEOUT, sendTimeLimitMs);
+        }
+    }
+
+    @Override
+    public void sendMessage(WebSocketMessage<?> message) throws IOException {
+        boolean startDrain;
+        boolean overflow = false;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            queue.addLast(new Queued(message, now));
+            queuedBytes += message.getPayloadLength();
+            if (isStuck(now)) {
+                overflow = true; // stuck on one write; no policy makes room for that
+            } else if (queuedBytes > bufferSizeLimit) {
+                overflow = !makeRoom();
+            }
+            if (overflow) {
+                discardQueue();
+            }
+            startDrain = !overflow && !draining;
+            draining |= startDrain;
+        }
+        if (overflow) {
+            disconnectedCounter.increment();
+            log.warn("Closing WebSocket session {}: outbound queue over its limit ({} policy)", getId(), policy);
+            closeQuietly(CloseStatus.SESSION_NOT_RELIABLE);
+        } else if (startDrain) {
+            sendExecutor.execute(this::drain);
+        }
+    }
+
+    // Run by the registry's sweep, so a stuck write is noticed without waiting for the session's next frame
+    void closeIfStuck() {
+        synchronized (this) {
+            if (closed || !isStuck(System.currentTimeMillis())) {
+                return;
+            }
+            discardQueue();
+        }
+        disconnectedCounter.increment();
+        log.warn("Closing WebSocket session {}: a write has been stuck for over {} ms", getId(), sendTimeLimitMs);
+        sendExecutor.execute(() -> closeQuietly(CloseStatus.SESSION_NOT_RELIABLE)); // the close frame may wait behind the stuck write
+    }
+
+    // Called on close, so nothing queued is kept for a session that is gone
+    synchronized void discard() {
+        discardQueue();
+    }
+
+    synchronized WebSocketSessionStatsDto stats() {
+        Queued oldest = queue.peekFirst();
+        return WebSocketSessionStatsDto.builder()
+                .sessionId(getId())
+                .user(getPrincipal() != null ? getPrincipal().getName() : null)
+                .queuedMessages(queue.size())
+                .queuedBytes(queuedBytes)
+                .lagMs(oldest != null ? System.currentTimeMillis() - oldest.queuedAt : 0)
+                .sent(sent)
+                .dropped(dropped)
+                .coalesced(coalesced)
+                .build();
+    }
+
+    synchronized long queuedBytes() {
+        return queuedBytes;
+    }
+
+    synchronized long lagMs() {
+        Queued oldest = queue.peekFirst();
+        return oldest != null ? System.currentTimeMillis() - oldest.queuedAt : 0;
+    }
+
+    private void drain() {
+        while (true) {
+            Queued next;
+            synchronized (this) {
+                next = queue.pollFirst();
+                if (next == null || closed) {
+                    draining = false;
+                    sendStartedAt = 0;
+                    return;
+                }
+                queuedBytes -= next.bytes;
+                sendStartedAt = System.currentTimeMillis();
+            }
+            try {
+                getDelegate().sendMessage(next.message);
+                lag.record(System.currentTimeMillis() - next.queuedAt, TimeUnit.MILLISECONDS);
+                synchronized (this) {
+                    sent++;
+                }
+            } catch (IOException | RuntimeException e) {
+                log.debug("Failed to send to WebSocket session {}: {}", getId(), e.getMessage());
+                synchronized (this) {
+                    discardQueue();
+                    draining = false;
+                    sendStartedAt = 0;
+                }
+                closeQuietly(CloseStatus.SESSION_NOT_RELIABLE);
+                return;
+            }
+        }
+    }
+
+    private boolean isStuck(long now) {
+        return sendStartedAt != 0 && now - sendStartedAt > sendTimeLimitMs;
+    }
+
+    // True once the queue is back under its limit
+    private boolean makeRoom() {
+        switch (policy) {
+            case COALESCE -> coalesce();
+            case DROP_OLDEST -> dropOldestModifies();
+            case DISCONNECT -> {
+                return false;
+            }
+        }
+        return queuedBytes <= bufferSizeLimit;
+    }
+
+    // Walks from the newest frame back: a MODIFY-only frame whose tracks all have a later MODIFY queued can go.
+    // The next frame kept on its topic then covers its numbers
+    private void coalesce() {
+        Set<String> modifiedLater = new HashSet<>();
+        Map<String, Queued> nextKept = new HashMap<>(); // by destination
+        List<Queued> covering = new ArrayList<>();
+        Iterator<Queued> newestFirst = queue.descendingIterator();
+        while (newestFirst.hasNext()) {
+            Queued queued = newestFirst.next();
+            TrackFrame frame = trackFrame(queued);
+            if (!frame.modifiedTracks().isEmpty() && modifiedLater.containsAll(frame.modifiedTracks())) {
+                newestFirst.remove();
+                queuedBytes -= queued.bytes;
+                coalesced++;
+                coalescedCounter.increment();
+                Queued next = nextKept.get(frame.destination());
+                if (next != null && frame.firstSeq() != null) {
+                    if (next.coversFrom == null) {
+                        covering.add(next);
+                    }
+                    next.coversFrom = frame.firstSeq(); // older frames come later in this walk
+                }
+            } else {
+                modifiedLater.addAll(frame.modifiedTracks());
+                if (frame.destination() != null) {
+                    nextKept.put(frame.destination(), queued);
+                }
+            }
+        }
+        covering.forEach(this::markCovered);
+    }
+
+    private void markCovered(Queued queued) {
+        WebSocketMessage<?> rewritten = withFromSeq(queued.message, queued.coversFrom);
+        if (rewritten != null) {
+            queuedBytes += rewritten.getPayloadLength() - queued.bytes;
+            queued.message = rewritten;
+            queued.bytes = rewritten.getPayloadLength();
+            queued.frame = new TrackFrame(queued.frame.destination(), queued.frame.modifiedTracks(), queued.coversFrom);
+        }
+        queued.coversFrom = null;
+    }
+
+    private void dropOldestModifies() {
+        Iterator<Queued> oldestFirst = queue.iterator();
+        while (queuedBytes > bufferSizeLimit && oldestFirst.hasNext()) {
+            Queued queued = oldestFirst.next();
+            if (!trackFrame(queued).modifiedTracks().isEmpty()) {
+                oldestFirst.remove();
+                queuedBytes -= queued.bytes;
+                dropped++;
+                droppedCounter.increment();
+            }
+        }
+    }
+
+    private void discardQueue() {
+        closed = true;
+        queue.clear();
+        queuedBytes = 0;
+    }
+
+    private void closeQuietly(CloseStatus status) {
+        try {
+            getDelegate().close(status);
+        } catch (IOException | RuntimeException e) {
+            log.debug("Failed to close WebSocket session {}: {}", getId(), e.getMessage());
+        }
+    }
+
+    private static TrackFrame trackFrame(Queued queued) {
+        if (queued.frame == null) {
+            queued.frame = trackFrame(queued.message);
+        }
+        return queued.frame;
+    }
+
+    // The tracks a STOMP MESSAGE frame to a project's tracks topic replaces whole, if MODIFYs are all it holds
+    static Set<String> modifiedTracks(WebSocketMessage<?> message) {
+        return trackFrame(message).modifiedTracks();
+    }
+
+    static TrackFrame trackFrame(WebSocketMessage<?> message) {
+        Message<byte[]> frame = decode(message);
+        if (frame == null) {
+            return OTHER_FRAME;
+        }
+        String destination = StompHeaderAccessor.wrap(frame).getDestination();
+        try {
+            JsonNode payload = mapper(destination).readTree(frame.getPayload());
+            Iterable<JsonNode> changes = payload.has("changes") ? payload.get("changes") : List.of(payload);
+            Set<String> tracks = new HashSet<>();
+            Long firstSeq = null;
+            for (JsonNode change : changes) {
+                if (firstSeq == null) {
+                    JsonNode seq = change.has("fromSeq") ? change.get("fromSeq") : change.get("seq");
+                    firstSeq = seq != null && seq.canConvertToLong() ? seq.asLong() : null;
+                }
+                if (tracks != NOT_DROPPABLE && "MODIFY".equals(change.path("changeType").asText()) && change.path("trackId").canConvertToLong()) {
+                    tracks.add(destination + "#" + change.get("trackId").asLong());
+                } else {
+                    tracks = NOT_DROPPABLE;
+                }
+            }
+            return new TrackFrame(destination, tracks, firstSeq);
+        } catch (IOException | RuntimeException e) {
+            return OTHER_FRAME; // not a frame we understand, so it is kept
+        }
+    }
+
+    // The frame with fromSeq set on its first change; null if it is not a track change frame
+    static WebSocketMessage<?> withFromSeq(WebSocketMessage<?> message, long fromSeq) {
+        Message<byte[]> frame = decode(message);
+        if (frame == null) {
+            return null;
+        }
+        ObjectMapper mapper = mapper(StompHeaderAccessor.wrap(frame).getDestination());
+        try {
+            JsonNode payload = mapper.readTree(frame.getPayload());
+            JsonNode first = payload.has("changes") ? payload.get("changes").get(0) : payload;
+            if (!(first instanceof ObjectNode change)) {
+                return null;
+            }
+            change.put("fromSeq", fromSeq);
+            byte[] encoded = new StompEncoder().encode(MessageBuilder.createMessage(mapper.writeValueAsBytes(payload), frame.getHeaders()));
+            return message instanceof BinaryMessage ? new BinaryMessage(encoded) : new TextMessage(encoded);
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    // A STOMP MESSAGE frame to a project's tracks topic, or null
+    private static Message<byte[]> decode(WebSocketMessage<?> message) {
+        byte[] bytes;
+        if (message instanceof TextMessage text) {
+            bytes = text.asBytes();
+        } else if (message instanceof BinaryMessage binary) {
+            bytes = new byte[binary.getPayloadLength()];
+            binary.getPayload().duplicate().get(bytes);
+        } else {
+            return null;
+        }
+        try {
+            List<Message<byte[]>> frames = new StompDecoder().decode(ByteBuffer.wrap(bytes));
+            if (frames.size() != 1) {
+                return null;
+            }
+            StompHeaderAccessor headers = StompHeaderAccessor.wrap(frames.get(0));
+            String destination = headers.getDestination();
+            if (headers.getCommand() != StompCommand.MESSAGE || destination == null || !TRACKS_DESTINATION.matcher(destination).matches()) {
+                return null;
+            }
+            return frames.get(0);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static ObjectMapper mapper(String destination) {
+        return destination.endsWith(TrackTopicFormats.CBOR_SUFFIX) ? CBOR_MAPPER : MAPPER;
+    }
+}
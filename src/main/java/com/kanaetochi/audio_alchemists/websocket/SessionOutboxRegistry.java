@@ -0,0 +1,118 @@
+package com.kanaetochi.audio_alchemists.websocket;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.NonNull;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.handler.WebSocketHandlerDecoratorFactory;
+
+import com.kanaetochi.audio_alchemists.dto.WebSocketSessionStatsDto;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Puts a bounded SessionOutbox in front of every WebSocket session, so one slow client only backs up its
+ * own frames, and closes sessions whose write has been stuck past the send time limit. Registered with the
+ * STOMP transport in WebSocketConfig.
+ *
+ * Metrics: aa.ws.outbound.sessions, aa.ws.outbound.queued.bytes and aa.ws.outbound.max-lag (ms, oldest
+ * waiting frame of any session), plus the outbox counters; GET /admin/websocket/sessions has them per session.
+ */
+@Component
+public class SessionOutboxRegistry implements WebSocketHandlerDecoratorFactory {
+
+    private final Map<String, SessionOutbox> outboxes = new ConcurrentHashMap<>(); // by session id
+    private final MeterRegistry meterRegistry;
+    private final ThreadPoolTaskExecutor sendExecutor;
+
+    @Value("${app.websocket.outbound.overflow-policy:COALESCE}")
+    private OutboundOverflowPolicy overflowPolicy;
+
+    @Value("${app.websocket.outbound.buffer-size-limit:524288}")
+    private long bufferSizeLimit; // bytes queued per session
+
+    @Value("${app.websocket.outbound.send-time-limit-ms:10000}")
+    private long sendTimeLimitMs;
+
+    public SessionOutboxRegistry(MeterRegistry meterRegistry, @Value("${app.websocket.outbound.send-threads:16}") int sendThreads) {
+        this.meterRegistry = meterRegistry;
+        // Every send task gets a thread at once, so sessions stuck on slow clients never hold up the others. Each session has
+        // at most one send task and each write gives up after the send time limit, which bounds how many threads that takes
+        this.sendExecutor = new ThreadPoolTaskExecutor();
+        this.sendExecutor.setCorePoolSize(sendThreads);
+        this.sendExecutor.setMaxPoolSize(Integer.MAX_VALUE);
+        this.sendExecutor.setQueueCapacity(0);
+        this.sendExecutor.setThreadNamePrefix("websocket-send-");
+        this.sendExecutor.initialize();
+        Gauge.builder("aa.ws.outbound.sessions", outboxes, Map::size).register(meterRegistry);
+        Gauge.builder("aa.ws.outbound.queued.bytes", this, registry -> registry.outboxes.values().stream().mapToLong(SessionOutbox::queuedBytes).sum())
+                .baseUnit("bytes").register(meterRegistry);
+        Gauge.builder("aa.ws.outbound.max-lag", this, registry -> registry.outboxes.values().stream().mapToLong(SessionOutbox::lagMs).max().orElse(0))
+                .baseUnit("milliseconds").register(meterRegistry);
+    }
+
+    @Override
+    @NonNull
+    public WebSocketHandler decorate(@NonNull WebSocketHandler handler) {
+        return new WebSocketHandlerDecorator(handler) {
+            @Override
+            public void afterConnectionEstablished(@NonNull WebSocketSession session) throws Exception {
+                SessionOutbox outbox = new SessionOutbox(session, overflowPolicy, bufferSizeLimit, sendTimeLimitMs, sendExecutor, meterRegistry);
+                outboxes.put(session.getId(), outbox);
+                super.afterConnectionEstablished(outbox);
+            }
+
+            @Override
+            public void handleMessage(@NonNull WebSocketSession session, @NonNull WebSocketMessage<?> message) throws Exception {
+                SessionOutbox outbox = outboxes.get(session.getId());
+                super.handleMessage(outbox != null ? outbox : session, message);
+            }
+
+            @Override
+            public void handleTransportError(@NonNull WebSocketSession session, @NonNull Throwable exception) throws Exception {
+                SessionOutbox outbox = outboxes.get(session.getId());
+                super.handleTransportError(outbox != null ? outbox : session, exception);
+            }
+
+            @Override
+            public void afterConnectionClosed(@NonNull WebSocketSession session, @NonNull CloseStatus closeStatus) throws Exception {
+                SessionOutbox outbox = outboxes.remove(session.getId());
+                if (outbox != null) {
+                    outbox.discard();
+                }
+                super.afterConnectionClosed(outbox != null ? outbox : session, closeStatus);
+            }
+        };
+    }
+
+    @Scheduled(fixedDelayString = "${app.websocket.outbound.stuck-check-ms:1000}")
+    public void closeStuckSessions() {
+        outboxes.values().forEach(SessionOutbox::closeIfStuck);
+    }
+
+    // Most backed up first
+    public List<WebSocketSessionStatsDto> sessionStats() {
+        return outboxes.values().stream()
+                .map(SessionOutbox::stats)
+                .sorted(Comparator.comparingLong(WebSocketSessionStatsDto::getLagMs).reversed())
+                .toList();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sendExecutor.shutdown();
+    }
+}
@@ -0,0 +1,79 @@
+package com.kanaetochi.audio_alchemists.websocket;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.springframework.lang.NonNull;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+
+/**
+ * Lets a client take a project's track changes as CBOR instead of JSON by subscribing to
+ * /topic/project/{id}/tracks with a content-type:application/cbor header. The subscription is moved to
+ * the topic's .cbor twin, which ProjectTopicPublisher only encodes for while someone is subscribed to it.
+ * Registered on the client inbound channel in WebSocketConfig.
+ */
+@Component
+public class TrackTopicFormats implements ChannelInterceptor {
+
+    public static final String CBOR_SUFFIX = ".cbor";
+    static final MimeType CBOR = MimeType.valueOf("application/cbor");
+
+    private static final Pattern TRACKS_DESTINATION = Pattern.compile("^/topic/project/(\\d+)/tracks$");
+
+    private final Map<Long, Integer> cborSubscribers = new ConcurrentHashMap<>(); // by project id
+    private final Map<String, Long> cborSubscriptions = new ConcurrentHashMap<>(); // "sessionId subscriptionId" -> project id
+
+    public boolean hasCborSubscribers(Long projectId) {
+        return cborSubscribers.containsKey(projectId);
+    }
+
+    @Override
+    public Message<?> preSend(@NonNull Message<?> message, @NonNull MessageChannel channel) {
+        StompHeaderAccessor headers = StompHeaderAccessor.wrap(message);
+        StompCommand command = headers.getCommand();
+        if (command == StompCommand.SUBSCRIBE) {
+            return subscribe(message, headers);
+        }
+        if (command == StompCommand.UNSUBSCRIBE) {
+            unsubscribed(headers.getSessionId() + " " + headers.getSubscriptionId());
+        } else if (command == StompCommand.DISCONNECT && headers.getSessionId() != null) {
+            String prefix = headers.getSessionId() + " ";
+            cborSubscriptions.keySet().stream().filter(key -> key.startsWith(prefix)).toList().forEach(this::unsubscribed);
+        }
+        return message;
+    }
+
+    private Message<?> subscribe(Message<?> message, StompHeaderAccessor headers) {
+        String destination = headers.getDestination();
+        String contentType = headers.getFirstNativeHeader("content-type");
+        if (destination == null || contentType == null || !CBOR.isCompatibleWith(MimeType.valueOf(contentType))) {
+            return message;
+        }
+        Matcher matcher = TRACKS_DESTINATION.matcher(destination);
+        if (!matcher.matches()) {
+            return message; // only the tracks topic has a binary form; anything else stays JSON
+        }
+        Long projectId = Long.parseLong(matcher.group(1));
+        if (cborSubscriptions.putIfAbsent(headers.getSessionId() + " " + headers.getSubscriptionId(), projectId) == null) {
+            cborSubscribers.merge(projectId, 1, Integer::sum);
+        }
+        headers.setDestination(destination + CBOR_SUFFIX);
+        return MessageBuilder.createMessage(message.getPayload(), headers.getMessageHeaders());
+    }
+
+    private void unsubscribed(String subscription) {
+        Long projectId = cborSubscriptions.remove(subscription);
+        if (projectId != null) {
+            cborSubscribers.computeIfPresent(projectId, (id, count) -> count > 1 ? count - 1 : null);
+        }
+    }
+}
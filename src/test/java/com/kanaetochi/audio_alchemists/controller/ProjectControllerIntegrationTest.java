@@ -4,9 +4,18 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.kanaetochi.audio_alchemists.dto.LoginDto;
 import com.kanaetochi.audio_alchemists.dto.RegisterDto;
 import com.kanaetochi.audio_alchemists.model.Project;
+import com.kanaetochi.audio_alchemists.model.VersionKind;
 import com.kanaetochi.audio_alchemists.repository.ProjectRepository;
+import com.kanaetochi.audio_alchemists.repository.ProjectVersionRepository;
+import com.kanaetochi.audio_alchemists.repository.TrackRepository;
 import com.kanaetochi.audio_alchemists.repository.UserRepository;
+import com.kanaetochi.audio_alchemists.service.AutosaveService;
+import com.kanaetochi.audio_alchemists.service.LiveProjectService;
 
+import java.time.LocalDateTime;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -36,12 +45,21 @@ public class ProjectControllerIntegrationTest {
     private ProjectRepository projectRepository;
     @Autowired
     private UserRepository userRepository;
+    @Autowired
+    private ProjectVersionRepository projectVersionRepository;
+    @Autowired
+    private AutosaveService autosaveService;
+    @Autowired
+    private TrackRepository trackRepository;
+    @Autowired
+    private LiveProjectService liveProjectService;
 
     private String token;
     private String id;
 
     @BeforeEach
     void setup() throws Exception {
+        projectVersionRepository.deleteAll();
         projectRepository.deleteAll();
         userRepository.deleteAll();
         RegisterDto registerDto = new RegisterDto();
@@ -119,6 +137,199 @@ public class ProjectControllerIntegrationTest {
     }
     @Test
     @WithMockUser(username = "testuser", roles = {"USER"})
+    void testGetProjectByIdConditional() throws Exception {
+        String etag = mockMvc.perform(MockMvcRequestBuilders.get("/projects/{id}", id)
+                .header("Authorization", token))
+                .andExpect(status().isOk())
+                .andExpect(header().exists("ETag"))
+                .andReturn().getResponse().getHeader("ETag");
+        mockMvc.perform(MockMvcRequestBuilders.get("/projects/{id}", id)
+                .header("Authorization", token)
+                .header("If-None-Match", etag))
+                .andExpect(status().isNotModified());
+    }
+    @Test
+    @WithMockUser(username = "testuser", authorities = {"COMPOSER"})
+    void testGetProjectVersionsPaged() throws Exception {
+        for (String description : new String[] {"first", "second", "third"}) {
+            mockMvc.perform(MockMvcRequestBuilders.post("/projects/{id}/versions", id)
+                    .header("Authorization", token)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content("{\"description\":\"" + description + "\"}"))
+                    .andExpect(status().isCreated());
+        }
+        String cursor = mockMvc.perform(MockMvcRequestBuilders.get("/projects/{id}/versions", id)
+                .header("Authorization", token)
+                .param("limit", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(jsonPath("$[0].description").value("third"))
+                .andExpect(jsonPath("$[0].savedByUsername").value("testuser"))
+                .andExpect(jsonPath("$[0].snapshotData").doesNotExist())
+                .andReturn().getResponse().getHeader("X-Next-Cursor");
+        assertNotNull(cursor);
+        mockMvc.perform(MockMvcRequestBuilders.get("/projects/{id}/versions", id)
+                .header("Authorization", token)
+                .param("limit", "2")
+                .param("cursor", cursor))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("X-Next-Cursor"))
+                .andExpect(jsonPath("$.length()").value(1))
+                .andExpect(jsonPath("$[0].description").value("first"));
+        mockMvc.perform(MockMvcRequestBuilders.get("/projects/{id}/versions", id)
+                .header("Authorization", token)
+                .param("cursor", "not-a-cursor"))
+                .andExpect(status().isBadRequest());
+    }
+    @Test
+    @WithMockUser(username = "testuser", authorities = {"COMPOSER"})
+    void testRevertToDeltaVersion() throws Exception {
+        saveVersion("keyframe");
+        renameProject("second title");
+        Long deltaVersionId = saveVersion("delta");
+        renameProject("third title");
+
+        assertEquals(VersionKind.DELTA, projectVersionRepository.findById(deltaVersionId).get().getKind());
+        mockMvc.perform(MockMvcRequestBuilders.post("/projects/{id}/revert/{versionId}", id, deltaVersionId)
+                .header("Authorization", token)
+                .param("dryRun", "true"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.changedFields[0]").value("title"))
+                .andExpect(jsonPath("$.addedTracks").value(0));
+        assertEquals("third title", projectRepository.findById(Long.valueOf(id)).get().getTitle());
+        mockMvc.perform(MockMvcRequestBuilders.post("/projects/{id}/revert/{versionId}", id, deltaVersionId)
+                .header("Authorization", token))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.title").value("second title"));
+    }
+
+    @Test
+    @WithMockUser(username = "testuser", authorities = {"COMPOSER"})
+    void testDryRunRevertOfLiveProject() throws Exception {
+        String response = mockMvc.perform(MockMvcRequestBuilders.post("/projects/{id}/tracks", id)
+                .header("Authorization", token)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(Map.of("instrument", "Bass", "musicalSequence", "{}"))))
+                .andExpect(status().isCreated())
+                .andReturn().getResponse().getContentAsString();
+        long trackId = objectMapper.readTree(response).get("id").asLong();
+        Long versionId = saveVersion("with bass");
+
+        liveProjectService.subscriberJoined(Long.valueOf(id), "s1", "sub-0");
+        try {
+            mockMvc.perform(MockMvcRequestBuilders.put("/projects/{id}/tracks/{trackId}", id, trackId)
+                    .header("Authorization", token)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content(objectMapper.writeValueAsString(Map.of("instrument", "Cello", "musicalSequence", "{}"))))
+                    .andExpect(status().isOk());
+            mockMvc.perform(MockMvcRequestBuilders.post("/projects/{id}/revert/{versionId}", id, versionId)
+                    .header("Authorization", token)
+                    .param("dryRun", "true"))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.updatedTrackIds[0]").value(trackId));
+            assertEquals("Bass", trackRepository.findById(trackId).get().getInstrument()); // the live edit was not written
+        } finally {
+            liveProjectService.subscriberLeft("s1", "sub-0");
+        }
+    }
+
+    @Test
+    @WithMockUser(username = "testuser", authorities = {"COMPOSER"})
+    void testRevertedTrackShowsInReplay() throws Exception {
+        String response = mockMvc.perform(MockMvcRequestBuilders.post("/projects/{id}/tracks", id)
+                .header("Authorization", token)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(Map.of("instrument", "Bass", "musicalSequence", "{\"notes\": [{\"pitch\":40,\"velocity\":100}]}"))))
+                .andExpect(status().isCreated())
+                .andReturn().getResponse().getContentAsString();
+        long trackId = objectMapper.readTree(response).get("id").asLong();
+        Long versionId = saveVersion("with bass");
+        mockMvc.perform(MockMvcRequestBuilders.delete("/projects/{id}/tracks/{trackId}", id, trackId)
+                .header("Authorization", token))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(MockMvcRequestBuilders.post("/projects/{id}/revert/{versionId}", id, versionId)
+                .header("Authorization", token))
+                .andExpect(status().isOk());
+
+        // The re-added track is a new one, and the change log has it
+        mockMvc.perform(MockMvcRequestBuilders.get("/projects/{id}/at", id)
+                .header("Authorization", token)
+                .param("at", LocalDateTime.now().toString()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.tracks.length()").value(1))
+                .andExpect(jsonPath("$.tracks[0].id").isNumber())
+                .andExpect(jsonPath("$.tracks[0].instrument").value("Bass"))
+                .andExpect(jsonPath("$.tracks[0].musicalSequence").isString());
+    }
+
+    @Test
+    @WithMockUser(username = "testuser", authorities = {"COMPOSER"})
+    void testDiffProjectVersions() throws Exception {
+        Long firstVersionId = saveVersion("first");
+        renameProject("renamed");
+        Long secondVersionId = saveVersion("second");
+
+        String etag = mockMvc.perform(MockMvcRequestBuilders.get("/projects/{id}/versions/{a}/diff/{b}", id, firstVersionId, secondVersionId)
+                .header("Authorization", token))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.fromVersionId").value(firstVersionId))
+                .andExpect(jsonPath("$.changedFields[0].field").value("title"))
+                .andExpect(jsonPath("$.changedFields[0].to").value("renamed"))
+                .andExpect(jsonPath("$.addedTrackIds").isEmpty())
+                .andReturn().getResponse().getHeader("ETag");
+        mockMvc.perform(MockMvcRequestBuilders.get("/projects/{id}/versions/{a}/diff/{b}", id, firstVersionId, secondVersionId)
+                .header("Authorization", token)
+                .header("If-None-Match", etag))
+                .andExpect(status().isNotModified());
+        mockMvc.perform(MockMvcRequestBuilders.get("/projects/{id}/versions/{a}/diff/{b}", id, firstVersionId, 999999)
+                .header("Authorization", token))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    @WithMockUser(username = "testuser", authorities = {"COMPOSER"})
+    void testUpdatesAreAutosavedAsOneVersion() throws Exception {
+        renameProject("first rename");
+        renameProject("second rename");
+        assertEquals(0, projectVersionRepository.count()); // nothing written on the request thread
+
+        autosaveService.writeAll();
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/projects/{id}/versions", id)
+                .header("Authorization", token))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(1))
+                .andExpect(jsonPath("$[0].description").value("Project updated"))
+                .andExpect(jsonPath("$[0].savedByUsername").value("testuser"));
+    }
+
+    // Pending autosaves are written now rather than during the next test's cleanup
+    @AfterEach
+    void writePendingAutosaves() {
+        autosaveService.writeAll();
+    }
+
+    private Long saveVersion(String description) throws Exception {
+        String response = mockMvc.perform(MockMvcRequestBuilders.post("/projects/{id}/versions", id)
+                .header("Authorization", token)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"description\":\"" + description + "\"}"))
+                .andExpect(status().isCreated())
+                .andReturn().getResponse().getContentAsString();
+        return objectMapper.readTree(response).get("id").asLong();
+    }
+
+    private void renameProject(String title) throws Exception {
+        Project project = Project.builder().title(title).tempo(120).build();
+        mockMvc.perform(MockMvcRequestBuilders.put("/projects/{id}", id)
+                .header("Authorization", token)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(project)))
+                .andExpect(status().isOk());
+    }
+    @Test
+    @WithMockUser(username = "testuser", roles = {"USER"})
     void testGetProjectByIdNotFound() throws Exception {
         mockMvc.perform(MockMvcRequestBuilders.get("/projects/2")
                         .header("Authorization", token)
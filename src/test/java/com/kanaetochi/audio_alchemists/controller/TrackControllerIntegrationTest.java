@@ -5,9 +5,19 @@ import com.kanaetochi.audio_alchemists.dto.LoginDto;
 import com.kanaetochi.audio_alchemists.dto.RegisterDto;
 import com.kanaetochi.audio_alchemists.model.Project;
 import com.kanaetochi.audio_alchemists.model.Track;
+import com.kanaetochi.audio_alchemists.model.TrackSegment;
 import com.kanaetochi.audio_alchemists.repository.ProjectRepository;
+import com.kanaetochi.audio_alchemists.repository.ProjectVersionRepository;
+import com.kanaetochi.audio_alchemists.repository.TrackBlobRepository;
+import com.kanaetochi.audio_alchemists.repository.TrackChangeRepository;
 import com.kanaetochi.audio_alchemists.repository.TrackRepository;
+import com.kanaetochi.audio_alchemists.repository.TrackSegmentRepository;
 import com.kanaetochi.audio_alchemists.repository.UserRepository;
+import com.kanaetochi.audio_alchemists.service.LiveProjectService;
+import com.kanaetochi.audio_alchemists.service.TrackChangeService;
+import java.time.LocalDateTime;
+import java.util.List;
+
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -43,12 +53,34 @@ public class TrackControllerIntegrationTest {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private ProjectVersionRepository projectVersionRepository;
+
+    @Autowired
+    private TrackBlobRepository trackBlobRepository;
+
+    @Autowired
+    private TrackChangeRepository trackChangeRepository;
+
+    @Autowired
+    private TrackChangeService trackChangeService;
+
+    @Autowired
+    private TrackSegmentRepository trackSegmentRepository;
+
+    @Autowired
+    private LiveProjectService liveProjectService;
+
     private String token;
     private Long projectId;
     private Long trackId;
 
     @BeforeEach
     void setup() throws Exception {
+        trackChangeService.writePending(); // changes queued by earlier tests, so they do not land in this one
+        trackChangeRepository.deleteAll();
+        projectVersionRepository.deleteAll();
+        trackBlobRepository.deleteAll();
         trackRepository.deleteAll();
         projectRepository.deleteAll();
         userRepository.deleteAll();
@@ -177,6 +209,35 @@ public class TrackControllerIntegrationTest {
 
     }
 
+    @Test
+    @WithMockUser(username = "testuser", authorities = {"COMPOSER"})
+    void testEditTrackThroughOtherProjectNotFound() throws Exception {
+        Project other = Project.builder().title("otherproject").tempo(100).build();
+        String otherResponse = mockMvc.perform(MockMvcRequestBuilders.post("/projects")
+                        .header("Authorization", token)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(other)))
+                .andExpect(status().isCreated())
+                .andReturn().getResponse().getContentAsString();
+        long otherProjectId = objectMapper.readTree(otherResponse).get("id").asLong();
+
+        // Would otherwise be broadcast to the other project's subscribers
+        mockMvc.perform(MockMvcRequestBuilders.put("/projects/" + otherProjectId + "/tracks/{id}", trackId)
+                        .header("Authorization", token)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"instrument\":\"guitar\",\"musicalSequence\":\"{}\"}"))
+                .andExpect(status().isNotFound());
+        mockMvc.perform(MockMvcRequestBuilders.patch("/projects/" + otherProjectId + "/tracks/{id}/sequence", trackId)
+                        .header("Authorization", token)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"operations\":[{\"type\":\"INSERT\",\"note\":{\"pitch\":64,\"velocity\":90}}]}"))
+                .andExpect(status().isNotFound());
+        mockMvc.perform(MockMvcRequestBuilders.delete("/projects/" + otherProjectId + "/tracks/{id}", trackId)
+                        .header("Authorization", token))
+                .andExpect(status().isNotFound());
+        assertEquals(trackRepository.findById(trackId).get().getInstrument(), "piano");
+    }
+
     @Test
     @WithMockUser(username = "testuser", authorities = {"COMPOSER"})
     void testDeleteTrack() throws Exception {
@@ -197,4 +258,242 @@ public class TrackControllerIntegrationTest {
                .andExpect(status().isNotFound());
    }
 
-}
\ No newline at end of file
+   @Test
+   @WithMockUser(username = "testuser", authorities = {"COMPOSER"})
+   void testPatchSequence() throws Exception {
+       mockMvc.perform(MockMvcRequestBuilders.patch("/projects/" + projectId + "/tracks/{id}/sequence", trackId)
+                       .header("Authorization", token)
+                       .contentType(MediaType.APPLICATION_JSON)
+                       .content("{\"operations\":[{\"type\":\"INSERT\",\"note\":{\"pitch\":64,\"velocity\":90}}]}"))
+               .andExpect(status().isOk())
+               .andExpect(jsonPath("$.trackId").value(trackId))
+               .andExpect(jsonPath("$.operations[0].noteId").value(1));
+       assertEquals(trackRepository.findById(trackId).get().getMusicalSequence(),
+               "{\"notes\":[{\"pitch\":60,\"velocity\":100},{\"id\":1,\"pitch\":64,\"velocity\":90}]}");
+   }
+
+   @Test
+   void testApplyBatch() throws Exception {
+       String batch = "{\"operations\":["
+               + "{\"type\":\"CREATE\",\"instrument\":\"bass\",\"musicalSequence\":\"{}\"},"
+               + "{\"type\":\"CREATE\",\"instrument\":\"drums\",\"musicalSequence\":\"{}\"},"
+               + "{\"type\":\"UPDATE\",\"id\":" + trackId + ",\"instrument\":\"organ\",\"musicalSequence\":\"{}\"}]}";
+       mockMvc.perform(MockMvcRequestBuilders.post("/projects/" + projectId + "/tracks:batch")
+                       .header("Authorization", token)
+                       .contentType(MediaType.APPLICATION_JSON)
+                       .content(batch))
+               .andExpect(status().isOk())
+               .andExpect(jsonPath("$.created.length()").value(2))
+               .andExpect(jsonPath("$.updated[0].instrument").value("organ"));
+       assertEquals(trackRepository.findByProjectIdOrderByIdAsc(projectId).size(), 3);
+
+       mockMvc.perform(MockMvcRequestBuilders.post("/projects/" + projectId + "/tracks:batch")
+                       .header("Authorization", token)
+                       .contentType(MediaType.APPLICATION_JSON)
+                       .content("{\"operations\":[{\"type\":\"DELETE\",\"id\":" + trackId + "},{\"type\":\"DELETE\",\"id\":999999}]}"))
+               .andExpect(status().isNotFound());
+       assertTrue(trackRepository.findById(trackId).isPresent()); // all or nothing
+   }
+
+   @Test
+   void testRolledBackBatchKeepsFlushedLiveEdits() throws Exception {
+       liveProjectService.subscriberJoined(projectId, "s1", "sub-0");
+       try {
+           mockMvc.perform(MockMvcRequestBuilders.put("/projects/" + projectId + "/tracks/{id}", trackId)
+                           .header("Authorization", token)
+                           .contentType(MediaType.APPLICATION_JSON)
+                           .content("{\"instrument\":\"guitar\",\"musicalSequence\":\"{}\"}"))
+                   .andExpect(status().isOk());
+           assertEquals(trackRepository.findById(trackId).get().getInstrument(), "piano"); // held by the live session
+
+           // The batch flushes the live edits, then fails and rolls back its own work
+           mockMvc.perform(MockMvcRequestBuilders.post("/projects/" + projectId + "/tracks:batch")
+                           .header("Authorization", token)
+                           .contentType(MediaType.APPLICATION_JSON)
+                           .content("{\"operations\":[{\"type\":\"DELETE\",\"id\":999999}]}"))
+                   .andExpect(status().isNotFound());
+           assertEquals(trackRepository.findById(trackId).get().getInstrument(), "guitar");
+       } finally {
+           liveProjectService.subscriberLeft("s1", "sub-0");
+       }
+       assertEquals(trackRepository.findById(trackId).get().getInstrument(), "guitar");
+   }
+
+   @Test
+   void testGetTrackByIdConditional() throws Exception {
+       String etag = mockMvc.perform(MockMvcRequestBuilders.get("/projects/" + projectId + "/tracks/{id}", trackId)
+                       .header("Authorization", token))
+               .andExpect(status().isOk())
+               .andExpect(header().exists("ETag"))
+               .andReturn().getResponse().getHeader("ETag");
+       mockMvc.perform(MockMvcRequestBuilders.get("/projects/" + projectId + "/tracks/{id}", trackId)
+                       .header("Authorization", token)
+                       .header("If-None-Match", etag))
+               .andExpect(status().isNotModified())
+               .andExpect(content().string(""));
+
+       mockMvc.perform(MockMvcRequestBuilders.put("/projects/" + projectId + "/tracks/{id}", trackId)
+                       .header("Authorization", token)
+                       .contentType(MediaType.APPLICATION_JSON)
+                       .content("{\"instrument\":\"organ\",\"musicalSequence\":\"{}\"}"))
+               .andExpect(status().isOk());
+       mockMvc.perform(MockMvcRequestBuilders.get("/projects/" + projectId + "/tracks/{id}", trackId)
+                       .header("Authorization", token)
+                       .header("If-None-Match", etag))
+               .andExpect(status().isOk())
+               .andExpect(jsonPath("$.instrument").value("organ"));
+   }
+
+   @Test
+   void testGetAllTracksConditional() throws Exception {
+       String etag = mockMvc.perform(MockMvcRequestBuilders.get("/projects/" + projectId + "/tracks")
+                       .header("Authorization", token))
+               .andExpect(status().isOk())
+               .andReturn().getResponse().getHeader("ETag");
+       mockMvc.perform(MockMvcRequestBuilders.get("/projects/" + projectId + "/tracks")
+                       .header("Authorization", token)
+                       .header("If-None-Match", etag))
+               .andExpect(status().isNotModified());
+   }
+
+   @Test
+   void testGetSequenceWindow() throws Exception {
+       // Segment 0 holds note 1, segment 2 note 2; the write cuts them
+       String written = mockMvc.perform(MockMvcRequestBuilders.put("/projects/" + projectId + "/tracks/{id}", trackId)
+                       .header("Authorization", token)
+                       .contentType(MediaType.APPLICATION_JSON)
+                       .content("{\"instrument\":\"piano\",\"musicalSequence\":\"{\\\"notes\\\":[{\\\"id\\\":1,\\\"tick\\\":0,\\\"pitch\\\":60,\\\"duration\\\":480},"
+                               + "{\\\"id\\\":2,\\\"tick\\\":20000,\\\"pitch\\\":62,\\\"duration\\\":480}]}\"}"))
+               .andExpect(status().isOk())
+               .andReturn().getResponse().getContentAsString();
+       int version = objectMapper.readTree(written).get("version").asInt();
+       List<TrackSegment> cut = trackSegmentRepository.findWindow(trackId, 0L, Long.MAX_VALUE);
+       assertEquals(2, cut.size());
+       assertTrue(cut.stream().allMatch(segment -> segment.getTrackVersion() == version));
+
+       // Only note 2 changes, so only its segment is written again
+       mockMvc.perform(MockMvcRequestBuilders.put("/projects/" + projectId + "/tracks/{id}", trackId)
+                       .header("Authorization", token)
+                       .contentType(MediaType.APPLICATION_JSON)
+                       .content("{\"instrument\":\"piano\",\"musicalSequence\":\"{\\\"notes\\\":[{\\\"id\\\":1,\\\"tick\\\":0,\\\"pitch\\\":60,\\\"duration\\\":480},"
+                               + "{\\\"id\\\":2,\\\"tick\\\":20000,\\\"pitch\\\":64,\\\"duration\\\":480}]}\"}"))
+               .andExpect(status().isOk());
+       List<TrackSegment> recut = trackSegmentRepository.findWindow(trackId, 0L, Long.MAX_VALUE);
+       assertEquals(cut.get(0).getId(), recut.get(0).getId());
+       assertNotEquals(cut.get(1).getId(), recut.get(1).getId());
+       assertTrue(recut.stream().allMatch(segment -> segment.getTrackVersion() == version + 1));
+
+       for (int i = 0; i < 2; i++) { // reads leave the segments alone
+           mockMvc.perform(MockMvcRequestBuilders.get("/projects/" + projectId + "/tracks/{id}/sequence", trackId)
+                           .param("fromTick", "19000")
+                           .param("toTick", "21000")
+                           .header("Authorization", token))
+                   .andExpect(status().isOk())
+                   .andExpect(jsonPath("$.notes.length()").value(1))
+                   .andExpect(jsonPath("$.notes[0].id").value(2))
+                   .andExpect(jsonPath("$.notes[0].pitch").value(64));
+       }
+       assertEquals(recut.stream().map(TrackSegment::getId).toList(),
+               trackSegmentRepository.findWindow(trackId, 0L, Long.MAX_VALUE).stream().map(TrackSegment::getId).toList());
+       mockMvc.perform(MockMvcRequestBuilders.get("/projects/" + projectId + "/tracks/{id}/sequence", trackId)
+                       .param("fromTick", "100")
+                       .param("toTick", "50")
+                       .header("Authorization", token))
+               .andExpect(status().isBadRequest());
+   }
+
+   @Test
+   void testUpdateTrackMergesStaleVersion() throws Exception {
+       String fetched = mockMvc.perform(MockMvcRequestBuilders.get("/projects/" + projectId + "/tracks/{id}", trackId)
+                       .header("Authorization", token))
+               .andExpect(status().isOk())
+               .andReturn().getResponse().getContentAsString();
+       int baseVersion = objectMapper.readTree(fetched).get("version").asInt();
+
+       mockMvc.perform(MockMvcRequestBuilders.put("/projects/" + projectId + "/tracks/{id}", trackId)
+                       .header("Authorization", token)
+                       .contentType(MediaType.APPLICATION_JSON)
+                       .content("{\"version\":" + baseVersion + ",\"instrument\":\"organ\",\"musicalSequence\":\"{\\\"notes\\\": [{\\\"pitch\\\":60,\\\"velocity\\\":100}]}\"}"))
+               .andExpect(status().isOk());
+       // A second client still on the same base only changed the sequence: merged, not rejected
+       mockMvc.perform(MockMvcRequestBuilders.put("/projects/" + projectId + "/tracks/{id}", trackId)
+                       .header("Authorization", token)
+                       .contentType(MediaType.APPLICATION_JSON)
+                       .content("{\"version\":" + baseVersion + ",\"instrument\":\"piano\",\"musicalSequence\":\"{}\"}"))
+               .andExpect(status().isOk())
+               .andExpect(jsonPath("$.instrument").value("organ"))
+               .andExpect(jsonPath("$.musicalSequence").value("{}"));
+   }
+
+
+   @Test
+   @WithMockUser(username = "testuser", authorities = {"COMPOSER"})
+   void testVersionsShareTrackBlobs() throws Exception {
+        Long firstVersionId = saveVersion();
+        saveVersion(); // nothing changed: no new blob
+        assertEquals(1, trackBlobRepository.count());
+
+        Track updatedTrack = Track.builder()
+                .instrument("guitar")
+                .musicalSequence("{\"notes\": [{\"pitch\":61,\"velocity\":90}]}")
+                .build();
+        mockMvc.perform(MockMvcRequestBuilders.put("/projects/" + projectId + "/tracks/{id}", trackId)
+                        .header("Authorization", token)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(updatedTrack)))
+                .andExpect(status().isOk());
+        saveVersion();
+        assertEquals(2, trackBlobRepository.count());
+
+        mockMvc.perform(MockMvcRequestBuilders.post("/projects/{id}/revert/{versionId}", projectId, firstVersionId)
+                        .header("Authorization", token))
+                .andExpect(status().isOk());
+        String sequence = objectMapper.readTree(mockMvc.perform(MockMvcRequestBuilders.get("/projects/" + projectId + "/tracks/{id}", trackId)
+                        .header("Authorization", token))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.instrument").value("piano"))
+                .andReturn().getResponse().getContentAsString()).get("musicalSequence").asText();
+        assertEquals(objectMapper.readTree("{\"notes\": [{\"pitch\":60,\"velocity\":100}]}"), objectMapper.readTree(sequence));
+   }
+
+   @Test
+   void testGetTrackAtPointInTime() throws Exception {
+        LocalDateTime beforeEdit = LocalDateTime.now();
+        Thread.sleep(5); // the edit gets a later timestamp
+        mockMvc.perform(MockMvcRequestBuilders.put("/projects/" + projectId + "/tracks/{id}", trackId)
+                        .header("Authorization", token)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"instrument\":\"organ\",\"musicalSequence\":\"{}\"}"))
+                .andExpect(status().isOk());
+        saveVersion();
+        mockMvc.perform(MockMvcRequestBuilders.delete("/projects/" + projectId + "/tracks/{id}", trackId)
+                        .header("Authorization", token))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/projects/" + projectId + "/tracks/{id}/at", trackId)
+                        .param("at", beforeEdit.toString())
+                        .header("Authorization", token))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.instrument").value("piano"))
+                .andExpect(jsonPath("$.musicalSequence").value("{\"notes\":[{\"pitch\":60,\"velocity\":100}]}"));
+        mockMvc.perform(MockMvcRequestBuilders.get("/projects/" + projectId + "/tracks/{id}/at", trackId)
+                        .param("at", LocalDateTime.now().toString())
+                        .header("Authorization", token))
+                .andExpect(status().isNotFound());
+        mockMvc.perform(MockMvcRequestBuilders.get("/projects/{id}/at", projectId)
+                        .param("at", LocalDateTime.now().toString())
+                        .header("Authorization", token))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.title").value("testproject"))
+                .andExpect(jsonPath("$.changesReplayed").value(1))
+                .andExpect(jsonPath("$.tracks.length()").value(0));
+   }
+
+   private Long saveVersion() throws Exception {
+        String response = mockMvc.perform(MockMvcRequestBuilders.post("/projects/{id}/versions", projectId)
+                        .header("Authorization", token))
+                .andExpect(status().isCreated())
+                .andReturn().getResponse().getContentAsString();
+        return objectMapper.readTree(response).get("id").asLong();
+   }
+}
@@ -3,10 +3,15 @@ package com.kanaetochi.audio_alchemists.controller;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.kanaetochi.audio_alchemists.dto.LoginDto;
+import com.kanaetochi.audio_alchemists.dto.PresenceMessage;
 import com.kanaetochi.audio_alchemists.dto.RegisterDto;
+import com.kanaetochi.audio_alchemists.dto.TrackDto;
+import com.kanaetochi.audio_alchemists.dto.TrackReplayRequest;
 import com.kanaetochi.audio_alchemists.model.Project;
 import com.kanaetochi.audio_alchemists.repository.ProjectRepository;
+import com.kanaetochi.audio_alchemists.repository.TrackRepository;
 import com.kanaetochi.audio_alchemists.repository.UserRepository;
+import com.kanaetochi.audio_alchemists.service.LiveProjectService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -14,16 +19,26 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.web.server.LocalServerPort;
 import org.springframework.http.*;
 import org.springframework.lang.NonNull;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.messaging.simp.user.SimpUserRegistry;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.socket.TextMessage;
-// import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.WebSocketHttpHeaders;
 import org.springframework.web.socket.WebSocketSession;
-// import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
 import org.springframework.web.socket.handler.TextWebSocketHandler;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
 
 // import java.net.URI;
+import java.lang.reflect.Type;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 
@@ -43,9 +58,18 @@ public class WebSocketIntegrationTest {
     @Autowired
     private ProjectRepository projectRepository;
 
+    @Autowired
+    private TrackRepository trackRepository;
+
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private SimpUserRegistry simpUserRegistry;
+
+    @Autowired
+    private LiveProjectService liveProjectService;
+
     private String token;
 
     private Long projectId;
@@ -126,6 +150,144 @@ public class WebSocketIntegrationTest {
         // assertTrue(receivedMessage.contains(String.valueOf(projectId)), "Message does not contain projectId");
     }
 
+    @Test
+    public void testCreateTrackOverStomp() throws Exception {
+        WebSocketStompClient stompClient = new WebSocketStompClient(new StandardWebSocketClient());
+        MappingJackson2MessageConverter converter = new MappingJackson2MessageConverter();
+        converter.setObjectMapper(objectMapper);
+        stompClient.setMessageConverter(converter);
+        WebSocketHttpHeaders handshakeHeaders = new WebSocketHttpHeaders();
+        handshakeHeaders.add(AUTHORIZATION, token);
+        StompHeaders connectHeaders = new StompHeaders();
+        connectHeaders.add(AUTHORIZATION, token);
+        StompSession session = stompClient.connectAsync("ws://localhost:" + port + "/ws/websocket", handshakeHeaders, connectHeaders, new StompSessionHandlerAdapter() {})
+                .get(5, TimeUnit.SECONDS);
+
+        BlockingQueue<JsonNode> acks = new LinkedBlockingQueue<>();
+        BlockingQueue<JsonNode> changes = new LinkedBlockingQueue<>();
+        BlockingQueue<JsonNode> replays = new LinkedBlockingQueue<>();
+        session.subscribe("/user/queue/track-acks", new JsonFrames(acks));
+        session.subscribe("/user/queue/track-replay", new JsonFrames(replays));
+        session.subscribe("/topic/project/" + projectId + "/tracks", new JsonFrames(changes));
+        for (int i = 0; i < 50 && simpUserRegistry.findSubscriptions(s -> true).size() < 3; i++) {
+            Thread.sleep(100); // both subscriptions registered before the edit
+        }
+
+        TrackDto track = new TrackDto();
+        track.setInstrument("Piano");
+        track.setMusicalSequence("{\"notes\":[]}");
+        StompHeaders sendHeaders = new StompHeaders();
+        sendHeaders.setDestination("/app/projects/" + projectId + "/tracks/create");
+        sendHeaders.add("request-id", "r1");
+        session.send(sendHeaders, track);
+
+        JsonNode ack = acks.poll(5, TimeUnit.SECONDS);
+        assertNotNull(ack, "No ack received");
+        assertEquals("r1", ack.get("requestId").asText());
+        assertEquals(200, ack.get("status").asInt());
+        assertEquals("ADD", ack.get("changeType").asText());
+        JsonNode change = changes.poll(5, TimeUnit.SECONDS);
+        assertNotNull(change, "No track change broadcast");
+        assertEquals(ack.get("trackId").asLong(), change.get("trackId").asLong());
+
+        // The same track edited through a project it does not belong to
+        createProject(Project.builder().title("otherproject").tempo(100).build());
+        Long otherProjectId = projectRepository.findAll().stream().map(Project::getId).filter(id -> !id.equals(projectId)).findFirst().get();
+        StompHeaders otherHeaders = new StompHeaders();
+        otherHeaders.setDestination("/app/projects/" + otherProjectId + "/tracks/" + ack.get("trackId").asLong() + "/delete");
+        otherHeaders.add("request-id", "r2");
+        session.send(otherHeaders, new TrackDto());
+        JsonNode refused = acks.poll(5, TimeUnit.SECONDS);
+        assertNotNull(refused, "No ack received");
+        assertEquals("r2", refused.get("requestId").asText());
+        assertEquals(404, refused.get("status").asInt());
+        assertTrue(trackRepository.existsById(ack.get("trackId").asLong()));
+
+        // As a client that missed the change would ask for it
+        TrackReplayRequest replayRequest = new TrackReplayRequest();
+        replayRequest.setLastSeq(change.get("seq").asLong() - 1);
+        session.send("/app/projects/" + projectId + "/tracks/replay", replayRequest);
+        JsonNode replay = replays.poll(5, TimeUnit.SECONDS);
+        assertNotNull(replay, "No replay received");
+        assertFalse(replay.get("resyncRequired").asBoolean());
+        assertEquals(change.get("seq").asLong(), replay.get("changes").get(0).get("seq").asLong());
+        session.disconnect();
+    }
+
+    @Test
+    public void testSubscribeRefusedWithoutProjectAccess() throws Exception {
+        CountDownLatch refused = new CountDownLatch(1);
+        StompSession session = connectWithoutProjectAccess(refused);
+        session.subscribe("/topic/project/" + projectId + "/tracks", new JsonFrames(new LinkedBlockingQueue<>()));
+        assertTrue(refused.await(5, TimeUnit.SECONDS), "Subscription was not refused");
+        assertFalse(liveProjectService.isLive(projectId));
+    }
+
+    @Test
+    public void testReplayRefusedWithoutProjectAccess() throws Exception {
+        CountDownLatch refused = new CountDownLatch(1);
+        StompSession session = connectWithoutProjectAccess(refused);
+        BlockingQueue<JsonNode> replays = new LinkedBlockingQueue<>();
+        session.subscribe("/user/queue/track-replay", new JsonFrames(replays));
+        TrackReplayRequest replayRequest = new TrackReplayRequest();
+        replayRequest.setLastSeq(0L);
+        session.send("/app/projects/" + projectId + "/tracks/replay", replayRequest);
+        assertTrue(refused.await(5, TimeUnit.SECONDS), "Replay was not refused");
+        assertNull(replays.poll(500, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testPresenceRefusedWithoutProjectAccess() throws Exception {
+        CountDownLatch refused = new CountDownLatch(1);
+        StompSession session = connectWithoutProjectAccess(refused);
+        session.send("/app/projects/" + projectId + "/presence", PresenceMessage.builder().playheadTick(480L).build());
+        assertTrue(refused.await(5, TimeUnit.SECONDS), "Presence update was not refused");
+    }
+
+    // Signed in as a plain user, not added to the project; the latch counts down on the ERROR frame that refuses it
+    private StompSession connectWithoutProjectAccess(CountDownLatch refused) throws Exception {
+        LoginDto loginDto = new LoginDto();
+        loginDto.setUsernameOrEmail("collaborator");
+        loginDto.setPassword("password");
+        String strangerToken = "Bearer " + objectMapper.readTree(loginUser(loginDto).getBody()).get("accessToken").asText();
+
+        WebSocketStompClient stompClient = new WebSocketStompClient(new StandardWebSocketClient());
+        stompClient.setMessageConverter(new MappingJackson2MessageConverter());
+        WebSocketHttpHeaders handshakeHeaders = new WebSocketHttpHeaders();
+        handshakeHeaders.add(AUTHORIZATION, strangerToken);
+        StompHeaders connectHeaders = new StompHeaders();
+        connectHeaders.add(AUTHORIZATION, strangerToken);
+        return stompClient.connectAsync("ws://localhost:" + port + "/ws/websocket", handshakeHeaders, connectHeaders, new StompSessionHandlerAdapter() {
+            @Override
+            public void handleFrame(@NonNull StompHeaders headers, Object payload) {
+                refused.countDown(); // the ERROR frame
+            }
+
+            @Override
+            public void handleException(@NonNull StompSession session, StompCommand command, @NonNull StompHeaders headers, @NonNull byte[] payload, @NonNull Throwable exception) {
+                refused.countDown(); // the ERROR frame, with a body the converter does not read
+            }
+
+            @Override
+            public void handleTransportError(@NonNull StompSession session, @NonNull Throwable exception) {
+                refused.countDown();
+            }
+        }).get(5, TimeUnit.SECONDS);
+    }
+
+    private record JsonFrames(BlockingQueue<JsonNode> received) implements StompFrameHandler {
+        @Override
+        @NonNull
+        public Type getPayloadType(@NonNull StompHeaders headers) {
+            return JsonNode.class;
+        }
+
+        @Override
+        public void handleFrame(@NonNull StompHeaders headers, Object payload) {
+            received.add((JsonNode) payload);
+        }
+    }
+
     private ResponseEntity<String> registerUser(RegisterDto registerDto) {
         RestTemplate restTemplate = new RestTemplate();
         HttpHeaders headers = new HttpHeaders();
@@ -0,0 +1,67 @@
+package com.kanaetochi.audio_alchemists.model.converter;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class CompressionConvertersTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final MusicalSequenceConverter sequenceConverter = new MusicalSequenceConverter();
+    private final SnapshotDataConverter snapshotConverter = new SnapshotDataConverter();
+
+    @Test
+    @DisplayName("large sequences should be stored compressed and read back unchanged")
+    void compressesLargeSequence() throws Exception {
+        String json = noteSequence(400);
+
+        String stored = sequenceConverter.convertToDatabaseColumn(json);
+
+        assertTrue(stored.startsWith(MusicalSequenceConverter.COMPRESSED_PREFIX));
+        assertTrue(stored.length() < json.length());
+        assertEquals(objectMapper.readTree(json), objectMapper.readTree(sequenceConverter.convertToEntityAttribute(stored)));
+    }
+
+    @Test
+    @DisplayName("small sequences and rows written before compression should read as before")
+    void leavesSmallAndLegacyValues() {
+        String small = "{\"notes\":[{\"id\":1,\"tick\":0,\"pitch\":60,\"velocity\":100,\"duration\":480}]}";
+        String legacy = "{\"tempo\": 120, \"bars\": [1, 2, 3]}";
+
+        assertTrue(sequenceConverter.convertToDatabaseColumn(small).startsWith(MusicalSequenceConverter.PACKED_PREFIX));
+        assertEquals(legacy, sequenceConverter.convertToEntityAttribute(legacy));
+    }
+
+    @Test
+    @DisplayName("large snapshots should be wrapped in a compressed jsonb document")
+    void compressesLargeSnapshot() throws Exception {
+        String snapshot = "{\"title\":\"Demo\",\"tracks\":[{\"id\":1,\"musicalSequence\":" + objectMapper.writeValueAsString(noteSequence(200)) + "}]}";
+
+        String stored = snapshotConverter.convertToDatabaseColumn(snapshot);
+
+        assertTrue(objectMapper.readTree(stored).has(SnapshotDataConverter.COMPRESSED_FIELD));
+        assertEquals(snapshot, snapshotConverter.convertToEntityAttribute(stored));
+        // jsonb normalises whitespace, the wrapper must still be recognised
+        assertEquals(snapshot, snapshotConverter.convertToEntityAttribute(stored.replace("\":\"", "\": \"")));
+        assertEquals("{\"title\":\"Demo\"}", snapshotConverter.convertToEntityAttribute("{\"title\":\"Demo\"}"));
+    }
+
+    @Test
+    @DisplayName("corrupt compressed data should fail instead of returning garbage")
+    void rejectsCorruptData() {
+        assertThrows(IllegalArgumentException.class,
+                () -> sequenceConverter.convertToEntityAttribute(MusicalSequenceConverter.COMPRESSED_PREFIX + "AAECAwQF"));
+    }
+
+    private static String noteSequence(int notes) {
+        StringBuilder json = new StringBuilder("{\"channel\":1,\"program\":0,\"notes\":[");
+        for (int i = 0; i < notes; i++) {
+            json.append(i == 0 ? "" : ",").append("{\"id\":").append(i + 1).append(",\"tick\":").append(i * 240)
+                    .append(",\"pitch\":").append(60 + i % 12).append(",\"velocity\":100,\"duration\":240}");
+        }
+        return json.append("]}").toString();
+    }
+}
@@ -0,0 +1,59 @@
+package com.kanaetochi.audio_alchemists.sequence;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Optional;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class SequenceCodecTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    @DisplayName("encode/decode should round-trip a full note sequence")
+    void roundTripFullSequence() throws Exception {
+        String json = "{\"channel\":2,\"program\":33,\"notes\":[" +
+                "{\"id\":1,\"tick\":0,\"pitch\":60,\"velocity\":100,\"duration\":480}," +
+                "{\"id\":2,\"tick\":480,\"pitch\":64,\"velocity\":90,\"duration\":240}," +
+                "{\"id\":7,\"tick\":240,\"pitch\":127,\"velocity\":0,\"duration\":96000}]}";
+
+        Optional<byte[]> packed = SequenceCodec.encodeJson(json);
+
+        assertTrue(packed.isPresent());
+        assertTrue(packed.get().length < json.length());
+        assertEquals(objectMapper.readTree(json), objectMapper.readTree(SequenceCodec.decodeToJson(packed.get())));
+    }
+
+    @Test
+    @DisplayName("encode/decode should keep partial note layouts and absent header fields")
+    void roundTripPartialLayout() throws Exception {
+        String json = "{\"notes\": [{\"pitch\":60,\"velocity\":100}]}";
+
+        Optional<byte[]> packed = SequenceCodec.encodeJson(json);
+
+        assertTrue(packed.isPresent());
+        assertEquals(objectMapper.readTree(json), objectMapper.readTree(SequenceCodec.decodeToJson(packed.get())));
+    }
+
+    @Test
+    @DisplayName("encodeJson should refuse sequences it cannot reproduce exactly")
+    void refusesLossySequences() {
+        assertTrue(SequenceCodec.encodeJson("{\"notes\":[{\"pitch\":60}],\"tempo\":120}").isEmpty()); // unknown root field
+        assertTrue(SequenceCodec.encodeJson("{\"notes\":[{\"pitch\":60.5}]}").isEmpty()); // non-integral value
+        assertTrue(SequenceCodec.encodeJson("{\"notes\":[{\"pitch\":60},{\"pitch\":61,\"velocity\":3}]}").isEmpty()); // mixed layout
+        assertTrue(SequenceCodec.encodeJson("{\"notes\":[{\"pitch\":-1}]}").isEmpty()); // negative unsigned field
+        assertTrue(SequenceCodec.encodeJson("[1,2,3]").isEmpty());
+        assertTrue(SequenceCodec.encodeJson("not json").isEmpty());
+    }
+
+    @Test
+    @DisplayName("decode should reject data without the packed header")
+    void decodeRejectsForeignData() {
+        assertFalse(SequenceCodec.isPacked("{}".getBytes()));
+        assertThrows(IllegalArgumentException.class, () -> SequenceCodec.decode("{\"notes\":[]}".getBytes()));
+    }
+}
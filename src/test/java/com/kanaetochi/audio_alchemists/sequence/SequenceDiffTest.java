@@ -0,0 +1,45 @@
+package com.kanaetochi.audio_alchemists.sequence;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class SequenceDiffTest {
+
+    private NoteEvent note(Long id, long tick, int pitch) {
+        return NoteEvent.builder().id(id).tick(tick).pitch(pitch).velocity(100).duration(480l).build();
+    }
+
+    private MusicalSequence sequence(NoteEvent... notes) {
+        return MusicalSequence.builder().notes(List.of(notes)).build();
+    }
+
+    @Test
+    @DisplayName("diff should match notes by id and report added, removed and changed notes")
+    void diffById() {
+        MusicalSequence from = sequence(note(1L, 0, 60), note(2L, 480, 62), note(3L, 960, 64));
+        MusicalSequence to = sequence(note(1L, 0, 60), note(3L, 960, 65), note(4L, 1440, 67));
+
+        SequenceDiff.NoteChanges changes = SequenceDiff.diff(from, to);
+
+        assertEquals(List.of(note(4L, 1440, 67)), changes.added());
+        assertEquals(List.of(note(2L, 480, 62)), changes.removed());
+        assertEquals(List.of(note(3L, 960, 65)), changes.changed());
+    }
+
+    @Test
+    @DisplayName("diff should compare whole notes when ids are missing, counting repeats")
+    void diffWithoutIds() {
+        MusicalSequence from = sequence(note(null, 0, 60), note(null, 0, 60), note(null, 480, 62));
+        MusicalSequence to = sequence(note(null, 0, 60), note(null, 480, 63));
+
+        SequenceDiff.NoteChanges changes = SequenceDiff.diff(from, to);
+
+        assertEquals(List.of(note(null, 480, 63)), changes.added());
+        assertEquals(List.of(note(null, 0, 60), note(null, 480, 62)), changes.removed());
+        assertTrue(changes.changed().isEmpty());
+    }
+}
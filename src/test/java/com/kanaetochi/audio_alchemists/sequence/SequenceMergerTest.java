@@ -0,0 +1,66 @@
+package com.kanaetochi.audio_alchemists.sequence;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class SequenceMergerTest {
+
+    private NoteEvent note(long id, long tick, int pitch) {
+        return NoteEvent.builder().id(id).tick(tick).pitch(pitch).velocity(100).duration(480l).build();
+    }
+
+    private MusicalSequence sequence(NoteEvent... notes) {
+        return MusicalSequence.builder().notes(List.of(notes)).build();
+    }
+
+    @Test
+    @DisplayName("merge should keep non-overlapping edits from both sides")
+    void mergeDisjointEdits() {
+        MusicalSequence base = sequence(note(1, 0, 60), note(2, 480, 62), note(3, 960, 64));
+        MusicalSequence current = sequence(note(1, 0, 61), note(2, 480, 62), note(3, 960, 64)); // moved note 1
+        MusicalSequence incoming = sequence(note(1, 0, 60), note(3, 960, 64), note(4, 1440, 65)); // deleted 2, added 4
+
+        Optional<MusicalSequence> merged = SequenceMerger.merge(base, current, incoming);
+
+        assertTrue(merged.isPresent());
+        assertEquals(List.of(note(1, 0, 61), note(3, 960, 64), note(4, 1440, 65)), merged.get().getNotes());
+    }
+
+    @Test
+    @DisplayName("merge should fail when both sides changed the same note differently")
+    void mergeConflict() {
+        MusicalSequence base = sequence(note(1, 0, 60));
+
+        assertTrue(SequenceMerger.merge(base, sequence(note(1, 0, 61)), sequence(note(1, 0, 59))).isEmpty());
+        assertTrue(SequenceMerger.merge(base, sequence(), sequence(note(1, 0, 59))).isEmpty()); // deleted vs edited
+    }
+
+    @Test
+    @DisplayName("merge should keep both notes when each side inserted under the same fresh id")
+    void mergeRenumbersCollidingInserts() {
+        MusicalSequence base = sequence(note(1, 0, 60));
+
+        Optional<MusicalSequence> merged = SequenceMerger.merge(base,
+                sequence(note(1, 0, 60), note(2, 480, 62)),
+                sequence(note(1, 0, 60), note(2, 960, 64)));
+
+        assertTrue(merged.isPresent());
+        assertEquals(List.of(note(1, 0, 60), note(2, 480, 62), note(3, 960, 64)), merged.get().getNotes());
+    }
+
+    @Test
+    @DisplayName("changedNoteIds should list added, removed and edited notes, and give up without ids")
+    void changedNoteIds() {
+        MusicalSequence from = sequence(note(1, 0, 60), note(2, 480, 62));
+        MusicalSequence to = sequence(note(1, 0, 60), note(3, 960, 64));
+
+        assertEquals(Set.of(2L, 3L), SequenceMerger.changedNoteIds(from, to));
+        assertNull(SequenceMerger.changedNoteIds(from, sequence(NoteEvent.builder().pitch(60).build())));
+    }
+}
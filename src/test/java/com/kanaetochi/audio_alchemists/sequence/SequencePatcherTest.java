@@ -0,0 +1,63 @@
+package com.kanaetochi.audio_alchemists.sequence;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.kanaetochi.audio_alchemists.exception.InvalidSequenceException;
+
+class SequencePatcherTest {
+
+    private NoteEvent note(long id, long tick, int pitch) {
+        return NoteEvent.builder().id(id).tick(tick).pitch(pitch).velocity(100).duration(480l).build();
+    }
+
+    private MusicalSequence sequence(NoteEvent... notes) {
+        return MusicalSequence.builder().notes(new ArrayList<>(List.of(notes))).build();
+    }
+
+    private List<Long> ids(MusicalSequence sequence) {
+        return sequence.getNotes().stream().map(NoteEvent::getId).toList();
+    }
+
+    @Test
+    @DisplayName("apply should place inserted notes in tick order, after notes already on the same tick")
+    void insertKeepsTickOrder() {
+        MusicalSequence sequence = sequence(note(1, 0, 60), note(2, 480, 62), note(3, 960, 64));
+
+        SequencePatcher.apply(sequence, List.of(
+                NoteOperation.builder().type(NoteOperation.Type.INSERT).note(NoteEvent.builder().tick(480l).pitch(65).build()).build(),
+                NoteOperation.builder().type(NoteOperation.Type.INSERT).note(NoteEvent.builder().tick(240l).pitch(67).build()).build()));
+
+        assertEquals(List.of(1l, 5l, 2l, 4l, 3l), ids(sequence));
+    }
+
+    @Test
+    @DisplayName("apply should move a note to its new place in tick order")
+    void moveKeepsTickOrder() {
+        MusicalSequence sequence = sequence(note(1, 0, 60), note(2, 480, 62), note(3, 960, 64));
+
+        SequencePatcher.apply(sequence, List.of(NoteOperation.builder().type(NoteOperation.Type.MOVE).noteId(1l).tick(1200l).build()));
+
+        assertEquals(List.of(2l, 3l, 1l), ids(sequence));
+    }
+
+    @Test
+    @DisplayName("apply should refuse pitches outside 0-127 on INSERT and MOVE and leave the notes alone")
+    void rejectsPitchOutOfRange() {
+        MusicalSequence sequence = sequence(note(1, 0, 60));
+
+        assertThrows(InvalidSequenceException.class, () -> SequencePatcher.apply(sequence, List.of(
+                NoteOperation.builder().type(NoteOperation.Type.INSERT).note(NoteEvent.builder().tick(0l).pitch(128).build()).build())));
+        assertThrows(InvalidSequenceException.class, () -> SequencePatcher.apply(sequence, List.of(
+                NoteOperation.builder().type(NoteOperation.Type.INSERT).note(NoteEvent.builder().tick(0l).build()).build())));
+        assertThrows(InvalidSequenceException.class, () -> SequencePatcher.apply(sequence, List.of(
+                NoteOperation.builder().type(NoteOperation.Type.MOVE).noteId(1l).pitch(-1).build())));
+
+        assertEquals(List.of(note(1, 0, 60)), sequence.getNotes());
+    }
+}
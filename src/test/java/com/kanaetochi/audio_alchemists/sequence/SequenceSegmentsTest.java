@@ -0,0 +1,70 @@
+package com.kanaetochi.audio_alchemists.sequence;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class SequenceSegmentsTest {
+
+    private static final long SEGMENT = SequenceSegments.TICKS_PER_SEGMENT;
+
+    private NoteEvent note(long id, long tick, long duration) {
+        return NoteEvent.builder().id(id).tick(tick).pitch(60).velocity(100).duration(duration).build();
+    }
+
+    @Test
+    @DisplayName("split should bucket notes by start tick and record how far each segment reaches")
+    void splitBySegment() {
+        MusicalSequence sequence = MusicalSequence.builder()
+                .channel(1)
+                .notes(List.of(note(1, 0, 480), note(2, SEGMENT * 2 + 10, SEGMENT), note(3, 100, 200)))
+                .build();
+
+        List<SequenceSegments.Segment> segments = SequenceSegments.split(sequence);
+
+        assertEquals(2, segments.size());
+        assertEquals(0, segments.get(0).index());
+        assertEquals(480, segments.get(0).maxEndTick());
+        assertEquals(1, segments.get(0).sequence().getChannel());
+        assertEquals(2, segments.get(1).index());
+        assertEquals(SEGMENT * 2, segments.get(1).startTick());
+        assertEquals(SEGMENT * 3 + 10, segments.get(1).maxEndTick());
+        assertNull(segments.get(1).sequence().getChannel());
+    }
+
+    @Test
+    @DisplayName("split should always produce segment 0, even for an empty sequence")
+    void splitEmptySequence() {
+        List<SequenceSegments.Segment> segments = SequenceSegments.split(SequenceSegments.parse(null));
+
+        assertEquals(1, segments.size());
+        assertTrue(segments.get(0).sequence().getNotes().isEmpty());
+    }
+
+    @Test
+    @DisplayName("window should include notes still sounding from before the window")
+    void windowIncludesSustainedNotes() {
+        List<NoteEvent> notes = List.of(note(1, 0, 1000), note(2, 500, 100), note(3, 1200, 0), note(4, 2000, 10));
+
+        List<NoteEvent> window = SequenceSegments.window(notes, 900, 2000);
+
+        assertEquals(List.of(1L, 3L), window.stream().map(NoteEvent::getId).toList());
+    }
+
+    @Test
+    @DisplayName("encode/decode should round-trip packed and unpackable segments")
+    void segmentRoundTrip() {
+        MusicalSequence packable = MusicalSequence.builder().notes(List.of(note(1, 0, 480))).build();
+        MusicalSequence mixed = MusicalSequence.builder()
+                .notes(List.of(note(1, 0, 480), NoteEvent.builder().tick(10l).build()))
+                .build();
+
+        assertTrue(SequenceCodec.isPacked(SequenceSegments.encode(packable)));
+        assertEquals(packable, SequenceSegments.decode(SequenceSegments.encode(packable)));
+        assertFalse(SequenceCodec.isPacked(SequenceSegments.encode(mixed)));
+        assertEquals(mixed, SequenceSegments.decode(SequenceSegments.encode(mixed)));
+    }
+}
@@ -0,0 +1,106 @@
+package com.kanaetochi.audio_alchemists.service.impl;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+import java.util.Optional;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.kanaetochi.audio_alchemists.model.Project;
+import com.kanaetochi.audio_alchemists.model.User;
+import com.kanaetochi.audio_alchemists.repository.ProjectRepository;
+import com.kanaetochi.audio_alchemists.repository.UserRepository;
+import com.kanaetochi.audio_alchemists.service.ProjectVersionService;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class AutosaveServiceImplTest {
+
+    @Mock
+    private ProjectRepository projectRepository;
+    @Mock
+    private UserRepository userRepository;
+    @Mock
+    private ProjectVersionService projectVersionService;
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    @InjectMocks
+    private AutosaveServiceImpl autosaveService;
+
+    private User owner;
+    private User editor;
+    private Project project;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(autosaveService, "debounceMs", 60_000L);
+        ReflectionTestUtils.setField(autosaveService, "maxDelayMs", 600_000L);
+        ReflectionTestUtils.setField(autosaveService, "batchSize", 20);
+        owner = User.builder().id(1L).username("owner").build();
+        editor = User.builder().id(2L).username("editor").build();
+        project = Project.builder().id(10L).title("Project").owner(owner).build();
+        when(projectRepository.findById(10L)).thenReturn(Optional.of(project));
+        when(userRepository.findById(2L)).thenReturn(Optional.of(editor));
+        when(transactionTemplate.execute(any())).thenAnswer(invocation -> {
+            TransactionCallback<?> callback = invocation.getArgument(0);
+            return callback.doInTransaction(null);
+        });
+    }
+
+    @Test
+    @DisplayName("requests within the debounce window should become one snapshot named by the latest request")
+    void coalescesRequests() {
+        autosaveService.requestSnapshot(10L, null, "first");
+        autosaveService.requestSnapshot(10L, 2L, "second");
+
+        autosaveService.writeDue();
+        verifyNoInteractions(projectVersionService); // still inside the debounce window
+
+        autosaveService.writeAll();
+        autosaveService.writeAll();
+        verify(projectVersionService, times(1)).createSnapShot(project, editor, "second");
+    }
+
+    @Test
+    @DisplayName("writeDue should write requests whose window has passed and attribute them to the owner when no user is known")
+    void writesDueRequests() {
+        ReflectionTestUtils.setField(autosaveService, "debounceMs", 0L);
+        autosaveService.requestSnapshot(10L, null, "Project updated");
+
+        autosaveService.writeDue();
+
+        verify(projectVersionService).createSnapShot(project, owner, "Project updated");
+    }
+
+    @Test
+    @DisplayName("a failing snapshot should not stop the rest of its batch, and discarded requests are never written")
+    void isolatesFailures() {
+        Project other = Project.builder().id(11L).owner(owner).build();
+        when(projectRepository.findById(11L)).thenReturn(Optional.of(other));
+        when(projectVersionService.createSnapShot(eq(other), any(), anyString())).thenThrow(new RuntimeException("boom"));
+        autosaveService.requestSnapshot(10L, null, "kept");
+        autosaveService.requestSnapshot(11L, null, "fails");
+        autosaveService.requestSnapshot(12L, null, "discarded");
+        autosaveService.discard(12L);
+
+        autosaveService.writeAll();
+
+        verify(projectVersionService, atLeastOnce()).createSnapShot(project, owner, "kept");
+        verify(projectRepository, never()).findById(12L);
+    }
+}
@@ -0,0 +1,174 @@
+package com.kanaetochi.audio_alchemists.service.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kanaetochi.audio_alchemists.model.Project;
+import com.kanaetochi.audio_alchemists.model.Role;
+import com.kanaetochi.audio_alchemists.model.Track;
+import com.kanaetochi.audio_alchemists.model.TrackChangeType;
+import com.kanaetochi.audio_alchemists.model.User;
+import com.kanaetochi.audio_alchemists.repository.ProjectRepository;
+import com.kanaetochi.audio_alchemists.repository.TrackRepository;
+import com.kanaetochi.audio_alchemists.service.TrackChangeService;
+import com.kanaetochi.audio_alchemists.websocket.ProjectTopicPublisher;
+
+@ExtendWith(MockitoExtension.class)
+public class LiveProjectServiceImplTest {
+
+    @Mock
+    private TrackRepository trackRepository;
+    @Mock
+    private ProjectRepository projectRepository;
+    @Mock
+    private TransactionTemplate transactionTemplate;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+    @Mock
+    private TrackRevisionStore trackRevisionStore;
+    @Mock
+    private TrackChangeService trackChangeService;
+    @Mock
+    private TrackSegmentWriter trackSegmentWriter;
+    @Mock
+    private ProjectTopicPublisher projectTopicPublisher;
+    @Mock
+    private ObjectMapper objectMapper;
+
+    @InjectMocks
+    private LiveProjectServiceImpl liveProjectService;
+
+    private Project project;
+    private Track track;
+
+    @BeforeEach
+    void setUp() {
+        User user = User.builder().id(1l).username("testuser").role(Role.USER).build();
+        project = Project.builder().id(1l).title("Test Project").owner(user).build();
+        track = Track.builder().id(5l).instrument("Piano").musicalSequence("{}").project(project).version(2).build();
+        lenient().when(transactionTemplate.execute(any())).thenAnswer(invocation -> {
+            TransactionCallback<?> callback = invocation.getArgument(0);
+            return callback.doInTransaction(null);
+        });
+        lenient().when(transactionTemplate.getTransactionManager()).thenReturn(transactionManager);
+        lenient().when(projectRepository.findById(1l)).thenReturn(Optional.of(project));
+        lenient().when(trackRepository.findByProjectIdOrderByIdAsc(1l)).thenReturn(List.of(track));
+    }
+
+    @Test
+    void testSubscriberMakesProjectLive() {
+        liveProjectService.subscriberJoined(1l, "s1", "sub-0");
+        assertTrue(liveProjectService.isLive(1l));
+        assertEquals(liveProjectService.getTracks(1l).get().size(), 1);
+        assertEquals(liveProjectService.getTrack(5l).get().getInstrument(), "Piano");
+        verify(trackRepository, times(1)).findByProjectIdOrderByIdAsc(1l);
+    }
+
+    @Test
+    void testEditsAreCoalescedIntoOneWrite() {
+        liveProjectService.subscriberJoined(1l, "s1", "sub-0");
+        liveProjectService.editTrack(5l, t -> t.setInstrument("Guitar"));
+        Track edited = liveProjectService.editTrack(5l, t -> t.setInstrument("Bass")).get();
+        assertEquals(edited.getVersion(), 4);
+        verify(trackRepository, never()).writeBehind(anyLong(), any(), any(), any(), any(), any());
+
+        when(trackRepository.writeBehind(eq(5l), eq("Bass"), eq("{}"), any(), eq(4), eq(2))).thenReturn(1);
+        liveProjectService.flushAll();
+        liveProjectService.flushAll(); // nothing left to write
+        verify(trackRepository, times(1)).writeBehind(anyLong(), any(), any(), any(), any(), any());
+    }
+
+    @Test
+    void testLastSubscriberLeavingFlushesAndEvicts() {
+        liveProjectService.subscriberJoined(1l, "s1", "sub-0");
+        liveProjectService.subscriberJoined(1l, "s2", "sub-0");
+        liveProjectService.editTrack(5l, t -> t.setInstrument("Guitar"));
+        when(trackRepository.writeBehind(eq(5l), eq("Guitar"), any(), any(), eq(3), eq(2))).thenReturn(1);
+
+        liveProjectService.subscriberLeft("s1", "sub-0");
+        assertTrue(liveProjectService.isLive(1l));
+        liveProjectService.sessionDisconnected("s2");
+        assertFalse(liveProjectService.isLive(1l));
+        assertTrue(liveProjectService.editTrack(5l, t -> t.setInstrument("Drums")).isEmpty());
+        verify(trackRepository, times(1)).writeBehind(anyLong(), any(), any(), any(), any(), any());
+    }
+
+    @Test
+    void testConflictingWriteIsMerged() {
+        liveProjectService.subscriberJoined(1l, "s1", "sub-0");
+        liveProjectService.editTrack(5l, t -> t.setInstrument("Guitar"));
+        String sequence = "{\"notes\":[{\"id\":1,\"pitch\":60}]}";
+        Track changedElsewhere = Track.builder().id(5l).instrument("Piano").musicalSequence(sequence).project(project).version(7).build();
+        when(trackRevisionStore.find(5l, 2)).thenReturn(Optional.of(new TrackRevisionStore.Revision(2, "Piano", "{}")));
+        when(trackRepository.writeBehind(anyLong(), any(), any(), any(), any(), any())).thenReturn(0, 1);
+        when(trackRepository.findById(5l)).thenReturn(Optional.of(changedElsewhere));
+
+        liveProjectService.flushAll();
+        Track merged = liveProjectService.getTrack(5l).get();
+        assertEquals(merged.getInstrument(), "Guitar");
+        assertEquals(merged.getMusicalSequence(), sequence);
+        assertEquals(merged.getVersion(), 8);
+        verify(trackChangeService, times(1)).record(eq(TrackChangeType.MODIFY), argThat(t -> t.getVersion() == 8));
+        verify(projectTopicPublisher, times(1)).publishTrackChange(eq(1l), argThat(message -> "MODIFY".equals(message.getChangeType())));
+
+        liveProjectService.flushAll(); // the merge goes over the database's version
+        verify(trackRepository, times(1)).writeBehind(eq(5l), eq("Guitar"), eq(sequence), any(), eq(8), eq(7));
+    }
+
+    @Test
+    void testUnmergeableConflictTakesCommittedVersion() {
+        liveProjectService.subscriberJoined(1l, "s1", "sub-0");
+        liveProjectService.editTrack(5l, t -> t.setInstrument("Guitar"));
+        Track changedElsewhere = Track.builder().id(5l).instrument("Organ").musicalSequence("{}").project(project).version(7).build();
+        when(trackRevisionStore.find(5l, 2)).thenReturn(Optional.of(new TrackRevisionStore.Revision(2, "Piano", "{}")));
+        when(trackRepository.writeBehind(anyLong(), any(), any(), any(), any(), any())).thenReturn(0, 1);
+        when(trackRepository.findById(5l)).thenReturn(Optional.of(changedElsewhere));
+
+        liveProjectService.flushAll();
+        Track resolved = liveProjectService.getTrack(5l).get();
+        assertEquals(resolved.getInstrument(), "Organ");
+        assertEquals(resolved.getVersion(), 8); // still newer than anything subscribers were handed
+        verify(projectTopicPublisher, times(1)).publishTrackChange(eq(1l), argThat(message -> "MODIFY".equals(message.getChangeType())));
+
+        liveProjectService.flushAll(); // only moves the version on; the committed change is not overwritten
+        verify(trackRepository, times(1)).writeBehind(eq(5l), eq("Organ"), eq("{}"), any(), eq(8), eq(7));
+    }
+
+    @Test
+    void testRefreshKeepsUnwrittenEdits() {
+        liveProjectService.subscriberJoined(1l, "s1", "sub-0");
+        liveProjectService.editTrack(5l, t -> t.setInstrument("Guitar"));
+
+        liveProjectService.refresh(1l); // the database still holds version 2
+        assertEquals(liveProjectService.getTrack(5l).get().getInstrument(), "Guitar");
+
+        when(trackRepository.writeBehind(eq(5l), eq("Guitar"), any(), any(), eq(3), eq(2))).thenReturn(1);
+        liveProjectService.flushAll();
+        verify(trackRepository, times(1)).writeBehind(anyLong(), any(), any(), any(), any(), any());
+    }
+
+    @Test
+    void testUnknownProjectIsNotLive() {
+        when(projectRepository.findById(9l)).thenReturn(Optional.empty());
+        liveProjectService.subscriberJoined(9l, "s1", "sub-0");
+        assertFalse(liveProjectService.isLive(9l));
+        assertTrue(liveProjectService.getTracks(9l).isEmpty());
+    }
+}
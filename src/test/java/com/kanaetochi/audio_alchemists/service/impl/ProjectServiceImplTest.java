@@ -19,6 +19,7 @@ import com.kanaetochi.audio_alchemists.model.Role;
 import com.kanaetochi.audio_alchemists.model.User;
 import com.kanaetochi.audio_alchemists.repository.ProjectRepository;
 import com.kanaetochi.audio_alchemists.repository.UserRepository;
+import com.kanaetochi.audio_alchemists.service.AutosaveService;
 
 @ExtendWith(MockitoExtension.class)
 public class ProjectServiceImplTest {
@@ -27,6 +28,8 @@ public class ProjectServiceImplTest {
     private ProjectRepository projectRepository;
     @Mock
     private UserRepository userRepository;
+    @Mock
+    private AutosaveService autosaveService;
 
     @InjectMocks
     private ProjectServiceImpl projectService;
@@ -121,6 +124,7 @@ public class ProjectServiceImplTest {
         assertEquals(updatedProject.getGenre(), updatedProjectDetails.getGenre());
         verify(projectRepository, times(1)).findById(1L);
        verify(projectRepository, times(1)).save(any(Project.class));
+        verify(autosaveService, times(1)).requestSnapshot(1L, null, "Project updated");
 
     }
 
@@ -136,6 +140,7 @@ public class ProjectServiceImplTest {
         assertThrows(ResourceNotFoundException.class, () -> projectService.updateProject(1L,updatedProjectDetails));
          verify(projectRepository, times(1)).findById(1L);
          verify(projectRepository, times(0)).save(any(Project.class));
+         verify(autosaveService, never()).requestSnapshot(any(), any(), any());
     }
 
 
@@ -2,15 +2,28 @@ package com.kanaetochi.audio_alchemists.service.impl;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kanaetochi.audio_alchemists.dto.ProjectStateDto;
+import com.kanaetochi.audio_alchemists.dto.ProjectVersionDto;
+import com.kanaetochi.audio_alchemists.dto.RevertPlanDto;
+import com.kanaetochi.audio_alchemists.dto.VersionDiffDto;
 import com.kanaetochi.audio_alchemists.exception.ResourceNotFoundException;
 import com.kanaetochi.audio_alchemists.model.Project;
 import com.kanaetochi.audio_alchemists.model.ProjectVersion;
 import com.kanaetochi.audio_alchemists.model.Track;
+import com.kanaetochi.audio_alchemists.model.TrackBlob;
+import com.kanaetochi.audio_alchemists.model.TrackChange;
+import com.kanaetochi.audio_alchemists.model.TrackChangeType;
 import com.kanaetochi.audio_alchemists.model.User;
+import com.kanaetochi.audio_alchemists.model.VersionKind;
 import com.kanaetochi.audio_alchemists.repository.ProjectRepository;
 import com.kanaetochi.audio_alchemists.repository.ProjectVersionRepository;
+import com.kanaetochi.audio_alchemists.repository.TrackBlobRepository;
+import com.kanaetochi.audio_alchemists.repository.TrackChangeRepository;
 import com.kanaetochi.audio_alchemists.repository.TrackRepository;
+import com.kanaetochi.audio_alchemists.service.LiveProjectService;
+import com.kanaetochi.audio_alchemists.service.TrackChangeService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.DisplayName;
@@ -18,16 +31,21 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.*;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
 import org.springframework.test.util.ReflectionTestUtils; // For setting static ThreadLocal if needed
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
@@ -44,7 +62,27 @@ class ProjectVersionServiceImplTest {
     private TrackRepository trackRepository;
 
     @Mock
-    private ObjectMapper objectMapper; // Mock Jackson ObjectMapper
+    private TrackBlobRepository trackBlobRepository;
+
+    @Mock
+    private TrackBlobWriter trackBlobWriter;
+
+    @Mock
+    private LiveProjectService liveProjectService;
+
+    @Mock
+    private VersionDiffCache versionDiffCache;
+
+    @Mock
+    private VersionSnapshotCache versionSnapshotCache;
+
+    @Mock
+    private TrackChangeRepository trackChangeRepository;
+
+    @Mock
+    private TrackChangeService trackChangeService;
+    @Mock
+    private TrackSegmentWriter trackSegmentWriter;
 
     @InjectMocks // Inject mocks into the service
     private ProjectVersionServiceImpl projectVersionService;
@@ -61,7 +99,6 @@ class ProjectVersionServiceImplTest {
     private Project project;
     private Track track1, track2;
     private String sampleProjectJson;
-    private Project snapshotProject; // Represents the deserialized project state
 
     @BeforeEach
     void setUp() {
@@ -82,104 +119,187 @@ class ProjectVersionServiceImplTest {
 
         sampleProjectJson = "{\"id\":1,\"title\":\"Snapshot Project\",\"description\":\"Snapshot Desc\",\"tempo\":100,\"tracks\":[{\"id\":101,\"instrument\":\"Piano Updated\",\"musicalSequence\":\"seq1_updated\"},{\"id\":103,\"instrument\":\"Bass\",\"musicalSequence\":\"seq3_new\"}]}";
 
-        // Setup the snapshotProject based on sampleProjectJson for revert tests
-        Track snapshotTrack1 = Track.builder().id(101L).instrument("Piano Updated").musicalSequence("seq1_updated").build();
-        Track snapshotTrack3 = Track.builder().id(103L).instrument("Bass").musicalSequence("seq3_new").build(); // New track in snapshot
-        snapshotProject = Project.builder()
-                .id(1L) // ID might not matter directly from JSON but good practice
-                .title("Snapshot Project")
-                .description("Snapshot Desc")
-                .tempo(100)
-                .tracks(new ArrayList<>(List.of(snapshotTrack1, snapshotTrack3)))
-                .build();
-        snapshotTrack1.setProject(snapshotProject); // Set back-reference if needed by logic
-        snapshotTrack3.setProject(snapshotProject);
     }
 
     // --- createSnapshot Tests ---
 
     @Test
-    @DisplayName("createSnapshot should serialize project and save version successfully")
-    void createSnapshot_Success() throws JsonProcessingException {
+    @DisplayName("createSnapshot should stream the project and its tracks and save version successfully")
+    void createSnapshot_Success() throws Exception {
         // Arrange
-        String expectedJson = "{\"id\":1,\"title\":\"Original Project\"}"; // Simplified JSON for test
         String description = "Test Snapshot";
-        ProjectVersion savedVersion = ProjectVersion.builder().id(1L).snapshotData(expectedJson).build();
-
-        when(objectMapper.writeValueAsString(project)).thenReturn(expectedJson);
-        when(projectVersionRepository.save(any(ProjectVersion.class))).thenReturn(savedVersion);
+        when(projectRepository.findWithTracksById(1L)).thenReturn(Optional.of(project));
+        when(projectVersionRepository.save(any(ProjectVersion.class))).thenAnswer(invocation -> invocation.getArgument(0));
 
         // Act
         ProjectVersion result = projectVersionService.createSnapShot(project, user, description);
 
         // Assert
         assertNotNull(result);
-        assertEquals(expectedJson, result.getSnapshotData());
-        verify(objectMapper, times(1)).writeValueAsString(project);
         verify(projectVersionRepository, times(1)).save(projectVersionCaptor.capture());
-
         ProjectVersion capturedVersion = projectVersionCaptor.getValue();
         assertEquals(project, capturedVersion.getProject());
         assertEquals(user, capturedVersion.getSavedBy());
         assertEquals(description, capturedVersion.getDescription());
-        assertEquals(expectedJson, capturedVersion.getSnapshotData());
+
+        JsonNode snapshot = new ObjectMapper().readTree(capturedVersion.getSnapshotData());
+        assertEquals("Original Project", snapshot.get("title").asText());
+        assertEquals(120, snapshot.get("tempo").asInt());
+        assertEquals(101L, snapshot.get("tracks").get(0).get("id").asLong());
+        assertEquals("Drums", snapshot.get("tracks").get(1).get("instrument").asText());
+        assertEquals(SnapshotBlobs.hash("seq1"), snapshot.get("tracks").get(0).get("sequenceHash").asText());
+        assertFalse(snapshot.get("tracks").get(0).has("musicalSequence")); // sequences live in track_blob
+        assertFalse(snapshot.has("owner"));
+        verify(trackBlobWriter).storeMissing(Map.of(SnapshotBlobs.hash("seq1"), "seq1", SnapshotBlobs.hash("seq2"), "seq2"));
         // timestamp is set by @PrePersist, implicitly tested by save call
     }
 
     @Test
-    @DisplayName("createSnapshot should throw RuntimeException on serialization error")
-    void createSnapshot_SerializationError() throws JsonProcessingException {
-        // Arrange
-        String description = "Test Snapshot";
-        when(objectMapper.writeValueAsString(project)).thenThrow(new JsonProcessingException("Serialization failed") {});
+    @DisplayName("createSnapshot should store a delta against the latest version and only new track blobs")
+    void createSnapshot_StoresDelta() {
+        ReflectionTestUtils.setField(projectVersionService, "keyframeInterval", 20);
+        Project original = deltaProject("Original Project");
+        SnapshotBlobs.Externalized base = ProjectSnapshot.write(original, original.getTracks());
+        Project renamed = deltaProject("Renamed Project");
+        renamed.getTracks().get(2).setMusicalSequence("free-form sequence 3 edited");
+        ProjectVersion keyframe = ProjectVersion.builder().id(7L).project(project).snapshotData(base.json())
+                .kind(VersionKind.KEYFRAME).chainDepth(0).build();
+        when(projectRepository.findWithTracksById(1L)).thenReturn(Optional.of(renamed));
+        when(projectVersionRepository.findFirstByProjectIdOrderByIdDesc(1L)).thenReturn(Optional.of(keyframe));
+        when(projectVersionRepository.save(any(ProjectVersion.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        ProjectVersion result = projectVersionService.createSnapShot(project, user, "Rename");
+
+        assertEquals(VersionKind.DELTA, result.getKind());
+        assertEquals(7L, result.getBaseVersionId());
+        assertEquals(7L, result.getKeyframeId());
+        assertEquals(1, result.getChainDepth());
+        assertTrue(result.getSnapshotData().length() < 300, result.getSnapshotData());
+        verify(trackBlobWriter).storeMissing(argThat(blobs -> blobs.containsKey(SnapshotBlobs.hash("free-form sequence 3 edited"))));
+    }
 
-        // Act & Assert
-        RuntimeException exception = assertThrows(RuntimeException.class, () -> {
-            projectVersionService.createSnapShot(project, user, description);
+    @Test
+    @DisplayName("revertToVersion should rebuild a delta version from its keyframe and track blobs")
+    void revertToVersion_RebuildsDelta() throws Exception {
+        Project original = deltaProject("Original Project");
+        Project renamed = deltaProject("Renamed Project");
+        SnapshotBlobs.Externalized base = ProjectSnapshot.write(original, original.getTracks());
+        String delta = SnapshotDeltas.diff(base.json(), ProjectSnapshot.write(renamed, renamed.getTracks()).json()).orElseThrow();
+        ProjectVersion keyframe = ProjectVersion.builder().id(7L).project(project).snapshotData(base.json()).kind(VersionKind.KEYFRAME).build();
+        ProjectVersion deltaVersion = ProjectVersion.builder().id(9L).project(project).snapshotData(delta)
+                .kind(VersionKind.DELTA).baseVersionId(7L).keyframeId(7L).chainDepth(1).build();
+        when(projectRepository.findById(1L)).thenReturn(Optional.of(project));
+        when(projectVersionRepository.findById(9L)).thenReturn(Optional.of(deltaVersion));
+        when(projectVersionRepository.findByProjectIdAndIdBetweenOrderByIdAsc(1L, 7L, 9L)).thenReturn(List.of(keyframe, deltaVersion));
+        when(trackBlobRepository.findAllById(any())).thenReturn(base.blobs().entrySet().stream()
+                .map(blob -> TrackBlob.builder().hash(blob.getKey()).musicalSequence(blob.getValue()).build())
+                .toList());
+        when(projectRepository.save(any(Project.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(trackRepository.saveAll(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        Project reverted = projectVersionService.revertToVersion(1L, 9L, user);
+
+        assertEquals("Renamed Project", reverted.getTitle());
+        assertEquals(20, reverted.getTracks().size());
+        assertEquals("Instrument 2", reverted.getTracks().get(1).getInstrument());
+        assertEquals("free-form sequence 20", reverted.getTracks().get(19).getMusicalSequence());
+    }
+
+    @Test
+    @DisplayName("diffVersions should report field, track and note changes, loading only changed sequences")
+    @SuppressWarnings("unchecked")
+    void diffVersions_ReportsChanges() {
+        String notes = "{\"channel\":0,\"program\":0,\"notes\":[{\"id\":1,\"tick\":0,\"pitch\":60,\"velocity\":100,\"duration\":480}";
+        List<Track> fromTracks = List.of(
+                Track.builder().id(101L).instrument("Piano").musicalSequence(notes + "]}").build(),
+                Track.builder().id(102L).instrument("Drums").musicalSequence("kick").build());
+        List<Track> toTracks = List.of(
+                Track.builder().id(101L).instrument("Piano")
+                        .musicalSequence(notes + ",{\"id\":2,\"tick\":480,\"pitch\":64,\"velocity\":100,\"duration\":480}]}").build(),
+                Track.builder().id(103L).instrument("Bass").musicalSequence("bass").build());
+        SnapshotBlobs.Externalized from = ProjectSnapshot.write(Project.builder().id(1L).title("Before").build(), fromTracks);
+        SnapshotBlobs.Externalized to = ProjectSnapshot.write(Project.builder().id(1L).title("After").build(), toTracks);
+        when(versionDiffCache.find(1L, 7L, 9L)).thenReturn(Optional.empty());
+        when(projectVersionRepository.findById(7L)).thenReturn(Optional.of(ProjectVersion.builder().id(7L).project(project).snapshotData(from.json()).build()));
+        when(projectVersionRepository.findById(9L)).thenReturn(Optional.of(ProjectVersion.builder().id(9L).project(project).snapshotData(to.json()).build()));
+        Map<String, String> blobs = new HashMap<>(from.blobs());
+        blobs.putAll(to.blobs());
+        ArgumentCaptor<Iterable<String>> loaded = ArgumentCaptor.forClass(Iterable.class);
+        when(trackBlobRepository.findAllById(loaded.capture())).thenAnswer(invocation -> {
+            List<TrackBlob> found = new ArrayList<>();
+            ((Iterable<String>) invocation.getArgument(0)).forEach(hash -> found.add(TrackBlob.builder().hash(hash).musicalSequence(blobs.get(hash)).build()));
+            return found;
         });
-        assertEquals("Failed to serialize project for snapshot", exception.getMessage());
-        verify(objectMapper, times(1)).writeValueAsString(project);
-        verify(projectVersionRepository, never()).save(any()); // Ensure save was not called
+
+        VersionDiffDto diff = projectVersionService.diffVersions(1L, 7L, 9L);
+
+        assertEquals(1, diff.getChangedFields().size());
+        assertEquals("title", diff.getChangedFields().get(0).getField());
+        assertEquals("After", diff.getChangedFields().get(0).getTo().asText());
+        assertEquals(List.of(103L), diff.getAddedTrackIds());
+        assertEquals(List.of(102L), diff.getRemovedTrackIds());
+        assertEquals(1, diff.getChangedTracks().size());
+        assertEquals(101L, diff.getChangedTracks().get(0).getTrackId());
+        assertEquals(2L, diff.getChangedTracks().get(0).getAddedNotes().get(0).getId());
+        assertNull(diff.getChangedTracks().get(0).getRemovedNotes());
+        List<String> loadedHashes = new ArrayList<>();
+        loaded.getValue().forEach(loadedHashes::add);
+        assertEquals(2, loadedHashes.size()); // only track 101's two sequences
+        verify(versionDiffCache).put(1L, 7L, 9L, diff);
     }
 
-    // --- getVersionsForProject Tests ---
+    @Test
+    @DisplayName("diffVersions should reject a version from another project")
+    void diffVersions_VersionOfOtherProject() {
+        Project other = Project.builder().id(2L).build();
+        when(versionDiffCache.find(1L, 7L, 9L)).thenReturn(Optional.empty());
+        when(projectVersionRepository.findById(7L)).thenReturn(Optional.of(ProjectVersion.builder().id(7L).project(other).snapshotData("{}").build()));
+
+        assertThrows(ResourceNotFoundException.class, () -> projectVersionService.diffVersions(1L, 7L, 9L));
+        verify(versionDiffCache, never()).put(any(), any(), any(), any());
+    }
+
+    // A project of 20 tracks with free-form sequences
+    private static Project deltaProject(String title) {
+        List<Track> tracks = new ArrayList<>();
+        for (int i = 1; i <= 20; i++) {
+            tracks.add(Track.builder().id(100L + i).instrument("Instrument " + i).musicalSequence("free-form sequence " + i).build());
+        }
+        return Project.builder().id(1L).title(title).tempo(120).tracks(tracks).build();
+    }
+
+    // --- getVersionHistory Tests ---
 
     @Test
-    @DisplayName("getVersionsForProject should return list of versions ordered by timestamp desc")
-    void getVersionsForProject_Success() {
+    @DisplayName("getVersionHistory should read the newest page when no cursor is given")
+    void getVersionHistory_FirstPage() {
         // Arrange
         Long projectId = 1L;
-        ProjectVersion v1 = ProjectVersion.builder().id(1L).timeStamp(LocalDateTime.now().minusDays(1)).build();
-        ProjectVersion v2 = ProjectVersion.builder().id(2L).timeStamp(LocalDateTime.now()).build();
-        List<ProjectVersion> mockedVersions = List.of(v2, v1); // Desc order
-
-        when(projectVersionRepository.findByProjectIdOrderByTimeStampDesc(projectId)).thenReturn(mockedVersions);
+        ProjectVersionDto newest = new ProjectVersionDto(2L, "second", LocalDateTime.now(), "testuser");
+        when(projectVersionRepository.findHistory(projectId, Limit.of(20))).thenReturn(List.of(newest));
 
         // Act
-        List<ProjectVersion> results = projectVersionService.getVersionsForProject(projectId);
+        List<ProjectVersionDto> results = projectVersionService.getVersionHistory(projectId, null, null, 20);
 
         // Assert
-        assertNotNull(results);
-        assertEquals(2, results.size());
-        assertEquals(v2, results.get(0)); // Verify order
-        assertEquals(v1, results.get(1));
-        verify(projectVersionRepository, times(1)).findByProjectIdOrderByTimeStampDesc(projectId);
+        assertEquals(List.of(newest), results);
+        verify(projectVersionRepository, never()).findHistoryBefore(anyLong(), any(), anyLong(), any());
     }
 
     @Test
-    @DisplayName("getVersionsForProject should return empty list when no versions exist")
-    void getVersionsForProject_NoVersions() {
+    @DisplayName("getVersionHistory should read the page after the cursor")
+    void getVersionHistory_NextPage() {
         // Arrange
         Long projectId = 1L;
-        when(projectVersionRepository.findByProjectIdOrderByTimeStampDesc(projectId)).thenReturn(Collections.emptyList());
+        LocalDateTime before = LocalDateTime.now();
+        when(projectVersionRepository.findHistoryBefore(projectId, before, 2L, Limit.of(20))).thenReturn(Collections.emptyList());
 
         // Act
-        List<ProjectVersion> results = projectVersionService.getVersionsForProject(projectId);
+        List<ProjectVersionDto> results = projectVersionService.getVersionHistory(projectId, before, 2L, 20);
 
         // Assert
-        assertNotNull(results);
         assertTrue(results.isEmpty());
-        verify(projectVersionRepository, times(1)).findByProjectIdOrderByTimeStampDesc(projectId);
+        verify(projectVersionRepository, never()).findHistory(anyLong(), any());
     }
 
     // --- revertToVersion Tests ---
@@ -199,9 +319,13 @@ class ProjectVersionServiceImplTest {
 
         when(projectRepository.findById(projectId)).thenReturn(Optional.of(project));
         when(projectVersionRepository.findById(versionId)).thenReturn(Optional.of(versionToRevertTo));
-        when(objectMapper.readValue(sampleProjectJson, Project.class)).thenReturn(snapshotProject);
         // Mock save to return the captured project
         when(projectRepository.save(any(Project.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(trackRepository.saveAll(anyList())).thenAnswer(invocation -> {
+            List<Track> tracks = invocation.getArgument(0);
+            tracks.forEach(track -> track.setId(201L)); // as persisting hands out ids
+            return tracks;
+        });
 
         // Act
         Project revertedProject = projectVersionService.revertToVersion(projectId, versionId, user);
@@ -228,8 +352,8 @@ class ProjectVersionServiceImplTest {
         assertEquals(1, trackListCaptor.getValue().size());
         assertEquals(102L, trackListCaptor.getValue().get(0).getId());
 
-        // Verify track 103 was added (it won't have an ID yet until saved by cascade)
-        Optional<Track> addedTrackOpt = revertedProject.getTracks().stream().filter(t -> t.getId() == null && "Bass".equals(t.getInstrument())).findFirst();
+        // Verify track 103 was added as a new track, persisted before the project so it has its id
+        Optional<Track> addedTrackOpt = revertedProject.getTracks().stream().filter(t -> Long.valueOf(201L).equals(t.getId()) && "Bass".equals(t.getInstrument())).findFirst();
         assertTrue(addedTrackOpt.isPresent());
         assertEquals("seq3_new", addedTrackOpt.get().getMusicalSequence());
         assertEquals(revertedProject, addedTrackOpt.get().getProject()); // Ensure it's linked
@@ -238,9 +362,154 @@ class ProjectVersionServiceImplTest {
         verify(projectRepository, times(1)).save(projectCaptor.capture());
         assertEquals(project, projectCaptor.getValue()); // Check it's the same project instance that was modified
 
-        verify(objectMapper, times(1)).readValue(sampleProjectJson, Project.class);
+        // The revert goes into the track change log like any other edit
+        verify(trackChangeService).record(TrackChangeType.DELETE, track2);
+        verify(trackChangeService).recordUpdate(track1, "seq1"); // logged as what changed since the sequence it replaced
+        verify(trackChangeService).record(eq(TrackChangeType.ADD), argThat(track -> Long.valueOf(201L).equals(track.getId()) && "Bass".equals(track.getInstrument())));
+    }
+
+    // --- Point-in-time replay Tests ---
+
+    @Test
+    @DisplayName("getProjectAt should replay the track changes after the nearest earlier version, reading sequences once")
+    @SuppressWarnings("unchecked")
+    void getProjectAt_ReplaysChanges() {
+        LocalDateTime savedAt = LocalDateTime.of(2026, 3, 1, 12, 0);
+        LocalDateTime at = savedAt.plusMinutes(30);
+        SnapshotBlobs.Externalized saved = ProjectSnapshot.write(project, project.getTracks());
+        ProjectVersion base = ProjectVersion.builder().id(7L).project(project).timeStamp(savedAt).snapshotData(saved.json()).build();
+        when(projectRepository.existsById(1L)).thenReturn(true);
+        when(projectVersionRepository.findFirstByProjectIdAndTimeStampLessThanEqualOrderByTimeStampDescIdDesc(1L, at)).thenReturn(Optional.of(base));
+        when(trackChangeRepository.findForReplay(1L, savedAt, at)).thenReturn(List.of(
+                TrackChange.builder().trackId(101L).changeType(TrackChangeType.MODIFY).instrument("Organ").sequenceHash(SnapshotBlobs.hash("seq1_edited")).build(),
+                TrackChange.builder().trackId(102L).changeType(TrackChangeType.DELETE).build(),
+                TrackChange.builder().trackId(103L).changeType(TrackChangeType.ADD).instrument("Bass").sequenceHash(SnapshotBlobs.hash("bass")).build(),
+                TrackChange.builder().trackId(101L).changeType(TrackChangeType.MODIFY).instrument("Organ").sequenceHash(SnapshotBlobs.hash("seq1_final")).build()));
+        ArgumentCaptor<Iterable<String>> loaded = ArgumentCaptor.forClass(Iterable.class);
+        when(trackBlobRepository.findAllById(loaded.capture())).thenReturn(List.of(
+                TrackBlob.builder().hash(SnapshotBlobs.hash("seq1_final")).musicalSequence("seq1_final").build(),
+                TrackBlob.builder().hash(SnapshotBlobs.hash("bass")).musicalSequence("bass").build()));
+
+        ProjectStateDto state = projectVersionService.getProjectAt(1L, at);
+
+        verify(trackChangeService).writePending(); // queued changes are written before the log is read
+        assertEquals(7L, state.getBaseVersionId());
+        assertEquals(4, state.getChangesReplayed());
+        assertEquals("Original Project", state.getTitle());
+        assertEquals(List.of(101L, 103L), state.getTracks().stream().map(ProjectStateDto.TrackState::getId).toList());
+        assertEquals("Organ", state.getTracks().get(0).getInstrument());
+        assertEquals("seq1_final", state.getTracks().get(0).getMusicalSequence());
+        assertEquals("bass", state.getTracks().get(1).getMusicalSequence());
+        List<String> loadedHashes = new ArrayList<>();
+        loaded.getValue().forEach(loadedHashes::add);
+        assertEquals(2, loadedHashes.size()); // not the superseded or deleted ones
+    }
+
+    @Test
+    @DisplayName("getTrackAt should apply the operations and note deltas logged after a track's last keyframe")
+    void getTrackAt_AppliesDeltas() {
+        LocalDateTime at = LocalDateTime.of(2026, 3, 1, 12, 0);
+        String keyframe = "{\"channel\":0,\"program\":0,\"notes\":[{\"id\":1,\"tick\":0,\"pitch\":60,\"velocity\":100,\"duration\":480}]}";
+        String updated = "{\"channel\":0,\"program\":0,\"notes\":[{\"id\":1,\"tick\":0,\"pitch\":60,\"velocity\":90,\"duration\":480},"
+                + "{\"id\":2,\"tick\":480,\"pitch\":64,\"velocity\":100,\"duration\":480}]}";
+        String delta = "{\"channel\":0,\"program\":0,\"hasNotes\":true,\"put\":[{\"id\":2,\"tick\":480,\"pitch\":64,\"velocity\":100,\"duration\":480}],\"remove\":[]}";
+        when(projectRepository.existsById(1L)).thenReturn(true);
+        when(projectVersionRepository.findFirstByProjectIdAndTimeStampLessThanEqualOrderByTimeStampDescIdDesc(1L, at)).thenReturn(Optional.empty());
+        when(trackChangeRepository.findForReplayFromStart(1L, at)).thenReturn(List.of(
+                TrackChange.builder().trackId(101L).changeType(TrackChangeType.ADD).instrument("Piano").sequenceHash(SnapshotBlobs.hash(keyframe)).build(),
+                TrackChange.builder().trackId(101L).changeType(TrackChangeType.MODIFY).instrument("Piano")
+                        .sequenceOperations("[{\"type\":\"VELOCITY\",\"noteId\":1,\"velocity\":90}]").build(),
+                TrackChange.builder().trackId(101L).changeType(TrackChangeType.MODIFY).instrument("Organ").sequenceDelta(delta).build()));
+        when(trackBlobRepository.findAllById(any())).thenReturn(List.of(TrackBlob.builder().hash(SnapshotBlobs.hash(keyframe)).musicalSequence(keyframe).build()));
+
+        ProjectStateDto.TrackState track = projectVersionService.getTrackAt(1L, 101L, at).orElseThrow();
+
+        assertEquals("Organ", track.getInstrument());
+        assertEquals(updated, track.getMusicalSequence());
+    }
+
+    @Test
+    @DisplayName("getTrackAt should replay from the start of the log when no version is that old")
+    void getTrackAt_WithoutVersion() {
+        LocalDateTime at = LocalDateTime.of(2026, 3, 1, 12, 0);
+        when(projectRepository.existsById(1L)).thenReturn(true);
+        when(projectVersionRepository.findFirstByProjectIdAndTimeStampLessThanEqualOrderByTimeStampDescIdDesc(1L, at)).thenReturn(Optional.empty());
+        when(trackChangeRepository.findForReplayFromStart(1L, at)).thenReturn(List.of(
+                TrackChange.builder().trackId(101L).changeType(TrackChangeType.ADD).instrument("Piano").build(),
+                TrackChange.builder().trackId(102L).changeType(TrackChangeType.ADD).instrument("Drums").build()));
+
+        Optional<ProjectStateDto.TrackState> track = projectVersionService.getTrackAt(1L, 102L, at);
+
+        assertTrue(track.isPresent());
+        assertEquals("Drums", track.get().getInstrument());
+        assertNull(track.get().getMusicalSequence());
+        assertTrue(projectVersionService.getTrackAt(1L, 104L, at).isEmpty());
+        verify(trackBlobRepository, never()).findAllById(any());
+    }
+
+    @Test
+    @DisplayName("getProjectAt should throw ResourceNotFoundException if project not found")
+    void getProjectAt_ProjectNotFound() {
+        when(projectRepository.existsById(99L)).thenReturn(false);
+        assertThrows(ResourceNotFoundException.class, () -> projectVersionService.getProjectAt(99L, LocalDateTime.now()));
+        verifyNoInteractions(trackChangeRepository);
+    }
+
+
+    @Test
+    @DisplayName("previewRevert should report only tracks whose content differs, without saving")
+    void previewRevert_ReportsPlan() {
+        Long projectId = 1L;
+        Long versionId = 5L;
+        String snapshotWithUnchangedTrack = sampleProjectJson.replace("]}", ",{\"id\":102,\"instrument\":\"Drums\",\"musicalSequence\":\"seq2\"}]}");
+        ProjectVersion versionToRevertTo = ProjectVersion.builder().id(versionId).project(project).snapshotData(snapshotWithUnchangedTrack).build();
+        when(projectRepository.findById(projectId)).thenReturn(Optional.of(project));
+        when(projectVersionRepository.findById(versionId)).thenReturn(Optional.of(versionToRevertTo));
+
+        RevertPlanDto plan = projectVersionService.previewRevert(projectId, versionId);
+
+        assertEquals(List.of("title", "description", "tempo"), plan.getChangedFields());
+        assertEquals(List.of(101L), plan.getUpdatedTrackIds());
+        assertTrue(plan.getDeletedTrackIds().isEmpty());
+        assertEquals(1, plan.getAddedTracks());
+        assertEquals(1, plan.getUnchangedTracks());
+        verify(projectRepository, never()).save(any());
+        verify(trackRepository, never()).deleteAll(any());
+        assertEquals("Piano", track1.getInstrument()); // nothing applied
+        verify(versionSnapshotCache).put(eq(projectId), eq(versionId), any(ProjectSnapshot.class));
+    }
+
+    @Test
+    @DisplayName("previewRevert should answer from the snapshot cache without reading or parsing the version")
+    void previewRevert_CachedSnapshot() throws Exception {
+        ProjectSnapshot cached = ProjectSnapshot.read(sampleProjectJson);
+        when(projectRepository.findById(1L)).thenReturn(Optional.of(project));
+        when(versionSnapshotCache.find(1L, 5L)).thenReturn(Optional.of(cached));
+
+        RevertPlanDto plan = projectVersionService.previewRevert(1L, 5L);
+
+        assertEquals(List.of(101L), plan.getUpdatedTrackIds());
+        assertEquals(List.of(102L), plan.getDeletedTrackIds());
+        assertEquals(1, plan.getAddedTracks());
+        verifyNoInteractions(projectVersionRepository, trackBlobRepository);
+        verify(versionSnapshotCache, never()).put(any(), any(), any());
     }
 
+    @Test
+    @DisplayName("previewRevert should plan against live edits without flushing them")
+    void previewRevert_LiveTracks() throws Exception {
+        Track live = Track.builder().id(101L).instrument("Piano Updated").musicalSequence("seq1_updated").project(project).build();
+        when(projectRepository.findById(1L)).thenReturn(Optional.of(project));
+        when(versionSnapshotCache.find(1L, 5L)).thenReturn(Optional.of(ProjectSnapshot.read(sampleProjectJson)));
+        when(liveProjectService.getTracks(1L)).thenReturn(Optional.of(List.of(live, track2)));
+
+        RevertPlanDto plan = projectVersionService.previewRevert(1L, 5L);
+
+        assertTrue(plan.getUpdatedTrackIds().isEmpty()); // the live edit already matches the version
+        assertEquals(1, plan.getUnchangedTracks());
+        assertEquals(List.of(102L), plan.getDeletedTrackIds());
+        verify(liveProjectService, never()).flush(any());
+    }
 
     @Test
     @DisplayName("revertToVersion should throw ResourceNotFoundException if project not found")
@@ -255,7 +524,6 @@ class ProjectVersionServiceImplTest {
             projectVersionService.revertToVersion(projectId, versionId, user);
         });
         verify(projectVersionRepository, never()).findById(any());
-        verify(objectMapper, never()).readValue(anyString(), eq(Project.class));
     }
 
     @Test
@@ -271,7 +539,6 @@ class ProjectVersionServiceImplTest {
         assertThrows(ResourceNotFoundException.class, () -> {
             projectVersionService.revertToVersion(projectId, versionId, user);
         });
-        verify(objectMapper, never()).readValue(anyString(), eq(Project.class));
     }
 
      @Test
@@ -295,7 +562,6 @@ class ProjectVersionServiceImplTest {
          assertThrows(ResourceNotFoundException.class, () -> {
              projectVersionService.revertToVersion(projectId, versionId, user);
          });
-         verify(objectMapper, never()).readValue(anyString(), eq(Project.class));
      }
 
 
@@ -308,12 +574,11 @@ class ProjectVersionServiceImplTest {
         ProjectVersion versionToRevertTo = ProjectVersion.builder()
                 .id(versionId)
                 .project(project)
-                .snapshotData(sampleProjectJson)
+                .snapshotData("{\"id\":1,\"tempo\":\"fast\",\"tracks\":[]}") // valid JSON that is not a project
                 .build();
 
         when(projectRepository.findById(projectId)).thenReturn(Optional.of(project));
         when(projectVersionRepository.findById(versionId)).thenReturn(Optional.of(versionToRevertTo));
-        when(objectMapper.readValue(sampleProjectJson, Project.class)).thenThrow(new JsonProcessingException("Bad JSON") {});
 
         // Act & Assert
         RuntimeException exception = assertThrows(RuntimeException.class, () -> {
@@ -343,7 +608,6 @@ class ProjectVersionServiceImplTest {
 
          when(projectRepository.findById(projectId)).thenReturn(Optional.of(project));
          when(projectVersionRepository.findById(versionId)).thenReturn(Optional.of(versionToRevertTo));
-         when(objectMapper.readValue(sampleProjectJson, Project.class)).thenReturn(snapshotProject);
          when(projectRepository.save(any(Project.class))).thenReturn(project); // Return modified project
 
          // --- Setup state *before* calling revert ---
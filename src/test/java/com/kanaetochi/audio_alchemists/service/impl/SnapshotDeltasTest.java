@@ -0,0 +1,66 @@
+package com.kanaetochi.audio_alchemists.service.impl;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Optional;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class SnapshotDeltasTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    @DisplayName("a one-note edit should be stored as that note and replay to the exact snapshot")
+    void noteEditRoundTrip() throws Exception {
+        String base = snapshot("Demo", 120, track(1, "Piano", sequence(200, 60)), track(2, "Bass", sequence(50, 40)));
+        String target = snapshot("Demo", 120, track(1, "Piano", sequence(200, 60).replaceFirst("\"pitch\":62", "\"pitch\":63")), track(2, "Bass", sequence(50, 40)));
+
+        Optional<String> delta = SnapshotDeltas.diff(base, target);
+
+        assertTrue(delta.isPresent());
+        assertTrue(delta.get().length() < 300, delta.get());
+        assertTrue(delta.get().contains("\"notes\""));
+        assertEquals(objectMapper.readTree(target), objectMapper.readTree(SnapshotDeltas.apply(base, delta.get())));
+    }
+
+    @Test
+    @DisplayName("added, removed and reordered tracks and changed fields should replay exactly")
+    void structuralChangesRoundTrip() throws Exception {
+        String base = snapshot("Demo", 120, track(1, "Piano", sequence(100, 60)), track(2, "Bass", sequence(100, 40)), track(3, "Drums", "free-form"));
+        String target = snapshot("Renamed", 96, track(3, "Drums", "free-form, edited"), track(1, "Piano", sequence(100, 60)), track(4, "Organ", sequence(3, 70)));
+
+        Optional<String> delta = SnapshotDeltas.diff(base, target);
+
+        assertTrue(delta.isPresent());
+        assertEquals(objectMapper.readTree(target), objectMapper.readTree(SnapshotDeltas.apply(base, delta.get())));
+    }
+
+    @Test
+    @DisplayName("no delta when it would not be smaller or the snapshot cannot be keyed")
+    void fallsBackToKeyframe() {
+        assertTrue(SnapshotDeltas.diff("{\"title\":\"a\"}", "{\"title\":\"completely different\"}").isEmpty());
+        assertTrue(SnapshotDeltas.diff(snapshot("Demo", 1, "{\"instrument\":\"Piano\"}"), snapshot("Demo", 2, "{\"instrument\":\"Piano\"}")).isEmpty());
+        assertTrue(SnapshotDeltas.diff("not json", "{}").isEmpty());
+    }
+
+    private static String snapshot(String title, int tempo, String... tracks) {
+        return "{\"id\":1,\"title\":\"" + title + "\",\"tempo\":" + tempo + ",\"tracks\":[" + String.join(",", tracks) + "]}";
+    }
+
+    private static String track(long id, String instrument, String sequence) throws Exception {
+        return "{\"id\":" + id + ",\"instrument\":\"" + instrument + "\",\"musicalSequence\":" + new ObjectMapper().writeValueAsString(sequence) + ",\"version\":0}";
+    }
+
+    private static String sequence(int notes, int pitch) {
+        StringBuilder json = new StringBuilder("{\"channel\":0,\"program\":0,\"notes\":[");
+        for (int i = 0; i < notes; i++) {
+            json.append(i == 0 ? "" : ",").append("{\"id\":").append(i + 1).append(",\"tick\":").append(i * 120)
+                    .append(",\"pitch\":").append(pitch + i % 4).append(",\"velocity\":90,\"duration\":120}");
+        }
+        return json.append("]}").toString();
+    }
+}
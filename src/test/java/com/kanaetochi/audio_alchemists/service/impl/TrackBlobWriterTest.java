@@ -0,0 +1,59 @@
+package com.kanaetochi.audio_alchemists.service.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.kanaetochi.audio_alchemists.model.converter.MusicalSequenceConverter;
+import com.kanaetochi.audio_alchemists.repository.TrackBlobRepository;
+
+@ExtendWith(MockitoExtension.class)
+public class TrackBlobWriterTest {
+
+    @Mock
+    private TrackBlobRepository trackBlobRepository;
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @InjectMocks
+    private TrackBlobWriter trackBlobWriter;
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testStoreMissingBatchesOnlyNewBlobs() {
+        Map<String, String> blobs = new LinkedHashMap<>();
+        blobs.put(SnapshotBlobs.hash("seq1"), "seq1");
+        blobs.put(SnapshotBlobs.hash("seq2"), "seq2");
+        blobs.put(SnapshotBlobs.hash("seq3"), "seq3");
+        when(trackBlobRepository.findExistingHashes(blobs.keySet())).thenReturn(Set.of(SnapshotBlobs.hash("seq2")));
+
+        trackBlobWriter.storeMissing(blobs);
+
+        ArgumentCaptor<List<Object[]>> rows = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate).batchUpdate(anyString(), rows.capture());
+        assertEquals(rows.getValue().size(), 2);
+        assertEquals(rows.getValue().get(0)[0], SnapshotBlobs.hash("seq1"));
+        assertEquals(rows.getValue().get(0)[1], new MusicalSequenceConverter().convertToDatabaseColumn("seq1"));
+        assertEquals(rows.getValue().get(1)[0], SnapshotBlobs.hash("seq3"));
+    }
+
+    @Test
+    void testStoreMissingWritesNothingWhenAllStored() {
+        when(trackBlobRepository.findExistingHashes(any())).thenReturn(Set.of(SnapshotBlobs.hash("seq1")));
+        trackBlobWriter.storeMissing(Map.of(SnapshotBlobs.hash("seq1"), "seq1"));
+        verifyNoInteractions(jdbcTemplate);
+    }
+}
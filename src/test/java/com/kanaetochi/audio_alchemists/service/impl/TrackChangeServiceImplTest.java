@@ -0,0 +1,135 @@
+package com.kanaetochi.audio_alchemists.service.impl;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import com.kanaetochi.audio_alchemists.model.Project;
+import com.kanaetochi.audio_alchemists.model.Track;
+import com.kanaetochi.audio_alchemists.model.TrackChange;
+import com.kanaetochi.audio_alchemists.model.TrackChangeType;
+import com.kanaetochi.audio_alchemists.repository.TrackChangeRepository;
+import com.kanaetochi.audio_alchemists.sequence.MusicalSequence;
+import com.kanaetochi.audio_alchemists.sequence.NoteEvent;
+import com.kanaetochi.audio_alchemists.sequence.NoteOperation;
+import com.kanaetochi.audio_alchemists.sequence.SequenceCodec;
+
+@ExtendWith(MockitoExtension.class)
+class TrackChangeServiceImplTest {
+
+    @Mock
+    private TrackChangeRepository trackChangeRepository;
+    @Mock
+    private TrackBlobWriter trackBlobWriter;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private TrackChangeServiceImpl trackChangeService;
+
+    private final Project project = Project.builder().id(1L).build();
+
+    @BeforeEach
+    void setUp() {
+        trackChangeService = new TrackChangeServiceImpl(trackChangeRepository, trackBlobWriter, transactionManager);
+        ReflectionTestUtils.setField(trackChangeService, "batchSize", 2);
+    }
+
+    private Track track(Long id, String instrument, String musicalSequence) {
+        return Track.builder().id(id).project(project).instrument(instrument).musicalSequence(musicalSequence).build();
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<List<TrackChange>> writtenBatches(int times) {
+        ArgumentCaptor<List<TrackChange>> captor = ArgumentCaptor.forClass(List.class);
+        verify(trackChangeRepository, times(times)).saveAll(captor.capture());
+        return captor.getAllValues();
+    }
+
+    @Test
+    @DisplayName("writePending should insert queued changes in order, in batches, with each distinct sequence stored once")
+    void writePending_WritesBatches() {
+        trackChangeService.record(TrackChangeType.ADD, track(101L, "Piano", "seq1"));
+        trackChangeService.record(TrackChangeType.MODIFY, track(101L, "Piano", "seq1"));
+        trackChangeService.record(TrackChangeType.DELETE, track(101L, "Piano", "seq1"));
+        verifyNoInteractions(trackChangeRepository); // nothing written on the caller's thread
+
+        trackChangeService.writePending();
+
+        List<List<TrackChange>> batches = writtenBatches(2);
+        assertEquals(2, batches.get(0).size());
+        assertEquals(TrackChangeType.ADD, batches.get(0).get(0).getChangeType());
+        assertEquals(1L, batches.get(0).get(0).getProjectId());
+        assertEquals(SnapshotBlobs.hash("seq1"), batches.get(0).get(1).getSequenceHash());
+        TrackChange deleted = batches.get(1).get(0);
+        assertEquals(TrackChangeType.DELETE, deleted.getChangeType());
+        assertNull(deleted.getInstrument());
+        assertNull(deleted.getSequenceHash());
+        verify(trackBlobWriter).storeMissing(Map.of(SnapshotBlobs.hash("seq1"), "seq1")); // the delete has no sequence to store
+    }
+
+    // A sequence of 20 notes, the one with id 1 at the given pitch
+    private static String notes(int firstPitch) {
+        return SequenceCodec.toJson(MusicalSequence.builder().channel(0).program(0)
+                .notes(new ArrayList<>(IntStream.rangeClosed(1, 20)
+                        .mapToObj(i -> NoteEvent.builder().id((long) i).tick(i * 480L).pitch(i == 1 ? firstPitch : 40 + i).velocity(100).duration(480L).build())
+                        .toList()))
+                .build());
+    }
+
+    @Test
+    @DisplayName("writePending should store only operations or changed notes between keyframes, and a whole sequence every keyframe-interval changes")
+    void writePending_StoresDeltasBetweenKeyframes() {
+        ReflectionTestUtils.setField(trackChangeService, "batchSize", 10);
+        ReflectionTestUtils.setField(trackChangeService, "keyframeInterval", 3);
+        List<NoteOperation> operations = List.of(NoteOperation.builder().type(NoteOperation.Type.VELOCITY).noteId(1L).velocity(90).build());
+        trackChangeService.record(TrackChangeType.ADD, track(101L, "Piano", notes(60)));
+        trackChangeService.recordPatch(track(101L, "Piano", notes(60)), operations);
+        trackChangeService.recordUpdate(track(101L, "Piano", notes(62)), notes(60));
+        trackChangeService.recordUpdate(track(101L, "Piano", notes(64)), notes(62));
+
+        trackChangeService.writePending();
+
+        List<TrackChange> changes = writtenBatches(1).get(0);
+        assertNotNull(changes.get(0).getSequenceHash()); // an ADD is a keyframe
+        assertNull(changes.get(1).getSequenceHash());
+        assertTrue(changes.get(1).getSequenceOperations().contains("VELOCITY"));
+        assertNull(changes.get(2).getSequenceHash());
+        assertEquals(notes(62), SnapshotDeltas.applySequence(notes(60), changes.get(2).getSequenceDelta()));
+        assertNotNull(changes.get(3).getSequenceHash()); // the third change since the keyframe starts a new one
+        assertNull(changes.get(3).getSequenceDelta());
+        verify(trackBlobWriter).storeMissing(argThat(blobs -> blobs.size() == 2)); // the two keyframes
+    }
+
+    @Test
+    @DisplayName("writePending should retry a failed batch one change at a time")
+    void writePending_RetriesFailedBatchAlone() {
+        when(trackChangeRepository.saveAll(anyList()))
+                .thenThrow(new IllegalStateException("batch failed"))
+                .thenThrow(new IllegalStateException("bad change"))
+                .thenReturn(List.of());
+        trackChangeService.record(TrackChangeType.MODIFY, track(101L, "Piano", "seq1"));
+        trackChangeService.record(TrackChangeType.MODIFY, track(102L, "Drums", "seq2"));
+
+        trackChangeService.writePending();
+
+        List<List<TrackChange>> batches = writtenBatches(3);
+        assertEquals(2, batches.get(0).size());
+        assertEquals(102L, batches.get(2).get(0).getTrackId());
+    }
+}
@@ -0,0 +1,51 @@
+package com.kanaetochi.audio_alchemists.service.impl;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.kanaetochi.audio_alchemists.model.Track;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class TrackRevisionStoreTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private static Track track(Long id, int version, String sequence) {
+        return Track.builder().id(id).version(version).instrument("Piano").musicalSequence(sequence).build();
+    }
+
+    @Test
+    @DisplayName("record should evict the oldest versions of the least recently written tracks once the byte limit is passed")
+    void record_EvictsByBytes() {
+        long revisionSize = TrackRevisionStore.sizeOf(new TrackRevisionStore.Revision(1, "Piano", "x".repeat(1000)));
+        TrackRevisionStore store = new TrackRevisionStore(registry, 3 * revisionSize);
+        store.record(track(1L, 1, "a".repeat(1000)));
+        store.record(track(1L, 2, "b".repeat(1000)));
+        store.record(track(2L, 1, "c".repeat(1000)));
+
+        store.record(track(2L, 2, "d".repeat(1000)));
+
+        assertTrue(store.find(1L, 1).isEmpty());
+        assertEquals("b".repeat(1000), store.find(1L, 2).orElseThrow().musicalSequence());
+        assertTrue(store.find(2L, 1).isPresent());
+        assertTrue(store.find(2L, 2).isPresent());
+        assertEquals(3 * revisionSize, store.currentBytes());
+        assertEquals(1, registry.get("aa.track.revisions.evictions").counter().count());
+    }
+
+    @Test
+    @DisplayName("forget should release a deleted track's versions")
+    void forget_ReleasesBytes() {
+        TrackRevisionStore store = new TrackRevisionStore(registry, 1_000_000);
+        store.record(track(1L, 1, "seq"));
+        store.record(track(1L, 2, "seq2"));
+
+        store.forget(1L);
+
+        assertTrue(store.find(1L, 2).isEmpty());
+        assertEquals(0, store.currentBytes());
+    }
+}
@@ -0,0 +1,75 @@
+package com.kanaetochi.audio_alchemists.service.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import com.kanaetochi.audio_alchemists.model.Track;
+import com.kanaetochi.audio_alchemists.model.TrackSegment;
+import com.kanaetochi.audio_alchemists.repository.TrackRepository;
+import com.kanaetochi.audio_alchemists.repository.TrackSegmentRepository;
+
+@ExtendWith(MockitoExtension.class)
+public class TrackSegmentWriterTest {
+
+    // Segment 0 holds the note at tick 0, segment 2 the one at 20000
+    private static final String BEFORE = "{\"notes\":[{\"id\":1,\"tick\":0,\"pitch\":60,\"duration\":480},{\"id\":2,\"tick\":20000,\"pitch\":62,\"duration\":480}]}";
+    private static final String AFTER = "{\"notes\":[{\"id\":1,\"tick\":0,\"pitch\":60,\"duration\":480},{\"id\":2,\"tick\":20000,\"pitch\":64,\"duration\":480}]}";
+
+    @Mock
+    private TrackSegmentRepository trackSegmentRepository;
+    @Mock
+    private TrackRepository trackRepository;
+
+    @InjectMocks
+    private TrackSegmentWriter trackSegmentWriter;
+
+    @SuppressWarnings("unchecked")
+    private List<TrackSegment> saved() {
+        ArgumentCaptor<List<TrackSegment>> captor = ArgumentCaptor.forClass(List.class);
+        verify(trackSegmentRepository).saveAll(captor.capture());
+        return captor.getValue();
+    }
+
+    @Test
+    void testWrittenRewritesOnlyChangedSegments() {
+        Track track = Track.builder().id(1l).musicalSequence(AFTER).version(4).build();
+        when(trackSegmentRepository.countByTrackIdAndTrackVersion(1l, 3)).thenReturn(2l);
+        trackSegmentWriter.written(track, BEFORE, 3);
+        verify(trackSegmentRepository).deleteSegments(1l, Set.of(2));
+        verify(trackSegmentRepository).moveToVersion(1l, 4);
+        verify(trackSegmentRepository, never()).deleteByTrackId(anyLong());
+        List<TrackSegment> segments = saved();
+        assertEquals(segments.size(), 1);
+        assertEquals(segments.get(0).getSegmentIndex(), 2);
+        assertEquals(segments.get(0).getTrackVersion(), 4);
+    }
+
+    @Test
+    void testWrittenCutsEverySegmentWhenStoredOnesAreMissing() {
+        Track track = Track.builder().id(1l).musicalSequence(AFTER).version(4).build();
+        when(trackSegmentRepository.countByTrackIdAndTrackVersion(1l, 3)).thenReturn(0l); // never cut, or by a write that skipped them
+        trackSegmentWriter.written(track, BEFORE, 3);
+        verify(trackSegmentRepository).deleteByTrackId(1l);
+        verify(trackSegmentRepository, never()).moveToVersion(anyLong(), anyInt());
+        assertEquals(saved().size(), 2);
+    }
+
+    @Test
+    void testWrittenDropsSegmentsOfFreeFormSequence() {
+        Track track = Track.builder().id(1l).musicalSequence("C4 E4 G4").version(4).build();
+        trackSegmentWriter.written(track, BEFORE, 3);
+        verify(trackSegmentRepository).deleteByTrackId(1l);
+        verify(trackSegmentRepository, never()).saveAll(anyList());
+    }
+}
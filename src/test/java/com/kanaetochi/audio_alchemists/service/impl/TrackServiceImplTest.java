@@ -10,6 +10,7 @@ import static org.mockito.Mockito.*;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -17,14 +18,35 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import com.kanaetochi.audio_alchemists.dto.SequencePatchDto;
+import com.kanaetochi.audio_alchemists.dto.SequencePatchResultDto;
+import com.kanaetochi.audio_alchemists.dto.SequenceWindowDto;
+import com.kanaetochi.audio_alchemists.dto.TrackBatchOperation;
+import com.kanaetochi.audio_alchemists.dto.TrackBatchResultDto;
+import com.kanaetochi.audio_alchemists.dto.TrackSummaryDto;
+import com.kanaetochi.audio_alchemists.exception.ConcurrentEditException;
+import com.kanaetochi.audio_alchemists.exception.InvalidSequenceException;
 import com.kanaetochi.audio_alchemists.exception.ResourceNotFoundException;
 import com.kanaetochi.audio_alchemists.model.Project;
 import com.kanaetochi.audio_alchemists.model.Role;
 import com.kanaetochi.audio_alchemists.model.Track;
+import com.kanaetochi.audio_alchemists.model.TrackChangeType;
+import com.kanaetochi.audio_alchemists.model.TrackSegment;
 import com.kanaetochi.audio_alchemists.model.User;
 import com.kanaetochi.audio_alchemists.repository.ProjectRepository;
 import com.kanaetochi.audio_alchemists.repository.TrackRepository;
+import com.kanaetochi.audio_alchemists.repository.TrackSegmentRepository;
+import com.kanaetochi.audio_alchemists.sequence.NoteEvent;
+import com.kanaetochi.audio_alchemists.sequence.MusicalSequence;
+import com.kanaetochi.audio_alchemists.sequence.NoteOperation;
+import com.kanaetochi.audio_alchemists.sequence.SequenceSegments;
+import com.kanaetochi.audio_alchemists.service.LiveProjectService;
+import com.kanaetochi.audio_alchemists.service.TrackChangeService;
 
 @ExtendWith(MockitoExtension.class)
 public class TrackServiceImplTest {
@@ -33,6 +55,18 @@ public class TrackServiceImplTest {
     private TrackRepository trackRepository;
     @Mock
     private ProjectRepository projectRepository;
+    @Mock
+    private LiveProjectService liveProjectService;
+    @Mock
+    private TrackSegmentRepository trackSegmentRepository;
+    @Mock
+    private TransactionTemplate transactionTemplate;
+    @Mock
+    private TrackRevisionStore trackRevisionStore;
+    @Mock
+    private TrackChangeService trackChangeService;
+    @Mock
+    private TrackSegmentWriter trackSegmentWriter;
 
     @InjectMocks
     private TrackServiceImpl trackService;
@@ -63,6 +97,10 @@ public class TrackServiceImplTest {
             .musicalSequence("{}")
             .project(project)
             .build();
+        lenient().when(transactionTemplate.execute(any())).thenAnswer(invocation -> {
+            TransactionCallback<?> callback = invocation.getArgument(0);
+            return callback.doInTransaction(null);
+        });
     }
 
     @Test
@@ -76,6 +114,7 @@ public class TrackServiceImplTest {
         assertEquals(newTrack.getProject(), track.getProject());
         verify(trackRepository, times(1)).save(any(Track.class));
         verify(projectRepository, times(1)).findById(1l);
+        verify(trackChangeService, times(1)).record(TrackChangeType.ADD, track);
     }
     @Test
     void testCreateTrackNotFound() {
@@ -86,11 +125,28 @@ public class TrackServiceImplTest {
     }
     @Test
     void testGetAllTracksByProject() {
-        when(trackRepository.findAll()).thenReturn(List.of(track));
+        when(trackRepository.findByProjectIdOrderByIdAsc(1l)).thenReturn(List.of(track));
         List<Track> tracks = trackService.getAllTracksByProject(1l);
         assertFalse(tracks.isEmpty());
         assertEquals(tracks.size(), 1);
-        verify(trackRepository, times(1)).findAll();
+        verify(trackRepository, times(1)).findByProjectIdOrderByIdAsc(1l);
+        verify(trackRepository, never()).findAll();
+    }
+    @Test
+    void testGetTrackSummariesByProject() {
+        TrackSummaryDto summary = new TrackSummaryDto(2l, "Piano", null, 0);
+        when(trackRepository.findSummariesByProjectIdAfter(1l, 1l, PageRequest.of(0, 10))).thenReturn(List.of(summary));
+        List<TrackSummaryDto> summaries = trackService.getTrackSummariesByProject(1l, 1l, 10);
+        assertEquals(summaries.size(), 1);
+        assertEquals(summaries.get(0).getId(), 2l);
+        verify(trackRepository, times(1)).findSummariesByProjectIdAfter(1l, 1l, PageRequest.of(0, 10));
+    }
+    @Test
+    void testGetTrackSummariesByProjectFirstPage() {
+        when(trackRepository.findSummariesByProjectIdAfter(1l, 0l, PageRequest.of(0, 10))).thenReturn(List.of());
+        List<TrackSummaryDto> summaries = trackService.getTrackSummariesByProject(1l, null, 10);
+        assertTrue(summaries.isEmpty());
+        verify(trackRepository, times(1)).findSummariesByProjectIdAfter(1l, 0l, PageRequest.of(0, 10));
     }
     @Test
     void testGetTrackById() {
@@ -102,6 +158,12 @@ public class TrackServiceImplTest {
         verify(trackRepository, times(1)).findById(1l);
     }
     @Test
+    void testGetTrackVersion() {
+        when(trackRepository.findVersionById(1l)).thenReturn(Optional.of(3));
+        assertEquals(trackService.getTrackVersion(1l), Optional.of(3));
+        verify(trackRepository, never()).findById(anyLong());
+    }
+    @Test
     void testGetTrackByIdNotFound() {
         when(trackRepository.findById(1l)).thenReturn(Optional.empty());
         Optional<Track> retrievedTrack = trackService.getTrackById(1L);
@@ -124,6 +186,26 @@ public class TrackServiceImplTest {
         verify(trackRepository, times(1)).findById(1l);
     }
     @Test
+    void testUpdateTrackLiveProject() {
+        Track trackDetails = Track.builder().instrument("Guitar").musicalSequence("{}").build();
+        when(liveProjectService.editTrack(eq(1l), any())).thenAnswer(invocation -> {
+            Consumer<Track> edit = invocation.getArgument(1);
+            edit.accept(track);
+            return Optional.of(track);
+        });
+        Track updatedTrack = trackService.updateTrack(1l, trackDetails);
+        assertEquals(updatedTrack.getInstrument(), "Guitar");
+        verify(trackRepository, never()).findById(anyLong());
+        verify(trackRepository, never()).save(any(Track.class));
+    }
+    @Test
+    void testGetAllTracksByProjectLive() {
+        when(liveProjectService.getTracks(1l)).thenReturn(Optional.of(List.of(track)));
+        List<Track> tracks = trackService.getAllTracksByProject(1l);
+        assertEquals(tracks.size(), 1);
+        verify(trackRepository, never()).findByProjectIdOrderByIdAsc(anyLong());
+    }
+    @Test
     void testUpdateTrackNotFound() {
         Track trackDetails = Track.builder()
             .instrument("Guitar")
@@ -140,6 +222,8 @@ public class TrackServiceImplTest {
         trackService.deleteTrack(1L);
         verify(trackRepository, times(1)).findById(1L);
         verify(trackRepository, times(1)).deleteById(1L);
+        verify(liveProjectService, times(1)).trackDeleted(1L);
+        verify(trackChangeService, times(1)).record(TrackChangeType.DELETE, track);
     }
 
     @Test
@@ -148,4 +232,183 @@ public class TrackServiceImplTest {
         assertThrows(ResourceNotFoundException.class, () -> trackService.deleteTrack(1L));
         verify(trackRepository, times(1)).findById(1L);
     }
+
+    @Test
+    void testPatchSequence() {
+        track.setVersion(3);
+        track.setMusicalSequence("{\"notes\":[{\"id\":1,\"tick\":0,\"pitch\":60,\"velocity\":100,\"duration\":480},{\"id\":2,\"tick\":480,\"pitch\":62,\"velocity\":100,\"duration\":480}]}");
+        SequencePatchDto patch = new SequencePatchDto();
+        patch.setVersion(3);
+        patch.setOperations(List.of(
+            NoteOperation.builder().type(NoteOperation.Type.MOVE).noteId(1l).tick(240l).build(),
+            NoteOperation.builder().type(NoteOperation.Type.DELETE).noteId(2l).build(),
+            NoteOperation.builder().type(NoteOperation.Type.INSERT).note(NoteEvent.builder().tick(960l).pitch(64).velocity(80).duration(480l).build()).build()));
+        when(trackRepository.findById(1l)).thenReturn(Optional.of(track));
+        when(trackRepository.save(any(Track.class))).thenReturn(track);
+        SequencePatchResultDto result = trackService.patchSequence(1l, patch);
+        assertEquals(result.getTrackId(), 1l);
+        assertEquals(result.getOperations().size(), 3);
+        assertEquals(result.getOperations().get(2).getNoteId(), 3l); // next free id
+        assertEquals(track.getMusicalSequence(), "{\"notes\":[{\"id\":1,\"tick\":240,\"pitch\":60,\"velocity\":100,\"duration\":480},{\"id\":3,\"tick\":960,\"pitch\":64,\"velocity\":80,\"duration\":480}]}");
+        verify(trackRepository, times(1)).save(track);
+    }
+    @Test
+    void testPatchSequenceStaleVersion() {
+        track.setVersion(4);
+        SequencePatchDto patch = new SequencePatchDto();
+        patch.setVersion(3);
+        patch.setOperations(List.of(NoteOperation.builder().type(NoteOperation.Type.DELETE).noteId(1l).build()));
+        when(trackRepository.findById(1l)).thenReturn(Optional.of(track));
+        assertThrows(ConcurrentEditException.class, () -> trackService.patchSequence(1l, patch));
+        verify(trackRepository, times(0)).save(any(Track.class));
+    }
+    @Test
+    void testPatchSequenceUnknownNote() {
+        track.setMusicalSequence("{\"notes\":[{\"id\":1,\"pitch\":60}]}");
+        SequencePatchDto patch = new SequencePatchDto();
+        patch.setOperations(List.of(NoteOperation.builder().type(NoteOperation.Type.VELOCITY).noteId(9l).velocity(10).build()));
+        when(trackRepository.findById(1l)).thenReturn(Optional.of(track));
+        assertThrows(InvalidSequenceException.class, () -> trackService.patchSequence(1l, patch));
+        verify(trackRepository, times(0)).save(any(Track.class));
+    }
+    @Test
+    void testApplyBatch() {
+        track.setVersion(1);
+        Track other = Track.builder().id(2l).instrument("Drums").project(project).version(0).build();
+        when(projectRepository.findById(1l)).thenReturn(Optional.of(project));
+        when(trackRepository.findAllById(anySet())).thenReturn(List.of(track, other));
+        TrackBatchResultDto result = trackService.applyBatch(1l, List.of(
+            TrackBatchOperation.builder().type(TrackBatchOperation.Type.CREATE).instrument("Bass").build(),
+            TrackBatchOperation.builder().type(TrackBatchOperation.Type.UPDATE).id(1l).instrument("Guitar").version(1).build(),
+            TrackBatchOperation.builder().type(TrackBatchOperation.Type.DELETE).id(2l).build()));
+        assertEquals(result.getCreated().size(), 1);
+        assertEquals(result.getUpdated().get(0).getInstrument(), "Guitar");
+        assertEquals(result.getDeleted(), List.of(2l));
+        verify(trackRepository, times(1)).findAllById(anySet());
+        verify(trackRepository, times(1)).saveAll(anyList());
+        verify(trackRepository, times(1)).deleteAll(List.of(other));
+        verify(trackRepository, times(1)).flush();
+        verify(liveProjectService, times(1)).refresh(1l);
+    }
+    @Test
+    void testApplyBatchStaleVersion() {
+        track.setVersion(2);
+        when(projectRepository.findById(1l)).thenReturn(Optional.of(project));
+        when(trackRepository.findAllById(anySet())).thenReturn(List.of(track));
+        assertThrows(ConcurrentEditException.class, () -> trackService.applyBatch(1l, List.of(
+            TrackBatchOperation.builder().type(TrackBatchOperation.Type.UPDATE).id(1l).instrument("Guitar").version(1).build())));
+        verify(trackRepository, never()).flush();
+    }
+    @Test
+    void testGetSequenceWindowFromSegments() {
+        MusicalSequence segmentZero = MusicalSequence.builder().channel(3)
+            .notes(List.of(NoteEvent.builder().id(1l).tick(0l).pitch(60).velocity(100).duration(480l).build())).build();
+        TrackSegment segment = TrackSegment.builder().segmentIndex(0).startTick(0l).maxEndTick(480l).trackVersion(2)
+            .data(SequenceSegments.encode(segmentZero)).build();
+        when(trackRepository.findVersionById(1l)).thenReturn(Optional.of(2));
+        when(trackSegmentRepository.findWindow(1l, 240l, 960l)).thenReturn(List.of(segment));
+        SequenceWindowDto window = trackService.getSequenceWindow(1l, 240l, 960l);
+        assertEquals(window.getVersion(), 2);
+        assertEquals(window.getChannel(), 3);
+        assertEquals(window.getNotes().size(), 1);
+        verify(trackRepository, never()).findById(anyLong()); // the full sequence is never loaded
+    }
+    @Test
+    void testGetSequenceWindowReadsWholeSequenceForStaleSegments() {
+        track.setVersion(3);
+        track.setMusicalSequence("{\"notes\":[{\"id\":1,\"tick\":0,\"duration\":10},{\"id\":2,\"tick\":100000,\"duration\":10}]}");
+        TrackSegment stale = TrackSegment.builder().segmentIndex(0).trackVersion(2).build();
+        when(trackRepository.findVersionById(1l)).thenReturn(Optional.of(3));
+        when(trackSegmentRepository.findWindow(1l, 0l, 100l)).thenReturn(List.of(stale));
+        when(trackRepository.findById(1l)).thenReturn(Optional.of(track));
+        SequenceWindowDto window = trackService.getSequenceWindow(1l, 0l, 100l);
+        assertEquals(window.getNotes().size(), 1);
+        assertEquals(window.getNotes().get(0).getId(), 1l);
+        verifyNoMoreInteractions(trackSegmentRepository); // reads never write segments
+        verifyNoInteractions(trackSegmentWriter);
+    }
+    @Test
+    void testUpdateTrackWritesSegmentsInItsTransaction() {
+        track.setVersion(3);
+        Track trackDetails = Track.builder().instrument("Piano").musicalSequence("{\"notes\":[{\"id\":1,\"pitch\":60}]}").build();
+        when(trackRepository.findById(1l)).thenReturn(Optional.of(track));
+        when(trackRepository.save(track)).thenAnswer(invocation -> {
+            track.setVersion(4);
+            return track;
+        });
+        trackService.updateTrack(1l, trackDetails);
+        verify(transactionTemplate, times(1)).execute(any());
+        verify(trackSegmentWriter, times(1)).written(track, "{}", 3);
+    }
+    @Test
+    void testUpdateTrackMergesStaleEdit() {
+        track.setVersion(5);
+        track.setMusicalSequence("{\"notes\":[{\"id\":1,\"pitch\":61},{\"id\":2,\"pitch\":62}]}"); // someone moved note 1
+        when(trackRevisionStore.find(1l, 4)).thenReturn(Optional.of(new TrackRevisionStore.Revision(4, "Piano",
+            "{\"notes\":[{\"id\":1,\"pitch\":60},{\"id\":2,\"pitch\":62}]}")));
+        Track trackDetails = Track.builder().version(4).instrument("Piano")
+            .musicalSequence("{\"notes\":[{\"id\":1,\"pitch\":60},{\"id\":2,\"pitch\":65}]}").build(); // and we moved note 2
+        when(trackRepository.findById(1l)).thenReturn(Optional.of(track));
+        when(trackRepository.save(any(Track.class))).thenReturn(track);
+        trackService.updateTrack(1l, trackDetails);
+        assertEquals(track.getMusicalSequence(), "{\"notes\":[{\"id\":1,\"pitch\":61},{\"id\":2,\"pitch\":65}]}");
+        verify(trackRevisionStore, times(2)).record(track); // the replaced version, then the merged one
+    }
+    @Test
+    void testUpdateTrackStaleConflict() {
+        track.setVersion(5);
+        track.setMusicalSequence("{\"notes\":[{\"id\":1,\"pitch\":61}]}");
+        when(trackRevisionStore.find(1l, 4)).thenReturn(Optional.of(new TrackRevisionStore.Revision(4, "Piano", "{\"notes\":[{\"id\":1,\"pitch\":60}]}")));
+        Track trackDetails = Track.builder().version(4).instrument("Piano").musicalSequence("{\"notes\":[{\"id\":1,\"pitch\":59}]}").build();
+        when(trackRepository.findById(1l)).thenReturn(Optional.of(track));
+        assertThrows(ConcurrentEditException.class, () -> trackService.updateTrack(1l, trackDetails));
+        verify(trackRepository, never()).save(any(Track.class));
+    }
+    @Test
+    void testUpdateTrackMergesOntoRacingWrite() {
+        String base = "{\"notes\":[{\"id\":1,\"pitch\":60},{\"id\":2,\"pitch\":62}]}";
+        Track stale = Track.builder().id(1l).instrument("Piano").musicalSequence(base).project(project).version(4).build();
+        track.setVersion(5);
+        track.setMusicalSequence("{\"notes\":[{\"id\":1,\"pitch\":61},{\"id\":2,\"pitch\":62}]}"); // committed while we wrote
+        when(trackRepository.findById(1l)).thenReturn(Optional.of(stale), Optional.of(track));
+        when(trackRepository.save(any(Track.class)))
+            .thenThrow(new ObjectOptimisticLockingFailureException(Track.class, 1l))
+            .thenAnswer(invocation -> invocation.getArgument(0));
+        when(trackRevisionStore.find(1l, 4)).thenReturn(Optional.of(new TrackRevisionStore.Revision(4, "Piano", base)));
+        Track trackDetails = Track.builder().instrument("Piano")
+            .musicalSequence("{\"notes\":[{\"id\":1,\"pitch\":60},{\"id\":2,\"pitch\":65}]}").build(); // no version: the one first read
+        trackService.updateTrack(1l, trackDetails);
+        assertEquals(track.getMusicalSequence(), "{\"notes\":[{\"id\":1,\"pitch\":61},{\"id\":2,\"pitch\":65}]}");
+        verify(trackRepository, times(2)).save(any(Track.class));
+    }
+    @Test
+    void testPatchSequenceConflictsWithRacingWrite() {
+        Track stale = Track.builder().id(1l).instrument("Piano").musicalSequence("{\"notes\":[{\"id\":1,\"pitch\":60}]}").project(project).version(4).build();
+        track.setVersion(5);
+        track.setMusicalSequence("{\"notes\":[{\"id\":1,\"pitch\":61}]}"); // the racing write moved the note being deleted
+        when(trackRepository.findById(1l)).thenReturn(Optional.of(stale), Optional.of(track));
+        when(trackRepository.save(any(Track.class))).thenThrow(new ObjectOptimisticLockingFailureException(Track.class, 1l));
+        when(trackRevisionStore.find(1l, 4)).thenReturn(Optional.of(new TrackRevisionStore.Revision(4, "Piano", "{\"notes\":[{\"id\":1,\"pitch\":60}]}")));
+        SequencePatchDto patch = new SequencePatchDto();
+        patch.setOperations(List.of(NoteOperation.builder().type(NoteOperation.Type.DELETE).noteId(1l).build()));
+        assertThrows(ConcurrentEditException.class, () -> trackService.patchSequence(1l, patch));
+        verify(trackRepository, times(1)).save(any(Track.class)); // the conflict is found on the re-read, not by writing again
+    }
+    @Test
+    void testPatchSequenceRebasesStaleVersion() {
+        track.setVersion(5);
+        track.setMusicalSequence("{\"notes\":[{\"id\":1,\"pitch\":61,\"velocity\":100},{\"id\":2,\"pitch\":62,\"velocity\":100}]}");
+        when(trackRevisionStore.find(1l, 4)).thenReturn(Optional.of(new TrackRevisionStore.Revision(4, "Piano",
+            "{\"notes\":[{\"id\":1,\"pitch\":60,\"velocity\":100},{\"id\":2,\"pitch\":62,\"velocity\":100}]}")));
+        SequencePatchDto patch = new SequencePatchDto();
+        patch.setVersion(4);
+        patch.setOperations(List.of(NoteOperation.builder().type(NoteOperation.Type.VELOCITY).noteId(2l).velocity(50).build()));
+        when(trackRepository.findById(1l)).thenReturn(Optional.of(track));
+        when(trackRepository.save(any(Track.class))).thenReturn(track);
+        trackService.patchSequence(1l, patch);
+        assertEquals(track.getMusicalSequence(), "{\"notes\":[{\"id\":1,\"pitch\":61,\"velocity\":100},{\"id\":2,\"pitch\":62,\"velocity\":50}]}");
+
+        patch.setOperations(List.of(NoteOperation.builder().type(NoteOperation.Type.DELETE).noteId(1l).build())); // note 1 changed since version 4
+        assertThrows(ConcurrentEditException.class, () -> trackService.patchSequence(1l, patch));
+    }
 }
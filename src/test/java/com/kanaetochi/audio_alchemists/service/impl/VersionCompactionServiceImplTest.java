@@ -0,0 +1,199 @@
+package com.kanaetochi.audio_alchemists.service.impl;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.Set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kanaetochi.audio_alchemists.model.Project;
+import com.kanaetochi.audio_alchemists.model.ProjectVersion;
+import com.kanaetochi.audio_alchemists.model.VersionKind;
+import com.kanaetochi.audio_alchemists.repository.ProjectVersionRepository;
+import com.kanaetochi.audio_alchemists.repository.ProjectVersionRepository.StoredSnapshot;
+import com.kanaetochi.audio_alchemists.repository.ProjectVersionRepository.VersionStamp;
+import com.kanaetochi.audio_alchemists.repository.TrackBlobRepository;
+import com.kanaetochi.audio_alchemists.repository.TrackChangeRepository;
+
+@ExtendWith(MockitoExtension.class)
+class VersionCompactionServiceImplTest {
+
+    @Mock
+    private ProjectVersionRepository projectVersionRepository;
+    @Mock
+    private TrackBlobRepository trackBlobRepository;
+    @Mock
+    private TrackChangeRepository trackChangeRepository;
+    @Mock
+    private VersionDiffCache versionDiffCache;
+    @Mock
+    private VersionSnapshotCache versionSnapshotCache;
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    @InjectMocks
+    private VersionCompactionServiceImpl compactionService;
+
+    private final Project project = Project.builder().id(1L).build();
+    private final List<ProjectVersion> versions = new ArrayList<>();
+    private final List<String> snapshots = new ArrayList<>(); // full snapshot of each version, by position
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(compactionService, "keyframeInterval", 20);
+        ReflectionTestUtils.setField(compactionService, "keepAllHours", 24L);
+        ReflectionTestUtils.setField(compactionService, "hourlyDays", 7L);
+        ReflectionTestUtils.setField(compactionService, "batchSize", 200);
+        when(transactionTemplate.execute(any())).thenAnswer(invocation -> {
+            TransactionCallback<?> callback = invocation.getArgument(0);
+            return callback.doInTransaction(null);
+        });
+    }
+
+    // Saves versions the way createSnapShot does: each one a delta against the one before
+    private void save(LocalDateTime timeStamp, String title) {
+        save(timeStamp, title, "11111111");
+    }
+
+    private void save(LocalDateTime timeStamp, String title, String firstTrackHash) {
+        String snapshot = snapshot(title).replace("\"sequenceHash\":\"11111111\"", "\"sequenceHash\":\"" + firstTrackHash + "\"");
+        ProjectVersion.ProjectVersionBuilder version = ProjectVersion.builder()
+                .id((long) versions.size() + 1).project(project).timeStamp(timeStamp).description(ProjectVersion.AUTOSAVE_DESCRIPTION);
+        if (versions.isEmpty()) {
+            version.kind(VersionKind.KEYFRAME).chainDepth(0).snapshotData(snapshot);
+        } else {
+            ProjectVersion base = versions.get(versions.size() - 1);
+            version.kind(VersionKind.DELTA).baseVersionId(base.getId())
+                    .keyframeId(base.getKind() == VersionKind.DELTA ? base.getKeyframeId() : base.getId())
+                    .chainDepth(base.getChainDepth() + 1)
+                    .snapshotData(SnapshotDeltas.diff(snapshots.get(snapshots.size() - 1), snapshot).orElseThrow());
+        }
+        versions.add(version.build());
+        snapshots.add(snapshot);
+    }
+
+    private void stubRepository() {
+        when(projectVersionRepository.findStampsByProjectId(1L)).thenReturn(versions.stream()
+                .map(v -> (VersionStamp) new VersionStamp() {
+                    public Long getId() { return v.getId(); }
+                    public LocalDateTime getTimeStamp() { return v.getTimeStamp(); }
+                    public String getDescription() { return v.getDescription(); }
+                })
+                .toList());
+        lenient().when(projectVersionRepository.findById(anyLong())).thenAnswer(invocation ->
+                Optional.of(versions.get(((Long) invocation.getArgument(0)).intValue() - 1)));
+        lenient().when(projectVersionRepository.findByProjectIdAndIdGreaterThanEqualOrderByIdAsc(eq(1L), anyLong(), any())).thenAnswer(invocation -> {
+            long fromId = invocation.getArgument(1);
+            return versions.stream().filter(v -> v.getId() >= fromId).toList();
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<ProjectVersion> deleted() {
+        ArgumentCaptor<List<ProjectVersion>> captor = ArgumentCaptor.forClass(List.class);
+        verify(projectVersionRepository).deleteAll(captor.capture());
+        return captor.getValue();
+    }
+
+    // Replays the surviving versions the way snapshotDataOf does
+    private String replay(ProjectVersion version) {
+        if (version.getKind() != VersionKind.DELTA) {
+            return version.getSnapshotData();
+        }
+        ProjectVersion base = versions.get(version.getBaseVersionId().intValue() - 1);
+        return SnapshotDeltas.apply(replay(base), version.getSnapshotData());
+    }
+
+    private static String snapshot(String title) {
+        StringBuilder tracks = new StringBuilder();
+        for (int i = 1; i <= 20; i++) {
+            tracks.append(i == 1 ? "" : ",").append("{\"id\":").append(100 + i).append(",\"instrument\":\"Instrument ").append(i)
+                    .append("\",\"sequenceHash\":\"").append(String.valueOf(i).repeat(8)).append("\"}");
+        }
+        return "{\"id\":1,\"title\":\"" + title + "\",\"tempo\":120,\"tracks\":[" + tracks + "]}";
+    }
+
+    @Test
+    @DisplayName("compactProject should delete thinned versions and rebase the kept ones so every one still replays")
+    void compactProject_RebasesChain() throws Exception {
+        LocalDateTime threeDaysAgo = LocalDateTime.now().minusDays(3).withMinute(5);
+        save(threeDaysAgo, "one");
+        save(threeDaysAgo.plusMinutes(10), "two");                 // newest of its hour
+        save(threeDaysAgo.plusHours(1), "three");
+        save(threeDaysAgo.plusHours(1).plusMinutes(10), "four");   // newest of its hour
+        save(LocalDateTime.now().minusHours(1), "five");
+        stubRepository();
+
+        int deleted = compactionService.compactProject(1L);
+
+        assertEquals(2, deleted);
+        assertEquals(List.of(1L, 3L), deleted().stream().map(ProjectVersion::getId).toList());
+        ObjectMapper reader = new ObjectMapper();
+        for (int i : new int[] {1, 3, 4}) { // versions 2, 4 and 5
+            ProjectVersion kept = versions.get(i);
+            assertNotEquals(1L, kept.getBaseVersionId());
+            assertNotEquals(3L, kept.getBaseVersionId());
+            assertEquals(reader.readTree(snapshots.get(i)), reader.readTree(replay(kept)));
+        }
+        assertEquals(VersionKind.KEYFRAME, versions.get(1).getKind()); // nothing kept before it
+        assertEquals(2L, versions.get(3).getBaseVersionId());
+        assertEquals(2L, versions.get(4).getKeyframeId());
+        verify(versionDiffCache).forgetProject(1L);
+        verify(versionSnapshotCache).forgetProject(1L);
+    }
+
+    @Test
+    @DisplayName("compactProject should delete the blobs only the deleted versions referred to")
+    void compactProject_SweepsReleasedBlobs() {
+        LocalDateTime threeDaysAgo = LocalDateTime.now().minusDays(3).withMinute(5);
+        save(threeDaysAgo, "one", "gone");
+        save(threeDaysAgo.plusMinutes(10), "two", "logged");       // the change log still has "logged"
+        save(threeDaysAgo.plusMinutes(20), "three");
+        save(LocalDateTime.now().minusHours(1), "four");
+        stubRepository();
+        when(trackBlobRepository.lockForSweep(any())).thenAnswer(invocation -> Set.copyOf(invocation.<Collection<String>>getArgument(0)));
+        when(trackChangeRepository.findReferencedHashes(any())).thenReturn(Set.of("logged"));
+        when(projectVersionRepository.findSnapshotsAfter(eq(0L), any())).thenAnswer(invocation -> versions.stream()
+                .filter(v -> !deleted().contains(v))
+                .map(v -> (StoredSnapshot) new StoredSnapshot() {
+                    public Long getId() { return v.getId(); }
+                    public String getSnapshotData() { return v.getSnapshotData(); }
+                })
+                .toList());
+
+        assertEquals(2, compactionService.compactProject(1L));
+        verify(trackBlobRepository).deleteAllByIdInBatch(Set.of("gone"));
+    }
+
+    @Test
+    @DisplayName("compactProject should leave a project alone when the policy keeps everything")
+    void compactProject_NothingExpired() {
+        save(LocalDateTime.now().minusHours(3), "one");
+        save(LocalDateTime.now().minusHours(2), "two");
+        stubRepository();
+
+        assertEquals(0, compactionService.compactProject(1L));
+        verify(projectVersionRepository, never()).deleteAll(any());
+        verifyNoInteractions(versionDiffCache);
+    }
+}
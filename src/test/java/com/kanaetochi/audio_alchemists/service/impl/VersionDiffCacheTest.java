@@ -0,0 +1,77 @@
+package com.kanaetochi.audio_alchemists.service.impl;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.kanaetochi.audio_alchemists.dto.VersionDiffDto;
+import com.kanaetochi.audio_alchemists.dto.VersionDiffDto.TrackDiff;
+import com.kanaetochi.audio_alchemists.sequence.NoteEvent;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class VersionDiffCacheTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private static VersionDiffDto diff(int notes) {
+        List<NoteEvent> added = new ArrayList<>();
+        for (int i = 0; i < notes; i++) {
+            added.add(NoteEvent.builder().id((long) i).tick(480L * i).pitch(60).build());
+        }
+        return VersionDiffDto.builder()
+                .projectId(1L)
+                .addedTrackIds(new ArrayList<>(List.of(103L)))
+                .changedTracks(new ArrayList<>(List.of(TrackDiff.builder().trackId(101L).addedNotes(added).build())))
+                .build();
+    }
+
+    @Test
+    @DisplayName("find should hand out a copy, so changing it leaves the cached diff as it was")
+    void find_ReturnsCopy() {
+        VersionDiffCache cache = new VersionDiffCache(registry, 1_000_000);
+        VersionDiffDto stored = diff(2);
+        cache.put(1L, 7L, 9L, stored);
+        stored.getChangedTracks().get(0).getAddedNotes().get(0).setPitch(0); // the caller keeps using what it put
+
+        VersionDiffDto first = cache.find(1L, 7L, 9L).orElseThrow();
+        first.setToVersionId(10L);
+        first.getChangedTracks().get(0).getAddedNotes().get(1).setPitch(0);
+
+        VersionDiffDto second = cache.find(1L, 7L, 9L).orElseThrow();
+        assertNotSame(first, second);
+        assertNull(second.getToVersionId());
+        assertEquals(60, second.getChangedTracks().get(0).getAddedNotes().get(0).getPitch());
+        assertEquals(60, second.getChangedTracks().get(0).getAddedNotes().get(1).getPitch());
+        assertEquals(List.of(103L), second.getAddedTrackIds());
+        assertEquals(2, registry.get("aa.diff.cache.requests").tag("result", "hit").counter().count());
+    }
+
+    @Test
+    @DisplayName("put should evict the least recently read diffs once the byte limit is passed")
+    void put_EvictsByBytes() {
+        long entrySize = VersionDiffCache.sizeOf(diff(100));
+        VersionDiffCache cache = new VersionDiffCache(registry, 2 * entrySize);
+        cache.put(1L, 1L, 2L, diff(100));
+        cache.put(1L, 2L, 3L, diff(100));
+        cache.find(1L, 1L, 2L); // 2..3 is now the least recently read
+
+        cache.put(1L, 3L, 4L, diff(100));
+
+        assertTrue(cache.find(1L, 1L, 2L).isPresent());
+        assertTrue(cache.find(1L, 2L, 3L).isEmpty());
+        assertTrue(cache.find(1L, 3L, 4L).isPresent());
+        assertEquals(2 * entrySize, cache.currentBytes());
+        assertEquals(1, registry.get("aa.diff.cache.evictions").counter().count());
+
+        cache.put(1L, 4L, 5L, diff(1000)); // larger than the whole cache: not kept
+        assertTrue(cache.find(1L, 4L, 5L).isEmpty());
+        cache.forgetProject(1L);
+        assertEquals(0, cache.currentBytes());
+        assertEquals(0, cache.currentEntries());
+    }
+}
@@ -0,0 +1,62 @@
+package com.kanaetochi.audio_alchemists.service.impl;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.kanaetochi.audio_alchemists.model.ProjectVersion;
+import com.kanaetochi.audio_alchemists.repository.ProjectVersionRepository.VersionStamp;
+
+class VersionRetentionTest {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2025, 6, 30, 12, 0);
+
+    private record Stamp(Long id, LocalDateTime timeStamp, String description) implements VersionStamp {
+        public Long getId() { return id; }
+        public LocalDateTime getTimeStamp() { return timeStamp; }
+        public String getDescription() { return description; }
+    }
+
+    private Stamp autosave(long id, LocalDateTime timeStamp) {
+        return new Stamp(id, timeStamp, ProjectVersion.AUTOSAVE_DESCRIPTION);
+    }
+
+    @Test
+    @DisplayName("expired should keep everything recent, then the newest per hour, then the newest per day")
+    void tiers() {
+        List<VersionStamp> stamps = List.of(
+                autosave(1, NOW.minusDays(20).withHour(9)),
+                autosave(2, NOW.minusDays(20).withHour(15)),            // newest of its day
+                autosave(3, NOW.minusDays(3).withHour(9).withMinute(10)),
+                autosave(4, NOW.minusDays(3).withHour(9).withMinute(40)), // newest of its hour
+                autosave(5, NOW.minusDays(3).withHour(10)),
+                autosave(6, NOW.minusHours(5)),
+                autosave(7, NOW.minusHours(5).plusMinutes(1)));
+
+        Set<Long> expired = VersionRetention.expired(stamps, NOW, Duration.ofHours(24), Duration.ofDays(7));
+
+        assertEquals(Set.of(1L, 3L), expired);
+    }
+
+    @Test
+    @DisplayName("expired should never include described versions or the latest version")
+    void keepsDescribedAndLatest() {
+        List<VersionStamp> stamps = List.of(
+                new Stamp(1L, NOW.minusDays(30).withHour(8), "Chorus draft"),
+                new Stamp(2L, NOW.minusDays(30).withHour(9), ProjectVersion.MANUAL_SAVE_DESCRIPTION),
+                autosave(3, NOW.minusDays(30).withHour(10)),
+                autosave(4, NOW.minusDays(30).withHour(11)));
+
+        Set<Long> expired = VersionRetention.expired(stamps, NOW, Duration.ofHours(24), Duration.ofDays(7));
+
+        assertEquals(Set.of(2L), expired); // 3 is the newest of its day once the latest is set aside
+        assertTrue(VersionRetention.isDescribed("Chorus draft"));
+        assertFalse(VersionRetention.isDescribed(" "));
+    }
+}
@@ -0,0 +1,64 @@
+package com.kanaetochi.audio_alchemists.service.impl;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.kanaetochi.audio_alchemists.service.impl.ProjectSnapshot.TrackSnapshot;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class VersionSnapshotCacheTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private static ProjectSnapshot snapshot(String sequence) {
+        return new ProjectSnapshot(1L, "Project", null, null, 120, List.of(new TrackSnapshot(101L, "Piano", sequence, null)));
+    }
+
+    private double requests(String result) {
+        return registry.get("aa.snapshot.cache.requests").tag("result", result).counter().count();
+    }
+
+    @Test
+    @DisplayName("find should hit only for the version's own project and count hits and misses")
+    void find_CountsHitsAndMisses() {
+        VersionSnapshotCache cache = new VersionSnapshotCache(registry, 1_000_000);
+        ProjectSnapshot snapshot = snapshot("seq");
+        cache.put(1L, 5L, snapshot);
+
+        assertSame(snapshot, cache.find(1L, 5L).orElseThrow());
+        assertTrue(cache.find(2L, 5L).isEmpty()); // version of another project
+        assertTrue(cache.find(1L, 6L).isEmpty());
+
+        assertEquals(1, requests("hit"));
+        assertEquals(2, requests("miss"));
+    }
+
+    @Test
+    @DisplayName("put should evict the least recently read versions once the byte limit is passed")
+    void put_EvictsByBytes() {
+        long entrySize = VersionSnapshotCache.sizeOf(snapshot("x".repeat(1000)));
+        VersionSnapshotCache cache = new VersionSnapshotCache(registry, 2 * entrySize);
+        cache.put(1L, 1L, snapshot("a".repeat(1000)));
+        cache.put(1L, 2L, snapshot("b".repeat(1000)));
+        cache.find(1L, 1L); // version 2 is now the least recently read
+
+        cache.put(1L, 3L, snapshot("c".repeat(1000)));
+
+        assertTrue(cache.find(1L, 1L).isPresent());
+        assertTrue(cache.find(1L, 2L).isEmpty());
+        assertTrue(cache.find(1L, 3L).isPresent());
+        assertEquals(2 * entrySize, cache.currentBytes());
+        assertEquals(1, registry.get("aa.snapshot.cache.evictions").counter().count());
+
+        cache.put(1L, 4L, snapshot("d".repeat(10_000))); // larger than the whole cache: not kept
+        assertTrue(cache.find(1L, 4L).isEmpty());
+        cache.forgetProject(1L);
+        assertEquals(0, cache.currentEntries());
+        assertEquals(0, cache.currentBytes());
+    }
+}
@@ -0,0 +1,81 @@
+package com.kanaetochi.audio_alchemists.websocket;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import com.kanaetochi.audio_alchemists.dto.PresenceFrame;
+import com.kanaetochi.audio_alchemists.dto.PresenceMessage;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@ExtendWith(MockitoExtension.class)
+class ProjectPresenceRelayTest {
+
+    @Mock
+    private SimpMessagingTemplate simpMessagingTemplate;
+
+    private ProjectPresenceRelay relay;
+
+    @BeforeEach
+    void setUp() {
+        relay = new ProjectPresenceRelay(simpMessagingTemplate, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(relay, "intervalMs", 0L);
+        ReflectionTestUtils.setField(relay, "audienceStep", 50);
+    }
+
+    private static PresenceMessage at(String clientId, long playheadTick) {
+        return PresenceMessage.builder().clientId(clientId).playheadTick(playheadTick).build();
+    }
+
+    @Test
+    @DisplayName("flush should send only the latest presence of each session, once")
+    void flush_LatestValueWins() {
+        relay.update(1L, "s1", at("s1", 10));
+        relay.update(1L, "s2", at("s2", 20));
+        relay.update(1L, "s1", at("s1", 30));
+
+        relay.flush();
+
+        ArgumentCaptor<PresenceFrame> frame = ArgumentCaptor.forClass(PresenceFrame.class);
+        verify(simpMessagingTemplate).convertAndSend(eq("/topic/project/1/presence"), frame.capture());
+        List<PresenceMessage> updates = frame.getValue().getUpdates();
+        assertEquals(List.of(30L, 20L), updates.stream().map(PresenceMessage::getPlayheadTick).toList());
+
+        relay.flush(); // nothing new
+        verify(simpMessagingTemplate, times(1)).convertAndSend(anyString(), any(Object.class));
+    }
+
+    @Test
+    @DisplayName("a disconnect should tell the project the session left")
+    void onDisconnect_SendsLeft() {
+        relay.update(1L, "s1", at("s1", 10));
+        relay.flush();
+
+        relay.onDisconnect(new SessionDisconnectEvent(this, MessageBuilder.withPayload(new byte[0]).build(), "s1", CloseStatus.NORMAL));
+        relay.flush();
+
+        ArgumentCaptor<PresenceFrame> frame = ArgumentCaptor.forClass(PresenceFrame.class);
+        verify(simpMessagingTemplate, times(2)).convertAndSend(eq("/topic/project/1/presence"), frame.capture());
+        PresenceMessage left = frame.getAllValues().get(1).getUpdates().get(0);
+        assertEquals("s1", left.getClientId());
+        assertTrue(left.isLeft());
+    }
+}
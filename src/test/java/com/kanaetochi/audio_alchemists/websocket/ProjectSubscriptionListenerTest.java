@@ -0,0 +1,91 @@
+package com.kanaetochi.audio_alchemists.websocket;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kanaetochi.audio_alchemists.model.Project;
+import com.kanaetochi.audio_alchemists.model.User;
+import com.kanaetochi.audio_alchemists.repository.ProjectRepository;
+import com.kanaetochi.audio_alchemists.repository.TrackRepository;
+import com.kanaetochi.audio_alchemists.service.TrackChangeService;
+import com.kanaetochi.audio_alchemists.service.impl.LiveProjectServiceImpl;
+import com.kanaetochi.audio_alchemists.service.impl.TrackRevisionStore;
+import com.kanaetochi.audio_alchemists.service.impl.TrackSegmentWriter;
+
+@ExtendWith(MockitoExtension.class)
+class ProjectSubscriptionListenerTest {
+
+    @Mock
+    private TrackRepository trackRepository;
+    @Mock
+    private ProjectRepository projectRepository;
+    @Mock
+    private TransactionTemplate transactionTemplate;
+    @Mock
+    private TrackRevisionStore trackRevisionStore;
+    @Mock
+    private TrackSegmentWriter trackSegmentWriter;
+    @Mock
+    private TrackChangeService trackChangeService;
+    @Mock
+    private ProjectTopicPublisher projectTopicPublisher;
+
+    private LiveProjectServiceImpl liveProjectService;
+    private ProjectSubscriptionListener listener;
+
+    @BeforeEach
+    void setUp() {
+        liveProjectService = new LiveProjectServiceImpl(trackRepository, projectRepository, transactionTemplate,
+                trackRevisionStore, trackSegmentWriter, trackChangeService, projectTopicPublisher, new ObjectMapper());
+        listener = new ProjectSubscriptionListener(liveProjectService);
+    }
+
+    private static SessionSubscribeEvent subscribe(String destination) {
+        StompHeaderAccessor headers = StompHeaderAccessor.create(StompCommand.SUBSCRIBE);
+        headers.setDestination(destination);
+        headers.setSessionId("s1");
+        headers.setSubscriptionId("sub-0");
+        return new SessionSubscribeEvent(new Object(), MessageBuilder.createMessage(new byte[0], headers.getMessageHeaders()));
+    }
+
+    @Test
+    @DisplayName("a presence subscription should leave the project's tracks in the database")
+    void onSubscribe_PresenceMakesNoRepositoryCalls() {
+        listener.onSubscribe(subscribe("/topic/project/1/presence"));
+
+        assertFalse(liveProjectService.isLive(1L));
+        verifyNoInteractions(trackRepository, projectRepository, transactionTemplate);
+    }
+
+    @Test
+    @DisplayName("a track changes subscription should load the project once")
+    void onSubscribe_TracksMakeProjectLive() {
+        Project project = Project.builder().id(1L).owner(User.builder().id(1L).build()).build();
+        when(transactionTemplate.execute(any())).thenAnswer(invocation -> ((TransactionCallback<?>) invocation.getArgument(0)).doInTransaction(null));
+        when(projectRepository.findById(1L)).thenReturn(Optional.of(project));
+        when(trackRepository.findByProjectIdOrderByIdAsc(1L)).thenReturn(List.of());
+
+        listener.onSubscribe(subscribe("/topic/project/1/tracks"));
+
+        assertTrue(liveProjectService.isLive(1L));
+        verify(trackRepository, times(1)).findByProjectIdOrderByIdAsc(1L);
+    }
+}
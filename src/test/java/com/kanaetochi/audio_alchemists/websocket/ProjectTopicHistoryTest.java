@@ -0,0 +1,76 @@
+package com.kanaetochi.audio_alchemists.websocket;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.kanaetochi.audio_alchemists.dto.TrackChangeMessage;
+import com.kanaetochi.audio_alchemists.dto.TrackReplayDto;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class ProjectTopicHistoryTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private ProjectTopicHistory history;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        history = new ProjectTopicHistory(meterRegistry);
+        ReflectionTestUtils.setField(history, "bufferSize", 3);
+        ReflectionTestUtils.setField(history, "idleMs", 600000L);
+    }
+
+    private static List<TrackChangeMessage> changes(String... data) {
+        return IntStream.range(0, data.length)
+                .mapToObj(i -> TrackChangeMessage.builder().trackId(101L).changeType("MODIFY").data(data[i]).payload(new Object()).build())
+                .toList();
+    }
+
+    @Test
+    @DisplayName("since should return just the changes after the client's last seq, numbered one after another")
+    void since_ReturnsGap() {
+        List<TrackChangeMessage> first = changes("v1", "v2");
+        history.record(1L, first);
+        history.record(1L, changes("v3"));
+        history.record(2L, changes("other"));
+        long seq = first.get(0).getSeq();
+        assertEquals(seq + 1, first.get(1).getSeq());
+
+        TrackReplayDto replay = history.since(1L, seq);
+
+        assertFalse(replay.isResyncRequired());
+        assertEquals(seq + 2, replay.getLatestSeq());
+        assertEquals(List.of("v2", "v3"), replay.getChanges().stream().map(TrackChangeMessage::getData).toList());
+        assertNull(replay.getChanges().get(0).getPayload()); // not kept
+        assertTrue(history.since(1L, seq + 2).getChanges().isEmpty()); // up to date
+        assertEquals(2, meterRegistry.counter("aa.ws.replay", "result", "replayed").count());
+    }
+
+    @Test
+    @DisplayName("since should ask for a resync once the changes after the client's last seq are no longer all kept")
+    void since_ResyncWhenGapTooOld() {
+        List<TrackChangeMessage> sent = changes("v1", "v2", "v3", "v4");
+        history.record(1L, sent);
+        long seq = sent.get(0).getSeq();
+
+        assertFalse(history.since(1L, seq).isResyncRequired()); // v2 to v4 still kept
+        assertTrue(history.since(1L, seq - 1).isResyncRequired()); // v1 dropped
+        assertTrue(history.since(1L, 42L).isResyncRequired()); // from before this server started
+        assertTrue(history.since(1L, null).isResyncRequired());
+        assertTrue(history.since(3L, seq).isResyncRequired()); // never sent on
+
+        ReflectionTestUtils.setField(history, "idleMs", -1L);
+        history.forgetIdle();
+        assertTrue(history.since(1L, seq).isResyncRequired());
+        assertFalse(history.since(1L, seq + 3).isResyncRequired()); // saw the last one: nothing missed
+        assertEquals(5, meterRegistry.counter("aa.ws.replay", "result", "resync").count());
+    }
+}
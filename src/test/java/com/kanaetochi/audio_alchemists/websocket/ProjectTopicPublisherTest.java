@@ -0,0 +1,109 @@
+package com.kanaetochi.audio_alchemists.websocket;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.kanaetochi.audio_alchemists.dto.SequencePatchResultDto;
+import com.kanaetochi.audio_alchemists.dto.TrackChangeFrame;
+import com.kanaetochi.audio_alchemists.dto.TrackChangeMessage;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@ExtendWith(MockitoExtension.class)
+class ProjectTopicPublisherTest {
+
+    @Mock
+    private SimpMessagingTemplate simpMessagingTemplate;
+    @Mock
+    private TrackTopicFormats trackTopicFormats;
+    @Mock
+    private ProjectTopicHistory projectTopicHistory;
+
+    private SimpleMeterRegistry meterRegistry;
+    private ProjectTopicPublisher publisher;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        publisher = new ProjectTopicPublisher(simpMessagingTemplate, trackTopicFormats, projectTopicHistory, meterRegistry);
+    }
+
+    private static TrackChangeMessage change(Long trackId, String changeType, String data) {
+        return TrackChangeMessage.builder().trackId(trackId).changeType(changeType).data(data).build();
+    }
+
+    @Test
+    @DisplayName("flush should send a project's changes as one frame, with successive MODIFYs of a track collapsed to the latest")
+    void flush_CoalescesModifies() {
+        publisher.publishTrackChange(1L, change(101L, "MODIFY", "v1"));
+        publisher.publishTrackChange(1L, change(102L, "ADD", "new"));
+        publisher.publishTrackChange(1L, change(101L, "MODIFY", "v2"));
+        publisher.publishTrackChange(1L, change(101L, "PATCH", "ops"));
+        publisher.publishTrackChange(1L, change(101L, "MODIFY", "v3")); // a PATCH in between: both stay
+        publisher.publishTrackChange(2L, change(201L, "DELETE", "201"));
+        verifyNoInteractions(simpMessagingTemplate);
+
+        publisher.flush();
+
+        ArgumentCaptor<Object> payload = ArgumentCaptor.forClass(Object.class);
+        verify(simpMessagingTemplate).convertAndSend(eq("/topic/project/1/tracks"), payload.capture());
+        List<TrackChangeMessage> changes = ((TrackChangeFrame) payload.getValue()).getChanges();
+        assertEquals(List.of("new", "v2", "ops", "v3"), changes.stream().map(TrackChangeMessage::getData).toList());
+        verify(projectTopicHistory).record(1L, changes); // numbered as sent, after coalescing
+        verify(simpMessagingTemplate).convertAndSend("/topic/project/2/tracks", (Object) change(201L, "DELETE", "201")); // alone, unwrapped
+        assertEquals(1, meterRegistry.counter("aa.ws.track-changes", "result", "coalesced").count());
+        assertEquals(5, meterRegistry.counter("aa.ws.track-changes", "result", "sent").count());
+
+        publisher.flush(); // nothing left
+        verify(simpMessagingTemplate, times(2)).convertAndSend(anyString(), any(Object.class));
+    }
+
+    @Test
+    @DisplayName("a project-wide change should keep the MODIFYs on either side of it")
+    void publishTrackChange_BatchKeepsOrder() {
+        publisher.publishTrackChange(1L, change(101L, "MODIFY", "v1"));
+        publisher.publishTrackChange(1L, change(null, "BATCH", "batch"));
+        publisher.publishTrackChange(1L, change(101L, "MODIFY", "v2"));
+
+        publisher.flush();
+
+        ArgumentCaptor<Object> payload = ArgumentCaptor.forClass(Object.class);
+        verify(simpMessagingTemplate).convertAndSend(eq("/topic/project/1/tracks"), payload.capture());
+        assertEquals(List.of("v1", "batch", "v2"),
+                ((TrackChangeFrame) payload.getValue()).getChanges().stream().map(TrackChangeMessage::getData).toList());
+    }
+
+    @Test
+    @DisplayName("flush should also send CBOR, with data as an object, to a project that has binary subscribers")
+    void flush_SendsCborToBinarySubscribers() throws Exception {
+        when(trackTopicFormats.hasCborSubscribers(1L)).thenReturn(true);
+        SequencePatchResultDto patch = SequencePatchResultDto.builder().trackId(101L).version(4).build();
+        publisher.publishTrackChange(1L, TrackChangeMessage.builder().trackId(101L).changeType("PATCH")
+                .data("{\"trackId\":101,\"version\":4}").payload(patch).userId(7L).build());
+
+        publisher.flush();
+
+        ArgumentCaptor<Object> payload = ArgumentCaptor.forClass(Object.class);
+        verify(simpMessagingTemplate).convertAndSend(eq("/topic/project/1/tracks.cbor"), payload.capture());
+        JsonNode change = new CBORMapper().readTree((byte[]) payload.getValue());
+        assertEquals("PATCH", change.get("changeType").asText());
+        assertEquals(4, change.get("data").get("version").asInt()); // an object, not a JSON string
+        verify(simpMessagingTemplate).convertAndSend(eq("/topic/project/1/tracks"), any(Object.class)); // JSON subscribers as before
+    }
+}
@@ -0,0 +1,163 @@
+package com.kanaetochi.audio_alchemists.websocket;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompEncoder;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@ExtendWith(MockitoExtension.class)
+class SessionOutboxTest {
+
+    @Mock
+    private WebSocketSession session;
+
+    private final List<Runnable> sendTasks = new ArrayList<>(); // run by hand: until then the client is "slow"
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private SessionOutbox outbox(OutboundOverflowPolicy policy, long limit) {
+        return new SessionOutbox(session, policy, limit, 60_000, sendTasks::add, meterRegistry);
+    }
+
+    private static TextMessage frame(String changeType, long trackId, String data) {
+        return frame("{\"trackId\":" + trackId + ",\"changeType\":\"" + changeType + "\",\"data\":\"" + data + "\"}", data);
+    }
+
+    private static TextMessage frame(long seq, String changeType, long trackId, String data) {
+        return frame("{\"trackId\":" + trackId + ",\"changeType\":\"" + changeType + "\",\"seq\":" + seq + ",\"data\":\"" + data + "\"}", data);
+    }
+
+    private static TextMessage frame(String json, String data) {
+        StompHeaderAccessor headers = StompHeaderAccessor.create(StompCommand.MESSAGE);
+        headers.setDestination("/topic/project/1/tracks");
+        headers.setSubscriptionId("sub-0");
+        headers.setMessageId("m-" + data);
+        byte[] payload = json.getBytes(StandardCharsets.UTF_8);
+        return new TextMessage(new StompEncoder().encode(MessageBuilder.createMessage(payload, headers.getMessageHeaders())));
+    }
+
+    @SuppressWarnings("rawtypes")
+    private List<String> written() throws Exception {
+        ArgumentCaptor<WebSocketMessage> captor = ArgumentCaptor.forClass(WebSocketMessage.class);
+        verify(session, atLeastOnce()).sendMessage(captor.capture());
+        return captor.getAllValues().stream()
+                .map(message -> ((TextMessage) message).getPayload())
+                .map(payload -> payload.substring(payload.indexOf("\"data\":\"") + 8, payload.lastIndexOf('"')))
+                .toList();
+    }
+
+    @Test
+    @DisplayName("COALESCE should drop queued MODIFYs that a later MODIFY of the same track replaces, and send the rest in order")
+    void coalesce_KeepsLatestModify() throws Exception {
+        SessionOutbox outbox = outbox(OutboundOverflowPolicy.COALESCE, frame("MODIFY", 101, "v1").getPayloadLength() * 3L);
+        outbox.sendMessage(frame("MODIFY", 101, "v1"));
+        outbox.sendMessage(frame("ADD", 102, "add"));
+        outbox.sendMessage(frame("MODIFY", 101, "v2"));
+        outbox.sendMessage(frame("MODIFY", 101, "v3")); // over the limit
+
+        assertEquals(1, sendTasks.size()); // one writer per session
+        assertEquals(2, outbox.stats().getCoalesced()); // v1 and v2
+        sendTasks.get(0).run();
+
+        assertEquals(List.of("add", "v3"), written());
+        verify(session, never()).close(any());
+        assertEquals(2, meterRegistry.counter("aa.ws.outbound.overflow", "action", "coalesced").count());
+    }
+
+    @Test
+    @DisplayName("COALESCE should mark the frame kept on the topic with the first sequence number of the frames it replaced")
+    void coalesce_MarksCoveredSeqRange() throws Exception {
+        SessionOutbox outbox = outbox(OutboundOverflowPolicy.COALESCE, frame(1, "MODIFY", 101, "v1").getPayloadLength() * 3L);
+        outbox.sendMessage(frame(1, "MODIFY", 101, "v1"));
+        outbox.sendMessage(frame(2, "MODIFY", 101, "v2"));
+        outbox.sendMessage(frame(3, "ADD", 102, "add"));
+        outbox.sendMessage(frame(4, "MODIFY", 101, "v3")); // over the limit
+
+        sendTasks.get(0).run();
+
+        ArgumentCaptor<TextMessage> captor = ArgumentCaptor.forClass(TextMessage.class);
+        verify(session, times(2)).sendMessage(captor.capture());
+        String add = captor.getAllValues().get(0).getPayload();
+        assertTrue(add.contains("\"fromSeq\":1"), add); // covers 1..3: v1 and v2 went, v3 carries its own number
+        String v3 = captor.getAllValues().get(1).getPayload();
+        assertFalse(v3.contains("fromSeq"), v3);
+        assertEquals(0, outbox.queuedBytes());
+    }
+
+    @Test
+    @DisplayName("DROP_OLDEST should drop the oldest MODIFYs but never other changes")
+    void dropOldest_KeepsOtherChanges() throws Exception {
+        SessionOutbox outbox = outbox(OutboundOverflowPolicy.DROP_OLDEST, frame("MODIFY", 101, "v1").getPayloadLength() * 2L);
+        outbox.sendMessage(frame("ADD", 102, "add"));
+        outbox.sendMessage(frame("MODIFY", 101, "v1"));
+        outbox.sendMessage(frame("MODIFY", 103, "w1")); // over the limit
+
+        sendTasks.get(0).run();
+
+        assertEquals(List.of("add", "w1"), written());
+        assertEquals(1, outbox.stats().getDropped());
+    }
+
+    @Test
+    @DisplayName("an outbox still over its limit after the policy should close the session and queue nothing more")
+    void overflow_Disconnects() throws Exception {
+        SessionOutbox outbox = outbox(OutboundOverflowPolicy.COALESCE, frame("ADD", 101, "a").getPayloadLength());
+        outbox.sendMessage(frame("ADD", 101, "a"));
+        outbox.sendMessage(frame("DELETE", 101, "d")); // nothing to coalesce
+
+        verify(session).close(CloseStatus.SESSION_NOT_RELIABLE);
+        outbox.sendMessage(frame("ADD", 102, "b"));
+        sendTasks.forEach(Runnable::run);
+        verify(session, never()).sendMessage(any());
+        assertEquals(0, outbox.stats().getQueuedMessages());
+    }
+
+    @Test
+    @DisplayName("the sweep should close a session whose write has been blocked past the send time limit, and only that")
+    void closeIfStuck_ClosesBlockedSession() throws Exception {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch unblock = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            writing.countDown();
+            unblock.await(5, TimeUnit.SECONDS); // a client that stopped reading
+            return null;
+        }).when(session).sendMessage(any());
+        SessionOutbox outbox = new SessionOutbox(session, OutboundOverflowPolicy.COALESCE, 1_000_000, 50, sendTasks::add, meterRegistry);
+        outbox.closeIfStuck(); // nothing being written
+        verify(session, never()).close(any());
+
+        outbox.sendMessage(frame("ADD", 101, "a"));
+        Thread writer = new Thread(sendTasks.get(0));
+        writer.start();
+        assertTrue(writing.await(5, TimeUnit.SECONDS));
+        Thread.sleep(100);
+        outbox.closeIfStuck(); // no further frame needed to notice
+        sendTasks.get(1).run(); // the close, off the sweep's thread
+
+        verify(session).close(CloseStatus.SESSION_NOT_RELIABLE);
+        assertEquals(1, meterRegistry.counter("aa.ws.outbound.overflow", "action", "disconnected").count());
+        unblock.countDown();
+        writer.join();
+    }
+}
@@ -0,0 +1,57 @@
+package com.kanaetochi.audio_alchemists.websocket;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+
+class TrackTopicFormatsTest {
+
+    private final TrackTopicFormats formats = new TrackTopicFormats();
+    private final MessageChannel channel = mock(MessageChannel.class);
+
+    private static Message<byte[]> frame(StompCommand command, String subscriptionId, String destination, String contentType) {
+        StompHeaderAccessor headers = StompHeaderAccessor.create(command);
+        headers.setSessionId("s1");
+        headers.setSubscriptionId(subscriptionId);
+        if (destination != null) {
+            headers.setDestination(destination);
+        }
+        if (contentType != null) {
+            headers.setNativeHeader("content-type", contentType);
+        }
+        return MessageBuilder.createMessage(new byte[0], headers.getMessageHeaders());
+    }
+
+    @Test
+    @DisplayName("a CBOR subscription to a tracks topic should move to the .cbor twin and count until unsubscribed")
+    void subscribe_MovesCborToBinaryTopic() {
+        Message<?> subscribed = formats.preSend(frame(StompCommand.SUBSCRIBE, "sub-0", "/topic/project/1/tracks", "application/cbor"), channel);
+        Message<?> json = formats.preSend(frame(StompCommand.SUBSCRIBE, "sub-1", "/topic/project/2/tracks", null), channel);
+
+        assertEquals("/topic/project/1/tracks.cbor", StompHeaderAccessor.wrap(subscribed).getDestination());
+        assertEquals("/topic/project/2/tracks", StompHeaderAccessor.wrap(json).getDestination());
+        assertTrue(formats.hasCborSubscribers(1L));
+        assertFalse(formats.hasCborSubscribers(2L));
+
+        formats.preSend(frame(StompCommand.UNSUBSCRIBE, "sub-0", null, null), channel);
+        assertFalse(formats.hasCborSubscribers(1L));
+    }
+
+    @Test
+    @DisplayName("a disconnect should drop the session's CBOR subscriptions")
+    void disconnect_DropsSubscriptions() {
+        formats.preSend(frame(StompCommand.SUBSCRIBE, "sub-0", "/topic/project/1/tracks", "application/cbor"), channel);
+        formats.preSend(frame(StompCommand.SUBSCRIBE, "sub-1", "/topic/project/1/tracks", "application/cbor"), channel);
+
+        formats.preSend(frame(StompCommand.DISCONNECT, null, null, null), channel);
+
+        assertFalse(formats.hasCborSubscribers(1L));
+    }
+}